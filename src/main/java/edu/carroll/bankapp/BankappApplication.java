@@ -2,11 +2,13 @@ package edu.carroll.bankapp;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Class for application entry-point
  */
 @SpringBootApplication
+@EnableScheduling
 public class BankappApplication {
     /**
      * Entry point for the application
@@ -0,0 +1,66 @@
+package edu.carroll.bankapp.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Periodically logs hit/miss statistics for the Hibernate second-level and
+ * query caches
+ */
+@Component
+public class CacheStatisticsReporter {
+    private static final Logger log = LoggerFactory.getLogger(CacheStatisticsReporter.class);
+
+    private final Statistics statistics;
+
+    /**
+     * Inject dependencies
+     *
+     * @param entityManagerFactory - to get Hibernate's statistics from
+     */
+    public CacheStatisticsReporter(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Hibernate's statistics, including cache hits and misses
+     *
+     * @return statistics for the session factory
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Log the cache statistics
+     */
+    @Scheduled(initialDelayString = "${bankapp.cache.stats-interval-ms:300000}", fixedDelayString = "${bankapp.cache.stats-interval-ms:300000}")
+    public void logStatistics() {
+        if (!statistics.isStatisticsEnabled()) {
+            return;
+        }
+        log.info("Second-level cache: {} hits, {} misses, {} puts", statistics.getSecondLevelCacheHitCount(),
+                statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount());
+        log.info("Query cache: {} hits, {} misses, {} puts", statistics.getQueryCacheHitCount(),
+                statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount());
+        // Whatever regions Hibernate built, so new cached entities and
+        // collections show up without being listed here. There are none when
+        // caching is turned off.
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics == null) {
+                log.debug("No statistics for cache region {}", region);
+                continue;
+            }
+            log.info("Cache region {}: {} hits, {} misses, {} entries", region, regionStatistics.getHitCount(),
+                    regionStatistics.getMissCount(), regionStatistics.getElementCountInMemory());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package edu.carroll.bankapp.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import edu.carroll.bankapp.engine.LedgerEngine;
+import edu.carroll.bankapp.jpa.model.LogProjection;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.service.JpaPostingProjection;
+
+/**
+ * Sets up the in-memory posting engine when bankapp.engine.enabled is true
+ */
+@Configuration
+@ConditionalOnProperty(name = "bankapp.engine.enabled", havingValue = "true")
+public class EngineConfig {
+
+    @Bean(destroyMethod = "close")
+    LedgerEngine ledgerEngine(JpaPostingProjection projections, AccountRepository accountRepo,
+            @Value("${bankapp.engine.dir:engine-data}") String dir,
+            @Value("${bankapp.engine.shards:8}") int shards,
+            @Value("${bankapp.engine.segment-bytes:67108864}") int segmentBytes,
+            @Value("${bankapp.engine.group-commit-micros:200}") long groupCommitMicros,
+            @Value("${bankapp.engine.snapshot-interval-ms:300000}") long snapshotIntervalMs,
+            @Value("${bankapp.engine.recent-transactions:50}") int recentTransactions,
+            @Value("${bankapp.engine.projection-batch-size:500}") int projectionBatchSize) throws IOException {
+        // Accounts waiting to be purged can't take new postings. The balance is
+        // read with a query, as an Account loaded earlier in the same request may
+        // be out of date.
+        LedgerEngine.AccountLoader loader = accountId -> accountRepo.findBalanceIfNotDeleted(accountId).stream()
+                .findFirst()
+                .orElse(null);
+        return new LedgerEngine(Path.of(dir), shards, segmentBytes, groupCommitMicros, snapshotIntervalMs,
+                recentTransactions, projectionBatchSize, loader, projections.forLog(LogProjection.ENGINE));
+    }
+}
@@ -0,0 +1,80 @@
+package edu.carroll.bankapp.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An account as the engine holds it in memory. Never changed once created, so
+ * readers can use it without locking while the shard's writer replaces it.
+ */
+public class AccountState {
+    private final int accountId;
+    private final long balanceInCents;
+    private final long revision;
+    // Oldest first
+    private final EngineRecord[] recent;
+
+    /**
+     * Create an account's state
+     *
+     * @param accountId      - the account
+     * @param balanceInCents - its balance
+     * @param revision       - how many postings have been applied to it
+     * @param recent         - its latest postings, oldest first
+     */
+    public AccountState(int accountId, long balanceInCents, long revision, EngineRecord[] recent) {
+        this.accountId = accountId;
+        this.balanceInCents = balanceInCents;
+        this.revision = revision;
+        this.recent = recent;
+    }
+
+    /**
+     * Apply a posting
+     *
+     * @param posting   - the posting
+     * @param maxRecent - how many recent postings to keep
+     * @return the account's new state
+     */
+    public AccountState apply(EngineRecord posting, int maxRecent) {
+        int keep = Math.min(recent.length, maxRecent - 1);
+        EngineRecord[] newRecent = Arrays.copyOfRange(recent, recent.length - keep, recent.length + 1);
+        newRecent[keep] = posting;
+        return new AccountState(accountId, balanceInCents + posting.getAmountInCents(), revision + 1, newRecent);
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public long getBalanceInCents() {
+        return balanceInCents;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Gets the account's latest postings
+     *
+     * @return the postings, newest first
+     */
+    public List<EngineRecord> getRecentTransactions() {
+        List<EngineRecord> newestFirst = new ArrayList<>(Arrays.asList(recent));
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    /**
+     * Gets the account's latest postings in the order they were made, for
+     * writing snapshots
+     *
+     * @return the postings, oldest first
+     */
+    EngineRecord[] getRecent() {
+        return recent;
+    }
+}
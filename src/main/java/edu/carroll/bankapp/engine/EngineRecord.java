@@ -0,0 +1,137 @@
+package edu.carroll.bankapp.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * One change made by the engine, as written to the write-ahead log. Records
+ * are numbered by the log in the order they were written.
+ */
+public class EngineRecord {
+    /**
+     * The kinds of records
+     */
+    public enum Type {
+        /** An account was loaded into the engine with the given balance */
+        OPEN,
+        /** A transaction was posted to an account */
+        POST,
+        /**
+         * An account was dropped from the engine, so its balance could be changed
+         * in the database directly. It's loaded again on its next posting.
+         */
+        RELEASE
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final int accountId;
+    private final long amountInCents;
+    private final long timestamp;
+    private final String name;
+    private final String toFrom;
+
+    /**
+     * Create a record
+     *
+     * @param sequence      - the record's position in the log
+     * @param type          - what happened
+     * @param accountId     - the account it happened to
+     * @param amountInCents - the opening balance, or the amount posted, 0 for
+     *                      RELEASE
+     * @param timestamp     - when it happened, in milliseconds since the epoch
+     * @param name          - the transaction's name, empty for OPEN and RELEASE
+     * @param toFrom        - the transaction's recipient or sender, empty for OPEN
+     *                      and RELEASE
+     */
+    public EngineRecord(long sequence, Type type, int accountId, long amountInCents, long timestamp, String name,
+            String toFrom) {
+        this.sequence = sequence;
+        this.type = type;
+        this.accountId = accountId;
+        this.amountInCents = amountInCents;
+        this.timestamp = timestamp;
+        this.name = name;
+        this.toFrom = toFrom;
+    }
+
+    /**
+     * Copy a record, giving it its position in the log
+     *
+     * @param sequence - the record's position in the log
+     * @return the numbered record
+     */
+    public EngineRecord withSequence(long sequence) {
+        return new EngineRecord(sequence, type, accountId, amountInCents, timestamp, name, toFrom);
+    }
+
+    /**
+     * Write the record's contents (everything but its sequence, which the log
+     * keeps)
+     *
+     * @return the encoded record
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + name.length() + toFrom.length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type.ordinal());
+            out.writeInt(accountId);
+            out.writeLong(amountInCents);
+            out.writeLong(timestamp);
+            out.writeUTF(name);
+            out.writeUTF(toFrom);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a record written by encode
+     *
+     * @param sequence - the record's position in the log
+     * @param encoded  - the encoded record
+     * @return the record
+     */
+    public static EngineRecord decode(long sequence, byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            Type type = Type.values()[in.readByte()];
+            return new EngineRecord(sequence, type, in.readInt(), in.readLong(), in.readLong(), in.readUTF(),
+                    in.readUTF());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public long getAmountInCents() {
+        return amountInCents;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getToFrom() {
+        return toFrom;
+    }
+}
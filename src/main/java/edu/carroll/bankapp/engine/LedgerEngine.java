@@ -0,0 +1,649 @@
+package edu.carroll.bankapp.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps account balances and recent transactions in memory and posts
+ * transactions to them without going to the database.
+ *
+ * Accounts are split between shards, and each shard has a single thread that
+ * applies every change to its accounts, so nothing is ever updated by two
+ * threads at once. A posting is written to the write-ahead log first and only
+ * reported as done once the log has been forced to disk, with writers that
+ * arrive together sharing a single force. The accounts are snapshotted now and
+ * then, so a restart only has to replay the log since the last snapshot.
+ *
+ * The database is brought up to date in the background by a projection, in
+ * log order. Records the projection hasn't confirmed are kept in the log and
+ * handed to it again after a restart.
+ *
+ * Reads come from memory and can see a posting a moment before it's durable.
+ * Once an account has been loaded, the engine's balance is the one that counts,
+ * so anything that changes it in the database has to release it first. A
+ * released account is dropped from memory once its postings are in the
+ * database, and new postings to it wait until the release is over and then
+ * load it again.
+ */
+public class LedgerEngine implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(LedgerEngine.class);
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final WriteAheadLog wal;
+    private final SnapshotStore snapshots;
+    private final List<Shard> shards = new ArrayList<>();
+    private final int maxRecent;
+    private final int projectionBatchSize;
+    private final AccountLoader loader;
+    private final Projection projection;
+
+    // Held while appending, so records reach the shards and the projection in
+    // log order. Guards openAccounts, releasing and releaseCount, and is
+    // notified when a release ends.
+    private final Object appendLock = new Object();
+    private final Set<Integer> openAccounts = new HashSet<>();
+    // How many releases are in progress for each account
+    private final Map<Integer, Integer> releasing = new HashMap<>();
+    // Goes up with every release, so a posting can tell if one started while it
+    // was loading its account
+    private long releaseCount;
+
+    // Records waiting to be projected, in log order. Guards itself.
+    private final ArrayDeque<EngineRecord> projectionQueue = new ArrayDeque<>();
+    private volatile long projectedSequence;
+
+    private final Thread projector;
+    private final ScheduledExecutorService snapshotScheduler;
+    private volatile boolean running = true;
+
+    private final AtomicLong postCount = new AtomicLong();
+    private final AtomicLong projectionFailures = new AtomicLong();
+
+    /**
+     * Loads an account's balance from wherever it's kept when the engine first
+     * sees the account
+     */
+    public interface AccountLoader {
+        /**
+         * Load an account's balance
+         *
+         * @param accountId - the account
+         * @return its balance in cents, or null if there's no such account
+         */
+        Long loadBalance(int accountId);
+    }
+
+    /**
+     * Applies the engine's records to the database
+     */
+    public interface Projection {
+        /**
+         * Gets the last record that has been applied, so a restart knows where to
+         * pick up
+         *
+         * @return the record's sequence, or 0 if none have been
+         */
+        long getProjectedSequence();
+
+        /**
+         * Apply some records. Either all of them are applied, along with the new
+         * projected sequence, or none are and an exception is thrown.
+         *
+         * @param records - the records, in log order
+         */
+        void project(List<EngineRecord> records);
+    }
+
+    /**
+     * The accounts owned by one writer thread
+     */
+    private static class Shard {
+        private final ExecutorService writer;
+        private final ConcurrentHashMap<Integer, AccountState> accounts = new ConcurrentHashMap<>();
+
+        private Shard(int index) {
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "engine-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Open the engine, recovering its accounts from the latest snapshot and the
+     * write-ahead log
+     *
+     * @param directory           - where the log and snapshots are kept
+     * @param shardCount          - how many writer threads to split accounts
+     *                            between
+     * @param segmentBytes        - the size of each log segment file
+     * @param groupCommitMicros   - how long to wait for more writers before
+     *                            forcing the log
+     * @param snapshotIntervalMs  - how often to snapshot the accounts, 0 for never
+     * @param maxRecent           - how many recent transactions to keep per
+     *                            account
+     * @param projectionBatchSize - the most records to project at once
+     * @param loader              - loads accounts the engine hasn't seen yet
+     * @param projection          - brings the database up to date
+     * @throws IOException if the log or snapshots can't be read
+     */
+    public LedgerEngine(Path directory, int shardCount, int segmentBytes, long groupCommitMicros,
+            long snapshotIntervalMs, int maxRecent, int projectionBatchSize, AccountLoader loader,
+            Projection projection) throws IOException {
+        this.maxRecent = maxRecent;
+        this.projectionBatchSize = projectionBatchSize;
+        this.loader = loader;
+        this.projection = projection;
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard(i));
+        }
+        this.snapshots = new SnapshotStore(directory.resolve("snapshots"));
+        this.wal = new WriteAheadLog(directory.resolve("wal"), segmentBytes, groupCommitMicros);
+        recover();
+
+        projector = new Thread(this::projectLoop, "engine-projector");
+        projector.setDaemon(true);
+        projector.start();
+        if (snapshotIntervalMs > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "engine-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalMs,
+                    snapshotIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+    }
+
+    /**
+     * Load the latest snapshot and replay the log after it. Records the
+     * projection hasn't confirmed are queued for it again.
+     */
+    private void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        SnapshotStore.Snapshot snapshot = snapshots.loadLatest();
+        long snapshotSequence = 0;
+        if (snapshot != null) {
+            snapshotSequence = snapshot.getSequence();
+            for (AccountState account : snapshot.getAccounts()) {
+                shardFor(account.getAccountId()).accounts.put(account.getAccountId(), account);
+                openAccounts.add(account.getAccountId());
+            }
+        }
+        projectedSequence = projection.getProjectedSequence();
+
+        long replayFrom = snapshotSequence;
+        AtomicLong replayed = new AtomicLong();
+        // Nothing else is running yet, so the shards can be filled in directly
+        wal.recover(Math.max(snapshotSequence, projectedSequence), (sequence, contents) -> {
+            EngineRecord record = EngineRecord.decode(sequence, contents);
+            if (sequence > replayFrom) {
+                apply(shardFor(record.getAccountId()), record);
+                if (record.getType() == EngineRecord.Type.OPEN) {
+                    openAccounts.add(record.getAccountId());
+                } else if (record.getType() == EngineRecord.Type.RELEASE) {
+                    openAccounts.remove(record.getAccountId());
+                }
+                replayed.incrementAndGet();
+            }
+            if (sequence > projectedSequence) {
+                projectionQueue.add(record);
+            }
+        });
+        log.info("Engine recovered {} accounts from snapshot {} and {} log records in {} ms, {} records to project",
+                openAccounts.size(), snapshotSequence, replayed.get(), System.currentTimeMillis() - start,
+                projectionQueue.size());
+    }
+
+    private Shard shardFor(int accountId) {
+        return shards.get(Math.floorMod(accountId, shards.size()));
+    }
+
+    /**
+     * Apply a record to its account. Only ever called on the shard's writer
+     * thread (or during recovery).
+     *
+     * @return the account's new state, or null if it was released
+     */
+    private AccountState apply(Shard shard, EngineRecord record) {
+        if (record.getType() == EngineRecord.Type.RELEASE) {
+            shard.accounts.remove(record.getAccountId());
+            return null;
+        }
+        if (record.getType() == EngineRecord.Type.OPEN) {
+            AccountState opened = new AccountState(record.getAccountId(), record.getAmountInCents(), 0,
+                    new EngineRecord[0]);
+            shard.accounts.put(record.getAccountId(), opened);
+            return opened;
+        }
+        AccountState current = shard.accounts.get(record.getAccountId());
+        if (current == null) {
+            throw new IllegalStateException("Posting " + record.getSequence() + " is for account "
+                    + record.getAccountId() + ", which was never opened");
+        }
+        AccountState updated = current.apply(record, maxRecent);
+        shard.accounts.put(record.getAccountId(), updated);
+        return updated;
+    }
+
+    /**
+     * A record that has been appended, and its account once the shard has
+     * applied it
+     */
+    private static class Appended {
+        private final long sequence;
+        private final Future<AccountState> applied;
+
+        private Appended(long sequence, Future<AccountState> applied) {
+            this.sequence = sequence;
+            this.applied = applied;
+        }
+    }
+
+    /**
+     * Append a record to the log and hand it to its shard and the projection.
+     * Must be called holding appendLock.
+     */
+    private Appended appendLocked(EngineRecord record) throws IOException {
+        EngineRecord numbered = record.withSequence(wal.append(record.encode()));
+        Shard shard = shardFor(record.getAccountId());
+        Future<AccountState> applied = shard.writer.submit(() -> apply(shard, numbered));
+        synchronized (projectionQueue) {
+            projectionQueue.add(numbered);
+        }
+        return new Appended(numbered.getSequence(), applied);
+    }
+
+    /**
+     * Post a transaction to an account, loading the account first if the engine
+     * hasn't seen it yet (or it has been released since). Waits for any release
+     * of the account to end first. Returns once the posting is durable.
+     *
+     * @param accountId     - the account
+     * @param amountInCents - the amount, negative for money out
+     * @param name          - the transaction's name
+     * @param toFrom        - the transaction's recipient or sender
+     * @return the account after the posting
+     * @throws IllegalArgumentException if there's no such account
+     * @throws IllegalStateException    if the engine is closed, or the thread
+     *                                  is interrupted while waiting
+     * @throws UncheckedIOException     if the log can't be written
+     */
+    public AccountState post(int accountId, long amountInCents, String name, String toFrom) {
+        Appended appended = null;
+        try {
+            while (appended == null) {
+                boolean open;
+                long releasesBefore;
+                synchronized (appendLock) {
+                    awaitReleasedLocked(accountId);
+                    open = openAccounts.contains(accountId);
+                    releasesBefore = releaseCount;
+                }
+                // Load outside the lock so a slow database doesn't hold up other writers
+                Long loadedBalance = open ? null : loader.loadBalance(accountId);
+                if (!open && loadedBalance == null) {
+                    throw new IllegalArgumentException("Account " + accountId + " doesn't exist");
+                }
+
+                EngineRecord posting = new EngineRecord(0, EngineRecord.Type.POST, accountId, amountInCents,
+                        System.currentTimeMillis(), name, toFrom);
+                synchronized (appendLock) {
+                    // A release may have started while loading, in which case the
+                    // loaded balance can't be trusted
+                    if (releaseCount != releasesBefore) {
+                        continue;
+                    }
+                    // Another writer may have loaded the account in the meantime
+                    if (!openAccounts.contains(accountId)) {
+                        appendLocked(new EngineRecord(0, EngineRecord.Type.OPEN, accountId, loadedBalance,
+                                posting.getTimestamp(), "", ""));
+                        openAccounts.add(accountId);
+                    }
+                    appended = appendLocked(posting);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            wal.awaitDurable(appended.sequence);
+            AccountState result = appended.applied.get();
+            postCount.incrementAndGet();
+            synchronized (projectionQueue) {
+                projectionQueue.notifyAll();
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted before posting " + appended.sequence + " was durable", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Posting " + appended.sequence + " couldn't be applied", e.getCause());
+        }
+    }
+
+    /**
+     * Wait until nothing is releasing the given account. Must be called holding
+     * appendLock.
+     */
+    private void awaitReleasedLocked(int accountId) {
+        while (true) {
+            if (!running) {
+                throw new IllegalStateException("The engine has been closed");
+            }
+            if (!releasing.containsKey(accountId)) {
+                return;
+            }
+            try {
+                appendLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for account " + accountId + " to be released", e);
+            }
+        }
+    }
+
+    /**
+     * Release some accounts so their balances can be changed in the database
+     * directly. Once this returns, everything posted to them is in the database
+     * and the engine has dropped them. Postings to them wait until the returned
+     * Runnable is run, which must be done once the database change has committed
+     * or rolled back, and then load them again.
+     *
+     * @param accountIds - the accounts
+     * @param timeoutMs  - the longest to wait for the projection to catch up
+     * @return ends the release
+     * @throws IllegalStateException if the projection didn't catch up in time,
+     *                               in which case nothing is left released
+     * @throws UncheckedIOException  if the log can't be written
+     */
+    public Runnable release(Collection<Integer> accountIds, long timeoutMs) {
+        Set<Integer> ids = new HashSet<>(accountIds);
+        Runnable end = () -> {
+            synchronized (appendLock) {
+                for (Integer accountId : ids) {
+                    releasing.computeIfPresent(accountId, (id, count) -> count == 1 ? null : count - 1);
+                }
+                appendLock.notifyAll();
+            }
+        };
+
+        List<Future<AccountState>> applied = new ArrayList<>();
+        long sequence;
+        synchronized (appendLock) {
+            if (!running) {
+                throw new IllegalStateException("The engine has been closed");
+            }
+            for (Integer accountId : ids) {
+                releasing.merge(accountId, 1, Integer::sum);
+            }
+            releaseCount++;
+            try {
+                for (Integer accountId : ids) {
+                    if (openAccounts.remove(accountId)) {
+                        applied.add(appendLocked(new EngineRecord(0, EngineRecord.Type.RELEASE, accountId, 0,
+                                System.currentTimeMillis(), "", "")).applied);
+                    }
+                }
+            } catch (IOException e) {
+                end.run();
+                throw new UncheckedIOException(e);
+            }
+            // Postings from before an earlier release may still be on their way too
+            sequence = wal.getLastSequence();
+        }
+
+        try {
+            for (Future<AccountState> release : applied) {
+                release.get();
+            }
+            // Only durable records are projected
+            wal.awaitDurable(sequence);
+            synchronized (projectionQueue) {
+                projectionQueue.notifyAll();
+            }
+            if (!awaitProjected(sequence, timeoutMs)) {
+                throw new IllegalStateException("Postings to accounts " + ids + " weren't in the database within "
+                        + timeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            end.run();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted releasing accounts " + ids, e);
+        } catch (ExecutionException e) {
+            end.run();
+            throw new IllegalStateException("Accounts " + ids + " couldn't be released", e.getCause());
+        } catch (RuntimeException e) {
+            end.run();
+            throw e;
+        }
+        return end;
+    }
+
+    /**
+     * Gets an account's balance, if the engine has it
+     *
+     * @param accountId - the account
+     * @return the balance in cents, or null if the engine hasn't loaded the
+     *         account
+     */
+    public Long getBalanceInCents(int accountId) {
+        AccountState account = shardFor(accountId).accounts.get(accountId);
+        return account == null ? null : account.getBalanceInCents();
+    }
+
+    /**
+     * Gets an account's latest transactions, if the engine has it
+     *
+     * @param accountId - the account
+     * @return the postings, newest first, or an empty list if the engine hasn't
+     *         loaded the account
+     */
+    public List<EngineRecord> getRecentTransactions(int accountId) {
+        AccountState account = shardFor(accountId).accounts.get(accountId);
+        return account == null ? Collections.emptyList() : account.getRecentTransactions();
+    }
+
+    /**
+     * Snapshot every account, then delete log segments that neither the
+     * retained snapshots nor the projection still need
+     *
+     * @return the last record the snapshot covers
+     * @throws IOException if the snapshot can't be written
+     */
+    public synchronized long snapshot() throws IOException {
+        long sequence;
+        List<Future<List<AccountState>>> captures = new ArrayList<>();
+        synchronized (appendLock) {
+            // Each shard copies its accounts once it has applied everything
+            // appended so far, and nothing later
+            sequence = wal.getLastSequence();
+            for (Shard shard : shards) {
+                captures.add(shard.writer.submit(() -> new ArrayList<>(shard.accounts.values())));
+            }
+        }
+        List<AccountState> accounts = new ArrayList<>();
+        try {
+            for (Future<List<AccountState>> capture : captures) {
+                accounts.addAll(capture.get());
+            }
+            // A snapshot must never get ahead of the log
+            wal.awaitDurable(sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while taking a snapshot", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Couldn't capture accounts for a snapshot", e.getCause());
+        }
+        snapshots.write(sequence, accounts);
+
+        List<Long> retained = snapshots.getSequences();
+        long needed = Math.min(retained.get(retained.size() - 1), projectedSequence);
+        int deleted = wal.deleteBefore(needed + 1);
+        log.info("Engine snapshot of {} accounts at record {}, deleted {} log segments", accounts.size(), sequence,
+                deleted);
+        return sequence;
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("Engine snapshot failed", e);
+        }
+    }
+
+    /**
+     * Hand durable records to the projection in batches, retrying a failed batch
+     * with a growing delay so the records are applied in order
+     */
+    private void projectLoop() {
+        long retryDelayMs = 100;
+        while (true) {
+            List<EngineRecord> batch = new ArrayList<>();
+            synchronized (projectionQueue) {
+                long durable = wal.getDurableSequence();
+                while (batch.size() < projectionBatchSize && !projectionQueue.isEmpty()
+                        && projectionQueue.peek().getSequence() <= durable) {
+                    batch.add(projectionQueue.poll());
+                }
+                if (batch.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    try {
+                        projectionQueue.wait(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            try {
+                projection.project(batch);
+                projectedSequence = batch.get(batch.size() - 1).getSequence();
+                retryDelayMs = 100;
+                synchronized (projectionQueue) {
+                    projectionQueue.notifyAll();
+                }
+            } catch (RuntimeException e) {
+                projectionFailures.incrementAndGet();
+                log.error("Projecting engine records {} to {} failed, retrying in {} ms", batch.get(0).getSequence(),
+                        batch.get(batch.size() - 1).getSequence(), retryDelayMs, e);
+                synchronized (projectionQueue) {
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        projectionQueue.addFirst(batch.get(i));
+                    }
+                }
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * Wait until the projection has caught up with the given record
+     *
+     * @param sequence  - the record to wait for
+     * @param timeoutMs - the longest to wait
+     * @return true if it caught up in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitProjected(long sequence, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (projectionQueue) {
+            while (projectedSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                projectionQueue.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    public long getLastSequence() {
+        return wal.getLastSequence();
+    }
+
+    public long getProjectedSequence() {
+        return projectedSequence;
+    }
+
+    public long getPostCount() {
+        return postCount.get();
+    }
+
+    public long getForceCount() {
+        return wal.getForceCount();
+    }
+
+    public long getProjectionFailures() {
+        return projectionFailures.get();
+    }
+
+    public int getLogSegmentCount() {
+        return wal.getSegmentCount();
+    }
+
+    /**
+     * Stop taking postings, give the projection a few seconds to catch up and
+     * close the log. Anything not projected by then is projected after the next
+     * start.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (appendLock) {
+            appendLock.notifyAll();
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        try {
+            awaitProjected(wal.getLastSequence(), 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        projector.interrupt();
+        for (Shard shard : shards) {
+            shard.writer.shutdown();
+        }
+        wal.close();
+        log.info("Engine closed at record {}, projected up to {}", wal.getLastSequence(), projectedSequence);
+    }
+}
@@ -0,0 +1,224 @@
+package edu.carroll.bankapp.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes and reads snapshots of the engine's accounts. A snapshot holds every
+ * account as of a given log record, so recovery only has to replay the log
+ * from there.
+ *
+ * Snapshots are written to a temporary file, forced to disk and then renamed,
+ * and end with a CRC, so a snapshot that was cut short is never loaded. The
+ * previous snapshot is kept as a fallback.
+ */
+public class SnapshotStore {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int MAGIC = 0x42414e4b;
+    private static final int VERSION = 1;
+    private static final int RETAINED = 2;
+    // Anything bigger means the snapshot is damaged
+    private static final int MAX_RECENT = 1_000_000;
+    private static final int MAX_RECORD_BYTES = 1_000_000;
+
+    private final Path directory;
+
+    /**
+     * A snapshot read back from disk
+     */
+    public static class Snapshot {
+        private final long sequence;
+        private final List<AccountState> accounts;
+
+        private Snapshot(long sequence, List<AccountState> accounts) {
+            this.sequence = sequence;
+            this.accounts = accounts;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public List<AccountState> getAccounts() {
+            return accounts;
+        }
+    }
+
+    /**
+     * Use the given directory for snapshots
+     *
+     * @param directory - where snapshots go
+     * @throws IOException if the directory can't be created
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Write a snapshot and delete all but the latest few
+     *
+     * @param sequence - the last log record the snapshot covers
+     * @param accounts - every account as of that record
+     * @throws IOException if the snapshot can't be written
+     */
+    public void write(long sequence, Collection<AccountState> accounts) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temporary);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new CheckedOutputStream(file, crc), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(accounts.size());
+            for (AccountState account : accounts) {
+                out.writeInt(account.getAccountId());
+                out.writeLong(account.getBalanceInCents());
+                out.writeLong(account.getRevision());
+                EngineRecord[] recent = account.getRecent();
+                out.writeInt(recent.length);
+                for (EngineRecord posting : recent) {
+                    byte[] encoded = posting.encode();
+                    out.writeLong(posting.getSequence());
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                }
+            }
+            out.flush();
+            // Not covered by the CRC itself
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> snapshots = list();
+        for (int i = RETAINED; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    /**
+     * Read the latest snapshot that's intact
+     *
+     * @return the snapshot, or null if there isn't one
+     * @throws IOException if the directory can't be read
+     */
+    public Snapshot loadLatest() throws IOException {
+        for (Path path : list()) {
+            try {
+                return read(path);
+            } catch (IOException e) {
+                log.warn("Skipping damaged snapshot {}: {}", path, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the sequences of the snapshots on disk
+     *
+     * @return sequences, newest first
+     * @throws IOException if the directory can't be read
+     */
+    public List<Long> getSequences() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        for (Path path : list()) {
+            String name = path.getFileName().toString();
+            sequences.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+        }
+        return sequences;
+    }
+
+    /**
+     * Read one snapshot, checking its CRC
+     */
+    private static Snapshot read(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot");
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            List<AccountState> accounts = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int accountId = in.readInt();
+                long balanceInCents = in.readLong();
+                long revision = in.readLong();
+                EngineRecord[] recent = new EngineRecord[checkSize(in.readInt(), MAX_RECENT)];
+                for (int j = 0; j < recent.length; j++) {
+                    long postingSequence = in.readLong();
+                    byte[] encoded = new byte[checkSize(in.readInt(), MAX_RECORD_BYTES)];
+                    in.readFully(encoded);
+                    recent[j] = EngineRecord.decode(postingSequence, encoded);
+                }
+                accounts.add(new AccountState(accountId, balanceInCents, revision, recent));
+            }
+            long expected = crc.getValue();
+            try {
+                if (new DataInputStream(file).readLong() != expected) {
+                    throw new IOException("Checksum doesn't match");
+                }
+            } catch (EOFException e) {
+                throw new IOException("Snapshot was cut short");
+            }
+            return new Snapshot(sequence, accounts);
+        } catch (EOFException | RuntimeException e) {
+            throw new IOException("Snapshot can't be read", e);
+        }
+    }
+
+    /**
+     * Make sure a size read from a snapshot is sensible before allocating for it
+     */
+    private static int checkSize(int size, int max) throws IOException {
+        if (size < 0 || size > max) {
+            throw new IOException("Snapshot is damaged");
+        }
+        return size;
+    }
+
+    /**
+     * List the snapshots on disk
+     *
+     * @return paths, newest first
+     */
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> snapshots = files.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                    && path.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList());
+            Collections.reverse(snapshots);
+            return snapshots;
+        }
+    }
+}
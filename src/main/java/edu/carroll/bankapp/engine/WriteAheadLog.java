@@ -0,0 +1,407 @@
+package edu.carroll.bankapp.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log kept in fixed-size, memory-mapped segment files.
+ *
+ * Appending only copies the record into the mapped file, so it's cheap.
+ * Durability comes from group commit: a single flusher thread forces
+ * everything appended so far to disk at once, and every writer waiting on a
+ * record in that range is released together.
+ *
+ * Each record is framed as [length][CRC-32][sequence][contents]. A record
+ * that was only partly written when the process died fails its CRC check and
+ * ends recovery, and the rest of that segment is cleared before anything new
+ * is appended.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    // length, CRC and sequence
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long groupCommitNanos;
+
+    // Guarded by this
+    private final List<Segment> segments = new ArrayList<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long lastSequence;
+    private boolean recovered;
+
+    // Guarded by syncMonitor
+    private final Object syncMonitor = new Object();
+    private long durableSequence;
+    private boolean syncRequested;
+    private boolean closed;
+
+    private final Thread flusher;
+    private final AtomicLong forceCount = new AtomicLong();
+
+    /**
+     * A segment file and the sequence of its first record
+     */
+    private static class Segment {
+        private final Path path;
+        private final long firstSequence;
+
+        private Segment(Path path, long firstSequence) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+        }
+    }
+
+    /**
+     * Receives records read back from the log
+     */
+    public interface RecordHandler {
+        /**
+         * Handle a record
+         *
+         * @param sequence - the record's sequence
+         * @param contents - what was appended
+         */
+        void handle(long sequence, byte[] contents);
+    }
+
+    /**
+     * Open a log. Nothing can be appended until it has been recovered.
+     *
+     * @param directory          - where the segment files go
+     * @param segmentBytes       - the size of each segment file
+     * @param groupCommitMicros  - how long the flusher waits for more records
+     *                           before forcing them to disk
+     * @throws IOException if the directory can't be created
+     */
+    public WriteAheadLog(Path directory, int segmentBytes, long groupCommitMicros) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMicros);
+        Files.createDirectories(directory);
+        this.flusher = new Thread(this::flushLoop, "engine-wal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Read back every record in the log and get ready to append after the last
+     * complete one
+     *
+     * @param startAfter - the lowest sequence the log may continue from, in case
+     *                   it lost records that a snapshot already covers
+     * @param handler    - given each record in order
+     * @throws IOException if the log can't be read, or is damaged somewhere
+     *                     other than at its end
+     */
+    public synchronized void recover(long startAfter, RecordHandler handler) throws IOException {
+        if (recovered) {
+            throw new IllegalStateException("The log has already been recovered");
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                    && path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .forEach(path -> segments.add(new Segment(path, parseFirstSequence(path))));
+        }
+
+        long expectedSequence = 1;
+        int tailPosition = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            expectedSequence = segments.get(i).firstSequence;
+            try (FileChannel readChannel = FileChannel.open(segments.get(i).path, StandardOpenOption.READ)) {
+                MappedByteBuffer readBuffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                int position = 0;
+                while (true) {
+                    byte[] contents = readRecord(readBuffer, position, expectedSequence);
+                    if (contents == null) {
+                        break;
+                    }
+                    handler.handle(expectedSequence, contents);
+                    expectedSequence++;
+                    position += HEADER_BYTES + contents.length;
+                }
+                if (!last && position + HEADER_BYTES <= readBuffer.limit() && readBuffer.getInt(position) != 0) {
+                    // Segments are forced before the next one is started, so only
+                    // the last one can end with a partial record
+                    throw new IOException("Write-ahead log segment " + segments.get(i).path + " is damaged at byte "
+                            + position);
+                }
+                tailPosition = position;
+            }
+        }
+        lastSequence = expectedSequence - 1;
+        if (lastSequence < startAfter) {
+            log.warn("Write-ahead log ends at record {}, continuing from {}", lastSequence, startAfter);
+            lastSequence = startAfter;
+        }
+        durableSequence = lastSequence;
+
+        if (!segments.isEmpty()) {
+            Segment tail = segments.get(segments.size() - 1);
+            channel = FileChannel.open(tail.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentBytes));
+            // Clear anything after the last complete record, such as a torn write,
+            // so it can't be mistaken for a record later
+            byte[] zeros = new byte[64 * 1024];
+            for (int i = tailPosition; i < buffer.capacity(); i += zeros.length) {
+                buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.capacity() - i));
+            }
+            buffer.force();
+            buffer.position(tailPosition);
+        }
+        if (segments.isEmpty() || lastSequence != expectedSequence - 1) {
+            if (channel != null) {
+                channel.close();
+            }
+            startSegment(lastSequence + 1);
+        }
+        recovered = true;
+        flusher.start();
+        log.info("Recovered write-ahead log up to record {} from {} segments", lastSequence, segments.size());
+    }
+
+    /**
+     * Read one record
+     *
+     * @param readBuffer       - the segment
+     * @param position         - where the record starts
+     * @param expectedSequence - the sequence the record should have
+     * @return the record's contents, or null if there isn't a complete record
+     *         there
+     */
+    private static byte[] readRecord(MappedByteBuffer readBuffer, int position, long expectedSequence) {
+        if (position + HEADER_BYTES > readBuffer.limit()) {
+            return null;
+        }
+        int length = readBuffer.getInt(position);
+        if (length <= 0 || position + HEADER_BYTES + length > readBuffer.limit()) {
+            return null;
+        }
+        int crc = readBuffer.getInt(position + 4);
+        long sequence = readBuffer.getLong(position + 8);
+        byte[] contents = new byte[length];
+        readBuffer.get(position + HEADER_BYTES, contents);
+        if (sequence != expectedSequence || crc != checksum(sequence, contents)) {
+            return null;
+        }
+        return contents;
+    }
+
+    /**
+     * Work out a record's CRC, covering its sequence and contents
+     */
+    private static int checksum(long sequence, byte[] contents) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (sequence >>> shift));
+        }
+        crc.update(contents);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Append a record. It isn't durable until awaitDurable returns for it.
+     *
+     * @param contents - the record
+     * @return the record's sequence
+     * @throws IOException if a new segment can't be started
+     */
+    public synchronized long append(byte[] contents) throws IOException {
+        if (!recovered || channel == null) {
+            throw new IllegalStateException("The log isn't open");
+        }
+        int frameBytes = HEADER_BYTES + contents.length;
+        if (frameBytes > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + contents.length + " bytes doesn't fit in a segment");
+        }
+        long sequence = lastSequence + 1;
+        if (buffer.position() + frameBytes > buffer.capacity()) {
+            // Make the full segment durable before starting the next, so
+            // recovery only ever has to deal with a damaged last segment
+            buffer.force();
+            channel.close();
+            startSegment(sequence);
+        }
+        int position = buffer.position();
+        buffer.putInt(position + 4, checksum(sequence, contents));
+        buffer.putLong(position + 8, sequence);
+        buffer.put(position + HEADER_BYTES, contents);
+        // The length goes in last, so a record is only complete once it's all there
+        buffer.putInt(position, contents.length);
+        buffer.position(position + frameBytes);
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Create and map a new segment file
+     *
+     * @param firstSequence - the sequence of its first record
+     */
+    private void startSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segments.add(new Segment(path, firstSequence));
+    }
+
+    /**
+     * Wait until the given record has been forced to disk
+     *
+     * @param sequence - the record to wait for
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitDurable(long sequence) throws InterruptedException {
+        synchronized (syncMonitor) {
+            while (durableSequence < sequence) {
+                if (closed) {
+                    throw new IllegalStateException("The log was closed before record " + sequence + " was forced");
+                }
+                if (!syncRequested) {
+                    syncRequested = true;
+                    syncMonitor.notifyAll();
+                }
+                syncMonitor.wait();
+            }
+        }
+    }
+
+    /**
+     * Force appended records to disk whenever a writer is waiting for them
+     */
+    private void flushLoop() {
+        while (true) {
+            synchronized (syncMonitor) {
+                while (!syncRequested && !closed) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            if (groupCommitNanos > 0) {
+                // Give other writers a moment to join this group
+                long deadline = System.nanoTime() + groupCommitNanos;
+                while (System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+            }
+            long target;
+            MappedByteBuffer toForce;
+            synchronized (this) {
+                target = lastSequence;
+                toForce = buffer;
+            }
+            synchronized (syncMonitor) {
+                syncRequested = false;
+            }
+            // Earlier segments were forced when they filled up
+            toForce.force();
+            forceCount.incrementAndGet();
+            synchronized (syncMonitor) {
+                durableSequence = Math.max(durableSequence, target);
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Delete segments that only hold records before the given one. The segment
+     * being appended to is always kept.
+     *
+     * @param sequence - records before this one are no longer needed
+     * @return the number of segments deleted
+     * @throws IOException if a segment can't be deleted
+     */
+    public synchronized int deleteBefore(long sequence) throws IOException {
+        int deleted = 0;
+        // A segment ends where the next one starts
+        while (segments.size() > 1 && segments.get(1).firstSequence <= sequence) {
+            Files.deleteIfExists(segments.remove(0).path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getDurableSequence() {
+        synchronized (syncMonitor) {
+            return durableSequence;
+        }
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * How many times the log has been forced to disk. Lower than the number of
+     * records when writers are sharing group commits.
+     *
+     * @return force count
+     */
+    public long getForceCount() {
+        return forceCount.get();
+    }
+
+    /**
+     * Force everything to disk and stop the flusher
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (buffer != null) {
+                buffer.force();
+            }
+            synchronized (syncMonitor) {
+                durableSequence = lastSequence;
+                closed = true;
+                syncMonitor.notifyAll();
+            }
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+        try {
+            flusher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the first sequence from a segment's file name
+     */
+    private static long parseFirstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -2,23 +2,35 @@ package edu.carroll.bankapp.jpa.model;
 
 import jakarta.persistence.*;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import java.util.*;
 
 import edu.carroll.bankapp.Ownable;
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
 
 /**
  * An account within the application (i.e. checking, savings)
  */
 @Entity
 @Table(name = "account")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "account")
 public class Account implements Ownable {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "account_id")
+    @GenericGenerator(name = "account_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "account_SEQ"))
     private Integer id;
     @ManyToOne
     private SiteUser owner;
 
     @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "account-transactions")
     private Set<Transaction> transactions;
 
     // No money in floating points because Nate who's worked in financial
@@ -28,6 +40,16 @@ public class Account implements Ownable {
     @Column(name = "name", nullable = false)
     private String name;
 
+    // Deleted accounts are hidden right away, their transactions are purged in
+    // the background by AccountPurgeService
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted;
+
+    // Bumped whenever the balance or the account's transactions change, so
+    // pages showing the account can tell whether they're out of date
+    @Column(name = "revision", nullable = false)
+    private long revision;
+
     /**
      * Returns the name of the account
      *
@@ -117,6 +139,11 @@ public class Account implements Ownable {
         if (this.transactions == null) {
             this.transactions = new HashSet<>();
         }
+        // Adding to a set that hasn't been loaded would load every transaction in
+        // the account first. The new transaction will be there once it is loaded.
+        if (!Hibernate.isInitialized(this.transactions)) {
+            return;
+        }
         this.transactions.add(transaction);
     }
 
@@ -154,6 +181,7 @@ public class Account implements Ownable {
      */
     public void addBalanceInCents(long additionalAmount) {
         this.balanceInCents += additionalAmount;
+        this.revision++;
 
     }
 
@@ -164,15 +192,57 @@ public class Account implements Ownable {
      */
     public void subtractBalanceInCents(long subtractionAmount) {
         this.balanceInCents -= subtractionAmount;
+        this.revision++;
 
     }
 
+    /**
+     * Gets the account's revision, which goes up every time its balance or
+     * transactions change
+     *
+     * @return revision - long - the account's revision
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Sets the account's revision
+     *
+     * @param revision - long - the account's revision
+     */
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * Whether this account has been deleted and is waiting to be purged
+     *
+     * @return true if deleted, false if not
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Marks the account as deleted (or not)
+     *
+     * @param deleted - boolean - whether the account has been deleted
+     */
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
     /**
      * Removes a transaction from this account
      * 
      * @param transaction to be removed
      */
     public void removeTransaction(Transaction transaction) {
+        // Same as addTransaction, don't load the whole set just to change it
+        if (this.transactions == null || !Hibernate.isInitialized(this.transactions)) {
+            return;
+        }
         this.transactions.remove(transaction);
     }
 }
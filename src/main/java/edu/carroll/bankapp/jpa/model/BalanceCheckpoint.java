@@ -0,0 +1,107 @@
+package edu.carroll.bankapp.jpa.model;
+
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/**
+ * An account's balance as of a given posting, so reading the balance only has
+ * to add up the postings written since
+ */
+@Entity
+@Table(name = "balance_checkpoint")
+public class BalanceCheckpoint {
+    @Id
+    @Column(name = "account_id")
+    private Integer accountId;
+
+    // Every posting to the account up to and including this id is counted
+    @Column(name = "last_posting_id", nullable = false)
+    private long lastPostingId;
+
+    @Column(name = "balance_in_cents", nullable = false)
+    private long balanceInCents;
+
+    @Column(name = "posting_count", nullable = false)
+    private long postingCount;
+
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    /**
+     * Default Constructor
+     */
+    public BalanceCheckpoint() {
+    }
+
+    /**
+     * Create a checkpoint for an account that hasn't got one yet, covering no
+     * postings
+     *
+     * @param accountId - the account
+     */
+    public BalanceCheckpoint(int accountId) {
+        this.accountId = accountId;
+        this.updatedAt = new Date();
+    }
+
+    /**
+     * Move the checkpoint forward over more postings
+     *
+     * @param lastPostingId - the last posting now counted
+     * @param amountInCents - the sum of the newly counted postings
+     * @param postings      - the number of newly counted postings
+     */
+    public void advance(long lastPostingId, long amountInCents, long postings) {
+        this.lastPostingId = lastPostingId;
+        this.balanceInCents += amountInCents;
+        this.postingCount += postings;
+        this.updatedAt = new Date();
+    }
+
+    /**
+     * Gets the id of the account
+     *
+     * @return accountId - Integer - the account's id
+     */
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the last posting counted in the balance
+     *
+     * @return lastPostingId - long - the posting's id, 0 if none are counted
+     */
+    public long getLastPostingId() {
+        return lastPostingId;
+    }
+
+    /**
+     * Gets the account's balance as of the last counted posting
+     *
+     * @return balanceInCents - long - the balance in cents
+     */
+    public long getBalanceInCents() {
+        return balanceInCents;
+    }
+
+    /**
+     * Gets how many postings are counted in the balance
+     *
+     * @return postingCount - long - the number of postings
+     */
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    /**
+     * Gets when the checkpoint last moved
+     *
+     * @return updatedAt - Date - when it last moved
+     */
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,81 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * A category a user files transactions under, such as Groceries or Rent. A
+ * transaction is in at most one category. Categories never change, a different
+ * name is a different category.
+ */
+@Entity
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "category")
+@BatchSize(size = 100)
+@Table(name = "category", indexes = @Index(name = "category_owner_name", columnList = "owner_id, name"))
+public class Category {
+    @Id
+    @GeneratedValue(generator = "category_id")
+    @GenericGenerator(name = "category_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "category_SEQ"))
+    private Integer id;
+
+    @Column(name = "owner_id", nullable = false)
+    private int ownerId;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    /**
+     * Default Constructor
+     */
+    public Category() {
+    }
+
+    /**
+     * Create a category
+     *
+     * @param ownerId - the id of the user the category belongs to
+     * @param name    - the category's name
+     */
+    public Category(int ownerId, String name) {
+        this.ownerId = ownerId;
+        this.name = name;
+    }
+
+    /**
+     * Gets the category's id
+     *
+     * @return id - Integer - the category's id
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Gets the id of the user the category belongs to
+     *
+     * @return ownerId - int - the owner's id
+     */
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Gets the category's name
+     *
+     * @return name - String - the category's name
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,112 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * A rule a user sets up for filing new transactions, such as "payee contains
+ * COSTCO goes under Groceries". Rules never change, editing one means deleting
+ * it and adding another.
+ */
+@Entity
+@Immutable
+@Table(name = "category_rule", indexes = @Index(name = "category_rule_owner", columnList = "owner_id"))
+public class CategoryRule {
+    /**
+     * What part of a transaction a rule looks at
+     */
+    public enum Field {
+        PAYEE, NAME
+    }
+
+    @Id
+    @GeneratedValue(generator = "category_rule_id")
+    @GenericGenerator(name = "category_rule_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "category_rule_SEQ"))
+    private Integer id;
+
+    @Column(name = "owner_id", nullable = false)
+    private int ownerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "field", nullable = false, length = 16)
+    private Field field;
+
+    @Column(name = "pattern", nullable = false)
+    private String pattern;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "category_id", nullable = false)
+    private Category category;
+
+    /**
+     * Default Constructor
+     */
+    public CategoryRule() {
+    }
+
+    /**
+     * Create a rule
+     *
+     * @param ownerId  - the id of the user the rule belongs to
+     * @param field    - what part of a transaction the rule looks at
+     * @param pattern  - the text the field has to contain, ignoring case
+     * @param category - the category matching transactions go under
+     */
+    public CategoryRule(int ownerId, Field field, String pattern, Category category) {
+        this.ownerId = ownerId;
+        this.field = field;
+        this.pattern = pattern;
+        this.category = category;
+    }
+
+    /**
+     * Gets the rule's id
+     *
+     * @return id - Integer - the rule's id
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Gets the id of the user the rule belongs to
+     *
+     * @return ownerId - int - the owner's id
+     */
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Gets what part of a transaction the rule looks at
+     *
+     * @return field - Field - the payee or the name
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Gets the text the field has to contain, ignoring case
+     *
+     * @return pattern - String - the text to look for
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Gets the category matching transactions go under
+     *
+     * @return category - Category - the category
+     */
+    public Category getCategory() {
+        return category;
+    }
+}
@@ -0,0 +1,137 @@
+package edu.carroll.bankapp.jpa.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * One entry in the ledger: a set of postings that move money between accounts
+ * and add up to zero. Entries are never changed once written. A mistake is
+ * undone by appending an entry that reverses it.
+ */
+@Entity
+@Immutable
+@Table(name = "journal_entry")
+public class JournalEntry {
+    @Id
+    @GeneratedValue(generator = "journal_entry_id")
+    @GenericGenerator(name = "journal_entry_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "journal_entry_SEQ"))
+    private Long id;
+
+    @Column(name = "description", nullable = false)
+    private String description;
+
+    @Column(name = "created_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    @OneToMany(mappedBy = "entry", cascade = CascadeType.PERSIST)
+    private List<Posting> postings = new ArrayList<>();
+
+    /**
+     * Default Constructor
+     */
+    public JournalEntry() {
+    }
+
+    /**
+     * Start a new entry with no postings
+     *
+     * @param description - what the entry is for
+     */
+    public JournalEntry(String description) {
+        this.description = description;
+        this.createdAt = new Date();
+    }
+
+    /**
+     * Add a posting to the entry
+     *
+     * @param accountId     - the account the money goes to (or comes from, if
+     *                      negative)
+     * @param transactionId - the transaction the posting is for, or null
+     * @param amountInCents - the amount in cents
+     */
+    public void addPosting(int accountId, Integer transactionId, long amountInCents) {
+        postings.add(new Posting(this, accountId, transactionId, amountInCents));
+    }
+
+    /**
+     * Balance the entry against money coming from or going to outside the bank,
+     * for entries that aren't transfers between accounts
+     */
+    public void balanceExternally() {
+        long total = getTotalInCents();
+        if (total != 0) {
+            addPosting(Posting.EXTERNAL_ACCOUNT, null, -total);
+        }
+    }
+
+    /**
+     * Gets the sum of the entry's postings, which is zero for a balanced entry
+     *
+     * @return total - long - the sum in cents
+     */
+    public long getTotalInCents() {
+        long total = 0;
+        for (Posting posting : postings) {
+            total += posting.getAmountInCents();
+        }
+        return total;
+    }
+
+    /**
+     * Whether the entry has postings and they add up to zero
+     *
+     * @return true if the entry can be written
+     */
+    public boolean isBalanced() {
+        return !postings.isEmpty() && getTotalInCents() == 0;
+    }
+
+    /**
+     * Gets the id of the entry
+     *
+     * @return id - Long - the entry's id
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Gets what the entry is for
+     *
+     * @return description - String - the entry's description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Gets when the entry was made
+     *
+     * @return createdAt - Date - when the entry was made
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Gets the entry's postings
+     *
+     * @return postings - the postings, which can't be changed
+     */
+    public List<Posting> getPostings() {
+        return Collections.unmodifiableList(postings);
+    }
+}
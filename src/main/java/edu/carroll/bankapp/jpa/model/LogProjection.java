@@ -0,0 +1,88 @@
+package edu.carroll.bankapp.jpa.model;
+
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/**
+ * How far a log of postings (the posting engine's, or the transaction write
+ * queue's) has been applied to the database. One row per log.
+ */
+@Entity
+@Table(name = "log_projection")
+public class LogProjection {
+    /**
+     * The posting engine's log
+     */
+    public static final String ENGINE = "engine";
+
+    /**
+     * The transaction write queue's log
+     */
+    public static final String WRITE_QUEUE = "write-queue";
+
+    @Id
+    @Column(name = "name")
+    private String name;
+
+    // Every record up to and including this one is in the database
+    @Column(name = "last_sequence", nullable = false)
+    private long lastSequence;
+
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    /**
+     * Default Constructor
+     */
+    public LogProjection() {
+    }
+
+    /**
+     * Start tracking a log that hasn't been applied yet
+     *
+     * @param name - the log
+     */
+    public LogProjection(String name) {
+        this.name = name;
+        this.updatedAt = new Date();
+    }
+
+    /**
+     * Gets the name of the log
+     *
+     * @return name - String - ENGINE or WRITE_QUEUE
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the last record applied to the database
+     *
+     * @return lastSequence - long - the record's sequence, 0 if none have been
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Record that more records have been applied
+     *
+     * @param lastSequence - long - the last record now applied
+     */
+    public void setLastSequence(long lastSequence) {
+        this.lastSequence = lastSequence;
+        this.updatedAt = new Date();
+    }
+
+    /**
+     * Gets when the projection last moved
+     *
+     * @return updatedAt - Date - when it last moved
+     */
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+import java.util.Date;
+
+/**
+ * An account event waiting to be (or already) handed to the app's event
+ * listeners. Events are written in the same database transaction as the
+ * change they describe, so a committed change always has its event and a
+ * rolled back one never does.
+ */
+@Entity
+@Table(name = "outbox_event", indexes = @Index(name = "outbox_event_pending", columnList = "dispatched_at, id"))
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(generator = "outbox_event_id")
+    @GenericGenerator(name = "outbox_event_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "outbox_event_SEQ"))
+    private Long id;
+
+    @Column(name = "event_type", nullable = false)
+    private String eventType;
+
+    @Column(name = "user_id", nullable = false)
+    private int userId;
+
+    @Column(name = "account_id", nullable = false)
+    private int accountId;
+
+    @Column(name = "created_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    // Null until every listener has had the event
+    @Column(name = "dispatched_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dispatchedAt;
+
+    // Failed deliveries so far
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    /**
+     * Default Constructor
+     */
+    public OutboxEvent() {
+    }
+
+    /**
+     * Create a new, undispatched event
+     *
+     * @param eventType - what happened
+     * @param userId    - the owner of the account
+     * @param accountId - the account it happened to
+     */
+    public OutboxEvent(String eventType, int userId, int accountId) {
+        this.eventType = eventType;
+        this.userId = userId;
+        this.accountId = accountId;
+        this.createdAt = new Date();
+    }
+
+    /**
+     * Gets the event's id. Events are dispatched in id order.
+     *
+     * @return id - Long - the event's id
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Gets what happened
+     *
+     * @return eventType - String - the kind of event
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Gets the id of the account's owner
+     *
+     * @return userId - int - the owner's id
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Gets the id of the account the event happened to
+     *
+     * @return accountId - int - the account's id
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets when the event happened
+     *
+     * @return createdAt - Date - when the event was written
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Gets when the event was handed to every listener
+     *
+     * @return dispatchedAt - Date - when it was dispatched, or null
+     */
+    public Date getDispatchedAt() {
+        return dispatchedAt;
+    }
+
+    /**
+     * Gets the number of failed attempts to deliver the event
+     *
+     * @return attempts - int - failed deliveries
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
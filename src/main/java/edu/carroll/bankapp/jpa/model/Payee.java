@@ -0,0 +1,81 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * A payee (who a transaction was to or from) in a user's payee dictionary.
+ * Transactions refer to their payee by id instead of repeating its name on
+ * every row. Payees never change, a different name is a different payee.
+ */
+@Entity
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "payee")
+@BatchSize(size = 100)
+@Table(name = "payee", indexes = @Index(name = "payee_owner_name", columnList = "owner_id, name"))
+public class Payee {
+    @Id
+    @GeneratedValue(generator = "payee_id")
+    @GenericGenerator(name = "payee_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "payee_SEQ"))
+    private Integer id;
+
+    @Column(name = "owner_id", nullable = false)
+    private int ownerId;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    /**
+     * Default Constructor
+     */
+    public Payee() {
+    }
+
+    /**
+     * Create a payee
+     *
+     * @param ownerId - the id of the user whose dictionary it's in
+     * @param name    - the payee's name
+     */
+    public Payee(int ownerId, String name) {
+        this.ownerId = ownerId;
+        this.name = name;
+    }
+
+    /**
+     * Gets the payee's id
+     *
+     * @return id - Integer - the payee's id
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Gets the id of the user whose dictionary the payee is in
+     *
+     * @return ownerId - int - the owner's id
+     */
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Gets the payee's name
+     *
+     * @return name - String - the payee's name
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,85 @@
+package edu.carroll.bankapp.jpa.model;
+
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/**
+ * A saved copy of a user's top payee summaries, so they don't have to be
+ * counted again from every transaction after a restart. One row per user.
+ */
+@Entity
+@Table(name = "payee_sketch")
+public class PayeeSketch {
+    @Id
+    @Column(name = "owner_id")
+    private int ownerId;
+
+    // Transactions up to and including this one have been counted
+    @Column(name = "last_transaction_id", nullable = false)
+    private int lastTransactionId;
+
+    @Lob
+    @Column(name = "data", nullable = false, length = 16777215)
+    private byte[] data;
+
+    @Column(name = "updated_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updatedAt;
+
+    /**
+     * Default Constructor
+     */
+    public PayeeSketch() {
+    }
+
+    /**
+     * Create a saved copy of a user's summaries
+     *
+     * @param ownerId           - the user
+     * @param lastTransactionId - the last transaction counted
+     * @param data              - the summaries, written out
+     */
+    public PayeeSketch(int ownerId, int lastTransactionId, byte[] data) {
+        this.ownerId = ownerId;
+        this.lastTransactionId = lastTransactionId;
+        this.data = data;
+        this.updatedAt = new Date();
+    }
+
+    /**
+     * Gets the id of the user the summaries belong to
+     *
+     * @return ownerId - int - the owner's id
+     */
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Gets the last transaction counted
+     *
+     * @return lastTransactionId - int - the transaction's id
+     */
+    public int getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    /**
+     * Gets the summaries, written out
+     *
+     * @return data - byte[] - the summaries
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Gets when the summaries were saved
+     *
+     * @return updatedAt - Date - when they were saved
+     */
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * One line of a journal entry: an amount added to (or taken from) an account.
+ * Accounts are referred to by id rather than mapped, so the ledger keeps its
+ * history when accounts and transactions are purged.
+ */
+@Entity
+@Immutable
+@Table(name = "posting", indexes = @Index(name = "posting_account", columnList = "account_id, id"))
+public class Posting {
+    /**
+     * Stands in for everywhere outside the bank, the other side of deposits and
+     * withdrawals. Account ids start at 1, so no real account has this id.
+     */
+    public static final int EXTERNAL_ACCOUNT = 0;
+
+    @Id
+    @GeneratedValue(generator = "posting_id")
+    @GenericGenerator(name = "posting_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "posting_SEQ"))
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "entry_id")
+    private JournalEntry entry;
+
+    @Column(name = "account_id", nullable = false)
+    private int accountId;
+
+    @Column(name = "transaction_id")
+    private Integer transactionId;
+
+    @Column(name = "amount_in_cents", nullable = false)
+    private long amountInCents;
+
+    /**
+     * Default Constructor
+     */
+    public Posting() {
+    }
+
+    /**
+     * Create a posting. Use JournalEntry.addPosting.
+     *
+     * @param entry         - the entry the posting is part of
+     * @param accountId     - the account the money goes to
+     * @param transactionId - the transaction the posting is for, or null
+     * @param amountInCents - the amount in cents (negative if taken out)
+     */
+    Posting(JournalEntry entry, int accountId, Integer transactionId, long amountInCents) {
+        this.entry = entry;
+        this.accountId = accountId;
+        this.transactionId = transactionId;
+        this.amountInCents = amountInCents;
+    }
+
+    /**
+     * Gets the id of the posting. Postings are numbered in the order they're
+     * written.
+     *
+     * @return id - Long - the posting's id
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the entry the posting is part of
+     *
+     * @return entry - JournalEntry - the entry
+     */
+    public JournalEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * Gets the id of the account the posting is for
+     *
+     * @return accountId - int - the account's id, or EXTERNAL_ACCOUNT
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the id of the transaction the posting is for
+     *
+     * @return transactionId - Integer - the transaction's id, or null
+     */
+    public Integer getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Gets the amount of the posting
+     *
+     * @return amountInCents - long - the amount in cents
+     */
+    public long getAmountInCents() {
+        return amountInCents;
+    }
+}
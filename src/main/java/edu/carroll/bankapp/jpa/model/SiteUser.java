@@ -1,8 +1,14 @@
 package edu.carroll.bankapp.jpa.model;
 
 import edu.carroll.bankapp.Ownable;
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
 import jakarta.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,11 +17,15 @@ import org.slf4j.LoggerFactory;
  */
 @Entity
 @Table(name = "site_user")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "site-user")
 public class SiteUser {
     private static final Logger log = LoggerFactory.getLogger(SiteUser.class);
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "site_user_id")
+    @GenericGenerator(name = "site_user_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "site_user_SEQ"))
     private Integer id;
     @Column(name = "fullName", nullable = false)
     private String fullName;
@@ -78,7 +88,10 @@ public class SiteUser {
             log.warn("Attempt to check ownership on null object for user {}", username);
             return false;
         }
-        return item.getOwner().equals(this);
+        SiteUser owner = item.getOwner();
+        // Compare ids rather than instances, the owner may have been loaded by a
+        // different persistence context
+        return owner != null && id != null && id == owner.getId();
     }
 
     /**
@@ -0,0 +1,81 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * A tag a user puts on transactions, such as vacation or tax-deductible. A
+ * transaction can have any number of tags. Tags never change, a different name
+ * is a different tag.
+ */
+@Entity
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "tag")
+@BatchSize(size = 100)
+@Table(name = "tag", indexes = @Index(name = "tag_owner_name", columnList = "owner_id, name"))
+public class Tag {
+    @Id
+    @GeneratedValue(generator = "tag_id")
+    @GenericGenerator(name = "tag_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "tag_SEQ"))
+    private Integer id;
+
+    @Column(name = "owner_id", nullable = false)
+    private int ownerId;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    /**
+     * Default Constructor
+     */
+    public Tag() {
+    }
+
+    /**
+     * Create a tag
+     *
+     * @param ownerId - the id of the user the tag belongs to
+     * @param name    - the tag's name
+     */
+    public Tag(int ownerId, String name) {
+        this.ownerId = ownerId;
+        this.name = name;
+    }
+
+    /**
+     * Gets the tag's id
+     *
+     * @return id - Integer - the tag's id
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Gets the id of the user the tag belongs to
+     *
+     * @return ownerId - int - the owner's id
+     */
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Gets the tag's name
+     *
+     * @return name - String - the tag's name
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -1,23 +1,46 @@
 package edu.carroll.bankapp.jpa.model;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import edu.carroll.bankapp.Ownable;
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
 import jakarta.persistence.*;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 /**
  * A transaction within the system
  */
 @Entity
-@Table(name = "transaction")
+@Table(name = "transaction", indexes = {
+        @Index(name = "transaction_payee", columnList = "payee_id"),
+        @Index(name = "transaction_category", columnList = "category_id"),
+        // For filtering and sorting an account's transactions
+        @Index(name = "transaction_account_date", columnList = "account_id, date"),
+        @Index(name = "transaction_account_amount", columnList = "account_id, amount") })
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "transaction")
 public class Transaction implements Ownable, Comparable<Transaction> {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "transaction_id")
+    @GenericGenerator(name = "transaction_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "transaction_SEQ"))
     private Integer id;
 
+    // Only used by rows from before the payee dictionary, empty otherwise
     @Column(name = "to_from", nullable = false)
     private String toFrom;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "payee_id")
+    private Payee payee;
+
     @Column(name = "amount")
     private long amountInCents;
 
@@ -31,6 +54,18 @@ public class Transaction implements Ownable, Comparable<Transaction> {
     @Temporal(TemporalType.TIMESTAMP)
     private Date date;
 
+    // For transfers, the id of the transaction on the other side of the transfer
+    @Column(name = "transfer_pair_id")
+    private Integer transferPairId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "category_id")
+    private Category category;
+
+    @OneToMany(mappedBy = "transaction", cascade = CascadeType.REMOVE)
+    @BatchSize(size = 100)
+    private List<TransactionTag> tags = new ArrayList<>();
+
     /**
      * Default Constructor
      */
@@ -68,16 +103,38 @@ public class Transaction implements Ownable, Comparable<Transaction> {
      * @return toFrom - String - who the money came from
      */
     public String getToFrom() {
-        return toFrom;
+        return payee != null ? payee.getName() : toFrom;
     }
 
     /**
-     * Sets the account from which the money was given/taken
+     * Sets the account from which the money was given/taken, stored on the row
+     * itself. Use setPayee to store it in the payee dictionary instead.
      *
      * @param toFrom - String - who the money came from
      */
     public void setToFrom(String toFrom) {
         this.toFrom = toFrom;
+        this.payee = null;
+    }
+
+    /**
+     * Gets the dictionary entry for who the money was given to or taken from
+     *
+     * @return payee - Payee - the payee, or null if it's stored on the row or
+     *         there isn't one
+     */
+    public Payee getPayee() {
+        return payee;
+    }
+
+    /**
+     * Sets who the money was given to or taken from to a dictionary entry
+     *
+     * @param payee - Payee - the payee, or null for none
+     */
+    public void setPayee(Payee payee) {
+        this.payee = payee;
+        this.toFrom = "";
     }
 
     /**
@@ -171,6 +228,65 @@ public class Transaction implements Ownable, Comparable<Transaction> {
         this.date = date;
     }
 
+    /**
+     * Gets the id of the other half of this transfer
+     *
+     * @return transferPairId - Integer - id of the other transaction, null if this
+     *         isn't a transfer
+     */
+    public Integer getTransferPairId() {
+        return transferPairId;
+    }
+
+    /**
+     * Sets the id of the other half of this transfer
+     *
+     * @param transferPairId - Integer - id of the other transaction
+     */
+    public void setTransferPairId(Integer transferPairId) {
+        this.transferPairId = transferPairId;
+    }
+
+    /**
+     * Gets the category the transaction is filed under
+     *
+     * @return category - Category - the category, or null if it isn't in one
+     */
+    public Category getCategory() {
+        return category;
+    }
+
+    /**
+     * Sets the category the transaction is filed under
+     *
+     * @param category - Category - the category, or null for none
+     */
+    public void setCategory(Category category) {
+        this.category = category;
+    }
+
+    /**
+     * Gets the tags on the transaction
+     *
+     * @return tags - List - the transaction's tags
+     */
+    public List<TransactionTag> getTags() {
+        return tags;
+    }
+
+    /**
+     * Gets the names of the tags on the transaction
+     *
+     * @return tag names - List - the names, in the order the tags were added
+     */
+    public List<String> getTagNames() {
+        List<String> names = new ArrayList<>(tags.size());
+        for (TransactionTag tag : tags) {
+            names.add(tag.getTag().getName());
+        }
+        return names;
+    }
+
     /**
      * Comparison method for sorting transactions by creation date
      */
@@ -0,0 +1,77 @@
+package edu.carroll.bankapp.jpa.model;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import edu.carroll.bankapp.jpa.PooledSequenceGenerator;
+
+/**
+ * One tag on one transaction. These are their own rows (rather than a join
+ * table hidden behind the mapping) so they can be deleted in bulk along with
+ * their transactions.
+ */
+@Entity
+@Table(name = "transaction_tag", indexes = {
+        @Index(name = "transaction_tag_transaction", columnList = "transaction_id"),
+        @Index(name = "transaction_tag_tag", columnList = "tag_id") })
+public class TransactionTag {
+    @Id
+    @GeneratedValue(generator = "transaction_tag_id")
+    @GenericGenerator(name = "transaction_tag_id", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = "sequence_name", value = "transaction_tag_SEQ"))
+    private Integer id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "transaction_id")
+    private Transaction transaction;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "tag_id")
+    private Tag tag;
+
+    /**
+     * Default Constructor
+     */
+    public TransactionTag() {
+    }
+
+    /**
+     * Put a tag on a transaction
+     *
+     * @param transaction - the transaction being tagged
+     * @param tag         - the tag
+     */
+    public TransactionTag(Transaction transaction, Tag tag) {
+        this.transaction = transaction;
+        this.tag = tag;
+    }
+
+    /**
+     * Gets the id of the tagging
+     *
+     * @return id - Integer - the id
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Gets the tagged transaction
+     *
+     * @return transaction - Transaction - the transaction
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Gets the tag
+     *
+     * @return tag - Tag - the tag
+     */
+    public Tag getTag() {
+        return tag;
+    }
+}
@@ -4,25 +4,113 @@ import java.util.List;
 
 import edu.carroll.bankapp.jpa.model.Account;
 import edu.carroll.bankapp.jpa.model.SiteUser;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Interface implemented by Hibernate for querying Account information from the database
  */
-public interface AccountRepository extends JpaRepository<Account, Integer> {
+public interface AccountRepository extends JpaRepository<Account, Integer>, AccountRepositoryCustom {
     /**
-     * Return a list of accounts owned by the given siteUser
+     * Return a list of accounts owned by the given siteUser that haven't been
+     * deleted
      *
      * @param siteUser The account owner
      * @return list of accounts owned by the given user
      */
-    List<Account> findByOwner(SiteUser siteUser);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Account> findByOwnerAndDeletedFalse(SiteUser siteUser);
 
     /**
-     * Return a single element list containing the account with the provided id.
+     * Return a single element list containing the account with the provided id,
+     * unless it has been deleted.
      *
      * @param id The account id
      * @return list of accounts with the given id
      */
-    List<Account> findById(int id);
-}
\ No newline at end of file
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Account> findByIdAndDeletedFalse(int id);
+
+    /**
+     * Return every account that has been deleted but not purged yet.
+     *
+     * @return list of deleted accounts
+     */
+    List<Account> findByDeletedTrue();
+
+    /**
+     * Find accounts with a balance that the ledger knows nothing about, such as
+     * ones created before the ledger existed
+     *
+     * @param pageable - how many to return
+     * @return accounts with a balance but no postings
+     */
+    @Query("select a from Account a where a.deleted = false and a.balanceInCents <> 0 "
+            + "and not exists (select p from Posting p where p.accountId = a.id) order by a.id")
+    List<Account> findWithoutPostings(Pageable pageable);
+
+    /**
+     * Add the given amount to an account's balance with a single update
+     * statement, bumping its revision. Pending changes are flushed first. The
+     * persistence context is left as it is, so an Account already loaded keeps
+     * its old balance until it's passed to refreshIfLoaded.
+     *
+     * @param accountId The account to update
+     * @param delta     The amount in cents to add (negative to subtract)
+     * @return the number of accounts updated
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Account a set a.balanceInCents = a.balanceInCents + :delta, a.revision = a.revision + 1 "
+            + "where a.id = :accountId")
+    int addToBalance(@Param("accountId") int accountId, @Param("delta") long delta);
+
+    /**
+     * Bump an account's revision with a single update statement, for changes to
+     * its transactions that leave the balance alone. Pending changes are flushed
+     * first. The persistence context is left as it is, so an Account already
+     * loaded keeps its old revision, and its balance is never written back over
+     * anyone else's.
+     *
+     * @param accountId The account to update
+     * @return the number of accounts updated
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Account a set a.revision = a.revision + 1 where a.id = :accountId")
+    int bumpRevision(@Param("accountId") int accountId);
+
+    /**
+     * Get an account's balance as it is in the database, unless it has been
+     * deleted
+     *
+     * @param accountId The account
+     * @return a single element list holding the balance in cents, or an empty
+     *         list
+     */
+    @Query("select a.balanceInCents from Account a where a.id = :accountId and a.deleted = false")
+    List<Long> findBalanceIfNotDeleted(@Param("accountId") int accountId);
+
+    /**
+     * Get an account's balance and revision as they are in the database, for
+     * bringing an account loaded earlier up to date
+     *
+     * @param accountId The account
+     * @return a single element list holding the balance in cents and the revision
+     */
+    @Query("select a.balanceInCents, a.revision from Account a where a.id = :accountId")
+    List<Object[]> findBalanceAndRevision(@Param("accountId") int accountId);
+
+    /**
+     * Add up the revisions of all accounts that haven't been deleted. Any
+     * change to a transaction changes the total.
+     *
+     * @return the sum of the revisions
+     */
+    @Query("select coalesce(sum(a.revision), 0) from Account a where a.deleted = false")
+    long sumRevisions();
+}
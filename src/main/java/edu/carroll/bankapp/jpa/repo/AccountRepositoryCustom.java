@@ -0,0 +1,27 @@
+package edu.carroll.bankapp.jpa.repo;
+
+/**
+ * Account queries that need the persistence context itself, implemented by
+ * AccountRepositoryCustomImpl
+ */
+public interface AccountRepositoryCustom {
+    /**
+     * Reload an account from the database if it has already been loaded in the
+     * current persistence context, so it picks up changes made by update
+     * statements like addToBalance. Accounts that haven't been loaded are left
+     * alone, they'll be read fresh when they are.
+     *
+     * @param accountId The account to reload
+     */
+    void refreshIfLoaded(int accountId);
+
+    /**
+     * Let go of an account (and its transactions) if it has been loaded in the
+     * current persistence context, for when some of its transactions were
+     * deleted with a set-based statement and can't be reloaded. The account is
+     * read fresh the next time it's looked up.
+     *
+     * @param accountId The account to let go of
+     */
+    void detachIfLoaded(int accountId);
+}
@@ -0,0 +1,45 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Hibernate;
+
+/**
+ * Implementation of AccountRepositoryCustom, picked up by Spring Data and mixed
+ * into AccountRepository
+ */
+public class AccountRepositoryCustomImpl implements AccountRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void refreshIfLoaded(int accountId) {
+        Account account = findLoaded(accountId);
+        if (account != null) {
+            entityManager.refresh(account);
+        }
+    }
+
+    @Override
+    public void detachIfLoaded(int accountId) {
+        Account account = findLoaded(accountId);
+        if (account != null) {
+            entityManager.detach(account);
+        }
+    }
+
+    /**
+     * Find an account in the persistence context without loading it
+     *
+     * @param accountId The account to find
+     * @return the loaded account, or null if it hasn't been loaded
+     */
+    private Account findLoaded(int accountId) {
+        Account account = entityManager.getReference(Account.class, accountId);
+        if (!Hibernate.isInitialized(account) || !entityManager.contains(account)) {
+            return null;
+        }
+        return account;
+    }
+}
@@ -0,0 +1,20 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.BalanceCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying balance checkpoints
+ */
+public interface BalanceCheckpointRepository extends JpaRepository<BalanceCheckpoint, Integer> {
+    /**
+     * Find the checkpoints of the given accounts
+     *
+     * @param accountIds - the accounts to look up
+     * @return checkpoints for the accounts that have one
+     */
+    List<BalanceCheckpoint> findByAccountIdIn(Collection<Integer> accountIds);
+}
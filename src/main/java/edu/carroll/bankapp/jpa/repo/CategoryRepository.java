@@ -0,0 +1,33 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.Category;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying users' categories
+ */
+public interface CategoryRepository extends JpaRepository<Category, Integer> {
+    /**
+     * Find a user's categories with the given name. The database may compare
+     * names without regard to case, so check the names of what's returned.
+     *
+     * @param ownerId - the user
+     * @param name    - the category's name
+     * @return matching categories
+     */
+    List<Category> findByOwnerIdAndName(int ownerId, String name);
+
+    /**
+     * Find all of a user's categories, sorted by name
+     *
+     * @param ownerId - the user
+     * @return the user's categories
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Category> findByOwnerIdOrderByName(int ownerId);
+}
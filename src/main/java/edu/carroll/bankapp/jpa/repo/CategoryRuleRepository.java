@@ -0,0 +1,30 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying users' categorization rules
+ */
+public interface CategoryRuleRepository extends JpaRepository<CategoryRule, Integer> {
+    /**
+     * Find all of a user's rules with their categories, oldest first
+     *
+     * @param ownerId - the user
+     * @return the user's rules
+     */
+    @Query("select r from CategoryRule r join fetch r.category where r.ownerId = :ownerId order by r.id")
+    List<CategoryRule> findByOwnerId(@Param("ownerId") int ownerId);
+
+    /**
+     * Count a user's rules
+     *
+     * @param ownerId - the user
+     * @return the number of rules they have
+     */
+    long countByOwnerId(int ownerId);
+}
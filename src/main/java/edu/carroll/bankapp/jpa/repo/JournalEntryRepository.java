@@ -0,0 +1,10 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Interface implemented by Hibernate for writing and reading ledger entries
+ */
+public interface JournalEntryRepository extends JpaRepository<JournalEntry, Long> {
+}
@@ -0,0 +1,11 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.LogProjection;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Interface implemented by Hibernate for tracking how far each log of postings
+ * has been applied to the database
+ */
+public interface LogProjectionRepository extends JpaRepository<LogProjection, String> {
+}
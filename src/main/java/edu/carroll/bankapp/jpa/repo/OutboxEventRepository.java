@@ -0,0 +1,72 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying the event outbox
+ */
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    /**
+     * Find the oldest events that haven't been dispatched yet
+     *
+     * @param pageable - how many to return
+     * @return undispatched events in id order
+     */
+    List<OutboxEvent> findByDispatchedAtIsNullOrderByIdAsc(Pageable pageable);
+
+    /**
+     * Find events starting from the given id, dispatched or not
+     *
+     * @param id       - the first id to return
+     * @param pageable - how many to return
+     * @return events in id order
+     */
+    List<OutboxEvent> findByIdGreaterThanEqualOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Count the events that haven't been dispatched yet
+     *
+     * @return undispatched events
+     */
+    long countByDispatchedAtIsNull();
+
+    /**
+     * Mark events as dispatched
+     *
+     * @param ids - the events to mark
+     * @param now - when they were dispatched
+     * @return the number of events marked
+     */
+    @Modifying
+    @Query("update OutboxEvent e set e.dispatchedAt = :now where e.id in :ids")
+    int markDispatched(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    /**
+     * Count a failed delivery against each of the given events
+     *
+     * @param ids - the events that failed
+     * @return the number of events updated
+     */
+    @Modifying
+    @Query("update OutboxEvent e set e.attempts = e.attempts + 1 where e.id in :ids")
+    int recordFailedAttempt(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Delete events dispatched before the given time
+     *
+     * @param cutoff - events dispatched before this are deleted
+     * @return the number of events deleted
+     */
+    @Modifying
+    @Query("delete from OutboxEvent e where e.dispatchedAt < :cutoff")
+    int deleteDispatchedBefore(@Param("cutoff") Date cutoff);
+}
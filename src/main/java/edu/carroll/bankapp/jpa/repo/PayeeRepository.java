@@ -0,0 +1,21 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.Payee;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying the payee dictionary
+ */
+public interface PayeeRepository extends JpaRepository<Payee, Integer> {
+    /**
+     * Find a user's payees with the given name. The database may compare names
+     * without regard to case, so check the names of what's returned.
+     *
+     * @param ownerId - the user
+     * @param name    - the payee's name
+     * @return matching payees
+     */
+    List<Payee> findByOwnerIdAndName(int ownerId, String name);
+}
@@ -0,0 +1,10 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.PayeeSketch;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Interface implemented by Hibernate for saving users' top payee summaries
+ */
+public interface PayeeSketchRepository extends JpaRepository<PayeeSketch, Integer> {
+}
@@ -0,0 +1,85 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.Posting;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying ledger postings
+ */
+public interface PostingRepository extends JpaRepository<Posting, Long> {
+    /**
+     * Total the postings to an account after the given posting
+     *
+     * @param accountId - the account to total
+     * @param afterId   - only postings with a higher id are counted
+     * @return the sum in cents
+     */
+    @Query("select coalesce(sum(p.amountInCents), 0) from Posting p where p.accountId = :accountId and p.id > :afterId")
+    long sumAfter(@Param("accountId") int accountId, @Param("afterId") long afterId);
+
+    /**
+     * Total the postings to each of the given accounts made since its checkpoint
+     *
+     * @param accountIds - the accounts to total
+     * @return a list of [account id, sum in cents] pairs, for accounts with
+     *         postings since their checkpoint
+     */
+    @Query("select p.accountId, sum(p.amountInCents) from Posting p where p.accountId in :accountIds "
+            + "and p.id > coalesce((select c.lastPostingId from BalanceCheckpoint c where c.accountId = p.accountId), 0) "
+            + "group by p.accountId")
+    List<Object[]> sumSinceCheckpoint(@Param("accountIds") Collection<Integer> accountIds);
+
+    /**
+     * Find accounts with enough settled postings since their checkpoint to be
+     * worth moving it
+     *
+     * @param settledBefore - only postings in entries made before this are
+     *                      counted
+     * @param minPostings   - how many postings an account needs
+     * @return a list of [account id, highest settled posting id] pairs
+     */
+    @Query("select p.accountId, max(p.id) from Posting p where p.entry.createdAt < :settledBefore "
+            + "and p.id > coalesce((select c.lastPostingId from BalanceCheckpoint c where c.accountId = p.accountId), 0) "
+            + "group by p.accountId having count(p) >= :minPostings")
+    List<Object[]> findCheckpointCandidates(@Param("settledBefore") Date settledBefore,
+            @Param("minPostings") long minPostings);
+
+    /**
+     * Total and count the postings to an account in a range of ids
+     *
+     * @param accountId - the account to total
+     * @param afterId   - the range starts after this id
+     * @param upToId    - the range ends at (and includes) this id
+     * @return a single [sum in cents, number of postings] pair
+     */
+    @Query("select coalesce(sum(p.amountInCents), 0), count(p) from Posting p where p.accountId = :accountId "
+            + "and p.id > :afterId and p.id <= :upToId")
+    List<Object[]> sumBetween(@Param("accountId") int accountId, @Param("afterId") long afterId,
+            @Param("upToId") long upToId);
+
+    /**
+     * Read postings in id order without loading the entities, one page at a time
+     *
+     * @param afterId  - only postings with a higher id are returned
+     * @param pageable - how many to return
+     * @return a list of [posting id, account id, amount in cents] triples
+     */
+    @Query("select p.id, p.accountId, p.amountInCents from Posting p where p.id > :afterId order by p.id")
+    List<Object[]> findAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * Find entries whose postings don't add up to zero
+     *
+     * @return a list of [entry id, sum in cents] pairs
+     */
+    @Query("select p.entry.id, sum(p.amountInCents) from Posting p group by p.entry.id "
+            + "having sum(p.amountInCents) <> 0")
+    List<Object[]> findUnbalancedEntries();
+}
@@ -0,0 +1,33 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.Tag;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying users' tags
+ */
+public interface TagRepository extends JpaRepository<Tag, Integer> {
+    /**
+     * Find a user's tags with the given name. The database may compare names
+     * without regard to case, so check the names of what's returned.
+     *
+     * @param ownerId - the user
+     * @param name    - the tag's name
+     * @return matching tags
+     */
+    List<Tag> findByOwnerIdAndName(int ownerId, String name);
+
+    /**
+     * Find all of a user's tags, sorted by name
+     *
+     * @param ownerId - the user
+     * @return the user's tags
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Tag> findByOwnerIdOrderByName(int ownerId);
+}
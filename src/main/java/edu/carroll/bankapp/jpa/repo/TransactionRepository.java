@@ -1,21 +1,231 @@
 package edu.carroll.bankapp.jpa.repo;
 
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.SiteUser;
 import edu.carroll.bankapp.jpa.model.Transaction;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Interface implemented by Hibernate for querying Transaction information from
- * the database
+ * the database. Filtered views of an account are built as specifications, so
+ * only the conditions in use end up in the SQL.
  */
-public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
+public interface TransactionRepository extends JpaRepository<Transaction, Integer>,
+        JpaSpecificationExecutor<Transaction> {
     /**
      * Find all transactions matching a given id
      * 
      * @param id - the id to lookup
      * @return List of transactions with the matching it
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<Transaction> findById(int id);
 
+    /**
+     * Find the ids of the transactions in the given account, one page at a time.
+     * Only the ids are loaded, so no Transaction objects are created.
+     *
+     * @param accountId - the account to look in
+     * @param pageable  - which ids to return
+     * @return List of transaction ids
+     */
+    @Query("select t.id from Transaction t where t.account.id = :accountId order by t.id")
+    List<Integer> findIdsByAccountId(@Param("accountId") int accountId, Pageable pageable);
+
+    /**
+     * Count how many of the given transactions belong to the given user (in
+     * accounts that haven't been deleted)
+     *
+     * @param ids   - the transaction ids to check
+     * @param owner - the user who should own them
+     * @return the number of owned transactions
+     */
+    @Query("select count(t) from Transaction t where t.id in :ids and t.account.owner = :owner and t.account.deleted = false")
+    long countOwned(@Param("ids") Collection<Integer> ids, @Param("owner") SiteUser owner);
+
+    /**
+     * Find the other halves of any transfers among the given transactions
+     *
+     * @param ids - the transaction ids to look at
+     * @return ids of the paired transactions
+     */
+    @Query("select t.transferPairId from Transaction t where t.id in :ids and t.transferPairId is not null")
+    List<Integer> findTransferPairIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find transfers among the given transactions that were created before
+     * transfers were linked by id, and can only be paired by name
+     *
+     * @param ids - the transaction ids to look at
+     * @return unlinked transfer transactions
+     */
+    @Query("select t from Transaction t where t.id in :ids and t.transferPairId is null "
+            + "and (t.name like 'Transfer to %' or t.name like 'Transfer from %')")
+    List<Transaction> findUnlinkedTransfers(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Total up the given transactions per account
+     *
+     * @param ids - the transaction ids to total
+     * @return a list of [account id, sum of amounts in cents] pairs
+     */
+    @Query("select t.account.id, sum(t.amountInCents) from Transaction t where t.id in :ids group by t.account.id")
+    List<Object[]> sumAmountsByAccount(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find the highest transaction id
+     *
+     * @return the highest id, or 0 if there are no transactions
+     */
+    @Query("select coalesce(max(t.id), 0) from Transaction t")
+    int findMaxId();
+
+    /**
+     * Find what the search index needs for the transactions in accounts that
+     * haven't been deleted, in id order, without loading Transaction objects
+     *
+     * @param afterId  - only transactions with a higher id
+     * @param upToId   - only transactions with this id or lower
+     * @param pageable - how many to return
+     * @return a list of [transaction id, account id, owner id, name, to/from]
+     */
+    @Query("select t.id, t.account.id, t.account.owner.id, t.name, coalesce(p.name, t.toFrom) from Transaction t "
+            + "left join t.payee p "
+            + "where t.id > :afterId and t.id <= :upToId and t.account.deleted = false order by t.id")
+    List<Object[]> findForSearchIndex(@Param("afterId") int afterId, @Param("upToId") int upToId,
+            Pageable pageable);
+
+    /**
+     * Find every payee a user has entered on a transaction, with how often and
+     * when they last used it. Transfers are left out, their payees are accounts.
+     * Transactions from before the payee dictionary are grouped by name.
+     *
+     * @param ownerId - the user
+     * @return a list of [to/from, number of transactions, latest date]
+     */
+    @Query("select coalesce(p.name, t.toFrom), count(t), max(t.date) from Transaction t left join t.payee p "
+            + "where t.account.owner.id = :ownerId and t.account.deleted = false and t.transferPairId is null "
+            + "and (p is not null or t.toFrom <> '') group by p.id, coalesce(p.name, t.toFrom)")
+    List<Object[]> findPayeeUsage(@Param("ownerId") int ownerId);
+
+    /**
+     * Find the payees of a user's transactions after a given one, for counting
+     * top payees. Transfers are left out, their payees are accounts.
+     *
+     * @param ownerId  - the user
+     * @param afterId  - only transactions with a higher id
+     * @param pageable - how many to return
+     * @return a list of [transaction id, to/from, amount in cents], in id order
+     */
+    @Query("select t.id, coalesce(p.name, t.toFrom), t.amountInCents from Transaction t left join t.payee p "
+            + "where t.account.owner.id = :ownerId and t.account.deleted = false and t.transferPairId is null "
+            + "and t.id > :afterId order by t.id")
+    List<Object[]> findForPayeeSketch(@Param("ownerId") int ownerId, @Param("afterId") int afterId,
+            Pageable pageable);
+
+    /**
+     * Find what reports need for a user's transactions in accounts that haven't
+     * been deleted, in id order, without loading Transaction objects
+     *
+     * @param ownerId  - the user
+     * @param afterId  - only transactions with a higher id
+     * @param pageable - how many to return
+     * @return a list of [transaction id, account id, date, amount in cents,
+     *         to/from, transfer pair id or null]
+     */
+    @Query("select t.id, t.account.id, t.date, t.amountInCents, coalesce(p.name, t.toFrom), t.transferPairId "
+            + "from Transaction t left join t.payee p "
+            + "where t.account.owner.id = :ownerId and t.account.deleted = false and t.id > :afterId order by t.id")
+    List<Object[]> findForAnalytics(@Param("ownerId") int ownerId, @Param("afterId") int afterId,
+            Pageable pageable);
+
+    /**
+     * Total up a user's transactions by payee, for counting top payees from
+     * scratch. Transfers are left out, their payees are accounts.
+     *
+     * @param ownerId - the user
+     * @return a list of [to/from, number of transactions, cents spent, highest
+     *         transaction id]
+     */
+    @Query("select coalesce(p.name, t.toFrom), count(t), "
+            + "sum(case when t.amountInCents < 0 then -t.amountInCents else 0 end), max(t.id) "
+            + "from Transaction t left join t.payee p "
+            + "where t.account.owner.id = :ownerId and t.account.deleted = false and t.transferPairId is null "
+            + "and (p is not null or t.toFrom <> '') group by p.id, coalesce(p.name, t.toFrom)")
+    List<Object[]> findPayeeTotals(@Param("ownerId") int ownerId);
+
+    /**
+     * Find what the tag bitmaps need for every transaction in an account, without
+     * loading Transaction objects
+     *
+     * @param accountId - the account to look in
+     * @return a list of [transaction id, date, amount in cents, to/from, category
+     *         id or null], in id order
+     */
+    @Query("select t.id, t.date, t.amountInCents, coalesce(p.name, t.toFrom), c.id from Transaction t "
+            + "left join t.payee p left join t.category c where t.account.id = :accountId order by t.id")
+    List<Object[]> findForTagIndex(@Param("accountId") int accountId);
+
+    /**
+     * Find the amounts of an account's latest transactions, leaving out
+     * transfers. Inserts waiting in the persistence context aren't flushed
+     * first, so this doesn't break up a batch.
+     *
+     * @param accountId - the account to look in
+     * @param pageable  - how many to return
+     * @return amounts in cents, newest first
+     */
+    @Query("select t.amountInCents from Transaction t where t.account.id = :accountId "
+            + "and t.transferPairId is null order by t.id desc")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT"))
+    List<Long> findRecentAmounts(@Param("accountId") int accountId, Pageable pageable);
+
+    /**
+     * Find what categorization rules look at for a user's uncategorized
+     * transactions in accounts that haven't been deleted, in id order, without
+     * loading Transaction objects
+     *
+     * @param ownerId  - the user
+     * @param afterId  - only transactions with a higher id
+     * @param upToId   - only transactions with this id or lower
+     * @param pageable - how many to return
+     * @return a list of [transaction id, account id, name, to/from]
+     */
+    @Query("select t.id, t.account.id, t.name, coalesce(p.name, t.toFrom) from Transaction t left join t.payee p "
+            + "where t.account.owner.id = :ownerId and t.account.deleted = false and t.category is null "
+            + "and t.id > :afterId and t.id <= :upToId order by t.id")
+    List<Object[]> findUncategorized(@Param("ownerId") int ownerId, @Param("afterId") int afterId,
+            @Param("upToId") int upToId, Pageable pageable);
+
+    /**
+     * File transactions that aren't in a category yet under one
+     *
+     * @param category - the category
+     * @param ids      - the transactions
+     * @return the number of transactions filed
+     */
+    @Modifying
+    @Query("update Transaction t set t.category = :category where t.id in :ids and t.category is null")
+    int setCategoryIfNone(@Param("category") Category category, @Param("ids") Collection<Integer> ids);
+
+    /**
+     * Find transactions from before the payee dictionary, which still have their
+     * payee's name on the row, with their accounts
+     *
+     * @param pageable - how many to return
+     * @return transactions without a payee
+     */
+    @Query("select t from Transaction t join fetch t.account where t.payee is null and t.toFrom <> '' order by t.id")
+    List<Transaction> findWithoutPayee(Pageable pageable);
 }
@@ -0,0 +1,35 @@
+package edu.carroll.bankapp.jpa.repo;
+
+import edu.carroll.bankapp.jpa.model.TransactionTag;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface implemented by Hibernate for querying the tags on transactions
+ */
+public interface TransactionTagRepository extends JpaRepository<TransactionTag, Integer> {
+    /**
+     * Find the tags on every transaction in an account, without loading
+     * Transaction objects
+     *
+     * @param accountId - the account to look in
+     * @return a list of [transaction id, tag id] pairs
+     */
+    @Query("select tt.transaction.id, tt.tag.id from TransactionTag tt where tt.transaction.account.id = :accountId")
+    List<Object[]> findTagIdsByAccountId(@Param("accountId") int accountId);
+
+    /**
+     * Remove every tag from the given transactions, so they can be deleted
+     *
+     * @param transactionIds - the transactions
+     * @return the number of tags removed
+     */
+    @Modifying
+    @Query("delete from TransactionTag tt where tt.transaction.id in :transactionIds")
+    int deleteByTransactionIds(@Param("transactionIds") Collection<Integer> transactionIds);
+}
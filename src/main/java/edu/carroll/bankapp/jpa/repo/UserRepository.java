@@ -3,7 +3,10 @@ package edu.carroll.bankapp.jpa.repo;
 import java.util.List;
 
 import edu.carroll.bankapp.jpa.model.SiteUser;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /**
  * Interface implemented by Hibernate for querying SiteUser information from the
@@ -16,6 +19,7 @@ public interface UserRepository extends JpaRepository<SiteUser, Integer> {
      * @param username - The username to look up
      * @return A list of SiteUsers with that name
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<SiteUser> findByUsernameIgnoreCase(String username);
 
     /**
@@ -24,6 +28,7 @@ public interface UserRepository extends JpaRepository<SiteUser, Integer> {
      * @param id - The id of the user to look up
      * @return A list of SiteUsers with that id
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<SiteUser> findById(int id);
 
     /**
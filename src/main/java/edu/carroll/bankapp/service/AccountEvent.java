@@ -0,0 +1,95 @@
+package edu.carroll.bankapp.service;
+
+/**
+ * Something that happened to one of a user's accounts, as read back from the
+ * event outbox
+ */
+public class AccountEvent {
+    /**
+     * The kinds of things that can happen to an account
+     */
+    public enum Type {
+        /** The account was created */
+        CREATED,
+        /** The account's balance or transactions changed */
+        CHANGED,
+        /** The account was deleted */
+        DELETED,
+        /** A transaction much larger than the account's usual ones was added */
+        UNUSUAL_TRANSACTION
+    }
+
+    private final long id;
+    private final Type type;
+    private final int userId;
+    private final int accountId;
+    private final long createdAt;
+
+    /**
+     * Create an event
+     *
+     * @param id        - the event's position in the outbox
+     * @param type      - what happened
+     * @param userId    - the owner of the account
+     * @param accountId - the account it happened to
+     * @param createdAt - when it happened, in milliseconds since the epoch
+     */
+    public AccountEvent(long id, Type type, int userId, int accountId, long createdAt) {
+        this.id = id;
+        this.type = type;
+        this.userId = userId;
+        this.accountId = accountId;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Gets the event's id. Events are delivered in id order, and an event may be
+     * delivered more than once, so listeners can use this to skip repeats.
+     *
+     * @return id - long - the event's id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets what happened
+     *
+     * @return type - the kind of event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the id of the account's owner
+     *
+     * @return userId - int - the owner's id
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * Gets the id of the account
+     *
+     * @return accountId - int - the account's id
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets when the event happened
+     *
+     * @return createdAt - long - milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "event " + id + ": " + type + " account " + accountId + " of user " + userId;
+    }
+}
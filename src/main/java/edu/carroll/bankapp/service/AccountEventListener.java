@@ -0,0 +1,18 @@
+package edu.carroll.bankapp.service;
+
+/**
+ * Something that wants to hear about changes to accounts. Listeners are called
+ * by OutboxDispatcher, one event at a time and in order, so they shouldn't
+ * block for long.
+ *
+ * Delivery is at least once: if any listener throws, the event is delivered
+ * to every listener again later, so listeners must cope with repeats.
+ */
+public interface AccountEventListener {
+    /**
+     * Called after a change to an account has been committed
+     *
+     * @param event - what happened
+     */
+    void onAccountEvent(AccountEvent event);
+}
@@ -0,0 +1,70 @@
+package edu.carroll.bankapp.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.carroll.bankapp.jpa.model.OutboxEvent;
+import edu.carroll.bankapp.jpa.repo.OutboxEventRepository;
+import jakarta.transaction.Transactional;
+
+/**
+ * Records account events in the outbox as part of the database transaction
+ * making the change. OutboxDispatcher hands them to the listeners once they're
+ * committed.
+ */
+@Component
+public class AccountEventPublisher {
+    private final OutboxEventRepository outboxRepo;
+    private final OutboxDispatcher dispatcher;
+
+    /**
+     * Inject dependencies
+     *
+     * @param outboxRepo - where events are written
+     * @param dispatcher - woken up when new events are committed
+     */
+    public AccountEventPublisher(OutboxEventRepository outboxRepo, OutboxDispatcher dispatcher) {
+        this.outboxRepo = outboxRepo;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Record an event. Must be called inside the database transaction making
+     * the change. An account that changes several times in one transaction only
+     * gets one CHANGED event, since listeners only care about its latest state.
+     *
+     * @param type      - what happened
+     * @param userId    - the owner of the account
+     * @param accountId - the account it happened to
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void publish(AccountEvent.Type type, int userId, int accountId) {
+        Set<String> published = publishedInTransaction();
+        if (!published.add(type + ":" + accountId) && type == AccountEvent.Type.CHANGED) {
+            return;
+        }
+        outboxRepo.save(new OutboxEvent(type.name(), userId, accountId));
+    }
+
+    /**
+     * Get the events already published in the current database transaction,
+     * setting things up the first time it publishes one
+     *
+     * @return event keys
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> publishedInTransaction() {
+        Set<String> published = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (published == null) {
+            Set<String> keys = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, keys);
+            AfterCommit.run(dispatcher::wakeUp);
+            AfterCommit.whenComplete(committed -> TransactionSynchronizationManager.unbindResourceIfPossible(this));
+            published = keys;
+        }
+        return published;
+    }
+}
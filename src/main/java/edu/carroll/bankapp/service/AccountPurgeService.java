@@ -0,0 +1,36 @@
+package edu.carroll.bankapp.service;
+
+/**
+ * Interface for removing deleted accounts and their transactions from the
+ * database.
+ */
+public interface AccountPurgeService {
+    /**
+     * Purge every account that has been marked as deleted, removing its
+     * transactions in bounded chunks before removing the account itself.
+     *
+     * @return the number of accounts fully purged
+     */
+    int purgeDeletedAccounts();
+
+    /**
+     * The number of transactions removed since the application started
+     *
+     * @return purged transaction count
+     */
+    long getPurgedTransactionCount();
+
+    /**
+     * The number of accounts removed since the application started
+     *
+     * @return purged account count
+     */
+    long getPurgedAccountCount();
+
+    /**
+     * The number of deleted accounts still waiting to be purged as of the last run
+     *
+     * @return pending account count
+     */
+    long getPendingAccountCount();
+}
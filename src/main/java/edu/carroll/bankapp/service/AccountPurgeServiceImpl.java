@@ -0,0 +1,122 @@
+package edu.carroll.bankapp.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionTagRepository;
+
+/**
+ * Background job that removes deleted accounts. Every chunk is deleted in its
+ * own database transaction, and the only state is the account's deleted flag,
+ * so an interrupted purge simply picks up where it left off on the next run
+ * (including after a restart).
+ */
+@Service
+public class AccountPurgeServiceImpl implements AccountPurgeService {
+    private static final Logger log = LoggerFactory.getLogger(AccountPurgeServiceImpl.class);
+
+    private final AccountRepository accountRepo;
+    private final TransactionRepository transactionRepo;
+    private final TransactionTagRepository transactionTagRepo;
+    private final int chunkSize;
+
+    // Progress metrics
+    private final AtomicLong purgedTransactions = new AtomicLong();
+    private final AtomicLong purgedAccounts = new AtomicLong();
+    private final AtomicLong pendingAccounts = new AtomicLong();
+
+    /**
+     * Inject dependencies
+     *
+     * @param accountRepo     - JPA repo for querying accounts
+     * @param transactionRepo    - JPA repo for querying transactions
+     * @param transactionTagRepo - JPA repo for the tags on transactions
+     * @param chunkSize          - the maximum number of transactions to delete at
+     *                           once
+     */
+    public AccountPurgeServiceImpl(AccountRepository accountRepo, TransactionRepository transactionRepo,
+            TransactionTagRepository transactionTagRepo, @Value("${bankapp.purge.chunk-size:500}") int chunkSize) {
+        this.accountRepo = accountRepo;
+        this.transactionRepo = transactionRepo;
+        this.transactionTagRepo = transactionTagRepo;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Periodically purge deleted accounts
+     */
+    @Scheduled(initialDelayString = "${bankapp.purge.initial-delay-ms:10000}", fixedDelayString = "${bankapp.purge.interval-ms:30000}")
+    public void scheduledPurge() {
+        try {
+            purgeDeletedAccounts();
+        } catch (RuntimeException e) {
+            // Anything left over will be retried on the next run
+            log.error("Account purge failed", e);
+        }
+    }
+
+    /**
+     * Purge every account that has been marked as deleted
+     */
+    public int purgeDeletedAccounts() {
+        List<Account> deletedAccounts = accountRepo.findByDeletedTrue();
+        pendingAccounts.set(deletedAccounts.size());
+        if (deletedAccounts.isEmpty()) {
+            return 0;
+        }
+        log.info("Purging {} deleted accounts", deletedAccounts.size());
+
+        int purged = 0;
+        for (Account account : deletedAccounts) {
+            purgeAccount(account.getId());
+            pendingAccounts.decrementAndGet();
+            purged++;
+        }
+        return purged;
+    }
+
+    /**
+     * Delete the transactions in an account chunk by chunk, then the account
+     *
+     * @param accountId - the id of the account to purge
+     */
+    private void purgeAccount(int accountId) {
+        long removed = 0;
+        List<Integer> chunk = transactionRepo.findIdsByAccountId(accountId, PageRequest.of(0, chunkSize));
+        while (!chunk.isEmpty()) {
+            // One "delete ... where id in (...)" per chunk, without loading the entities
+            transactionTagRepo.deleteByTransactionIds(chunk);
+            transactionRepo.deleteAllByIdInBatch(chunk);
+            removed += chunk.size();
+            purgedTransactions.addAndGet(chunk.size());
+            log.debug("Purged {} transactions from account {}", removed, accountId);
+            chunk = transactionRepo.findIdsByAccountId(accountId, PageRequest.of(0, chunkSize));
+        }
+        // The account has no transactions left, so there's nothing to cascade
+        accountRepo.deleteAllByIdInBatch(List.of(accountId));
+        purgedAccounts.incrementAndGet();
+        log.info("Purged account {} and {} transactions", accountId, removed);
+    }
+
+    public long getPurgedTransactionCount() {
+        return purgedTransactions.get();
+    }
+
+    public long getPurgedAccountCount() {
+        return purgedAccounts.get();
+    }
+
+    public long getPendingAccountCount() {
+        return pendingAccounts.get();
+    }
+}
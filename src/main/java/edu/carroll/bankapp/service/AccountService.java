@@ -18,6 +18,25 @@ public interface AccountService {
      */
     List<Account> getUserAccounts(SiteUser user);
 
+    /**
+     * Returns summaries (id, name, balance) of the accounts owned by the given
+     * user. These are cached, so prefer this over getUserAccounts when the full
+     * accounts aren't needed.
+     *
+     * @param user the user to get accounts for
+     * @return list of account summaries
+     */
+    List<AccountSummary> getUserAccountSummaries(SiteUser user);
+
+    /**
+     * Gets an account's current balance, from the posting engine if it has the
+     * account.
+     *
+     * @param account the account
+     * @return the balance in cents
+     */
+    long getBalanceInCents(Account account);
+
     /**
      * Returns the Account matching the given id, if the account is owned by the
      * currently logged-in user.
@@ -3,6 +3,7 @@ package edu.carroll.bankapp.service;
 import edu.carroll.bankapp.jpa.model.Account;
 import edu.carroll.bankapp.jpa.model.SiteUser;
 import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import jakarta.transaction.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,16 +21,37 @@ public class AccountServiceImpl implements AccountService {
 
     private final AccountRepository accountRepo;
     private final TransactionService transactionService;
+    private final AccountSummaryCache accountSummaryCache;
+    private final AccountEventPublisher accountEvents;
+    private final TransactionSearchIndex searchIndex;
+    private final TagBitmapIndex tagIndex;
+    private final TransactionAnalytics analytics;
+    private final EngineAccounts engineAccounts;
 
     /**
      * Default constructor
      *
-     * @param accountRepo        - account database repo
-     * @param transactionService - for creating starting transactions
+     * @param accountRepo         - account database repo
+     * @param transactionService  - for creating starting transactions
+     * @param accountSummaryCache - cache of each user's accounts
+     * @param accountEvents       - for announcing new and deleted accounts
+     * @param searchIndex         - index of transaction names and recipients
+     * @param tagIndex            - bitmaps of each account's categories and tags
+     * @param analytics           - each user's transactions in columns for reports
+     * @param engineAccounts      - the posting engine, when it's turned on
      */
-    public AccountServiceImpl(AccountRepository accountRepo, TransactionService transactionService) {
+    public AccountServiceImpl(AccountRepository accountRepo, TransactionService transactionService,
+            AccountSummaryCache accountSummaryCache, AccountEventPublisher accountEvents,
+            TransactionSearchIndex searchIndex, TagBitmapIndex tagIndex, TransactionAnalytics analytics,
+            EngineAccounts engineAccounts) {
         this.accountRepo = accountRepo;
         this.transactionService = transactionService;
+        this.accountSummaryCache = accountSummaryCache;
+        this.accountEvents = accountEvents;
+        this.searchIndex = searchIndex;
+        this.tagIndex = tagIndex;
+        this.analytics = analytics;
+        this.engineAccounts = engineAccounts;
     }
 
     /**
@@ -42,7 +64,38 @@ public class AccountServiceImpl implements AccountService {
         if (user == null) {
             return new ArrayList<>();
         }
-        return accountRepo.findByOwner(user);
+        return accountRepo.findByOwnerAndDeletedFalse(user);
+    }
+
+    /**
+     * Returns summaries of the accounts owned by the given user, from the cache
+     * if possible. Balances the posting engine has are taken from it.
+     *
+     * @param user the user to get accounts for
+     * @return list of account summaries
+     */
+    public List<AccountSummary> getUserAccountSummaries(SiteUser user) {
+        if (user == null) {
+            return new ArrayList<>();
+        }
+        return engineAccounts.withBalances(accountSummaryCache.getAccounts(user.getId(), () -> {
+            List<AccountSummary> summaries = new ArrayList<>();
+            for (Account account : accountRepo.findByOwnerAndDeletedFalse(user)) {
+                summaries.add(new AccountSummary(account));
+            }
+            return summaries;
+        }));
+    }
+
+    /**
+     * Gets an account's current balance, from the posting engine if it has the
+     * account
+     *
+     * @param account the account
+     * @return the balance in cents
+     */
+    public long getBalanceInCents(Account account) {
+        return engineAccounts.getBalanceInCents(account);
     }
 
     /**
@@ -54,7 +107,7 @@ public class AccountServiceImpl implements AccountService {
      * @return account/null
      */
     public Account getUserAccount(SiteUser loggedInUser, int id) {
-        List<Account> accounts = accountRepo.findById(id);
+        List<Account> accounts = accountRepo.findByIdAndDeletedFalse(id);
         // Check if account exists
         if (accounts == null || accounts.isEmpty()) {
             log.info("Account with id {} doesn't exist", id);
@@ -76,8 +129,11 @@ public class AccountServiceImpl implements AccountService {
     }
 
     /**
-     * Create an account and save it in the database
+     * Create an account and save it in the database. The account and its
+     * starting balance transaction are written together when the database
+     * transaction commits.
      */
+    @Transactional
     public ServiceResponse<Account> createAccount(String accountName, Long balanceInDollars, SiteUser owner) {
         // Don't accept negative starting balance
         if (balanceInDollars < 0) {
@@ -88,9 +144,9 @@ public class AccountServiceImpl implements AccountService {
             return new ServiceResponse<Account>(null, "Account name too long");
         }
 
-        List<Account> ownerAccounts = getUserAccounts(owner);
+        List<AccountSummary> ownerAccounts = getUserAccountSummaries(owner);
         // Prevent user from creating two accounts with the same name
-        for (Account account : ownerAccounts) {
+        for (AccountSummary account : ownerAccounts) {
             if (account.getName().equals(accountName)) {
                 log.info("{} tried to create two accounts named {}", owner.getUsername(), accountName);
                 return new ServiceResponse<Account>(null, "You already have an account named " + accountName);
@@ -105,22 +161,38 @@ public class AccountServiceImpl implements AccountService {
         // Set the balance in a transaction instead of just starting with money
         newAccount.setBalanceInCents(0);
         accountRepo.save(newAccount);
+        // Add it to the owner's cached accounts once it's committed. The starting
+        // balance transaction updates the balance from there.
+        accountSummaryCache.update(owner.getId()).putAccount(new AccountSummary(newAccount));
+        accountEvents.publish(AccountEvent.Type.CREATED, owner.getId(), newAccount.getId());
 
-        transactionService.createTransaction("Starting Balance", balanceInDollars, "", newAccount);
+        transactionService.createStartingTransaction(balanceInDollars, newAccount);
         return new ServiceResponse<Account>(newAccount, "Account created successfully");
     }
 
     /**
-     * Delete the given account
+     * Delete the given account. The account is hidden immediately, and its
+     * transactions are removed later by AccountPurgeService so the user doesn't
+     * have to wait for them.
      *
      * @param loggedInUser - for ownership check
      * @param account      - the account to be deleted
      * @return true if successful, false if failed
      */
+    @Transactional
     public ServiceResponse<Boolean> deleteAccount(SiteUser loggedInUser, Account account) {
-        // Make sure the user can delete this account, then delete it
+        // Make sure the user can delete this account, then hide it
         if (loggedInUser.owns(account)) {
-            accountRepo.delete(account);
+            // Nothing more can be posted to it through the engine
+            engineAccounts.releaseUntilCommit(account);
+            accountSummaryCache.update(loggedInUser.getId()).removeAccount(account.getId());
+            accountEvents.publish(AccountEvent.Type.DELETED, loggedInUser.getId(), account.getId());
+            searchIndex.accountRemoved(loggedInUser.getId(), account.getId());
+            tagIndex.accountRemoved(account.getId());
+            analytics.accountRemoved(loggedInUser.getId(), account.getId());
+            account.setDeleted(true);
+            accountRepo.save(account);
+            log.info("Marked account {} as deleted for user {}", account.getId(), loggedInUser.getUsername());
             return new ServiceResponse<Boolean>(true, "Deleted account");
         }
         return new ServiceResponse<Boolean>(false, "Failed to delete account");
@@ -133,6 +205,7 @@ public class AccountServiceImpl implements AccountService {
      * @param accountID    - the id of the account to be deleted
      * @return true if successful, false if failed
      */
+    @Transactional
     public ServiceResponse<Boolean> deleteAccount(SiteUser loggedInUser, int accountID) {
         // Look up the account
         Account account = getUserAccount(loggedInUser, accountID);
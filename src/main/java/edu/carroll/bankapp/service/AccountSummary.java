@@ -0,0 +1,105 @@
+package edu.carroll.bankapp.service;
+
+import edu.carroll.bankapp.jpa.model.Account;
+
+/**
+ * A lightweight, immutable view of an account (id, name, balance and revision)
+ * for places like the navbar that don't need the whole Account
+ */
+public class AccountSummary {
+    private final int id;
+    private final String name;
+    private final long balanceInCents;
+    private final long revision;
+
+    /**
+     * Create a summary
+     *
+     * @param id             - the id of the account
+     * @param name           - the name of the account
+     * @param balanceInCents - the balance of the account in cents
+     * @param revision       - the revision of the account
+     */
+    public AccountSummary(int id, String name, long balanceInCents, long revision) {
+        this.id = id;
+        this.name = name;
+        this.balanceInCents = balanceInCents;
+        this.revision = revision;
+    }
+
+    /**
+     * Create a summary of the given account
+     *
+     * @param account - the account to summarize
+     */
+    public AccountSummary(Account account) {
+        this(account.getId(), account.getName(), account.getBalanceInCents(), account.getRevision());
+    }
+
+    /**
+     * Gets the ID of the account
+     *
+     * @return id - int - the id of the account
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the name of the account
+     *
+     * @return name - String - the name of the account
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the account balance in cents
+     *
+     * @return balanceInCents - long - the account balance in cents
+     */
+    public long getBalanceInCents() {
+        return balanceInCents;
+    }
+
+    /**
+     * Returns the account balance in dollars
+     *
+     * @return long - account balance in dollars
+     */
+    public long getBalanceInDollars() {
+        return balanceInCents / 100;
+    }
+
+    /**
+     * Gets the revision of the account, which goes up every time its balance or
+     * transactions change
+     *
+     * @return revision - long - the account's revision
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Create a copy of this summary with the balance changed by the given amount
+     * and the next revision, matching Account.addBalanceInCents
+     *
+     * @param delta - the amount in cents to add
+     * @return the updated summary
+     */
+    public AccountSummary withBalanceChange(long delta) {
+        return new AccountSummary(id, name, balanceInCents + delta, revision + 1);
+    }
+
+    /**
+     * Create a copy of this summary with the next revision, matching
+     * AccountRepository.bumpRevision
+     *
+     * @return the updated summary
+     */
+    public AccountSummary withNextRevision() {
+        return new AccountSummary(id, name, balanceInCents, revision + 1);
+    }
+}
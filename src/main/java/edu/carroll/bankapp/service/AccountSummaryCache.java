@@ -0,0 +1,291 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of each user's account summaries (id, name, balance), kept up to date
+ * incrementally as accounts are created and deleted and balances change.
+ *
+ * Writers announce an update before changing the database and apply it once
+ * their database transaction commits. A list loaded from the database is only
+ * cached if no update for that user was in progress while it was loaded, so
+ * a change can never be missed or applied twice.
+ */
+@Component
+public class AccountSummaryCache {
+    private static final Logger log = LoggerFactory.getLogger(AccountSummaryCache.class);
+
+    private final ConcurrentHashMap<Integer, UserState> users = new ConcurrentHashMap<>();
+    // User ids from least to most recently used. Guarded by its own monitor,
+    // which is always taken before a user's.
+    private final LinkedHashMap<Integer, Boolean> recentUsers = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxUsers;
+
+    /**
+     * Create a cache
+     *
+     * @param maxUsers - the number of users to keep account summaries for
+     */
+    public AccountSummaryCache(@Value("${bankapp.account-cache.max-users:10000}") int maxUsers) {
+        this.maxUsers = maxUsers;
+    }
+
+    /**
+     * Per-user cache state. Guarded by its own monitor.
+     */
+    private static class UserState {
+        // Accounts by id, null if not loaded
+        private TreeMap<Integer, AccountSummary> accounts;
+        // Bumped every time an update starts or finishes
+        private long generation;
+        // Updates that have started but not finished
+        private int pending;
+        private boolean removed;
+    }
+
+    /**
+     * Get the given user's account summaries, loading them with the given loader
+     * if they aren't cached
+     *
+     * @param userId - the user whose accounts to get
+     * @param loader - loads the user's accounts from the database
+     * @return the user's account summaries, ordered by id
+     */
+    public List<AccountSummary> getAccounts(int userId, Supplier<List<AccountSummary>> loader) {
+        long generation;
+        UserState state = lockedState(userId, s -> {
+        });
+        synchronized (state) {
+            if (state.accounts != null) {
+                return Collections.unmodifiableList(new ArrayList<>(state.accounts.values()));
+            }
+            generation = state.generation;
+        }
+
+        TreeMap<Integer, AccountSummary> loaded = new TreeMap<>();
+        for (AccountSummary summary : loader.get()) {
+            loaded.put(summary.getId(), summary);
+        }
+
+        synchronized (state) {
+            // Only cache what we loaded if nothing changed while we were loading it
+            if (!state.removed && state.accounts == null && state.pending == 0 && state.generation == generation) {
+                state.accounts = new TreeMap<>(loaded);
+            }
+        }
+        evictIfFull(userId);
+        return Collections.unmodifiableList(new ArrayList<>(loaded.values()));
+    }
+
+    /**
+     * Start an update to the given user's accounts. Call this inside the
+     * database transaction making the change (before it commits). The recorded
+     * changes are applied when the transaction commits and dropped if it rolls
+     * back. Outside of a transaction, the user's accounts are simply reloaded
+     * next time.
+     *
+     * @param userId - the user whose accounts are changing
+     * @return an update to record the changes on
+     */
+    public PendingUpdate update(int userId) {
+        PendingUpdate update = begin(userId);
+        if (!AfterCommit.whenComplete(update::complete)) {
+            update.invalidate();
+        }
+        return update;
+    }
+
+    /**
+     * Start an update without tying it to a database transaction. The caller
+     * must call complete (or invalidate) on it.
+     *
+     * @param userId - the user whose accounts are changing
+     * @return an update to record the changes on
+     */
+    public PendingUpdate begin(int userId) {
+        UserState state = lockedState(userId, s -> {
+            s.pending++;
+            s.generation++;
+        });
+        return new PendingUpdate(state);
+    }
+
+    /**
+     * Forget everything cached for the given user
+     *
+     * @param userId - the user to forget
+     */
+    public void evict(int userId) {
+        UserState state = users.get(userId);
+        if (state != null) {
+            synchronized (state) {
+                state.accounts = null;
+                state.generation++;
+            }
+        }
+    }
+
+    /**
+     * Get the state for a user and run the given action on it while holding its
+     * lock, retrying if the state is evicted in the meantime
+     */
+    private UserState lockedState(int userId, Consumer<UserState> action) {
+        while (true) {
+            UserState state = users.computeIfAbsent(userId, id -> new UserState());
+            synchronized (state) {
+                if (state.removed) {
+                    continue;
+                }
+                action.accept(state);
+            }
+            // Outside the user's lock, recentUsers' is taken first
+            synchronized (recentUsers) {
+                recentUsers.put(userId, Boolean.TRUE);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Drop the least recently used users once there are too many cached
+     */
+    private void evictIfFull(int currentUserId) {
+        if (users.size() <= maxUsers) {
+            return;
+        }
+        synchronized (recentUsers) {
+            Iterator<Map.Entry<Integer, Boolean>> iterator = recentUsers.entrySet().iterator();
+            while (users.size() > maxUsers && iterator.hasNext()) {
+                int userId = iterator.next().getKey();
+                if (userId == currentUserId) {
+                    continue;
+                }
+                UserState state = users.get(userId);
+                if (state == null) {
+                    iterator.remove();
+                    continue;
+                }
+                synchronized (state) {
+                    // Users with updates in progress have to keep their state
+                    if (state.pending == 0) {
+                        state.removed = true;
+                        users.remove(userId, state);
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        log.debug("Account summary cache trimmed to {} users", users.size());
+    }
+
+    /**
+     * Changes to one user's accounts, applied once they're committed
+     */
+    public static class PendingUpdate {
+        private final UserState state;
+        private final List<Consumer<TreeMap<Integer, AccountSummary>>> changes = new ArrayList<>();
+        private boolean completed;
+
+        private PendingUpdate(UserState state) {
+            this.state = state;
+        }
+
+        /**
+         * Record a change in an account's balance
+         *
+         * @param accountId - the account whose balance changed
+         * @param delta     - the change in cents
+         * @return this update
+         */
+        public PendingUpdate adjustBalance(int accountId, long delta) {
+            changes.add(accounts -> accounts.computeIfPresent(accountId, (id, summary) -> summary
+                    .withBalanceChange(delta)));
+            return this;
+        }
+
+        /**
+         * Record a change in an account's transactions that left its balance
+         * alone
+         *
+         * @param accountId - the account whose revision was bumped
+         * @return this update
+         */
+        public PendingUpdate bumpRevision(int accountId) {
+            changes.add(accounts -> accounts.computeIfPresent(accountId, (id, summary) -> summary
+                    .withNextRevision()));
+            return this;
+        }
+
+        /**
+         * Record a new (or renamed) account
+         *
+         * @param summary - the account's summary
+         * @return this update
+         */
+        public PendingUpdate putAccount(AccountSummary summary) {
+            changes.add(accounts -> accounts.put(summary.getId(), summary));
+            return this;
+        }
+
+        /**
+         * Record a deleted account
+         *
+         * @param accountId - the id of the deleted account
+         * @return this update
+         */
+        public PendingUpdate removeAccount(int accountId) {
+            changes.add(accounts -> accounts.remove(accountId));
+            return this;
+        }
+
+        /**
+         * Finish the update, applying the recorded changes if they were committed
+         *
+         * @param committed - whether the changes made it into the database
+         */
+        public void complete(boolean committed) {
+            synchronized (state) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                if (committed && state.accounts != null) {
+                    for (Consumer<TreeMap<Integer, AccountSummary>> change : changes) {
+                        change.accept(state.accounts);
+                    }
+                }
+                state.generation++;
+                state.pending--;
+            }
+        }
+
+        /**
+         * Finish the update by forgetting the user's cached accounts
+         */
+        public void invalidate() {
+            synchronized (state) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                state.accounts = null;
+                state.generation++;
+                state.pending--;
+            }
+        }
+    }
+}
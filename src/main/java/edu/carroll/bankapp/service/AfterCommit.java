@@ -0,0 +1,56 @@
+package edu.carroll.bankapp.service;
+
+import java.util.function.Consumer;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Ties in-memory changes to the database transaction that makes them, so
+ * caches and indexes only ever see committed changes
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Run the given change once the current database transaction commits, or
+     * right away if there isn't one. Nothing is run if it rolls back.
+     *
+     * @param change - the change to make
+     */
+    public static void run(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    /**
+     * Run the given callback once the current database transaction finishes,
+     * whether it commits or rolls back
+     *
+     * @param completion - given true if the transaction committed
+     * @return true if the callback was registered, false if there's no database
+     *         transaction (and the callback won't be run)
+     */
+    public static boolean whenComplete(Consumer<Boolean> completion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                completion.accept(status == STATUS_COMMITTED);
+            }
+        });
+        return true;
+    }
+}
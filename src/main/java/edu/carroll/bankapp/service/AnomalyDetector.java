@@ -0,0 +1,375 @@
+package edu.carroll.bankapp.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Notices transactions that are much larger than an account usually sees.
+ *
+ * Every account keeps running statistics of the sizes of its transactions,
+ * money in and money out separately: an exponentially weighted mean and
+ * variance, so they follow the account as its habits change, and a streaming
+ * estimate of the bankapp.anomaly.quantile quantile. Sizes are compared on a
+ * log scale, since a few large payments are normal next to many small ones.
+ * A transaction is unusual when it's more than bankapp.anomaly.threshold
+ * standard deviations above the mean and above the quantile, once the account
+ * has seen bankapp.anomaly.warm-up transactions.
+ *
+ * Each account's statistics take the same few dozen numbers no matter how many
+ * transactions it has, so checking a transaction is a handful of arithmetic.
+ * They're started from the account's latest transactions the first time it's
+ * seen, in the background once the database transaction that saw it is over,
+ * so a new transaction never waits on the query. Until they're started the
+ * account's transactions aren't checked, and aren't added either, since the
+ * query picks up the committed ones (one committing while the query runs can
+ * be missed, which the running statistics barely notice). Transfers between a user's own accounts
+ * aren't looked at, and deleted transactions aren't taken back out.
+ */
+@Component
+public class AnomalyDetector {
+    private static final Logger log = LoggerFactory.getLogger(AnomalyDetector.class);
+
+    // How much each new transaction moves the mean and variance
+    private static final double ALPHA = 0.05;
+    // Ignore variation smaller than this (about 30%), so an account that always
+    // sees the same amount doesn't flag a slightly larger one
+    private static final double MIN_DEVIATION = 0.25;
+    // Transactions looked at to start an account's statistics
+    private static final int HISTORY = 200;
+
+    private final TransactionRepository transactionRepo;
+    private final AccountEventPublisher accountEvents;
+    private final double quantile;
+    private final double threshold;
+    private final int warmUp;
+    private final int maxAccounts;
+
+    // Least recently used first, guarded by itself
+    private final LinkedHashMap<Integer, AccountStats> accounts = new LinkedHashMap<>(16, 0.75f, true);
+    // Starts accounts' statistics, one at a time
+    private final ExecutorService starter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "anomaly-detector-start");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A transaction that's much larger than usual for its account
+     */
+    public static class Anomaly {
+        private final int accountId;
+        private final long amountInCents;
+        private final long typicalInCents;
+        private final long usualMaxInCents;
+        private final double deviations;
+
+        private Anomaly(int accountId, long amountInCents, long typicalInCents, long usualMaxInCents,
+                double deviations) {
+            this.accountId = accountId;
+            this.amountInCents = amountInCents;
+            this.typicalInCents = typicalInCents;
+            this.usualMaxInCents = usualMaxInCents;
+            this.deviations = deviations;
+        }
+
+        public int getAccountId() {
+            return accountId;
+        }
+
+        public long getAmountInCents() {
+            return amountInCents;
+        }
+
+        /**
+         * Gets the size of a typical transaction in the same direction
+         *
+         * @return the typical size in cents, always positive
+         */
+        public long getTypicalInCents() {
+            return typicalInCents;
+        }
+
+        /**
+         * Gets the size the account's transactions in the same direction are
+         * usually under
+         *
+         * @return the estimated quantile in cents, always positive
+         */
+        public long getUsualMaxInCents() {
+            return usualMaxInCents;
+        }
+
+        /**
+         * Gets how many standard deviations above the mean the transaction is,
+         * on a log scale
+         *
+         * @return the score
+         */
+        public double getDeviations() {
+            return deviations;
+        }
+    }
+
+    /**
+     * Running statistics of the sizes of transactions in one direction
+     */
+    private static class SizeStats {
+        private final StreamingQuantile quantile;
+        private long count;
+        private double mean;
+        private double variance;
+
+        private SizeStats(double quantile) {
+            this.quantile = new StreamingQuantile(quantile);
+        }
+
+        private void add(double size) {
+            if (count++ == 0) {
+                mean = size;
+            } else {
+                double difference = size - mean;
+                double increment = ALPHA * difference;
+                mean += increment;
+                variance = (1 - ALPHA) * (variance + difference * increment);
+            }
+            quantile.add(size);
+        }
+    }
+
+    /**
+     * One account's statistics
+     */
+    private static class AccountStats {
+        private final SizeStats in;
+        private final SizeStats out;
+        // Whether the history has been asked for, and whether it's been added
+        private boolean starting;
+        private boolean started;
+
+        private AccountStats(double quantile) {
+            this.in = new SizeStats(quantile);
+            this.out = new SizeStats(quantile);
+        }
+
+        private SizeStats direction(long amountInCents) {
+            return amountInCents < 0 ? out : in;
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionRepo - JPA repo for starting accounts' statistics
+     * @param accountEvents   - for announcing unusual transactions
+     * @param quantile        - the quantile a transaction must be above to be
+     *                        unusual
+     * @param threshold       - how many standard deviations above the mean a
+     *                        transaction must be to be unusual
+     * @param warmUp          - transactions an account must have seen before any
+     *                        are unusual
+     * @param maxAccounts     - the most accounts to keep statistics for
+     */
+    public AnomalyDetector(TransactionRepository transactionRepo, AccountEventPublisher accountEvents,
+            @Value("${bankapp.anomaly.quantile:0.99}") double quantile,
+            @Value("${bankapp.anomaly.threshold:3.0}") double threshold,
+            @Value("${bankapp.anomaly.warm-up:20}") int warmUp,
+            @Value("${bankapp.anomaly.max-accounts:100000}") int maxAccounts) {
+        this.transactionRepo = transactionRepo;
+        this.accountEvents = accountEvents;
+        this.quantile = quantile;
+        this.threshold = threshold;
+        this.warmUp = warmUp;
+        this.maxAccounts = maxAccounts;
+    }
+
+    /**
+     * Check a new transaction against its account's statistics, and add it to
+     * them once the database transaction creating it commits, so one that rolls
+     * back doesn't skew them. An unusual transaction gets an UNUSUAL_TRANSACTION
+     * event, so this must be called inside the database transaction creating it.
+     * Nothing is unusual in an account whose statistics haven't been started
+     * yet.
+     *
+     * @param account       - the transaction's account
+     * @param amountInCents - the transaction's amount, negative for money out
+     * @return what's unusual about the transaction, or null if nothing is
+     */
+    public Anomaly observe(Account account, long amountInCents) {
+        if (amountInCents == 0) {
+            return null;
+        }
+        int accountId = account.getId();
+        AccountStats stats = stats(accountId);
+        SizeStats sizes = stats.direction(amountInCents);
+        double size = Math.log(Math.abs(amountInCents));
+        Anomaly anomaly = null;
+        boolean needsStart = false;
+        synchronized (stats) {
+            if (stats.started) {
+                anomaly = check(accountId, amountInCents, sizes, size);
+            } else if (!stats.starting) {
+                stats.starting = true;
+                needsStart = true;
+            }
+        }
+        if (needsStart) {
+            // Once this database transaction is over, so the history has this
+            // transaction in it if it commits
+            if (!AfterCommit.whenComplete(committed -> scheduleStart(accountId, stats))) {
+                scheduleStart(accountId, stats);
+            }
+        }
+        AfterCommit.run(() -> {
+            synchronized (stats) {
+                // Until they're started, the history has it
+                if (stats.started) {
+                    sizes.add(size);
+                }
+            }
+        });
+        if (anomaly != null && account.getOwner() != null) {
+            accountEvents.publish(AccountEvent.Type.UNUSUAL_TRANSACTION, account.getOwner().getId(),
+                    account.getId());
+        }
+        return anomaly;
+    }
+
+    /**
+     * Gets how many accounts have statistics in memory
+     *
+     * @return the number of accounts
+     */
+    public int getAccountCount() {
+        synchronized (accounts) {
+            return accounts.size();
+        }
+    }
+
+    /**
+     * Get an account's statistics, making room for them if they're new
+     */
+    private AccountStats stats(int accountId) {
+        synchronized (accounts) {
+            AccountStats stats = accounts.get(accountId);
+            if (stats == null) {
+                stats = new AccountStats(quantile);
+                accounts.put(accountId, stats);
+                if (accounts.size() > maxAccounts) {
+                    Map.Entry<Integer, AccountStats> eldest = accounts.entrySet().iterator().next();
+                    accounts.remove(eldest.getKey());
+                }
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Wait for an account's statistics to be started
+     *
+     * @param accountId - the account
+     * @param timeoutMs - how long to wait
+     * @return true if they're started, false if they weren't in time or the
+     *         account hasn't been seen
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitStarted(int accountId, long timeoutMs) throws InterruptedException {
+        AccountStats stats;
+        synchronized (accounts) {
+            stats = accounts.get(accountId);
+        }
+        if (stats == null) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (stats) {
+            while (!stats.started) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                stats.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stop starting accounts' statistics on shutdown
+     */
+    @PreDestroy
+    public void shutdown() {
+        starter.shutdownNow();
+    }
+
+    /**
+     * Start an account's statistics in the background
+     */
+    private void scheduleStart(int accountId, AccountStats stats) {
+        try {
+            starter.execute(() -> start(accountId, stats));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            log.debug("Not starting anomaly statistics for account {}, shutting down", accountId);
+        }
+    }
+
+    /**
+     * Start an account's statistics from its latest transactions, oldest first.
+     * If the query fails, the next transaction in the account tries again.
+     */
+    private void start(int accountId, AccountStats stats) {
+        List<Long> amounts;
+        try {
+            amounts = transactionRepo.findRecentAmounts(accountId, PageRequest.of(0, HISTORY));
+        } catch (RuntimeException e) {
+            log.warn("Couldn't start anomaly statistics for account {}", accountId, e);
+            synchronized (stats) {
+                stats.starting = false;
+            }
+            return;
+        }
+        synchronized (stats) {
+            for (int i = amounts.size() - 1; i >= 0; i--) {
+                long amount = amounts.get(i);
+                if (amount != 0) {
+                    stats.direction(amount).add(Math.log(Math.abs(amount)));
+                }
+            }
+            stats.started = true;
+            stats.notifyAll();
+        }
+    }
+
+    /**
+     * Decide whether a transaction is unusual, before it's added to the
+     * statistics
+     *
+     * @return the anomaly, or null if it isn't one
+     */
+    private Anomaly check(int accountId, long amountInCents, SizeStats sizes, double size) {
+        if (sizes.count < warmUp) {
+            return null;
+        }
+        double deviations = (size - sizes.mean) / Math.max(Math.sqrt(sizes.variance), MIN_DEVIATION);
+        double usualMax = sizes.quantile.getEstimate();
+        if (deviations < threshold || size <= usualMax) {
+            return null;
+        }
+        return new Anomaly(accountId, amountInCents, Math.round(Math.exp(sizes.mean)), Math.round(Math.exp(usualMax)),
+                deviations);
+    }
+}
@@ -0,0 +1,178 @@
+package edu.carroll.bankapp.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How much a user's money changed each day, across all of their accounts. The
+ * days are also rolled up into a Fenwick tree (totals over runs of 1, 2, 4, 8
+ * ... days), so the total up to any day takes about log2(days) additions.
+ *
+ * A balance series walks back from a known balance, at most a few days per
+ * pixel it'll be drawn at, and is then thinned out to the width keeping its
+ * shape. It costs the same however many transactions there are and however
+ * many years it covers.
+ *
+ * Not thread safe, it's kept up to date by TransactionColumns.
+ */
+public class BalanceRollups {
+    // Days looked at per pixel before thinning out, more keeps short swings
+    private static final int POINTS_PER_PIXEL = 4;
+    // Room left for more days when the range grows
+    private static final int SPARE_DAYS = 366;
+
+    // Epoch day of daily[0]
+    private int firstDay;
+    private long[] daily = new long[0];
+    // tree[i] holds the sum of the (i & -i) days ending with daily[i - 1]
+    private long[] tree = new long[1];
+
+    /**
+     * A balance at a number of days in a range, thinned out to be drawn
+     */
+    public static class BalanceSeries {
+        private final List<String> days;
+        private final long[] balancesInCents;
+
+        private BalanceSeries(List<String> days, long[] balancesInCents) {
+            this.days = days;
+            this.balancesInCents = balancesInCents;
+        }
+
+        /**
+         * Gets the days the balances are at
+         *
+         * @return days like 2024-03-01, oldest first
+         */
+        public List<String> getDays() {
+            return days;
+        }
+
+        /**
+         * Gets the balance at the end of each day
+         *
+         * @return balances in cents, one for each day
+         */
+        public long[] getBalancesInCents() {
+            return balancesInCents;
+        }
+    }
+
+    /**
+     * Count money added to (or taken from) the user on a day
+     *
+     * @param day   - the epoch day
+     * @param cents - the amount in cents
+     */
+    public void add(int day, long cents) {
+        if (cents == 0) {
+            return;
+        }
+        if (daily.length == 0) {
+            firstDay = day;
+            daily = new long[1];
+            tree = new long[2];
+        } else if (day < firstDay || day >= firstDay + daily.length) {
+            // Leave room for more, most changes are to the newest day
+            int start = Math.min(firstDay, day);
+            int end = Math.max(firstDay + daily.length, day + 1);
+            if (day < firstDay) {
+                start -= SPARE_DAYS;
+            } else {
+                end += SPARE_DAYS;
+            }
+            long[] resized = new long[end - start];
+            System.arraycopy(daily, 0, resized, firstDay - start, daily.length);
+            daily = resized;
+            firstDay = start;
+            rebuild();
+        }
+        int index = day - firstDay;
+        daily[index] += cents;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += cents;
+        }
+    }
+
+    /**
+     * Build the tree from the daily totals
+     */
+    private void rebuild() {
+        tree = new long[daily.length + 1];
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += daily[i - 1];
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Add up everything counted up to the end of a day
+     *
+     * @param day - the epoch day
+     * @return the sum in cents
+     */
+    public long totalThrough(int day) {
+        int count = Math.min(day - firstDay + 1, daily.length);
+        long total = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        return total;
+    }
+
+    /**
+     * Work out the user's balance over a range of days, thinned out to at most
+     * width points with the shape kept. The first and last days are always
+     * included.
+     *
+     * @param from           - the first day
+     * @param to             - the last day
+     * @param balanceInCents - the user's balance now, after everything counted
+     * @param width          - the most points to return
+     * @return the series
+     */
+    public BalanceSeries series(LocalDate from, LocalDate to, long balanceInCents, int width) {
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        if (toDay < fromDay) {
+            return new BalanceSeries(new ArrayList<>(), new long[0]);
+        }
+        // What the balance was before anything counted
+        long opening = balanceInCents - totalThrough(firstDay + daily.length);
+
+        // Every day, or days spread evenly over the range with both ends included
+        long dayCount = (long) toDay - fromDay + 1;
+        int points = (int) Math.min(dayCount, Math.max(2L, (long) POINTS_PER_PIXEL * width));
+        int[] days = new int[points];
+        double[] x = new double[points];
+        double[] y = new double[points];
+        for (int i = 0; i < points; i++) {
+            days[i] = points == dayCount ? fromDay + i
+                    : fromDay + (int) Math.round((double) i * (dayCount - 1) / (points - 1));
+            x[i] = days[i];
+            y[i] = opening + totalThrough(days[i]);
+        }
+
+        int[] kept = LargestTriangleThreeBuckets.select(x, y, width);
+        List<String> keptDays = new ArrayList<>(kept.length);
+        long[] keptBalances = new long[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            keptDays.add(LocalDate.ofEpochDay(days[kept[i]]).toString());
+            keptBalances[i] = opening + totalThrough(days[kept[i]]);
+        }
+        return new BalanceSeries(keptDays, keptBalances);
+    }
+
+    /**
+     * Gets roughly how much memory the rollups take
+     *
+     * @return size in bytes
+     */
+    public long getBytes() {
+        return 8L * (daily.length + tree.length);
+    }
+}
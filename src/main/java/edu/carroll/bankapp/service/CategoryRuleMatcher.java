@@ -0,0 +1,214 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+
+/**
+ * One user's categorization rules compiled into a single Aho-Corasick
+ * automaton, so a transaction is checked against all of them in one pass over
+ * its name and payee instead of once per rule.
+ *
+ * Rules match text that contains their pattern, ignoring case. When several
+ * match, the one with the longest pattern wins, since it's the most specific,
+ * and ties go to the oldest rule.
+ *
+ * The automaton is built once and never changes, so it's safe to share between
+ * threads.
+ */
+public class CategoryRuleMatcher {
+    private static final int NONE = Integer.MAX_VALUE;
+
+    // The rules, best first. A rule's rank is its place here.
+    private final CategoryRule[] rules;
+
+    // States are numbered breadth first, with the start state 0. The
+    // transitions out of state s are labels and targets
+    // [firstChild[s], firstChild[s + 1]), sorted by label.
+    private final int[] firstChild;
+    private final char[] labels;
+    private final int[] targets;
+    // The state for the longest proper suffix of each state's text
+    private final int[] fail;
+    // The best rank of any rule matching where each state is reached, for name
+    // and payee rules, or NONE
+    private final int[] bestName;
+    private final int[] bestPayee;
+
+    /**
+     * Compile rules into an automaton
+     *
+     * @param rules - the user's rules, oldest first
+     */
+    public CategoryRuleMatcher(List<CategoryRule> rules) {
+        List<CategoryRule> ranked = new ArrayList<>();
+        for (CategoryRule rule : rules) {
+            if (rule.getPattern() != null && !rule.getPattern().isEmpty()) {
+                ranked.add(rule);
+            }
+        }
+        // Stable, so ties stay oldest first
+        ranked.sort(Comparator.comparingInt((CategoryRule rule) -> rule.getPattern().length()).reversed());
+        this.rules = ranked.toArray(new CategoryRule[0]);
+
+        // Build a trie of the patterns. The best rules go in first, so the first
+        // rule to end at a state is the best one there.
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<int[]> ends = new ArrayList<>();
+        children.add(new TreeMap<>());
+        ends.add(new int[] { NONE, NONE });
+        for (int rank = 0; rank < this.rules.length; rank++) {
+            String pattern = normalize(this.rules[rank].getPattern());
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = children.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    ends.add(new int[] { NONE, NONE });
+                    children.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            int field = this.rules[rank].getField() == CategoryRule.Field.NAME ? 0 : 1;
+            if (ends.get(state)[field] == NONE) {
+                ends.get(state)[field] = rank;
+            }
+        }
+
+        // Flatten it breadth first, so a state's suffix always comes before it
+        int states = children.size();
+        int[] order = new int[states];
+        int[] renumbered = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        int numbered = 0;
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            order[numbered] = state;
+            renumbered[state] = numbered++;
+            queue.addAll(children.get(state).values());
+        }
+        firstChild = new int[states + 1];
+        labels = new char[states - 1];
+        targets = new int[states - 1];
+        bestName = new int[states];
+        bestPayee = new int[states];
+        int transitions = 0;
+        for (int s = 0; s < states; s++) {
+            firstChild[s] = transitions;
+            for (Map.Entry<Character, Integer> child : children.get(order[s]).entrySet()) {
+                labels[transitions] = child.getKey();
+                targets[transitions] = renumbered[child.getValue()];
+                transitions++;
+            }
+            bestName[s] = ends.get(order[s])[0];
+            bestPayee[s] = ends.get(order[s])[1];
+        }
+        firstChild[states] = transitions;
+
+        // Link every state to its longest proper suffix, and let it report the
+        // rules matching there too
+        fail = new int[states];
+        for (int s = 0; s < states; s++) {
+            for (int t = firstChild[s]; t < firstChild[s + 1]; t++) {
+                int child = targets[t];
+                if (s != 0) {
+                    int suffix = fail[s];
+                    int next;
+                    while ((next = step(suffix, labels[t])) < 0 && suffix != 0) {
+                        suffix = fail[suffix];
+                    }
+                    fail[child] = Math.max(next, 0);
+                }
+                bestName[child] = Math.min(bestName[child], bestName[fail[child]]);
+                bestPayee[child] = Math.min(bestPayee[child], bestPayee[fail[child]]);
+            }
+        }
+    }
+
+    /**
+     * Find the rule a transaction matches
+     *
+     * @param name  - the transaction's name
+     * @param payee - the transaction's payee
+     * @return the best matching rule, or null if none match
+     */
+    public CategoryRule match(String name, String payee) {
+        if (rules.length == 0) {
+            return null;
+        }
+        int rank = scan(name, bestName, NONE);
+        rank = scan(payee, bestPayee, rank);
+        return rank == NONE ? null : rules[rank];
+    }
+
+    /**
+     * Run text through the automaton
+     *
+     * @param best  - the best rule reported by each state
+     * @param found - the best rank found so far
+     * @return the best rank found, or NONE
+     */
+    private int scan(String text, int[] best, int found) {
+        if (text == null) {
+            return found;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length() && found > 0; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+            found = Math.min(found, best[state]);
+        }
+        return found;
+    }
+
+    /**
+     * Follow a transition
+     *
+     * @return the next state, or -1 if there's no transition on c
+     */
+    private int step(int state, char c) {
+        int t = Arrays.binarySearch(labels, firstChild[state], firstChild[state + 1], c);
+        return t < 0 ? -1 : targets[t];
+    }
+
+    /**
+     * Lower case text the same way transactions are while matching
+     */
+    private static String normalize(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Gets how many rules were compiled
+     *
+     * @return number of rules
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * Gets how many states the automaton has
+     *
+     * @return number of states
+     */
+    public int getStateCount() {
+        return fail.length;
+    }
+}
@@ -0,0 +1,338 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.CategoryRuleRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+
+/**
+ * Files transactions under categories using each user's rules.
+ *
+ * A user's rules are compiled into one automaton the first time they're needed
+ * and kept for the most recently active users, so categorizing a new
+ * transaction doesn't touch the database. The compiled rules are thrown away
+ * when the user's rules change, once that change commits, and the user's rules
+ * version goes up so pages listing the rules are shown again.
+ *
+ * Rules can also be applied to a user's existing transactions. Their id range
+ * is split between several threads, each reading and updating a chunk at a
+ * time in its own database transaction. Only transactions that aren't in a
+ * category yet are filed, so nothing the user chose by hand is undone.
+ */
+@Component
+public class CategoryRules {
+    private static final Logger log = LoggerFactory.getLogger(CategoryRules.class);
+
+    private final CategoryRuleRepository ruleRepo;
+    private final TransactionRepository transactionRepo;
+    private final AccountRepository accountRepo;
+    private final AccountSummaryCache accountSummaryCache;
+    private final AccountEventPublisher accountEvents;
+    private final TagBitmapIndex tagIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxUsers;
+    private final int chunkSize;
+    private final int threads;
+
+    // Least recently used first. Everything is guarded by this map.
+    private final LinkedHashMap<Integer, UserRules> users = new LinkedHashMap<>(16, 0.75f, true);
+    // Each user's rules version, for users whose rules changed since the app
+    // started. Taken from versionCounter so a version is never reused, even for
+    // users whose compiled rules were dropped.
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private long versionCounter;
+    private long hits;
+    private long compiles;
+
+    /**
+     * A user's compiled rules, or a placeholder while they're being compiled
+     */
+    private static class UserRules {
+        private CategoryRuleMatcher matcher;
+        // Goes up whenever the rules change, so rules compiled from before the
+        // change aren't kept
+        private long generation;
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param ruleRepo            - JPA repo for users' rules
+     * @param transactionRepo     - JPA repo for categorizing existing
+     *                            transactions
+     * @param accountRepo         - JPA repo for bumping the revisions of changed
+     *                            accounts
+     * @param accountSummaryCache - cache of each user's accounts
+     * @param accountEvents       - for announcing changed accounts
+     * @param tagIndex            - bitmaps of each account's categories and
+     *                            tags, kept in step with changes
+     * @param transactionManager  - to categorize each chunk in its own database
+     *                            transaction
+     * @param maxUsers            - the number of users whose rules are kept
+     *                            compiled
+     * @param chunkSize           - the number of existing transactions read at a
+     *                            time
+     * @param threads             - how many threads categorize existing
+     *                            transactions
+     */
+    public CategoryRules(CategoryRuleRepository ruleRepo, TransactionRepository transactionRepo,
+            AccountRepository accountRepo, AccountSummaryCache accountSummaryCache,
+            AccountEventPublisher accountEvents, TagBitmapIndex tagIndex,
+            PlatformTransactionManager transactionManager,
+            @Value("${bankapp.category-rules.max-users:10000}") int maxUsers,
+            @Value("${bankapp.category-rules.chunk-size:1000}") int chunkSize,
+            @Value("${bankapp.category-rules.threads:4}") int threads) {
+        this.ruleRepo = ruleRepo;
+        this.transactionRepo = transactionRepo;
+        this.accountRepo = accountRepo;
+        this.accountSummaryCache = accountSummaryCache;
+        this.accountEvents = accountEvents;
+        this.tagIndex = tagIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxUsers = maxUsers;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Find the category a new transaction goes under
+     *
+     * @param ownerId - the user
+     * @param name    - the transaction's name
+     * @param payee   - the transaction's payee
+     * @return the category of the best matching rule, or null if none match
+     */
+    public Category categorize(int ownerId, String name, String payee) {
+        CategoryRule rule = matcher(ownerId).match(name, payee);
+        return rule == null ? null : rule.getCategory();
+    }
+
+    /**
+     * Get a user's compiled rules, compiling them if they aren't already
+     *
+     * @param ownerId - the user
+     * @return the user's rules
+     */
+    public CategoryRuleMatcher matcher(int ownerId) {
+        UserRules rules;
+        long generation;
+        synchronized (users) {
+            rules = users.get(ownerId);
+            if (rules != null && rules.matcher != null) {
+                hits++;
+                return rules.matcher;
+            }
+            if (rules == null) {
+                rules = new UserRules();
+                users.put(ownerId, rules);
+                Iterator<UserRules> iterator = users.values().iterator();
+                while (users.size() > maxUsers && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            generation = rules.generation;
+        }
+
+        // Compile without holding the lock, other users shouldn't have to wait
+        CategoryRuleMatcher compiled = new CategoryRuleMatcher(ruleRepo.findByOwnerId(ownerId));
+
+        synchronized (users) {
+            compiles++;
+            // Only keep it if the rules didn't change while compiling
+            if (users.get(ownerId) == rules && rules.matcher == null && rules.generation == generation) {
+                rules.matcher = compiled;
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * Gets the version of a user's rules, which goes up whenever they change
+     *
+     * @param ownerId - the user
+     * @return the version, 0 if they haven't changed since the app started
+     */
+    public long getVersion(int ownerId) {
+        synchronized (users) {
+            return versions.getOrDefault(ownerId, 0L);
+        }
+    }
+
+    /**
+     * Throw away a user's compiled rules and bump their version once the
+     * database transaction changing them commits
+     *
+     * @param ownerId - the user whose rules changed
+     */
+    public void changed(int ownerId) {
+        Runnable forget = () -> {
+            synchronized (users) {
+                versions.put(ownerId, ++versionCounter);
+                UserRules rules = users.get(ownerId);
+                if (rules != null) {
+                    rules.matcher = null;
+                    rules.generation++;
+                }
+            }
+        };
+        AfterCommit.run(forget);
+    }
+
+    /**
+     * File a user's existing uncategorized transactions using their rules
+     *
+     * @param ownerId - the user
+     * @return the number of transactions filed
+     */
+    public long applyToHistory(int ownerId) {
+        long start = System.currentTimeMillis();
+        CategoryRuleMatcher matcher = matcher(ownerId);
+        if (matcher.getRuleCount() == 0) {
+            return 0;
+        }
+        Set<Integer> changedAccounts = new TreeSet<>();
+        int workers = Math.max(1, threads);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        long filed = 0;
+        try {
+            int maxId = transactionRepo.findMaxId();
+            int rangeSize = maxId / workers + 1;
+            List<Future<Long>> ranges = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                int from = i * rangeSize;
+                int to = Math.min(maxId, from + rangeSize);
+                ranges.add(executor.submit(() -> applyToRange(ownerId, matcher, from, to, changedAccounts)));
+            }
+            for (Future<Long> range : ranges) {
+                filed += range.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while applying categorization rules", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Couldn't apply categorization rules", e.getCause());
+        } finally {
+            executor.shutdown();
+            // Whatever was filed shows up the next time its account is shown
+            if (!changedAccounts.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (Integer accountId : changedAccounts) {
+                        accountRepo.bumpRevision(accountId);
+                        accountSummaryCache.update(ownerId).bumpRevision(accountId);
+                        accountEvents.publish(AccountEvent.Type.CHANGED, ownerId, accountId);
+                    }
+                });
+            }
+        }
+        log.info("Categorized {} transactions of user {} with {} rules in {} ms", filed, ownerId,
+                matcher.getRuleCount(), System.currentTimeMillis() - start);
+        return filed;
+    }
+
+    /**
+     * Categorize a user's transactions in an id range, a chunk at a time
+     *
+     * @param changedAccounts - the accounts with transactions filed, added to as
+     *                        they're found
+     * @return the number of transactions filed
+     */
+    private long applyToRange(int ownerId, CategoryRuleMatcher matcher, int from, int to,
+            Set<Integer> changedAccounts) {
+        long filed = 0;
+        int afterId = from;
+        while (afterId < to) {
+            int chunkAfterId = afterId;
+            int[] lastId = { to };
+            Long chunk = transactionTemplate.execute(status -> {
+                List<Object[]> rows = transactionRepo.findUncategorized(ownerId, chunkAfterId, to,
+                        PageRequest.of(0, chunkSize));
+                if (rows.size() == chunkSize) {
+                    lastId[0] = (Integer) rows.get(rows.size() - 1)[0];
+                }
+                // Group the matches by account and category, so each group is one
+                // update
+                Map<Integer, Map<Category, List<Integer>>> matches = new HashMap<>();
+                for (Object[] row : rows) {
+                    CategoryRule rule = matcher.match((String) row[2], (String) row[3]);
+                    if (rule != null) {
+                        matches.computeIfAbsent((Integer) row[1], id -> new HashMap<>())
+                                .computeIfAbsent(rule.getCategory(), category -> new ArrayList<>())
+                                .add((Integer) row[0]);
+                    }
+                }
+                long updated = 0;
+                for (Map.Entry<Integer, Map<Category, List<Integer>>> account : matches.entrySet()) {
+                    for (Map.Entry<Category, List<Integer>> group : account.getValue().entrySet()) {
+                        updated += transactionRepo.setCategoryIfNone(group.getKey(), group.getValue());
+                        tagIndex.categorized(account.getKey(), group.getKey().getId(), group.getValue());
+                    }
+                }
+                if (!matches.isEmpty()) {
+                    synchronized (changedAccounts) {
+                        changedAccounts.addAll(matches.keySet());
+                    }
+                }
+                return updated;
+            });
+            filed += chunk;
+            afterId = lastId[0];
+        }
+        return filed;
+    }
+
+    /**
+     * Gets how many users' rules are compiled
+     *
+     * @return number of users
+     */
+    public int getUserCount() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    /**
+     * Gets how many lookups found the rules already compiled
+     *
+     * @return number of hits
+     */
+    public long getHitCount() {
+        synchronized (users) {
+            return hits;
+        }
+    }
+
+    /**
+     * Gets how many times rules were compiled
+     *
+     * @return number of compiles
+     */
+    public long getCompileCount() {
+        synchronized (users) {
+            return compiles;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import edu.carroll.bankapp.engine.AccountState;
+import edu.carroll.bankapp.engine.LedgerEngine;
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+
+/**
+ * The posting engine as the rest of the app sees it, when
+ * bankapp.engine.enabled is true. New transactions are posted through it and
+ * balances are read from it.
+ *
+ * Anything else that changes an account's balance in the database (transfers,
+ * edits, deletes, deleting the account) releases the account first, so the
+ * engine loads it again afterwards instead of keeping a stale balance. With
+ * the engine turned off, all of this does nothing.
+ */
+@Service
+public class EngineAccounts {
+    private static final Logger log = LoggerFactory.getLogger(EngineAccounts.class);
+
+    private final LedgerEngine engine;
+    private final AccountRepository accountRepo;
+    private final long releaseTimeoutMs;
+
+    /**
+     * Inject dependencies
+     *
+     * @param engine           - the posting engine, if it's turned on
+     * @param accountRepo      - JPA repo for bringing released accounts up to date
+     * @param releaseTimeoutMs - the longest to wait for an account's postings to
+     *                         reach the database before changing it there
+     */
+    public EngineAccounts(Optional<LedgerEngine> engine, AccountRepository accountRepo,
+            @Value("${bankapp.engine.release-timeout-ms:10000}") long releaseTimeoutMs) {
+        this.engine = engine.orElse(null);
+        this.accountRepo = accountRepo;
+        this.releaseTimeoutMs = releaseTimeoutMs;
+    }
+
+    /**
+     * Whether new transactions go through the engine
+     *
+     * @return true if the engine is turned on
+     */
+    public boolean isEnabled() {
+        return engine != null;
+    }
+
+    /**
+     * Post a transaction through the engine. It's written to the database by the
+     * engine's projection shortly afterwards.
+     *
+     * @param account       - the account, which must already be committed
+     * @param amountInCents - the amount, negative for money out
+     * @param name          - the transaction's name
+     * @param toFrom        - the transaction's recipient or sender
+     * @return the account after the posting
+     */
+    public AccountState post(Account account, long amountInCents, String name, String toFrom) {
+        return engine.post(account.getId(), amountInCents, name, toFrom);
+    }
+
+    /**
+     * Gets an account's balance, from the engine if it has the account
+     *
+     * @param account - the account
+     * @return the balance in cents
+     */
+    public long getBalanceInCents(Account account) {
+        Long balance = engine == null ? null : engine.getBalanceInCents(account.getId());
+        return balance == null ? account.getBalanceInCents() : balance;
+    }
+
+    /**
+     * Swap in the engine's balance for any of the given accounts it has
+     *
+     * @param accounts - summaries of the accounts, as kept in the database
+     * @return the summaries with the engine's balances
+     */
+    public List<AccountSummary> withBalances(List<AccountSummary> accounts) {
+        if (engine == null) {
+            return accounts;
+        }
+        List<AccountSummary> current = new ArrayList<>(accounts.size());
+        for (AccountSummary account : accounts) {
+            Long balance = engine.getBalanceInCents(account.getId());
+            current.add(balance == null || balance == account.getBalanceInCents() ? account
+                    : new AccountSummary(account.getId(), account.getName(), balance, account.getRevision()));
+        }
+        return current;
+    }
+
+    /**
+     * Release accounts from the engine until the current database transaction
+     * finishes, before changing their balances in it. Must be called before
+     * anything is written, as the engine's projection may need to update the same
+     * rows first. The given Account objects are brought up to date with what the
+     * projection wrote.
+     *
+     * @param accounts - the accounts about to be changed, nulls are skipped
+     * @throws IllegalStateException if the engine's postings didn't reach the
+     *                               database in time
+     */
+    public void releaseUntilCommit(Account... accounts) {
+        if (engine == null) {
+            return;
+        }
+        Set<Integer> accountIds = new LinkedHashSet<>();
+        for (Account account : accounts) {
+            if (account != null) {
+                accountIds.add(account.getId());
+            }
+        }
+        releaseUntilCommit(accountIds);
+        for (Account account : accounts) {
+            if (account == null) {
+                continue;
+            }
+            for (Object[] stored : accountRepo.findBalanceAndRevision(account.getId())) {
+                account.setBalanceInCents(((Number) stored[0]).longValue());
+                account.setRevision(((Number) stored[1]).longValue());
+            }
+        }
+    }
+
+    /**
+     * Release accounts from the engine until the current database transaction
+     * finishes, before changing their balances in it with relative updates. Must
+     * be called before anything is written.
+     *
+     * @param accountIds - the accounts about to be changed
+     * @throws IllegalStateException if the engine's postings didn't reach the
+     *                               database in time
+     */
+    public void releaseUntilCommit(Collection<Integer> accountIds) {
+        if (engine == null || accountIds.isEmpty()) {
+            return;
+        }
+        Runnable end = release(accountIds);
+        if (!AfterCommit.whenComplete(committed -> end.run())) {
+            // No database transaction, so each change is already committed
+            log.warn("Released accounts {} outside a database transaction", accountIds);
+            end.run();
+        }
+    }
+
+    /**
+     * Release accounts from the engine while changing their balances in the
+     * database
+     *
+     * @param accountIds - the accounts about to be changed
+     * @return ends the release, to be run once the change has committed or
+     *         failed
+     * @throws IllegalStateException if the engine's postings didn't reach the
+     *                               database in time
+     */
+    public Runnable release(Collection<Integer> accountIds) {
+        if (engine == null || accountIds.isEmpty()) {
+            return () -> {
+            };
+        }
+        return engine.release(accountIds, releaseTimeoutMs);
+    }
+}
@@ -0,0 +1,217 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.carroll.bankapp.engine.EngineRecord;
+import edu.carroll.bankapp.engine.LedgerEngine;
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.LogProjection;
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.LogProjectionRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+
+/**
+ * Writes logged postings (from the posting engine or the transaction write
+ * queue) to the database: a transaction row, filed with its owner's
+ * categorization rules, and a journal entry for each posting, and one balance
+ * update per account per batch. The batch and the
+ * log's new projected sequence are committed together, so a batch is never
+ * applied twice.
+ *
+ * Each log keeps its own projected sequence, so the engine and the write queue
+ * each get a projection of their own from forLog.
+ *
+ * Postings to accounts that have since been deleted are dropped, as their
+ * transactions would be purged anyway.
+ */
+@Component
+public class JpaPostingProjection {
+    private static final Logger log = LoggerFactory.getLogger(JpaPostingProjection.class);
+
+    private final TransactionRepository transactionRepo;
+    private final AccountRepository accountRepo;
+    private final LogProjectionRepository projectionRepo;
+    private final LedgerService ledger;
+    private final AccountSummaryCache accountSummaryCache;
+    private final AccountEventPublisher accountEvents;
+    private final TransactionSearchIndex searchIndex;
+    private final PayeeSuggestions payeeSuggestions;
+    private final PayeeDictionary payeeDictionary;
+    private final CategoryRules categoryRules;
+    private final TagBitmapIndex tagIndex;
+    private final PayeeSketches payeeSketches;
+    private final AnomalyDetector anomalyDetector;
+    private final TransactionAnalytics analytics;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionRepo     - JPA repo for saving transactions
+     * @param accountRepo         - JPA repo for querying and updating accounts
+     * @param projectionRepo      - JPA repo for the projected sequence
+     * @param ledger              - where every balance change is recorded
+     * @param accountSummaryCache - cache of each user's accounts, kept in step with
+     *                            balance changes
+     * @param accountEvents       - for announcing changed accounts
+     * @param searchIndex         - index of transaction names and recipients
+     * @param payeeSuggestions    - payees suggested while typing
+     * @param payeeDictionary     - each user's payees, referred to by id
+     * @param categoryRules       - each user's compiled categorization rules
+     * @param tagIndex            - bitmaps of each account's categories and tags
+     * @param payeeSketches       - each user's top payees
+     * @param anomalyDetector     - notices transactions much larger than usual
+     * @param analytics           - each user's transactions in columns for reports
+     * @param transactionManager  - to run each batch in its own transaction
+     */
+    public JpaPostingProjection(TransactionRepository transactionRepo, AccountRepository accountRepo,
+            LogProjectionRepository projectionRepo, LedgerService ledger, AccountSummaryCache accountSummaryCache,
+            AccountEventPublisher accountEvents, TransactionSearchIndex searchIndex,
+            PayeeSuggestions payeeSuggestions, PayeeDictionary payeeDictionary, CategoryRules categoryRules,
+            TagBitmapIndex tagIndex, PayeeSketches payeeSketches, AnomalyDetector anomalyDetector,
+            TransactionAnalytics analytics, PlatformTransactionManager transactionManager) {
+        this.transactionRepo = transactionRepo;
+        this.accountRepo = accountRepo;
+        this.projectionRepo = projectionRepo;
+        this.ledger = ledger;
+        this.accountSummaryCache = accountSummaryCache;
+        this.accountEvents = accountEvents;
+        this.searchIndex = searchIndex;
+        this.payeeSuggestions = payeeSuggestions;
+        this.payeeDictionary = payeeDictionary;
+        this.categoryRules = categoryRules;
+        this.tagIndex = tagIndex;
+        this.payeeSketches = payeeSketches;
+        this.anomalyDetector = anomalyDetector;
+        this.analytics = analytics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Gets the projection for one log
+     *
+     * @param logName - the log being applied, LogProjection.ENGINE or
+     *                LogProjection.WRITE_QUEUE
+     * @return a projection that keeps that log's projected sequence
+     */
+    public LedgerEngine.Projection forLog(String logName) {
+        return new LedgerEngine.Projection() {
+            @Override
+            public long getProjectedSequence() {
+                return projectionRepo.findById(logName).map(LogProjection::getLastSequence).orElse(0L);
+            }
+
+            @Override
+            public void project(List<EngineRecord> records) {
+                JpaPostingProjection.this.project(logName, records);
+            }
+        };
+    }
+
+    /**
+     * Write a batch of a log's records, along with the log's new projected
+     * sequence
+     *
+     * @param logName - the log the records are from
+     * @param records - the records, in log order
+     */
+    private void project(String logName, List<EngineRecord> records) {
+        transactionTemplate.executeWithoutResult(status -> {
+            LogProjection projection = projectionRepo.findById(logName)
+                    .orElseGet(() -> new LogProjection(logName));
+            long lastSequence = records.get(records.size() - 1).getSequence();
+            if (lastSequence <= projection.getLastSequence()) {
+                // Already applied before a restart
+                return;
+            }
+
+            Set<Integer> accountIds = new LinkedHashSet<>();
+            for (EngineRecord record : records) {
+                accountIds.add(record.getAccountId());
+            }
+            Map<Integer, Account> accounts = new HashMap<>();
+            for (Account account : accountRepo.findAllById(accountIds)) {
+                accounts.put(account.getId(), account);
+            }
+
+            List<Transaction> transactions = new ArrayList<>();
+            Map<Integer, Long> deltas = new LinkedHashMap<>();
+            for (EngineRecord record : records) {
+                // Only postings change an account
+                if (record.getType() != EngineRecord.Type.POST
+                        || record.getSequence() <= projection.getLastSequence()) {
+                    continue;
+                }
+                Account account = accounts.get(record.getAccountId());
+                if (account == null || account.isDeleted()) {
+                    log.warn("Dropping {} posting {} to account {}, which no longer exists", logName,
+                            record.getSequence(), record.getAccountId());
+                    continue;
+                }
+                Transaction transaction = new Transaction();
+                transaction.setName(record.getName());
+                transaction.setAmountInCents(record.getAmountInCents());
+                transaction.setPayee(payeeDictionary.intern(account.getOwner().getId(), record.getToFrom()));
+                // File it using the owner's rules, as part of the insert
+                transaction.setCategory(
+                        categoryRules.categorize(account.getOwner().getId(), record.getName(), record.getToFrom()));
+                transaction.setAccount(account);
+                transaction.setDate(new Date(record.getTimestamp()));
+                transactions.add(transaction);
+                deltas.merge(account.getId(), record.getAmountInCents(), Long::sum);
+            }
+            transactionRepo.saveAll(transactions);
+            for (Transaction transaction : transactions) {
+                searchIndex.added(transaction);
+                tagIndex.added(transaction);
+                analytics.added(transaction);
+                payeeSuggestions.used(transaction);
+                payeeSketches.added(transaction);
+                anomalyDetector.observe(transaction.getAccount(), transaction.getAmountInCents());
+            }
+
+            // Money in from (or out to) outside the bank
+            List<JournalEntry> entries = new ArrayList<>();
+            for (Transaction transaction : transactions) {
+                JournalEntry entry = new JournalEntry("Transaction");
+                entry.addPosting(transaction.getAccount().getId(), transaction.getId(),
+                        transaction.getAmountInCents());
+                entry.balanceExternally();
+                entries.add(entry);
+            }
+            ledger.appendAll(entries);
+
+            for (Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                Account account = accounts.get(delta.getKey());
+                if (account.getOwner() != null) {
+                    accountSummaryCache.update(account.getOwner().getId()).adjustBalance(account.getId(),
+                            delta.getValue());
+                    accountEvents.publish(AccountEvent.Type.CHANGED, account.getOwner().getId(), account.getId());
+                }
+            }
+            // Nothing here reads the balances again, so the loaded accounts aren't
+            // refreshed
+            for (Map.Entry<Integer, Long> delta : deltas.entrySet()) {
+                accountRepo.addToBalance(delta.getKey(), delta.getValue());
+            }
+
+            projection.setLastSequence(lastSequence);
+            projectionRepo.save(projection);
+        });
+    }
+}
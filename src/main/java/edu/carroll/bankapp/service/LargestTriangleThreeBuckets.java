@@ -0,0 +1,71 @@
+package edu.carroll.bankapp.service;
+
+/**
+ * Picks which points of a line to keep so it looks the same drawn with fewer
+ * of them (Largest-Triangle-Three-Buckets, Steinarsson 2013). The points are
+ * split into as many buckets as there are points to keep, and from each bucket
+ * the point making the largest triangle with the point kept before it and the
+ * average of the next bucket is kept, so peaks and dips survive where plain
+ * averaging or every-nth sampling would flatten them.
+ */
+public final class LargestTriangleThreeBuckets {
+    private LargestTriangleThreeBuckets() {
+    }
+
+    /**
+     * Choose the points to keep. The first and last points are always kept.
+     *
+     * @param x         - the points' x values, in increasing order
+     * @param y         - the points' y values
+     * @param threshold - the most points to keep
+     * @return indexes of the points to keep, in increasing order
+     */
+    public static int[] select(double[] x, double[] y, int threshold) {
+        int n = x.length;
+        if (threshold >= n || n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        if (threshold < 3) {
+            return new int[] { 0, n - 1 };
+        }
+
+        int[] selected = new int[threshold];
+        // Every bucket but the first and last, which are just those points
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // The average of the next bucket stands in for the point kept there
+            int nextStart = (int) Math.floor((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, n);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int start = (int) Math.floor(bucket * every) + 1;
+            int end = (int) Math.floor((bucket + 1) * every) + 1;
+            double largestArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle's area, which picks the same point
+                double area = Math.abs((x[a] - averageX) * (y[i] - y[a]) - (x[a] - x[i]) * (averageY - y[a]));
+                if (area > largestArea) {
+                    largestArea = area;
+                    chosen = i;
+                }
+            }
+            selected[bucket + 1] = chosen;
+            a = chosen;
+        }
+        selected[threshold - 1] = n - 1;
+        return selected;
+    }
+}
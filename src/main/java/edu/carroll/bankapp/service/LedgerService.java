@@ -0,0 +1,66 @@
+package edu.carroll.bankapp.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+
+/**
+ * Interface for the double-entry ledger. Every change to a balance is
+ * appended as a balanced journal entry, and balances are worked out from the
+ * entries.
+ */
+public interface LedgerService {
+    /**
+     * Append an entry to the ledger, as part of the current database transaction
+     * if there is one.
+     *
+     * @param entry the entry to append
+     * @return the appended entry
+     * @throws IllegalArgumentException if the entry doesn't balance
+     */
+    JournalEntry append(JournalEntry entry);
+
+    /**
+     * Append several entries at once. The inserts are sent in JDBC batches.
+     *
+     * @param entries the entries to append
+     * @return the appended entries
+     * @throws IllegalArgumentException if any entry doesn't balance, in which case
+     *                                  none are appended
+     */
+    List<JournalEntry> appendAll(List<JournalEntry> entries);
+
+    /**
+     * Work out an account's balance from its checkpoint and the postings since.
+     *
+     * @param accountId the account
+     * @return the balance in cents
+     */
+    long getBalanceInCents(int accountId);
+
+    /**
+     * Work out the balances of several accounts with two queries.
+     *
+     * @param accountIds the accounts
+     * @return the balance in cents of each account
+     */
+    Map<Integer, Long> getBalancesInCents(Collection<Integer> accountIds);
+
+    /**
+     * Move forward the checkpoints of accounts with enough postings since their
+     * last one.
+     *
+     * @return the number of checkpoints moved
+     */
+    int checkpoint();
+
+    /**
+     * Append opening balance entries for accounts with a balance but no
+     * postings, such as ones created before the ledger existed.
+     *
+     * @return the number of accounts opened
+     */
+    int openMissingAccounts();
+}
@@ -0,0 +1,214 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.BalanceCheckpoint;
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.BalanceCheckpointRepository;
+import edu.carroll.bankapp.jpa.repo.JournalEntryRepository;
+import edu.carroll.bankapp.jpa.repo.PostingRepository;
+import jakarta.transaction.Transactional;
+
+/**
+ * Append-only double-entry ledger.
+ *
+ * A balance is the account's checkpoint plus the postings written after it.
+ * Postings are never changed, so the two can be read separately without
+ * locking. Checkpoints are moved forward in the background once an account has
+ * built up enough postings, which keeps balance reads to a bounded number of
+ * rows.
+ *
+ * A posting's id is handed out before its database transaction commits, so a
+ * posting can become visible after one with a higher id. Checkpoints only
+ * cover postings older than bankapp.ledger.checkpoint-settle-ms, which is far
+ * longer than any database transaction is kept open, so none are skipped.
+ * LedgerVerifier checks this by replaying the whole ledger.
+ */
+@Service
+public class LedgerServiceImpl implements LedgerService {
+    private static final Logger log = LoggerFactory.getLogger(LedgerServiceImpl.class);
+    private static final int OPENING_CHUNK_SIZE = 500;
+
+    private final JournalEntryRepository entryRepo;
+    private final PostingRepository postingRepo;
+    private final BalanceCheckpointRepository checkpointRepo;
+    private final AccountRepository accountRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final long checkpointMinPostings;
+    private final long checkpointSettleMs;
+
+    /**
+     * Inject dependencies
+     *
+     * @param entryRepo             - JPA repo for journal entries
+     * @param postingRepo           - JPA repo for postings
+     * @param checkpointRepo        - JPA repo for balance checkpoints
+     * @param accountRepo           - JPA repo for querying accounts
+     * @param transactionManager    - for background jobs
+     * @param checkpointMinPostings - postings an account needs since its
+     *                              checkpoint before the checkpoint is moved
+     * @param checkpointSettleMs    - how old a posting has to be before a
+     *                              checkpoint covers it
+     */
+    public LedgerServiceImpl(JournalEntryRepository entryRepo, PostingRepository postingRepo,
+            BalanceCheckpointRepository checkpointRepo, AccountRepository accountRepo,
+            PlatformTransactionManager transactionManager,
+            @Value("${bankapp.ledger.checkpoint-min-postings:100}") long checkpointMinPostings,
+            @Value("${bankapp.ledger.checkpoint-settle-ms:60000}") long checkpointSettleMs) {
+        this.entryRepo = entryRepo;
+        this.postingRepo = postingRepo;
+        this.checkpointRepo = checkpointRepo;
+        this.accountRepo = accountRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.checkpointMinPostings = checkpointMinPostings;
+        this.checkpointSettleMs = checkpointSettleMs;
+    }
+
+    @Transactional
+    public JournalEntry append(JournalEntry entry) {
+        checkBalanced(entry);
+        return entryRepo.save(entry);
+    }
+
+    @Transactional
+    public List<JournalEntry> appendAll(List<JournalEntry> entries) {
+        for (JournalEntry entry : entries) {
+            checkBalanced(entry);
+        }
+        return entryRepo.saveAll(entries);
+    }
+
+    /**
+     * Make sure an entry can be written
+     *
+     * @param entry - the entry to check
+     */
+    private static void checkBalanced(JournalEntry entry) {
+        if (entry.getId() != null) {
+            throw new IllegalArgumentException("Journal entry " + entry.getId() + " has already been written");
+        }
+        if (!entry.isBalanced()) {
+            throw new IllegalArgumentException(String.format("Journal entry \"%s\" is off by %d cents",
+                    entry.getDescription(), entry.getTotalInCents()));
+        }
+    }
+
+    public long getBalanceInCents(int accountId) {
+        BalanceCheckpoint checkpoint = checkpointRepo.findById(accountId).orElse(null);
+        if (checkpoint == null) {
+            return postingRepo.sumAfter(accountId, 0);
+        }
+        return checkpoint.getBalanceInCents() + postingRepo.sumAfter(accountId, checkpoint.getLastPostingId());
+    }
+
+    public Map<Integer, Long> getBalancesInCents(Collection<Integer> accountIds) {
+        Map<Integer, Long> balances = new HashMap<>();
+        if (accountIds.isEmpty()) {
+            return balances;
+        }
+        for (Integer accountId : accountIds) {
+            balances.put(accountId, 0L);
+        }
+        // Checkpoints are read first. One that moves in between is still added to
+        // the postings after its old position, which gives the same total.
+        for (BalanceCheckpoint checkpoint : checkpointRepo.findByAccountIdIn(accountIds)) {
+            balances.put(checkpoint.getAccountId(), checkpoint.getBalanceInCents());
+        }
+        for (Object[] sum : postingRepo.sumSinceCheckpoint(accountIds)) {
+            balances.merge((Integer) sum[0], ((Number) sum[1]).longValue(), Long::sum);
+        }
+        return balances;
+    }
+
+    /**
+     * Periodically move checkpoints forward
+     */
+    @Scheduled(initialDelayString = "${bankapp.ledger.checkpoint-interval-ms:60000}", fixedDelayString = "${bankapp.ledger.checkpoint-interval-ms:60000}")
+    public void scheduledCheckpoint() {
+        try {
+            int moved = checkpoint();
+            if (moved > 0) {
+                log.info("Moved {} balance checkpoints", moved);
+            }
+        } catch (RuntimeException e) {
+            // Anything left over will be picked up on the next run
+            log.error("Balance checkpoint failed", e);
+        }
+    }
+
+    public synchronized int checkpoint() {
+        Date settledBefore = new Date(System.currentTimeMillis() - checkpointSettleMs);
+        List<Object[]> candidates = postingRepo.findCheckpointCandidates(settledBefore, checkpointMinPostings);
+        for (Object[] candidate : candidates) {
+            int accountId = (Integer) candidate[0];
+            long upToId = ((Number) candidate[1]).longValue();
+            // Each account in its own database transaction
+            transactionTemplate.executeWithoutResult(status -> {
+                BalanceCheckpoint checkpoint = checkpointRepo.findById(accountId)
+                        .orElseGet(() -> new BalanceCheckpoint(accountId));
+                Object[] sum = postingRepo.sumBetween(accountId, checkpoint.getLastPostingId(), upToId).get(0);
+                checkpoint.advance(upToId, ((Number) sum[0]).longValue(), ((Number) sum[1]).longValue());
+                checkpointRepo.save(checkpoint);
+            });
+        }
+        return candidates.size();
+    }
+
+    /**
+     * Open any accounts the ledger is missing once the app is up. A database
+     * upgraded with db/upgrade/05-ledger.sql already has its opening balances,
+     * written before the app could take any new transactions. This catches
+     * databases Hibernate added the ledger tables to.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void openMissingAccountsOnStartup() {
+        try {
+            int opened = openMissingAccounts();
+            if (opened > 0) {
+                log.info("Added opening balances to the ledger for {} accounts", opened);
+            }
+        } catch (RuntimeException e) {
+            log.error("Opening ledger accounts failed", e);
+        }
+    }
+
+    public int openMissingAccounts() {
+        int opened = 0;
+        while (true) {
+            Integer chunk = transactionTemplate.execute(status -> {
+                List<Account> accounts = accountRepo.findWithoutPostings(PageRequest.of(0, OPENING_CHUNK_SIZE));
+                List<JournalEntry> entries = new ArrayList<>();
+                for (Account account : accounts) {
+                    JournalEntry entry = new JournalEntry("Opening balance");
+                    entry.addPosting(account.getId(), null, account.getBalanceInCents());
+                    entry.balanceExternally();
+                    entries.add(entry);
+                }
+                appendAll(entries);
+                return accounts.size();
+            });
+            opened += chunk;
+            if (chunk < OPENING_CHUNK_SIZE) {
+                return opened;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.BalanceCheckpoint;
+import edu.carroll.bankapp.jpa.model.Posting;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.BalanceCheckpointRepository;
+import edu.carroll.bankapp.jpa.repo.PostingRepository;
+
+/**
+ * Replays the whole ledger from the first posting and checks it against
+ * everything derived from it:
+ * - every journal entry adds up to zero
+ * - every checkpoint matches the postings it covers
+ * - every account's balance matches the ledger
+ * - the ledger as a whole adds up to zero
+ *
+ * Start the app with --verify-ledger to run it at startup. The problems found
+ * are logged.
+ */
+@Component
+public class LedgerVerifier implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(LedgerVerifier.class);
+    private static final int PAGE_SIZE = 5000;
+    // Don't let a badly broken ledger fill up the report
+    private static final int MAX_PROBLEMS = 100;
+
+    private final PostingRepository postingRepo;
+    private final BalanceCheckpointRepository checkpointRepo;
+    private final AccountRepository accountRepo;
+    private final LedgerService ledger;
+
+    /**
+     * What a verification run found
+     */
+    public static class Report {
+        private long postingCount;
+        private int accountCount;
+        private final List<String> problems = new ArrayList<>();
+
+        /**
+         * Note a problem
+         *
+         * @param problem - what's wrong
+         */
+        private void problem(String problem) {
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add(problem);
+            }
+        }
+
+        public long getPostingCount() {
+            return postingCount;
+        }
+
+        public int getAccountCount() {
+            return accountCount;
+        }
+
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        public boolean isOk() {
+            return problems.isEmpty();
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param postingRepo    - JPA repo for postings
+     * @param checkpointRepo - JPA repo for balance checkpoints
+     * @param accountRepo    - JPA repo for querying accounts
+     * @param ledger         - for the balances the app reads
+     */
+    public LedgerVerifier(PostingRepository postingRepo, BalanceCheckpointRepository checkpointRepo,
+            AccountRepository accountRepo, LedgerService ledger) {
+        this.postingRepo = postingRepo;
+        this.checkpointRepo = checkpointRepo;
+        this.accountRepo = accountRepo;
+        this.ledger = ledger;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("verify-ledger")) {
+            return;
+        }
+        Report report = verify();
+        if (report.isOk()) {
+            log.info("Ledger verified: {} postings to {} accounts", report.getPostingCount(),
+                    report.getAccountCount());
+        } else {
+            for (String problem : report.getProblems()) {
+                log.error("Ledger problem: {}", problem);
+            }
+        }
+    }
+
+    /**
+     * Replay the ledger and check it. Changes made while this runs may show up as
+     * differences in balances, so run it while the app is quiet.
+     *
+     * @return what was found
+     */
+    public Report verify() {
+        Report report = new Report();
+        for (Object[] unbalanced : postingRepo.findUnbalancedEntries()) {
+            report.problem(String.format("Journal entry %s is off by %s cents", unbalanced[0], unbalanced[1]));
+        }
+
+        // Each checkpoint's balance as replayed up to the posting it was taken at
+        Map<Integer, BalanceCheckpoint> checkpoints = new HashMap<>();
+        for (BalanceCheckpoint checkpoint : checkpointRepo.findAll()) {
+            checkpoints.put(checkpoint.getAccountId(), checkpoint);
+        }
+        Map<Integer, Long> atCheckpoint = new HashMap<>();
+
+        // Replay every posting in order
+        Map<Integer, Long> balances = new HashMap<>();
+        long total = 0;
+        long lastId = 0;
+        List<Object[]> page = postingRepo.findAfter(lastId, PageRequest.of(0, PAGE_SIZE));
+        while (!page.isEmpty()) {
+            for (Object[] posting : page) {
+                lastId = ((Number) posting[0]).longValue();
+                int accountId = (Integer) posting[1];
+                long amountInCents = ((Number) posting[2]).longValue();
+                balances.merge(accountId, amountInCents, Long::sum);
+                total += amountInCents;
+                BalanceCheckpoint checkpoint = checkpoints.get(accountId);
+                if (checkpoint != null && lastId <= checkpoint.getLastPostingId()) {
+                    atCheckpoint.merge(accountId, amountInCents, Long::sum);
+                }
+                report.postingCount++;
+            }
+            page = postingRepo.findAfter(lastId, PageRequest.of(0, PAGE_SIZE));
+        }
+        if (total != 0) {
+            report.problem(String.format("The ledger is off by %d cents", total));
+        }
+
+        for (BalanceCheckpoint checkpoint : checkpoints.values()) {
+            long replayed = atCheckpoint.getOrDefault(checkpoint.getAccountId(), 0L);
+            if (replayed != checkpoint.getBalanceInCents()) {
+                report.problem(String.format("Checkpoint of account %d has %d cents, the postings it covers add up to %d",
+                        checkpoint.getAccountId(), checkpoint.getBalanceInCents(), replayed));
+            }
+        }
+
+        // Compare every account still in use
+        List<Account> accounts = accountRepo.findAll();
+        List<Integer> accountIds = new ArrayList<>();
+        for (Account account : accounts) {
+            if (!account.isDeleted()) {
+                accountIds.add(account.getId());
+            }
+        }
+        Map<Integer, Long> projected = ledger.getBalancesInCents(accountIds);
+        for (Account account : accounts) {
+            if (account.isDeleted()) {
+                continue;
+            }
+            report.accountCount++;
+            long replayed = balances.getOrDefault(account.getId(), 0L);
+            if (replayed != account.getBalanceInCents()) {
+                report.problem(String.format("Account %d has a balance of %d cents, the ledger has %d",
+                        account.getId(), account.getBalanceInCents(), replayed));
+            }
+            if (replayed != projected.get(account.getId())) {
+                report.problem(String.format("Ledger balance of account %d reads as %d cents, replayed it's %d",
+                        account.getId(), projected.get(account.getId()), replayed));
+            }
+        }
+        log.debug("Replayed {} postings, {} cents net to outside the bank", report.postingCount,
+                balances.getOrDefault(Posting.EXTERNAL_ACCOUNT, 0L));
+        return report;
+    }
+}
@@ -0,0 +1,320 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.carroll.bankapp.jpa.model.OutboxEvent;
+import edu.carroll.bankapp.jpa.repo.OutboxEventRepository;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Hands committed outbox events to every AccountEventListener, in batches and
+ * in id order.
+ *
+ * Events stay in the outbox until every listener has taken them, so delivery
+ * is at least once: an event whose delivery fails (or that was in flight when
+ * the app stopped) is delivered again on a later batch, including after a
+ * restart. Events for an account are never delivered out of order, since a
+ * failed event holds back the account's later events until it goes through or
+ * is given up on after too many attempts.
+ *
+ * Ids come from one in-memory pool per app, handed out while the account's row
+ * is locked, so an account's events are numbered in the order they happened.
+ * That only holds on a single node.
+ */
+@Component
+public class OutboxDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private final OutboxEventRepository outboxRepo;
+    private final ObjectProvider<AccountEventListener> listeners;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pollMs;
+    private final int maxAttempts;
+    private final long retentionMs;
+
+    private final Object signal = new Object();
+    private boolean woken;
+    private volatile Thread worker;
+
+    // Progress metrics
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    /**
+     * Inject dependencies
+     *
+     * @param outboxRepo         - JPA repo for querying the outbox
+     * @param listeners          - who events are delivered to
+     * @param transactionManager - for marking events as dispatched
+     * @param enabled            - whether to dispatch events in the background
+     * @param batchSize          - the maximum number of events read at once
+     * @param pollMs             - how often to look for events when nobody
+     *                           wakes the dispatcher up
+     * @param maxAttempts        - failed deliveries before an event is given up on
+     * @param retentionMs        - how long dispatched events are kept for replay
+     */
+    public OutboxDispatcher(OutboxEventRepository outboxRepo, ObjectProvider<AccountEventListener> listeners,
+            PlatformTransactionManager transactionManager,
+            @Value("${bankapp.outbox.enabled:true}") boolean enabled,
+            @Value("${bankapp.outbox.batch-size:200}") int batchSize,
+            @Value("${bankapp.outbox.poll-ms:1000}") long pollMs,
+            @Value("${bankapp.outbox.max-attempts:10}") int maxAttempts,
+            @Value("${bankapp.outbox.retention-ms:86400000}") long retentionMs) {
+        this.outboxRepo = outboxRepo;
+        this.listeners = listeners;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollMs = pollMs;
+        this.maxAttempts = maxAttempts;
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * Start dispatching once the app is up. Anything left in the outbox from
+     * before a restart goes out first.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || worker != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "outbox-dispatcher");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop dispatching. Undelivered events stay in the outbox.
+     */
+    @PreDestroy
+    public void stop() {
+        Thread thread = worker;
+        worker = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Tell the dispatcher that new events have been committed
+     */
+    public void wakeUp() {
+        synchronized (signal) {
+            woken = true;
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * Dispatch batches until stopped, waiting between them when there's nothing
+     * to do
+     */
+    private void run() {
+        while (worker == Thread.currentThread()) {
+            try {
+                // Keep going while whole batches go through. Anything that
+                // failed waits for the next poll.
+                int dispatched;
+                do {
+                    dispatched = dispatchBatch();
+                } while (dispatched == batchSize && worker == Thread.currentThread());
+                synchronized (signal) {
+                    if (!woken) {
+                        signal.wait(pollMs);
+                    }
+                    woken = false;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Outbox dispatch failed", e);
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deliver the oldest batch of undispatched events
+     *
+     * @return the number of events marked as dispatched
+     */
+    public synchronized int dispatchBatch() {
+        List<OutboxEvent> batch = outboxRepo.findByDispatchedAtIsNullOrderByIdAsc(PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            lagMillis.set(0);
+            return 0;
+        }
+        lagMillis.set(Math.max(0, System.currentTimeMillis() - batch.get(0).getCreatedAt().getTime()));
+
+        List<Long> delivered = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        // Accounts with an earlier event that didn't go through
+        Set<Integer> heldBack = new HashSet<>();
+        for (OutboxEvent outboxEvent : batch) {
+            if (heldBack.contains(outboxEvent.getAccountId())) {
+                continue;
+            }
+            if (deliver(toAccountEvent(outboxEvent))) {
+                delivered.add(outboxEvent.getId());
+            } else if (outboxEvent.getAttempts() + 1 >= maxAttempts) {
+                log.error("Giving up on outbox event {} after {} attempts", outboxEvent.getId(), maxAttempts);
+                delivered.add(outboxEvent.getId());
+            } else {
+                failed.add(outboxEvent.getId());
+                heldBack.add(outboxEvent.getAccountId());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!delivered.isEmpty()) {
+                outboxRepo.markDispatched(delivered, new Date());
+            }
+            if (!failed.isEmpty()) {
+                outboxRepo.recordFailedAttempt(failed);
+            }
+        });
+        dispatchedCount.addAndGet(delivered.size());
+        failedCount.addAndGet(failed.size());
+        return delivered.size();
+    }
+
+    /**
+     * Hand an event to every listener
+     *
+     * @param event - the event to deliver
+     * @return true if every listener took it
+     */
+    private boolean deliver(AccountEvent event) {
+        boolean ok = true;
+        for (AccountEventListener listener : listeners) {
+            ok &= deliver(event, listener);
+        }
+        return ok;
+    }
+
+    /**
+     * Hand an event to one listener
+     *
+     * @param event    - the event to deliver
+     * @param listener - who to deliver it to
+     * @return true if the listener took it
+     */
+    private boolean deliver(AccountEvent event, AccountEventListener listener) {
+        try {
+            listener.onAccountEvent(event);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Listener {} failed on {}", listener.getClass().getSimpleName(), event, e);
+            return false;
+        }
+    }
+
+    /**
+     * Deliver retained events again, dispatched or not, starting from the given
+     * id. Lets a listener that lost its state (or a new one) catch up.
+     *
+     * @param fromId   - the first event to deliver
+     * @param listener - who to deliver them to
+     * @return the number of events delivered
+     */
+    public int replay(long fromId, AccountEventListener listener) {
+        int replayed = 0;
+        long nextId = fromId;
+        List<OutboxEvent> page = outboxRepo.findByIdGreaterThanEqualOrderByIdAsc(nextId, PageRequest.of(0, batchSize));
+        while (!page.isEmpty()) {
+            for (OutboxEvent outboxEvent : page) {
+                if (!deliver(toAccountEvent(outboxEvent), listener)) {
+                    return replayed;
+                }
+                replayed++;
+                nextId = outboxEvent.getId() + 1;
+            }
+            page = outboxRepo.findByIdGreaterThanEqualOrderByIdAsc(nextId, PageRequest.of(0, batchSize));
+        }
+        return replayed;
+    }
+
+    /**
+     * Periodically delete dispatched events that are too old to replay
+     */
+    @Scheduled(initialDelayString = "${bankapp.outbox.cleanup-interval-ms:600000}", fixedDelayString = "${bankapp.outbox.cleanup-interval-ms:600000}")
+    public void scheduledCleanup() {
+        try {
+            int deleted = deleteExpiredEvents();
+            if (deleted > 0) {
+                log.info("Deleted {} dispatched outbox events", deleted);
+            }
+        } catch (RuntimeException e) {
+            // Retried on the next run
+            log.error("Outbox cleanup failed", e);
+        }
+    }
+
+    /**
+     * Delete dispatched events older than the retention period
+     *
+     * @return the number of events deleted
+     */
+    public int deleteExpiredEvents() {
+        Date cutoff = new Date(System.currentTimeMillis() - retentionMs);
+        return transactionTemplate.execute(status -> outboxRepo.deleteDispatchedBefore(cutoff));
+    }
+
+    /**
+     * Convert an outbox row to the event listeners see
+     *
+     * @param outboxEvent - the row
+     * @return the event
+     */
+    private static AccountEvent toAccountEvent(OutboxEvent outboxEvent) {
+        return new AccountEvent(outboxEvent.getId(), AccountEvent.Type.valueOf(outboxEvent.getEventType()),
+                outboxEvent.getUserId(), outboxEvent.getAccountId(), outboxEvent.getCreatedAt().getTime());
+    }
+
+    /**
+     * How far behind the dispatcher was on its last batch
+     *
+     * @return the age in milliseconds of the oldest undispatched event, or 0
+     */
+    public long getLagMillis() {
+        return lagMillis.get();
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getPendingCount() {
+        return outboxRepo.countByDispatchedAtIsNull();
+    }
+}
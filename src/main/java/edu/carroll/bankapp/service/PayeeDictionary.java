@@ -0,0 +1,272 @@
+package edu.carroll.bankapp.service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.carroll.bankapp.jpa.model.Payee;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.PayeeRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+
+/**
+ * Each user's dictionary of payees, so transactions can refer to a payee by id
+ * instead of repeating its name.
+ *
+ * Payees are interned: the first use of a name adds it to the user's
+ * dictionary and later uses find it again. Recently used payees are kept in
+ * memory so the write path usually doesn't touch the payee table at all.
+ * A payee added by a database transaction is only shared with others once it
+ * commits, so nothing ever refers to a payee that was rolled back.
+ *
+ * At startup, transactions from before the dictionary are moved over to it a
+ * chunk at a time. A database from before the dictionary needs the payee table
+ * and the transaction.payee_id column first, see
+ * db/upgrade/07-payee-dictionary.sql.
+ */
+@Component
+public class PayeeDictionary {
+    private static final Logger log = LoggerFactory.getLogger(PayeeDictionary.class);
+
+    private final PayeeRepository payeeRepo;
+    private final TransactionRepository transactionRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxEntries;
+    private final int backfillChunkSize;
+
+    // Least recently used first, guarded by itself. Payees are immutable and
+    // detached, so they're safe to share.
+    private final LinkedHashMap<Key, Payee> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+
+    /**
+     * A user and one of their payee names
+     */
+    private static class Key {
+        private final int ownerId;
+        private final String name;
+
+        private Key(int ownerId, String name) {
+            this.ownerId = ownerId;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return ownerId == other.ownerId && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ownerId, name);
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param payeeRepo          - JPA repo for the payee dictionary
+     * @param transactionRepo    - JPA repo for moving old transactions over
+     * @param transactionManager - to move each chunk of old transactions in its
+     *                           own database transaction
+     * @param maxEntries         - the number of payees kept in memory
+     * @param backfillChunkSize  - the number of old transactions moved over at a
+     *                           time
+     */
+    public PayeeDictionary(PayeeRepository payeeRepo, TransactionRepository transactionRepo,
+            PlatformTransactionManager transactionManager,
+            @Value("${bankapp.payee-dictionary.max-entries:100000}") int maxEntries,
+            @Value("${bankapp.payee-dictionary.backfill-chunk-size:1000}") int backfillChunkSize) {
+        this.payeeRepo = payeeRepo;
+        this.transactionRepo = transactionRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxEntries = maxEntries;
+        this.backfillChunkSize = backfillChunkSize;
+    }
+
+    /**
+     * Find the given user's payee with the given name, adding it to their
+     * dictionary if it isn't there yet. Call this inside the database transaction
+     * that uses the payee.
+     *
+     * @param ownerId - the user
+     * @param name    - the payee's name
+     * @return the payee, or null for an empty name
+     */
+    public Payee intern(int ownerId, String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        Key key = new Key(ownerId, name);
+        synchronized (cache) {
+            Payee payee = cache.get(key);
+            if (payee != null) {
+                hits++;
+                return payee;
+            }
+            misses++;
+        }
+
+        // Payees added earlier in this database transaction aren't shared yet
+        Map<Key, Payee> added = addedInTransaction();
+        Payee payee = added == null ? null : added.get(key);
+        if (payee != null) {
+            return payee;
+        }
+        payee = find(ownerId, name);
+        if (payee != null) {
+            remember(key, payee);
+            return payee;
+        }
+
+        payee = payeeRepo.save(new Payee(ownerId, name));
+        if (added != null) {
+            added.put(key, payee);
+        } else {
+            remember(key, payee);
+        }
+        return payee;
+    }
+
+    /**
+     * Look up a payee, making sure the name matches exactly even if the database
+     * ignores case
+     */
+    private Payee find(int ownerId, String name) {
+        List<Payee> payees = payeeRepo.findByOwnerIdAndName(ownerId, name);
+        for (Payee payee : payees) {
+            if (payee.getName().equals(name)) {
+                return payee;
+            }
+        }
+        return null;
+    }
+
+    private void remember(Key key, Payee payee) {
+        synchronized (cache) {
+            cache.put(key, payee);
+            Iterator<Payee> iterator = cache.values().iterator();
+            while (cache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the payees added by the current database transaction, which are shared
+     * once it commits
+     *
+     * @return the added payees, or null outside of a database transaction
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Key, Payee> addedInTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Map<Key, Payee> added = (Map<Key, Payee>) TransactionSynchronizationManager.getResource(this);
+        if (added == null) {
+            Map<Key, Payee> newlyAdded = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, newlyAdded);
+            AfterCommit.run(() -> {
+                for (Map.Entry<Key, Payee> payee : newlyAdded.entrySet()) {
+                    remember(payee.getKey(), payee.getValue());
+                }
+            });
+            AfterCommit.whenComplete(committed -> TransactionSynchronizationManager.unbindResourceIfPossible(this));
+            added = newlyAdded;
+        }
+        return added;
+    }
+
+    /**
+     * Move transactions from before the dictionary over to it once the app is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        try {
+            long moved = backfill();
+            if (moved > 0) {
+                log.info("Moved the payees of {} transactions into the payee dictionary", moved);
+            }
+        } catch (RuntimeException e) {
+            log.error("Moving payees into the payee dictionary failed", e);
+        }
+    }
+
+    /**
+     * Move every transaction with its payee stored on the row over to the
+     * dictionary, a chunk at a time
+     *
+     * @return the number of transactions moved
+     */
+    public long backfill() {
+        long moved = 0;
+        while (true) {
+            Integer chunk = transactionTemplate.execute(status -> {
+                List<Transaction> transactions = transactionRepo.findWithoutPayee(
+                        PageRequest.of(0, backfillChunkSize));
+                for (Transaction transaction : transactions) {
+                    transaction.setPayee(intern(transaction.getOwner().getId(), transaction.getToFrom()));
+                }
+                return transactions.size();
+            });
+            moved += chunk;
+            if (chunk < backfillChunkSize) {
+                return moved;
+            }
+        }
+    }
+
+    /**
+     * Gets how many payees are in memory
+     *
+     * @return number of payees
+     */
+    public int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Gets how many lookups were answered from memory
+     *
+     * @return number of hits
+     */
+    public long getHitCount() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    /**
+     * Gets how many lookups had to go to the database
+     *
+     * @return number of misses
+     */
+    public long getMissCount() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package edu.carroll.bankapp.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.carroll.bankapp.jpa.model.PayeeSketch;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.PayeeSketchRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Each user's top payees, by number of transactions and by money spent,
+ * without grouping all of their transactions every time they're shown.
+ *
+ * Every user has two Space-Saving summaries of bankapp.payee-sketch.counters
+ * counters each, updated as transactions are added. The totals they report are
+ * estimates with an error bound, and take the same small amount of memory no
+ * matter how many transactions or payees a user has.
+ *
+ * A user's summaries are loaded the first time they're asked for. They're
+ * saved to the database every bankapp.payee-sketch.persist-interval-ms, and
+ * loading one picks up the transactions added since it was saved. Users
+ * without a saved copy, or who ask for a recount, are counted from scratch with
+ * one query. Deleted and edited transactions aren't taken back out until the
+ * next recount.
+ *
+ * Each user has a version that goes up whenever their summaries are loaded or
+ * recounted, as that can change them without any account changing, so pages
+ * showing the top payees know to show them again.
+ */
+@Component
+public class PayeeSketches {
+    private static final Logger log = LoggerFactory.getLogger(PayeeSketches.class);
+    private static final int CATCH_UP_PAGE_SIZE = 1000;
+
+    private final PayeeSketchRepository sketchRepo;
+    private final TransactionRepository transactionRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final int counters;
+    private final int maxUsers;
+
+    // Least recently used first. Everything is guarded by this map.
+    private final LinkedHashMap<Integer, UserSketch> users = new LinkedHashMap<>(16, 0.75f, true);
+    // Changed summaries dropped from memory before they were saved
+    private final Map<Integer, PayeeSketch> unsaved = new HashMap<>();
+    // Each user's version, for users whose summaries have been loaded since the
+    // app started. Taken from versionCounter so a version is never reused, even
+    // for users who were dropped.
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private long versionCounter;
+    private long loads;
+    private long recounts;
+
+    /**
+     * A user's top payees so far, as reported to them
+     */
+    public static class TopPayees {
+        private final List<SpaceSaving.Estimate> byCount;
+        private final List<SpaceSaving.Estimate> bySpend;
+        private final long transactions;
+        private final long spentInCents;
+        private final long countError;
+        private final long spendError;
+
+        private TopPayees(UserSketch sketch, int limit) {
+            this.byCount = sketch.byCount.top(limit);
+            this.bySpend = sketch.bySpend.top(limit);
+            this.transactions = sketch.byCount.getTotal();
+            this.spentInCents = sketch.bySpend.getTotal();
+            this.countError = sketch.byCount.getMaxError();
+            this.spendError = sketch.bySpend.getMaxError();
+        }
+
+        /**
+         * Gets the payees with the most transactions, most first
+         *
+         * @return estimated numbers of transactions
+         */
+        public List<SpaceSaving.Estimate> getByCount() {
+            return byCount;
+        }
+
+        /**
+         * Gets the payees the most money was spent on, in cents, most first
+         *
+         * @return estimated amounts spent
+         */
+        public List<SpaceSaving.Estimate> getBySpend() {
+            return bySpend;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+
+        public long getSpentInCents() {
+            return spentInCents;
+        }
+
+        /**
+         * Gets the most transactions a payee that isn't listed could have
+         *
+         * @return the bound
+         */
+        public long getCountError() {
+            return countError;
+        }
+
+        /**
+         * Gets the most money, in cents, that could have been spent on a payee
+         * that isn't listed
+         *
+         * @return the bound
+         */
+        public long getSpendError() {
+            return spendError;
+        }
+    }
+
+    /**
+     * One user's summaries, or a placeholder while they're being loaded
+     */
+    private static class UserSketch {
+        private SpaceSaving byCount;
+        private SpaceSaving bySpend;
+        private int lastTransactionId;
+        private boolean loaded;
+        private boolean dirty;
+        // Goes up whenever a transaction comes in while loading, so what was
+        // loaded isn't kept without it
+        private long generation;
+
+        private void add(int id, String payee, long amountInCents) {
+            if (payee == null || payee.isEmpty()) {
+                return;
+            }
+            byCount.add(payee, 1);
+            bySpend.add(payee, -amountInCents);
+            lastTransactionId = Math.max(lastTransactionId, id);
+        }
+
+        private PayeeSketch save(int ownerId) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                byCount.write(out);
+                bySpend.write(out);
+            } catch (IOException e) {
+                // Writing to memory doesn't fail
+                throw new IllegalStateException(e);
+            }
+            return new PayeeSketch(ownerId, lastTransactionId, bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param sketchRepo         - JPA repo for saved summaries
+     * @param transactionRepo    - JPA repo for counting transactions
+     * @param transactionManager - to save summaries in their own database
+     *                           transaction
+     * @param counters           - the number of payees each summary watches
+     * @param maxUsers           - the number of users whose summaries are kept
+     *                           in memory
+     */
+    public PayeeSketches(PayeeSketchRepository sketchRepo, TransactionRepository transactionRepo,
+            PlatformTransactionManager transactionManager,
+            @Value("${bankapp.payee-sketch.counters:64}") int counters,
+            @Value("${bankapp.payee-sketch.max-users:10000}") int maxUsers) {
+        this.sketchRepo = sketchRepo;
+        this.transactionRepo = transactionRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.counters = counters;
+        this.maxUsers = maxUsers;
+    }
+
+    /**
+     * Get a user's top payees
+     *
+     * @param ownerId - the user
+     * @param limit   - the most payees to list each way
+     * @return their top payees
+     */
+    public TopPayees top(int ownerId, int limit) {
+        UserSketch sketch;
+        long generation;
+        synchronized (users) {
+            sketch = users.get(ownerId);
+            if (sketch != null && sketch.loaded) {
+                return new TopPayees(sketch, limit);
+            }
+            if (sketch == null) {
+                sketch = new UserSketch();
+                users.put(ownerId, sketch);
+                evictOverflow();
+            }
+            generation = sketch.generation;
+        }
+
+        // Load without holding the lock, other users shouldn't have to wait
+        UserSketch loaded = load(ownerId);
+
+        synchronized (users) {
+            loads++;
+            install(ownerId, sketch, generation, loaded);
+            return new TopPayees(loaded, limit);
+        }
+    }
+
+    /**
+     * Count a user's top payees again from all of their transactions, and save
+     * the result
+     *
+     * @param ownerId - the user
+     */
+    public void recount(int ownerId) {
+        UserSketch sketch;
+        long generation;
+        synchronized (users) {
+            sketch = users.get(ownerId);
+            if (sketch == null) {
+                sketch = new UserSketch();
+                users.put(ownerId, sketch);
+                evictOverflow();
+            }
+            // Transactions coming in from now on go to the recount, not the old
+            // summaries
+            sketch.loaded = false;
+            sketch.generation++;
+            generation = sketch.generation;
+            unsaved.remove(ownerId);
+        }
+
+        UserSketch counted = count(ownerId);
+        catchUp(ownerId, counted);
+        PayeeSketch saved = counted.save(ownerId);
+        transactionTemplate.executeWithoutResult(status -> sketchRepo.save(saved));
+
+        synchronized (users) {
+            recounts++;
+            counted.dirty = false;
+            install(ownerId, sketch, generation, counted);
+        }
+    }
+
+    /**
+     * Keep loaded summaries if no transaction came in while loading them.
+     * Call while holding the lock.
+     */
+    private void install(int ownerId, UserSketch placeholder, long generation, UserSketch loaded) {
+        if (users.get(ownerId) == placeholder && !placeholder.loaded && placeholder.generation == generation) {
+            placeholder.byCount = loaded.byCount;
+            placeholder.bySpend = loaded.bySpend;
+            placeholder.lastTransactionId = loaded.lastTransactionId;
+            placeholder.dirty = loaded.dirty;
+            placeholder.loaded = true;
+            versions.put(ownerId, ++versionCounter);
+        }
+    }
+
+    /**
+     * Gets the version of a user's top payees, which goes up whenever their
+     * summaries are loaded or recounted. New transactions aren't counted, as they
+     * change their account's revision anyway.
+     *
+     * @param ownerId - the user
+     * @return the version, 0 if their summaries haven't been loaded since the
+     *         app started
+     */
+    public long getVersion(int ownerId) {
+        synchronized (users) {
+            return versions.getOrDefault(ownerId, 0L);
+        }
+    }
+
+    /**
+     * Load a user's summaries: the saved copy and what's happened since, or a
+     * count from scratch
+     */
+    private UserSketch load(int ownerId) {
+        UserSketch sketch = null;
+        PayeeSketch saved;
+        synchronized (users) {
+            saved = unsaved.remove(ownerId);
+        }
+        if (saved == null) {
+            saved = sketchRepo.findById(ownerId).orElse(null);
+        }
+        if (saved != null) {
+            sketch = read(saved);
+        }
+        if (sketch == null) {
+            sketch = count(ownerId);
+        }
+        catchUp(ownerId, sketch);
+        return sketch;
+    }
+
+    /**
+     * Read saved summaries back
+     *
+     * @return the summaries, or null if they can't be used
+     */
+    private UserSketch read(PayeeSketch saved) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(saved.getData()))) {
+            UserSketch sketch = new UserSketch();
+            sketch.byCount = SpaceSaving.read(in);
+            sketch.bySpend = SpaceSaving.read(in);
+            sketch.lastTransactionId = saved.getLastTransactionId();
+            // Saved with a different number of counters, count again instead
+            if (sketch.byCount.getCapacity() != counters || sketch.bySpend.getCapacity() != counters) {
+                return null;
+            }
+            return sketch;
+        } catch (IOException e) {
+            log.warn("Couldn't read the saved top payees of user {}, counting again: {}", saved.getOwnerId(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Count a user's payees from scratch, from their totals. The largest go in
+     * first, so they get counters of their own with no error.
+     */
+    private UserSketch count(int ownerId) {
+        UserSketch sketch = new UserSketch();
+        sketch.byCount = new SpaceSaving(counters);
+        sketch.bySpend = new SpaceSaving(counters);
+        sketch.dirty = true;
+        List<Object[]> totals = new ArrayList<>(transactionRepo.findPayeeTotals(ownerId));
+        totals.sort(Comparator.comparingLong((Object[] row) -> (Long) row[1]).reversed());
+        for (Object[] row : totals) {
+            sketch.byCount.add((String) row[0], (Long) row[1]);
+            sketch.lastTransactionId = Math.max(sketch.lastTransactionId, (Integer) row[3]);
+        }
+        totals.sort(Comparator.comparingLong((Object[] row) -> (Long) row[2]).reversed());
+        for (Object[] row : totals) {
+            sketch.bySpend.add((String) row[0], (Long) row[2]);
+        }
+        return sketch;
+    }
+
+    /**
+     * Add the transactions since the summaries were last saved
+     */
+    private void catchUp(int ownerId, UserSketch sketch) {
+        while (true) {
+            List<Object[]> rows = transactionRepo.findForPayeeSketch(ownerId, sketch.lastTransactionId,
+                    PageRequest.of(0, CATCH_UP_PAGE_SIZE));
+            for (Object[] row : rows) {
+                sketch.add((Integer) row[0], (String) row[1], (Long) row[2]);
+                // Transactions without a payee still count as caught up on
+                sketch.lastTransactionId = Math.max(sketch.lastTransactionId, (Integer) row[0]);
+                sketch.dirty = true;
+            }
+            if (rows.size() < CATCH_UP_PAGE_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Count a new transaction once its database transaction commits. Transfers
+     * aren't counted, their payees are accounts.
+     *
+     * @param transaction - the new transaction
+     */
+    public void added(Transaction transaction) {
+        if (transaction.getTransferPairId() != null || transaction.getAccount().getOwner() == null) {
+            return;
+        }
+        int ownerId = transaction.getAccount().getOwner().getId();
+        int id = transaction.getId();
+        String payee = transaction.getToFrom();
+        long amountInCents = transaction.getAmountInCents();
+        Runnable count = () -> {
+            synchronized (users) {
+                // Users whose summaries aren't in memory catch up when they're loaded
+                UserSketch sketch = users.get(ownerId);
+                if (sketch == null) {
+                    return;
+                }
+                if (!sketch.loaded) {
+                    sketch.generation++;
+                    return;
+                }
+                sketch.add(id, payee, amountInCents);
+                sketch.dirty = true;
+            }
+        };
+        AfterCommit.run(count);
+    }
+
+    /**
+     * Drop least recently used users, keeping their changes to be saved. Call
+     * while holding the lock.
+     */
+    private void evictOverflow() {
+        Iterator<Map.Entry<Integer, UserSketch>> iterator = users.entrySet().iterator();
+        while (users.size() > maxUsers && iterator.hasNext()) {
+            Map.Entry<Integer, UserSketch> user = iterator.next();
+            if (user.getValue().loaded && user.getValue().dirty) {
+                unsaved.put(user.getKey(), user.getValue().save(user.getKey()));
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Save every user's summaries that changed since they were last saved
+     *
+     * @return the number of users saved
+     */
+    @Scheduled(initialDelayString = "${bankapp.payee-sketch.persist-interval-ms:60000}", fixedDelayString = "${bankapp.payee-sketch.persist-interval-ms:60000}")
+    public int persist() {
+        List<PayeeSketch> changed;
+        synchronized (users) {
+            changed = new ArrayList<>(unsaved.values());
+            unsaved.clear();
+            for (Map.Entry<Integer, UserSketch> user : users.entrySet()) {
+                if (user.getValue().loaded && user.getValue().dirty) {
+                    changed.add(user.getValue().save(user.getKey()));
+                    user.getValue().dirty = false;
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> sketchRepo.saveAll(changed));
+        } catch (RuntimeException e) {
+            log.error("Saving the top payees of {} users failed, trying again later", changed.size(), e);
+            synchronized (users) {
+                for (PayeeSketch sketch : changed) {
+                    UserSketch user = users.get(sketch.getOwnerId());
+                    if (user != null && user.loaded) {
+                        user.dirty = true;
+                    } else {
+                        unsaved.putIfAbsent(sketch.getOwnerId(), sketch);
+                    }
+                }
+            }
+            return 0;
+        }
+        log.debug("Saved the top payees of {} users", changed.size());
+        return changed.size();
+    }
+
+    /**
+     * Save what changed before shutting down
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            persist();
+        } catch (RuntimeException e) {
+            log.error("Saving top payees at shutdown failed", e);
+        }
+    }
+
+    /**
+     * Gets how many users' summaries are in memory
+     *
+     * @return number of users
+     */
+    public int getUserCount() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    /**
+     * Gets how many times summaries were loaded
+     *
+     * @return number of loads
+     */
+    public long getLoadCount() {
+        synchronized (users) {
+            return loads;
+        }
+    }
+
+    /**
+     * Gets how many times users were counted again from scratch on request
+     *
+     * @return number of recounts
+     */
+    public long getRecountCount() {
+        synchronized (users) {
+            return recounts;
+        }
+    }
+}
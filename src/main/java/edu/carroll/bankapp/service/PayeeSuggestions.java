@@ -0,0 +1,435 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+
+/**
+ * Suggests payees (the to/from of a transaction) the user has used before, for
+ * completing what they're typing.
+ *
+ * Each user's payees are kept in a prefix tree, built from the database the
+ * first time they're asked for. Every node keeps its best few payees, so a
+ * lookup only walks the typed prefix. Payees are ranked by a score that adds
+ * up every use, with each use counting half as much per HALF_LIFE_MILLIS of
+ * age. The score is kept as a logarithm from a fixed starting point, so older
+ * scores never have to be decayed and a payee's rank only changes when it's
+ * used.
+ *
+ * Trees of users who haven't asked for suggestions in a while are dropped, and
+ * so are the least recently used ones when they add up to more than
+ * bankapp.payees.max-bytes.
+ */
+@Component
+public class PayeeSuggestions {
+    private static final Logger log = LoggerFactory.getLogger(PayeeSuggestions.class);
+    /**
+     * The most suggestions given at once
+     */
+    public static final int MAX_SUGGESTIONS = 8;
+    private static final long HALF_LIFE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    // Rough sizes of the objects making up a tree, for the memory limit
+    private static final long NODE_BYTES = 64;
+    private static final long PAYEE_BYTES = 56;
+    private static final long USER_BYTES = 128;
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Payee[] NO_PAYEES = new Payee[0];
+
+    private final TransactionRepository transactionRepo;
+    private final long maxBytes;
+    private final long idleMillis;
+
+    // Least recently used first. Everything is guarded by this map.
+    private final LinkedHashMap<Integer, UserPayees> users = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long builds;
+    private long evictions;
+
+    /**
+     * A payee and how much it has been used
+     */
+    private static class Payee {
+        private String name;
+        private double score;
+        private long lastUsed;
+
+        /**
+         * Whether this payee ranks above the other
+         */
+        private boolean outranks(Payee other) {
+            if (score != other.score) {
+                return score > other.score;
+            }
+            return lastUsed > other.lastUsed;
+        }
+    }
+
+    /**
+     * A node of the tree, for one more character of the payee's name
+     */
+    private static class Node {
+        // Children sorted by their character
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        // The payee whose name ends here, if any
+        private Payee payee;
+        // The best payees at or below this node, best first
+        private Payee[] top = NO_PAYEES;
+
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node addChild(char key) {
+            int index = -Arrays.binarySearch(keys, key) - 1;
+            Node child = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(keys, index, keys, index + 1, keys.length - index - 1);
+            System.arraycopy(children, index, children, index + 1, children.length - index - 1);
+            keys[index] = key;
+            children[index] = child;
+            return child;
+        }
+
+        /**
+         * Move a payee whose score just went up into its place among the best
+         */
+        private void promote(Payee payee) {
+            int index = Arrays.asList(top).indexOf(payee);
+            if (index < 0) {
+                if (top.length < MAX_SUGGESTIONS) {
+                    top = Arrays.copyOf(top, top.length + 1);
+                } else if (!payee.outranks(top[top.length - 1])) {
+                    return;
+                }
+                index = top.length - 1;
+                top[index] = payee;
+            }
+            while (index > 0 && payee.outranks(top[index - 1])) {
+                top[index] = top[index - 1];
+                top[--index] = payee;
+            }
+        }
+    }
+
+    /**
+     * One user's payees. Root is null while they're being loaded.
+     */
+    private static class UserPayees {
+        private Node root;
+        // Bumped by every use while loading, so a load that missed one is thrown away
+        private long generation;
+        private long bytes = USER_BYTES;
+        private long lastAsked = System.currentTimeMillis();
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionRepo - JPA repo for loading the payees a user has used
+     * @param maxBytes        - roughly how much memory the trees may use
+     * @param idleMinutes     - how long a user's tree is kept after they last
+     *                        asked for suggestions
+     */
+    public PayeeSuggestions(TransactionRepository transactionRepo,
+            @Value("${bankapp.payees.max-bytes:16777216}") long maxBytes,
+            @Value("${bankapp.payees.idle-minutes:30}") long idleMinutes) {
+        this.transactionRepo = transactionRepo;
+        this.maxBytes = maxBytes;
+        this.idleMillis = idleMinutes * 60 * 1000;
+    }
+
+    /**
+     * Normalize a payee name for matching, ignoring case and surrounding space
+     *
+     * @param name - the name
+     * @return the name to match on
+     */
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Turn a use at the given time into a score. Scores are log2 of the sum of
+     * 2^(time / half life) over every use.
+     *
+     * @param uses - the number of uses
+     * @param time - when they happened (or the last of them), in milliseconds
+     * @return the score
+     */
+    private static double score(long uses, long time) {
+        return Math.log(uses) / Math.log(2) + (double) time / HALF_LIFE_MILLIS;
+    }
+
+    /**
+     * Add two scores
+     */
+    private static double addScores(double a, double b) {
+        double high = Math.max(a, b);
+        double low = Math.min(a, b);
+        return high + Math.log1p(Math.pow(2, low - high)) / Math.log(2);
+    }
+
+    /**
+     * Suggest payees the user has used that start with what they've typed
+     *
+     * @param userId - the user
+     * @param prefix - what they've typed
+     * @param limit  - the most suggestions to give, at most MAX_SUGGESTIONS
+     * @return payee names, best first
+     */
+    public List<String> suggest(int userId, String prefix, int limit) {
+        String typed = key(prefix == null ? "" : prefix);
+        UserPayees payees;
+        long generation;
+        synchronized (users) {
+            payees = users.get(userId);
+            if (payees != null && payees.root != null) {
+                payees.lastAsked = System.currentTimeMillis();
+                return find(payees.root, typed, limit);
+            }
+            if (payees == null) {
+                payees = new UserPayees();
+                users.put(userId, payees);
+                bytes += payees.bytes;
+            }
+            generation = payees.generation;
+        }
+
+        // Load without holding the lock, other users shouldn't have to wait
+        UserPayees loaded = load(userId);
+
+        synchronized (users) {
+            builds++;
+            // Only keep what we loaded if nothing was used while we were loading
+            if (users.get(userId) == payees && payees.root == null && payees.generation == generation) {
+                payees.root = loaded.root;
+                bytes += loaded.bytes - payees.bytes;
+                payees.bytes = loaded.bytes;
+                evictOverflow(userId);
+            }
+            return find(loaded.root, typed, limit);
+        }
+    }
+
+    /**
+     * Find the best payees starting with a prefix
+     */
+    private static List<String> find(Node root, String prefix, int limit) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        List<String> names = new ArrayList<>();
+        if (node != null) {
+            for (int i = 0; i < node.top.length && i < limit; i++) {
+                names.add(node.top[i].name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Build a user's tree from the payees of their transactions
+     */
+    private UserPayees load(int userId) {
+        long start = System.currentTimeMillis();
+        UserPayees loaded = new UserPayees();
+        loaded.root = new Node();
+        loaded.bytes += NODE_BYTES;
+        // Every use of a payee isn't loaded, so treat them as all happening at once
+        // on its last use
+        List<Object[]> usage = transactionRepo.findPayeeUsage(userId);
+        for (Object[] row : usage) {
+            String name = (String) row[0];
+            long uses = ((Number) row[1]).longValue();
+            long lastUsed = ((Date) row[2]).getTime();
+            add(loaded, name, score(uses, lastUsed), lastUsed);
+        }
+        log.debug("Loaded {} payees for user {} in {} ms", usage.size(), userId, System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * Add uses of a payee to a tree
+     *
+     * @param payees   - the user's tree
+     * @param name     - the payee
+     * @param score    - the score of the uses
+     * @param lastUsed - when the last of them happened
+     */
+    private static void add(UserPayees payees, String name, double score, long lastUsed) {
+        String key = key(name);
+        if (key.isEmpty()) {
+            return;
+        }
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = payees.root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                child = node.addChild(key.charAt(i));
+                payees.bytes += NODE_BYTES;
+            }
+            node = child;
+            path.add(node);
+        }
+
+        Payee payee = node.payee;
+        if (payee == null) {
+            payee = new Payee();
+            payee.name = name.trim();
+            payee.score = score;
+            payee.lastUsed = lastUsed;
+            node.payee = payee;
+            payees.bytes += PAYEE_BYTES + 2L * key.length();
+        } else {
+            payee.score = addScores(payee.score, score);
+            // Show it the way it was last typed
+            if (lastUsed >= payee.lastUsed) {
+                payee.name = name.trim();
+                payee.lastUsed = lastUsed;
+            }
+        }
+        for (Node onPath : path) {
+            onPath.promote(payee);
+        }
+    }
+
+    /**
+     * Count a new transaction's payee once its database transaction commits
+     *
+     * @param transaction - the saved transaction
+     */
+    public void used(Transaction transaction) {
+        if (transaction.getAccount() == null || transaction.getAccount().getOwner() == null
+                || transaction.getToFrom() == null) {
+            return;
+        }
+        int userId = transaction.getAccount().getOwner().getId();
+        String name = transaction.getToFrom();
+        long time = transaction.getDate() == null ? System.currentTimeMillis() : transaction.getDate().getTime();
+        AfterCommit.run(() -> used(userId, name, time));
+    }
+
+    private void used(int userId, String name, long time) {
+        synchronized (users) {
+            // Users who haven't asked for suggestions don't need their tree updated
+            UserPayees payees = users.get(userId);
+            if (payees == null) {
+                return;
+            }
+            if (payees.root == null) {
+                payees.generation++;
+                return;
+            }
+            long before = payees.bytes;
+            add(payees, name, score(1, time), time);
+            bytes += payees.bytes - before;
+            evictOverflow(userId);
+        }
+    }
+
+    /**
+     * Drop the trees of users who haven't asked for suggestions in a while
+     */
+    @Scheduled(fixedDelayString = "${bankapp.payees.idle-check-ms:60000}")
+    public void evictIdle() {
+        try {
+            long idleSince = System.currentTimeMillis() - idleMillis;
+            synchronized (users) {
+                Iterator<UserPayees> iterator = users.values().iterator();
+                while (iterator.hasNext()) {
+                    UserPayees payees = iterator.next();
+                    if (payees.lastAsked <= idleSince) {
+                        iterator.remove();
+                        bytes -= payees.bytes;
+                        evictions++;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Couldn't drop idle payee suggestions", e);
+        }
+    }
+
+    /**
+     * Drop least recently used trees until they fit, keeping the current user's.
+     * Caller must hold the lock.
+     */
+    private void evictOverflow(int currentUserId) {
+        Iterator<Map.Entry<Integer, UserPayees>> iterator = users.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Integer, UserPayees> entry = iterator.next();
+            if (entry.getKey() == currentUserId) {
+                continue;
+            }
+            iterator.remove();
+            bytes -= entry.getValue().bytes;
+            evictions++;
+        }
+        log.trace("Payee suggestions hold {} users, {} bytes", users.size(), bytes);
+    }
+
+    /**
+     * Gets how many users' trees are in memory
+     *
+     * @return number of users
+     */
+    public int getUserCount() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    /**
+     * Gets roughly how much memory the trees use
+     *
+     * @return bytes
+     */
+    public long getBytes() {
+        synchronized (users) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Gets how many trees have been built from the database
+     *
+     * @return number of builds
+     */
+    public long getBuildCount() {
+        synchronized (users) {
+            return builds;
+        }
+    }
+
+    /**
+     * Gets how many trees have been dropped
+     *
+     * @return number of evictions
+     */
+    public long getEvictionCount() {
+        synchronized (users) {
+            return evictions;
+        }
+    }
+}
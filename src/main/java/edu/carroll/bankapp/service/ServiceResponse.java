@@ -10,6 +10,9 @@ public class ServiceResponse<T> {
     private T result;
     // A message to the user about how the operation succeeded or failed
     private String message;
+    // Whether the operation was accepted but hasn't finished yet, so there's no
+    // result to return even though nothing went wrong
+    private boolean pending;
 
     /**
      * Create a ServiceResponse
@@ -22,6 +25,20 @@ public class ServiceResponse<T> {
         this.result = result;
     }
 
+    /**
+     * Create a ServiceResponse for an operation that was accepted but will
+     * finish later. It has no result, but unlike a failure it's still pending.
+     *
+     * @param message - A message to the user about that operation
+     * @param <T>     - The type of result the operation will eventually have
+     * @return the response
+     */
+    public static <T> ServiceResponse<T> pending(String message) {
+        ServiceResponse<T> response = new ServiceResponse<T>(null, message);
+        response.pending = true;
+        return response;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -29,4 +46,8 @@ public class ServiceResponse<T> {
     public T getResult() {
         return result;
     }
+
+    public boolean isPending() {
+        return pending;
+    }
 }
@@ -0,0 +1,266 @@
+package edu.carroll.bankapp.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps approximate totals for the heaviest items of a stream in a fixed
+ * number of counters, using the Space-Saving algorithm.
+ *
+ * Each counter watches one item. An item that isn't being watched takes over
+ * the counter with the smallest total and inherits that total as its error, so
+ * a reported total is never too low and at most its error too high. Any item
+ * that isn't being watched has a true total no higher than the smallest
+ * counter, which is at most the stream's total divided by the number of
+ * counters.
+ *
+ * Not thread safe.
+ */
+public class SpaceSaving {
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    // Min-heap of the counters by total, so the smallest is found right away
+    private final Counter[] heap;
+    private int size;
+    private long total;
+
+    /**
+     * One item's estimated total
+     */
+    public static class Estimate {
+        private final String item;
+        private final long count;
+        private final long error;
+
+        private Estimate(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * Gets the estimated total, which is never lower than the true total
+         *
+         * @return the estimate
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets how much higher than the true total the estimate might be
+         *
+         * @return the most the estimate is off by
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * Gets the lowest the true total could be
+         *
+         * @return the estimate less its error
+         */
+        public long getLowerBound() {
+            return count - error;
+        }
+    }
+
+    private static class Counter {
+        private String item;
+        private long count;
+        private long error;
+        private int position;
+    }
+
+    /**
+     * Create an empty summary
+     *
+     * @param capacity - how many items to watch
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A summary needs at least one counter");
+        }
+        this.capacity = capacity;
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Add to an item's total
+     *
+     * @param item   - the item
+     * @param weight - how much to add, ignored unless it's positive
+     */
+    public void add(String item, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        total += weight;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.position);
+            return;
+        }
+        if (size < capacity) {
+            counter = new Counter();
+            counter.item = item;
+            counter.count = weight;
+            counter.position = size;
+            heap[size++] = counter;
+            counters.put(item, counter);
+            siftUp(counter.position);
+            return;
+        }
+        // Take over the smallest counter
+        counter = heap[0];
+        counters.remove(counter.item);
+        counter.item = item;
+        counter.error = counter.count;
+        counter.count += weight;
+        counters.put(item, counter);
+        siftDown(0);
+    }
+
+    /**
+     * Get the items with the largest estimated totals
+     *
+     * @param limit - the most items to return
+     * @return the items, largest first
+     */
+    public List<Estimate> top(int limit) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, Comparator.comparingLong((Counter counter) -> counter.count).reversed()
+                .thenComparing(counter -> counter.item));
+        List<Estimate> top = new ArrayList<>();
+        for (int i = 0; i < sorted.length && i < limit; i++) {
+            top.add(new Estimate(sorted[i].item, sorted[i].count, sorted[i].error));
+        }
+        return top;
+    }
+
+    /**
+     * Gets the highest the true total of an item that isn't listed could be
+     *
+     * @return the smallest counter, or 0 if every item seen is being watched
+     */
+    public long getMaxError() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * Gets the total of everything added
+     *
+     * @return the stream's total
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets how many items are watched at most
+     *
+     * @return the number of counters
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Write the summary out, to be read back with read
+     *
+     * @param out - where to write it
+     * @throws IOException if it can't be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(heap[i].item);
+            out.writeLong(heap[i].count);
+            out.writeLong(heap[i].error);
+        }
+    }
+
+    /**
+     * Read a summary written by write
+     *
+     * @param in - where to read it from
+     * @return the summary
+     * @throws IOException if it can't be read
+     */
+    public static SpaceSaving read(DataInput in) throws IOException {
+        int capacity = in.readInt();
+        if (capacity < 1) {
+            throw new IOException("Bad summary capacity " + capacity);
+        }
+        SpaceSaving summary = new SpaceSaving(capacity);
+        summary.total = in.readLong();
+        int size = in.readInt();
+        if (size < 0 || size > capacity) {
+            throw new IOException("Bad summary size " + size);
+        }
+        // Written in heap order, so it's still a heap
+        for (int i = 0; i < size; i++) {
+            Counter counter = new Counter();
+            counter.item = in.readUTF();
+            counter.count = in.readLong();
+            counter.error = in.readLong();
+            counter.position = i;
+            summary.heap[i] = counter;
+            summary.counters.put(counter.item, counter);
+        }
+        summary.size = size;
+        return summary;
+    }
+
+    private void siftUp(int position) {
+        Counter counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        Counter counter = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(Counter counter, int position) {
+        heap[position] = counter;
+        counter.position = position;
+    }
+}
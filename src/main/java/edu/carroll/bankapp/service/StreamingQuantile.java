@@ -0,0 +1,136 @@
+package edu.carroll.bankapp.service;
+
+import java.util.Arrays;
+
+/**
+ * Estimates one quantile of a stream in constant memory, using the P-square
+ * algorithm: five markers track the minimum, the maximum, the quantile and
+ * the points halfway to it on either side, and their heights are adjusted
+ * along a parabola fitted through their neighbours as values arrive. Nothing
+ * but the markers is kept.
+ *
+ * Not thread safe.
+ */
+public class StreamingQuantile {
+    private final double quantile;
+    // Marker heights, positions, desired positions and how far each desired
+    // position moves for every value
+    private final double[] heights = new double[5];
+    private final int[] positions = new int[5];
+    private final double[] desired = new double[5];
+    private final double[] increments;
+    private long count;
+
+    /**
+     * Create an estimator that hasn't seen anything yet
+     *
+     * @param quantile - which quantile to estimate, between 0 and 1
+     */
+    public StreamingQuantile(double quantile) {
+        if (!(quantile > 0 && quantile < 1)) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1");
+        }
+        this.quantile = quantile;
+        this.increments = new double[] { 0, quantile / 2, quantile, (1 + quantile) / 2, 1 };
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value - the value
+     */
+    public void add(double value) {
+        if (count < heights.length) {
+            heights[(int) count++] = value;
+            if (count == heights.length) {
+                Arrays.sort(heights);
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = i + 1;
+                }
+                desired[0] = 1;
+                desired[1] = 1 + 2 * quantile;
+                desired[2] = 1 + 4 * quantile;
+                desired[3] = 3 + 2 * quantile;
+                desired[4] = 5;
+            }
+            return;
+        }
+        count++;
+
+        // Find the cell the value falls in, stretching the ends to fit it
+        int cell;
+        if (value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        } else if (value >= heights[4]) {
+            heights[4] = value;
+            cell = 3;
+        } else {
+            cell = 0;
+            while (value >= heights[cell + 1]) {
+                cell++;
+            }
+        }
+        for (int i = cell + 1; i < positions.length; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < desired.length; i++) {
+            desired[i] += increments[i];
+        }
+
+        // Move the middle markers that have drifted from where they should be
+        for (int i = 1; i <= 3; i++) {
+            double drift = desired[i] - positions[i];
+            if ((drift >= 1 && positions[i + 1] - positions[i] > 1)
+                    || (drift <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int step = drift > 0 ? 1 : -1;
+                double height = parabolic(i, step);
+                if (heights[i - 1] < height && height < heights[i + 1]) {
+                    heights[i] = height;
+                } else {
+                    heights[i] += step * (heights[i + step] - heights[i]) / (positions[i + step] - positions[i]);
+                }
+                positions[i] += step;
+            }
+        }
+    }
+
+    /**
+     * Gets the estimated quantile. Until five values have been seen it's the
+     * nearest of them.
+     *
+     * @return the estimate, or NaN if nothing has been added
+     */
+    public double getEstimate() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count < heights.length) {
+            double[] seen = Arrays.copyOf(heights, (int) count);
+            Arrays.sort(seen);
+            return seen[(int) Math.round((count - 1) * quantile)];
+        }
+        return heights[2];
+    }
+
+    /**
+     * Gets how many values have been added
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Where a marker would be moved one step to, along the parabola through it
+     * and its neighbours
+     */
+    private double parabolic(int i, int step) {
+        return heights[i] + (double) step / (positions[i + 1] - positions[i - 1])
+                * ((positions[i] - positions[i - 1] + step) * (heights[i + 1] - heights[i])
+                        / (positions[i + 1] - positions[i])
+                        + (positions[i + 1] - positions[i] - step) * (heights[i] - heights[i - 1])
+                                / (positions[i] - positions[i - 1]));
+    }
+}
@@ -0,0 +1,598 @@
+package edu.carroll.bankapp.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionTagRepository;
+
+/**
+ * Finds an account's transactions by category and tag without joining through
+ * the tag tables.
+ *
+ * Each transaction in an account gets an ordinal, and every category and tag
+ * has a bitmap of the ordinals filed under it. "Groceries or Dining" is the
+ * union of two bitmaps, "tagged vacation and reimbursable" an intersection, and
+ * the dates, amounts and payees needed to narrow down and sort what's left are
+ * kept alongside so only the page being shown has to be loaded.
+ *
+ * An account is loaded the first time it's filtered by category or tag and kept
+ * up to date as its transactions are added, changed, retagged and deleted.
+ * Least recently used accounts are dropped when all of them take more than
+ * bankapp.tag-index.max-bytes. Ordinals of deleted transactions aren't reused,
+ * an account is compacted once most of its ordinals are dead.
+ */
+@Component
+public class TagBitmapIndex {
+    private static final Logger log = LoggerFactory.getLogger(TagBitmapIndex.class);
+    // Rough sizes for the memory limit: a transaction's slots in the arrays plus
+    // its entry in the id map, a bitmap apart from its bits, and the rest of an
+    // account
+    private static final long TRANSACTION_BYTES = 96;
+    private static final long BITMAP_BYTES = 64;
+    private static final long ACCOUNT_BYTES = 256;
+    private static final int INITIAL_CAPACITY = 16;
+    // Don't bother compacting small accounts
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private final TransactionRepository transactionRepo;
+    private final TransactionTagRepository transactionTagRepo;
+    private final long maxBytes;
+
+    // Least recently used first. Everything is guarded by this map.
+    private final LinkedHashMap<Integer, AccountBitmaps> accounts = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long loads;
+    private long evictions;
+
+    /**
+     * One account's transactions and the bitmaps over them
+     */
+    private static class AccountBitmaps {
+        // Ordinals handed out so far, and what's at each one
+        private int size;
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private long[] dates = new long[INITIAL_CAPACITY];
+        private long[] amounts = new long[INITIAL_CAPACITY];
+        private String[] payees = new String[INITIAL_CAPACITY];
+        private final Map<Integer, Integer> ordinals = new HashMap<>();
+        // Ordinals of transactions that haven't been deleted
+        private BitSet live = new BitSet();
+        private Map<Integer, BitSet> categories = new HashMap<>();
+        private Map<Integer, BitSet> tags = new HashMap<>();
+        // False for a placeholder while the account loads. Every change bumps the
+        // generation meanwhile, so a load that missed one is thrown away.
+        private boolean loaded;
+        private long generation;
+        private long bytes = ACCOUNT_BYTES;
+
+        private int add(int id, long date, long amount, String payee) {
+            Integer existing = ordinals.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                payees = Arrays.copyOf(payees, capacity);
+            }
+            int ordinal = size++;
+            ids[ordinal] = id;
+            dates[ordinal] = date;
+            amounts[ordinal] = amount;
+            payees[ordinal] = payee;
+            ordinals.put(id, ordinal);
+            live.set(ordinal);
+            return ordinal;
+        }
+
+        private void setCategory(int ordinal, Integer categoryId) {
+            for (BitSet members : categories.values()) {
+                members.clear(ordinal);
+            }
+            if (categoryId != null) {
+                categories.computeIfAbsent(categoryId, id -> new BitSet()).set(ordinal);
+            }
+        }
+
+        private void setTags(int ordinal, Collection<Integer> tagIds) {
+            for (BitSet members : tags.values()) {
+                members.clear(ordinal);
+            }
+            for (Integer tagId : tagIds) {
+                tags.computeIfAbsent(tagId, id -> new BitSet()).set(ordinal);
+            }
+        }
+
+        private void remove(int id) {
+            Integer ordinal = ordinals.remove(id);
+            if (ordinal == null) {
+                return;
+            }
+            live.clear(ordinal);
+            payees[ordinal] = null;
+            for (BitSet members : categories.values()) {
+                members.clear(ordinal);
+            }
+            for (BitSet members : tags.values()) {
+                members.clear(ordinal);
+            }
+        }
+
+        /**
+         * Hand out ordinals again from 0, leaving out deleted transactions
+         */
+        private void compact() {
+            int[] newOrdinals = new int[size];
+            int newSize = 0;
+            for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+                newOrdinals[ordinal] = newSize;
+                ids[newSize] = ids[ordinal];
+                dates[newSize] = dates[ordinal];
+                amounts[newSize] = amounts[ordinal];
+                payees[newSize] = payees[ordinal];
+                ordinals.put(ids[newSize], newSize);
+                newSize++;
+            }
+            int capacity = Math.max(INITIAL_CAPACITY, newSize * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            payees = Arrays.copyOf(payees, capacity);
+            Arrays.fill(payees, newSize, capacity, null);
+            categories = remap(categories, newOrdinals);
+            tags = remap(tags, newOrdinals);
+            live = new BitSet();
+            live.set(0, newSize);
+            size = newSize;
+        }
+
+        private static Map<Integer, BitSet> remap(Map<Integer, BitSet> bitmaps, int[] newOrdinals) {
+            Map<Integer, BitSet> remapped = new HashMap<>();
+            for (Map.Entry<Integer, BitSet> entry : bitmaps.entrySet()) {
+                BitSet members = entry.getValue();
+                if (members.isEmpty()) {
+                    continue;
+                }
+                BitSet moved = new BitSet();
+                for (int ordinal = members.nextSetBit(0); ordinal >= 0; ordinal = members.nextSetBit(ordinal + 1)) {
+                    moved.set(newOrdinals[ordinal]);
+                }
+                remapped.put(entry.getKey(), moved);
+            }
+            return remapped;
+        }
+
+        private void estimateBytes() {
+            long bitmapBytes = BITMAP_BYTES + ids.length / 8;
+            bytes = ACCOUNT_BYTES + (long) ids.length * TRANSACTION_BYTES
+                    + (1L + categories.size() + tags.size()) * bitmapBytes;
+        }
+    }
+
+    /**
+     * A matching transaction, for sorting
+     */
+    private static class Match {
+        private final int id;
+        private final long date;
+        private final long amount;
+        private final String payee;
+
+        private Match(int id, long date, long amount, String payee) {
+            this.id = id;
+            this.date = date;
+            this.amount = amount;
+            this.payee = payee;
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionRepo    - JPA repo for loading an account's transactions
+     * @param transactionTagRepo - JPA repo for loading their tags
+     * @param maxBytes           - roughly how much memory all accounts' bitmaps
+     *                           may use
+     */
+    public TagBitmapIndex(TransactionRepository transactionRepo, TransactionTagRepository transactionTagRepo,
+            @Value("${bankapp.tag-index.max-bytes:33554432}") long maxBytes) {
+        this.transactionRepo = transactionRepo;
+        this.transactionTagRepo = transactionTagRepo;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Find the account's transactions in any of the filter's categories and with
+     * its tags (any of them, or all of them if the filter says so), within its
+     * date, amount, payee and direction bounds, in the filter's order. Ties are broken by id, the
+     * same as the database does.
+     *
+     * @param accountId - the account to look in
+     * @param filter    - which transactions to find, and their order
+     * @return ids of the matching transactions, in order
+     */
+    public List<Integer> find(int accountId, TransactionFilter filter) {
+        AccountBitmaps bitmaps;
+        long generation;
+        synchronized (accounts) {
+            bitmaps = accounts.get(accountId);
+            if (bitmaps != null && bitmaps.loaded) {
+                return sort(match(bitmaps, filter), filter);
+            }
+            if (bitmaps == null) {
+                bitmaps = new AccountBitmaps();
+                accounts.put(accountId, bitmaps);
+                bytes += bitmaps.bytes;
+            }
+            generation = bitmaps.generation;
+        }
+
+        // Load without holding the lock, other accounts shouldn't have to wait
+        AccountBitmaps loaded = load(accountId);
+
+        List<Match> matches;
+        synchronized (accounts) {
+            loads++;
+            // Only keep what we loaded if nothing changed while we were loading
+            if (accounts.get(accountId) == bitmaps && !bitmaps.loaded && bitmaps.generation == generation) {
+                accounts.put(accountId, loaded);
+                bytes += loaded.bytes - bitmaps.bytes;
+                evictOverflow(accountId);
+            }
+            matches = match(loaded, filter);
+        }
+        return sort(matches, filter);
+    }
+
+    /**
+     * Work out which transactions match with set operations over the bitmaps.
+     * Caller must hold the lock.
+     */
+    private static List<Match> match(AccountBitmaps bitmaps, TransactionFilter filter) {
+        BitSet matching = null;
+        if (!filter.getCategoryIds().isEmpty()) {
+            matching = new BitSet();
+            for (Integer categoryId : filter.getCategoryIds()) {
+                BitSet members = bitmaps.categories.get(categoryId);
+                if (members != null) {
+                    matching.or(members);
+                }
+            }
+        }
+        if (!filter.getTagIds().isEmpty()) {
+            BitSet tagged = null;
+            for (Integer tagId : filter.getTagIds()) {
+                BitSet members = bitmaps.tags.get(tagId);
+                if (members == null) {
+                    members = new BitSet();
+                }
+                if (tagged == null) {
+                    tagged = (BitSet) members.clone();
+                } else if (filter.isAllTags()) {
+                    tagged.and(members);
+                } else {
+                    tagged.or(members);
+                }
+            }
+            if (matching == null) {
+                matching = tagged;
+            } else {
+                matching.and(tagged);
+            }
+        }
+        if (matching == null) {
+            matching = (BitSet) bitmaps.live.clone();
+        }
+        matching.and(bitmaps.live);
+
+        Date from = filter.getStartOfRange();
+        Date before = filter.getEndOfRange();
+        Long minCents = filter.getMinAmountInCents();
+        Long maxCents = filter.getMaxAmountInCents();
+        String payee = filter.getLowerCasePayee();
+        List<Match> matches = new ArrayList<>(matching.cardinality());
+        for (int ordinal = matching.nextSetBit(0); ordinal >= 0; ordinal = matching.nextSetBit(ordinal + 1)) {
+            long date = bitmaps.dates[ordinal];
+            long amount = bitmaps.amounts[ordinal];
+            if ((from != null && date < from.getTime()) || (before != null && date >= before.getTime())
+                    || (minCents != null && amount < minCents) || (maxCents != null && amount > maxCents)
+                    || !filter.matchesDirection(amount)) {
+                continue;
+            }
+            if (payee != null && (bitmaps.payees[ordinal] == null
+                    || !bitmaps.payees[ordinal].toLowerCase(Locale.ROOT).contains(payee))) {
+                continue;
+            }
+            matches.add(new Match(bitmaps.ids[ordinal], date, amount, bitmaps.payees[ordinal]));
+        }
+        return matches;
+    }
+
+    private static List<Integer> sort(List<Match> matches, TransactionFilter filter) {
+        Comparator<Match> order;
+        switch (filter.getSortBy()) {
+            case AMOUNT:
+                order = Comparator.comparingLong(match -> match.amount);
+                break;
+            case PAYEE:
+                order = Comparator.comparing(match -> match.payee, String.CASE_INSENSITIVE_ORDER);
+                break;
+            default:
+                order = Comparator.comparingLong(match -> match.date);
+        }
+        order = order.thenComparingInt(match -> match.id);
+        matches.sort(filter.isDescending() ? order.reversed() : order);
+        List<Integer> ids = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            ids.add(match.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Load an account's transactions, categories and tags
+     *
+     * @param accountId - the account
+     * @return the account's bitmaps
+     */
+    private AccountBitmaps load(int accountId) {
+        long start = System.currentTimeMillis();
+        AccountBitmaps loaded = new AccountBitmaps();
+        loaded.loaded = true;
+        List<Object[]> rows = transactionRepo.findForTagIndex(accountId);
+        for (Object[] row : rows) {
+            int ordinal = loaded.add((Integer) row[0], ((Date) row[1]).getTime(), ((Number) row[2]).longValue(),
+                    (String) row[3]);
+            if (row[4] != null) {
+                loaded.setCategory(ordinal, (Integer) row[4]);
+            }
+        }
+        for (Object[] row : transactionTagRepo.findTagIdsByAccountId(accountId)) {
+            // Transactions added since the first query are picked up when they're tagged
+            Integer ordinal = loaded.ordinals.get((Integer) row[0]);
+            if (ordinal != null) {
+                loaded.tags.computeIfAbsent((Integer) row[1], id -> new BitSet()).set(ordinal);
+            }
+        }
+        loaded.estimateBytes();
+        log.debug("Loaded tag bitmaps for {} transactions in account {} in {} ms", rows.size(), accountId,
+                System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * Apply a change to an account's bitmaps, if they're loaded. Accounts that are
+     * still loading are told to throw their load away.
+     */
+    private void change(int accountId, Consumer<AccountBitmaps> change) {
+        synchronized (accounts) {
+            AccountBitmaps bitmaps = accounts.get(accountId);
+            if (bitmaps == null) {
+                return;
+            }
+            if (!bitmaps.loaded) {
+                bitmaps.generation++;
+                return;
+            }
+            change.accept(bitmaps);
+            if (bitmaps.size >= MIN_COMPACT_SIZE && bitmaps.live.cardinality() < bitmaps.size / 2) {
+                bitmaps.compact();
+            }
+            long before = bitmaps.bytes;
+            bitmaps.estimateBytes();
+            bytes += bitmaps.bytes - before;
+            evictOverflow(accountId);
+        }
+    }
+
+    /**
+     * Add a new transaction, once its database transaction commits
+     *
+     * @param transaction - the new transaction
+     */
+    public void added(Transaction transaction) {
+        int accountId = transaction.getAccount().getId();
+        int id = transaction.getId();
+        long date = transaction.getDate().getTime();
+        long amount = transaction.getAmountInCents();
+        String payee = transaction.getToFrom();
+        Integer categoryId = transaction.getCategory() == null ? null : transaction.getCategory().getId();
+        AfterCommit.run(() -> change(accountId, bitmaps -> {
+            int ordinal = bitmaps.add(id, date, amount, payee);
+            bitmaps.setCategory(ordinal, categoryId);
+        }));
+    }
+
+    /**
+     * Pick up a change to a transaction's date, amount or payee, once its database
+     * transaction commits
+     *
+     * @param transaction - the changed transaction
+     */
+    public void updated(Transaction transaction) {
+        int accountId = transaction.getAccount().getId();
+        int id = transaction.getId();
+        long date = transaction.getDate().getTime();
+        long amount = transaction.getAmountInCents();
+        String payee = transaction.getToFrom();
+        AfterCommit.run(() -> change(accountId, bitmaps -> {
+            Integer ordinal = bitmaps.ordinals.get(id);
+            if (ordinal != null) {
+                bitmaps.dates[ordinal] = date;
+                bitmaps.amounts[ordinal] = amount;
+                bitmaps.payees[ordinal] = payee;
+            }
+        }));
+    }
+
+    /**
+     * Move a transaction to a new category and set of tags, once its database
+     * transaction commits
+     *
+     * @param transaction - the retagged transaction
+     * @param categoryId  - its category, or null for none
+     * @param tagIds      - all of its tags
+     */
+    public void retagged(Transaction transaction, Integer categoryId, Collection<Integer> tagIds) {
+        int accountId = transaction.getAccount().getId();
+        int id = transaction.getId();
+        long date = transaction.getDate().getTime();
+        long amount = transaction.getAmountInCents();
+        String payee = transaction.getToFrom();
+        List<Integer> tags = new ArrayList<>(tagIds);
+        AfterCommit.run(() -> change(accountId, bitmaps -> {
+            int ordinal = bitmaps.add(id, date, amount, payee);
+            bitmaps.setCategory(ordinal, categoryId);
+            bitmaps.setTags(ordinal, tags);
+        }));
+    }
+
+    /**
+     * Remove deleted transactions, once their database transaction commits
+     *
+     * @param accountIds     - the accounts they were in
+     * @param transactionIds - the deleted transactions
+     */
+    public void removed(Collection<Integer> accountIds, Collection<Integer> transactionIds) {
+        List<Integer> accountList = new ArrayList<>(accountIds);
+        List<Integer> ids = new ArrayList<>(transactionIds);
+        AfterCommit.run(() -> {
+            for (Integer accountId : accountList) {
+                change(accountId, bitmaps -> {
+                    for (Integer id : ids) {
+                        bitmaps.remove(id);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Remove a deleted transaction, once its database transaction commits
+     *
+     * @param transaction - the deleted transaction
+     */
+    public void removed(Transaction transaction) {
+        removed(List.of(transaction.getAccount().getId()), List.of(transaction.getId()));
+    }
+
+    /**
+     * File several of an account's transactions under a category without
+     * touching their tags, once the database transaction commits
+     *
+     * @param accountId      - the account the transactions are in
+     * @param categoryId     - the category they're now in
+     * @param transactionIds - the transactions
+     */
+    public void categorized(int accountId, int categoryId, Collection<Integer> transactionIds) {
+        List<Integer> ids = new ArrayList<>(transactionIds);
+        AfterCommit.run(() -> change(accountId, bitmaps -> {
+            for (Integer id : ids) {
+                Integer ordinal = bitmaps.ordinals.get(id);
+                if (ordinal != null) {
+                    bitmaps.setCategory(ordinal, categoryId);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Drop a deleted account, once its database transaction commits
+     *
+     * @param accountId - the deleted account
+     */
+    public void accountRemoved(int accountId) {
+        AfterCommit.run(() -> {
+            synchronized (accounts) {
+                AccountBitmaps bitmaps = accounts.remove(accountId);
+                if (bitmaps != null) {
+                    bytes -= bitmaps.bytes;
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop least recently used accounts until everything fits, keeping the one
+     * just used. Caller must hold the lock.
+     *
+     * @param currentAccountId - the account that was just used
+     */
+    private void evictOverflow(int currentAccountId) {
+        Iterator<Map.Entry<Integer, AccountBitmaps>> iterator = accounts.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Integer, AccountBitmaps> entry = iterator.next();
+            if (entry.getKey() == currentAccountId) {
+                continue;
+            }
+            iterator.remove();
+            bytes -= entry.getValue().bytes;
+            evictions++;
+        }
+        log.trace("Tag bitmaps hold {} accounts, {} bytes", accounts.size(), bytes);
+    }
+
+    /**
+     * Gets how many accounts are in memory
+     *
+     * @return number of accounts
+     */
+    public int getAccountCount() {
+        synchronized (accounts) {
+            return accounts.size();
+        }
+    }
+
+    /**
+     * Gets roughly how much memory the bitmaps use
+     *
+     * @return size in bytes
+     */
+    public long getBytes() {
+        synchronized (accounts) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Gets how many times an account was loaded from the database
+     *
+     * @return number of loads
+     */
+    public long getLoadCount() {
+        synchronized (accounts) {
+            return loads;
+        }
+    }
+
+    /**
+     * Gets how many accounts were dropped to make room for others
+     *
+     * @return number of evictions
+     */
+    public long getEvictionCount() {
+        synchronized (accounts) {
+            return evictions;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package edu.carroll.bankapp.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Reports over a user's transactions (monthly totals, spending by payee,
+ * balance curves) without loading a Transaction object per row.
+ *
+ * A user's transactions are loaded into TransactionColumns the first time they
+ * ask for a report and kept up to date as transactions are added, changed and
+ * deleted, so later reports don't touch the database at all. Reports run on a
+ * fork-join pool of bankapp.analytics.threads threads, in chunks of
+ * bankapp.analytics.chunk-size rows. Least recently used users are dropped
+ * when all of them take more than bankapp.analytics.max-bytes.
+ *
+ * Net worth over time is walked back from the user's balance in the ledger
+ * over their BalanceRollups, so what it costs doesn't grow with how many
+ * transactions they have.
+ *
+ * Dates are bucketed into days in the server's time zone.
+ */
+@Component
+public class TransactionAnalytics {
+    private static final Logger log = LoggerFactory.getLogger(TransactionAnalytics.class);
+    private static final int LOAD_PAGE_SIZE = 10000;
+    // Don't bother compacting small users
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private final TransactionRepository transactionRepo;
+    private final LedgerService ledger;
+    private final long maxBytes;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    // Least recently used first, guarded by this map. Each user's columns are
+    // guarded by their own lock, so a long report doesn't hold up other users.
+    private final LinkedHashMap<Integer, UserColumns> users = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long loads;
+    private long evictions;
+
+    /**
+     * One user's columns, or a placeholder while they're being loaded
+     */
+    private static class UserColumns {
+        private final TransactionColumns columns = new TransactionColumns();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean loaded;
+        // Bumped by changes made while loading, so the load is thrown away
+        private long generation;
+        private long bytes;
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionRepo - JPA repo for loading a user's transactions
+     * @param ledger          - for balances to work net worth back from
+     * @param maxBytes        - roughly how much memory all users' columns may use
+     * @param threads         - how many threads reports run on
+     * @param chunkSize       - rows summed in one piece
+     */
+    public TransactionAnalytics(TransactionRepository transactionRepo, LedgerService ledger,
+            @Value("${bankapp.analytics.max-bytes:268435456}") long maxBytes,
+            @Value("${bankapp.analytics.threads:4}") int threads,
+            @Value("${bankapp.analytics.chunk-size:65536}") int chunkSize) {
+        this.transactionRepo = transactionRepo;
+        this.ledger = ledger;
+        this.maxBytes = maxBytes;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    /**
+     * Stop the report threads
+     */
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Total a user's income, spending and number of transactions by month,
+     * leaving out transfers
+     *
+     * @param ownerId   - the user
+     * @param accountId - only this account, or null for all of the user's
+     * @param from      - the first month
+     * @param to        - the last month
+     * @return a total for every month in the range, oldest first
+     */
+    public List<TransactionColumns.MonthlyTotal> monthlyTotals(int ownerId, Integer accountId, YearMonth from,
+            YearMonth to) {
+        return report(ownerId, columns -> columns.monthlyTotals(accountId, from, to, pool, chunkSize));
+    }
+
+    /**
+     * Total what a user spent on and received from each payee, leaving out
+     * transfers
+     *
+     * @param ownerId   - the user
+     * @param accountId - only this account, or null for all of the user's
+     * @param from      - the first day
+     * @param to        - the last day
+     * @param limit     - the most payees to return
+     * @return the payees spent the most on, most first
+     */
+    public List<TransactionColumns.PayeeTotal> payeeTotals(int ownerId, Integer accountId, LocalDate from,
+            LocalDate to, int limit) {
+        return report(ownerId, columns -> columns.payeeTotals(accountId, from, to, limit, pool, chunkSize));
+    }
+
+    /**
+     * Work out a user's balance at the end of every day in a range
+     *
+     * @param ownerId   - the user
+     * @param accountId - only this account, or null for all of the user's
+     *                  together
+     * @param from      - the first day
+     * @param to        - the last day
+     * @return the balances
+     */
+    public TransactionColumns.BalanceCurve balanceCurve(int ownerId, Integer accountId, LocalDate from,
+            LocalDate to) {
+        return report(ownerId, columns -> columns.balanceCurve(accountId, from, to, pool, chunkSize));
+    }
+
+    /**
+     * Work out a user's combined balance across accounts over a range of days,
+     * from the balances in the ledger and the user's daily and monthly totals.
+     * Long ranges are worked out a month at a time, and the series is thinned
+     * out to width points keeping its shape.
+     *
+     * @param ownerId    - the user
+     * @param accountIds - the user's accounts
+     * @param from       - the first day
+     * @param to         - the last day
+     * @param width      - the most points to return
+     * @return the series
+     */
+    public BalanceRollups.BalanceSeries netWorth(int ownerId, Collection<Integer> accountIds, LocalDate from,
+            LocalDate to, int width) {
+        long balance = 0;
+        if (!accountIds.isEmpty()) {
+            for (long accountBalance : ledger.getBalancesInCents(accountIds).values()) {
+                balance += accountBalance;
+            }
+        }
+        long current = balance;
+        return report(ownerId, columns -> columns.getRollups().series(from, to, current, width));
+    }
+
+    /**
+     * Run a report over a user's columns, loading them first if they aren't in
+     * memory
+     */
+    private <T> T report(int ownerId, Function<TransactionColumns, T> report) {
+        UserColumns user = columns(ownerId);
+        user.lock.readLock().lock();
+        try {
+            return report.apply(user.columns);
+        } finally {
+            user.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a user's columns, loading them if they aren't in memory
+     */
+    private UserColumns columns(int ownerId) {
+        UserColumns user;
+        long generation;
+        synchronized (users) {
+            user = users.get(ownerId);
+            if (user != null && user.loaded) {
+                return user;
+            }
+            if (user == null) {
+                user = new UserColumns();
+                users.put(ownerId, user);
+            }
+            generation = user.generation;
+        }
+
+        // Load without holding the lock, other users shouldn't have to wait
+        UserColumns loaded = load(ownerId);
+
+        synchronized (users) {
+            loads++;
+            // Only keep what we loaded if nothing changed while we were loading
+            if (users.get(ownerId) == user && !user.loaded && user.generation == generation) {
+                users.put(ownerId, loaded);
+                bytes += loaded.bytes - user.bytes;
+                evictOverflow(ownerId);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Load all of a user's transactions, a page at a time
+     *
+     * @param ownerId - the user
+     * @return the user's columns
+     */
+    private UserColumns load(int ownerId) {
+        long start = System.currentTimeMillis();
+        UserColumns loaded = new UserColumns();
+        int afterId = 0;
+        while (true) {
+            List<Object[]> rows = transactionRepo.findForAnalytics(ownerId, afterId,
+                    PageRequest.of(0, LOAD_PAGE_SIZE));
+            for (Object[] row : rows) {
+                loaded.columns.append((Integer) row[0], (Integer) row[1], epochDay((Date) row[2]),
+                        ((Number) row[3]).longValue(), (String) row[4], row[5] != null);
+            }
+            if (rows.size() < LOAD_PAGE_SIZE) {
+                break;
+            }
+            afterId = (Integer) rows.get(rows.size() - 1)[0];
+        }
+        loaded.loaded = true;
+        loaded.bytes = loaded.columns.getBytes();
+        log.debug("Loaded {} transactions of user {} for reports in {} ms", loaded.columns.getSize(), ownerId,
+                System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * Gets the day a date falls on in the server's time zone
+     *
+     * @param date - the date
+     * @return the epoch day
+     */
+    static int epochDay(Date date) {
+        return (int) LocalDate.ofInstant(Instant.ofEpochMilli(date.getTime()), ZoneId.systemDefault()).toEpochDay();
+    }
+
+    /**
+     * Apply a change to a user's columns, if they're loaded. Users that are
+     * still loading are told to throw their load away.
+     */
+    private void change(int ownerId, Consumer<TransactionColumns> change) {
+        UserColumns user;
+        synchronized (users) {
+            user = users.get(ownerId);
+            if (user == null) {
+                return;
+            }
+            if (!user.loaded) {
+                user.generation++;
+                return;
+            }
+        }
+        long newBytes;
+        user.lock.writeLock().lock();
+        try {
+            change.accept(user.columns);
+            TransactionColumns columns = user.columns;
+            if (columns.getSize() >= MIN_COMPACT_SIZE && columns.getRemovedCount() > columns.getSize() / 2) {
+                columns.compact();
+            }
+            newBytes = columns.getBytes();
+        } finally {
+            user.lock.writeLock().unlock();
+        }
+        synchronized (users) {
+            if (users.get(ownerId) == user) {
+                bytes += newBytes - user.bytes;
+                user.bytes = newBytes;
+                evictOverflow(ownerId);
+            }
+        }
+    }
+
+    /**
+     * Add a new transaction, once its database transaction commits
+     *
+     * @param transaction - the new transaction
+     */
+    public void added(Transaction transaction) {
+        if (transaction.getAccount() == null || transaction.getAccount().getOwner() == null) {
+            return;
+        }
+        int ownerId = transaction.getAccount().getOwner().getId();
+        int id = transaction.getId();
+        int accountId = transaction.getAccount().getId();
+        int day = epochDay(transaction.getDate());
+        long amount = transaction.getAmountInCents();
+        String payee = transaction.getToFrom();
+        // The first half of a transfer is only linked to the second after it's
+        // created, so check once they're both committed
+        AfterCommit.run(() -> change(ownerId, columns -> columns.append(id, accountId, day, amount, payee,
+                transaction.getTransferPairId() != null)));
+    }
+
+    /**
+     * Pick up a change to a transaction's amount or payee, once its database
+     * transaction commits
+     *
+     * @param transaction - the changed transaction
+     */
+    public void updated(Transaction transaction) {
+        if (transaction.getAccount().getOwner() == null) {
+            return;
+        }
+        int ownerId = transaction.getAccount().getOwner().getId();
+        int id = transaction.getId();
+        long amount = transaction.getAmountInCents();
+        String payee = transaction.getToFrom();
+        AfterCommit.run(() -> change(ownerId, columns -> columns.update(id, amount, payee)));
+    }
+
+    /**
+     * Remove deleted transactions, once their database transaction commits
+     *
+     * @param ownerId        - the user they belonged to
+     * @param transactionIds - the deleted transactions
+     */
+    public void removed(int ownerId, Collection<Integer> transactionIds) {
+        List<Integer> ids = new ArrayList<>(transactionIds);
+        AfterCommit.run(() -> change(ownerId, columns -> {
+            for (Integer id : ids) {
+                columns.remove(id);
+            }
+        }));
+    }
+
+    /**
+     * Remove a deleted transaction, once its database transaction commits
+     *
+     * @param transaction - the deleted transaction
+     */
+    public void removed(Transaction transaction) {
+        if (transaction.getAccount().getOwner() != null) {
+            removed(transaction.getAccount().getOwner().getId(), List.of(transaction.getId()));
+        }
+    }
+
+    /**
+     * Remove a deleted account's transactions, once its database transaction
+     * commits
+     *
+     * @param ownerId   - the account's owner
+     * @param accountId - the deleted account
+     */
+    public void accountRemoved(int ownerId, int accountId) {
+        AfterCommit.run(() -> change(ownerId, columns -> columns.removeAccount(accountId)));
+    }
+
+    /**
+     * Drop least recently used users until everything fits, keeping the one just
+     * used. Caller must hold the lock.
+     *
+     * @param currentOwnerId - the user that was just used
+     */
+    private void evictOverflow(int currentOwnerId) {
+        Iterator<Map.Entry<Integer, UserColumns>> iterator = users.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Integer, UserColumns> entry = iterator.next();
+            if (entry.getKey() == currentOwnerId) {
+                continue;
+            }
+            iterator.remove();
+            bytes -= entry.getValue().bytes;
+            evictions++;
+        }
+    }
+
+    /**
+     * Gets how many users' columns are in memory
+     *
+     * @return number of users
+     */
+    public int getUserCount() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    /**
+     * Gets roughly how much memory the columns use
+     *
+     * @return size in bytes
+     */
+    public long getBytes() {
+        synchronized (users) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Gets how many times a user's columns were loaded from the database
+     *
+     * @return number of loads
+     */
+    public long getLoadCount() {
+        synchronized (users) {
+            return loads;
+        }
+    }
+
+    /**
+     * Gets how many users were dropped to make room for others
+     *
+     * @return number of evictions
+     */
+    public long getEvictionCount() {
+        synchronized (users) {
+            return evictions;
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package edu.carroll.bankapp.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * One user's transactions held as columns of primitives rather than
+ * Transaction objects: amounts as long cents, dates as epoch days, accounts as
+ * ids and payees as codes into the user's own dictionary of names, with a byte
+ * of flags each. A row costs 25 bytes plus its share of spare capacity.
+ *
+ * Reports add every row into a few buckets (months, payees or days) in tight
+ * loops over the arrays, split into chunks summed on a fork-join pool once
+ * there are enough rows to be worth it.
+ *
+ * Rows are appended as transactions are added. Deleted rows are only flagged,
+ * and compact() squeezes them out once there are enough of them. Every change
+ * is also counted in the user's BalanceRollups.
+ *
+ * Not thread safe, callers have to lock around changes.
+ */
+public class TransactionColumns {
+    /** Flag for a transfer between the user's own accounts */
+    public static final byte TRANSFER = 1;
+    /** Flag for a row whose transaction was deleted */
+    public static final byte REMOVED = 2;
+    /** Bytes each row takes in the arrays */
+    public static final int ROW_BYTES = 4 + 4 + 4 + 8 + 4 + 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_PAYEE = -1;
+    // Rough size of a dictionary entry apart from its characters
+    private static final int PAYEE_BYTES = 96;
+
+    private int size;
+    private int removedCount;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] accountIds = new int[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private int[] payees = new int[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    // Rows are usually added in id order, so they can be found by binary search
+    private boolean sorted = true;
+
+    private final List<String> payeeNames = new ArrayList<>();
+    private final Map<String, Integer> payeeCodes = new HashMap<>();
+    private long payeeBytes;
+
+    private final BalanceRollups rollups = new BalanceRollups();
+
+    /**
+     * Adds up one chunk of rows into buckets
+     */
+    private interface Kernel {
+        void sum(int from, int to, long[] buckets);
+    }
+
+    /**
+     * A month's income and spending, leaving out transfers
+     */
+    public static class MonthlyTotal {
+        private final String month;
+        private final long incomeInCents;
+        private final long spendingInCents;
+        private final long transactions;
+
+        private MonthlyTotal(String month, long incomeInCents, long spendingInCents, long transactions) {
+            this.month = month;
+            this.incomeInCents = incomeInCents;
+            this.spendingInCents = spendingInCents;
+            this.transactions = transactions;
+        }
+
+        /**
+         * Gets the month
+         *
+         * @return the month, like 2024-03
+         */
+        public String getMonth() {
+            return month;
+        }
+
+        public long getIncomeInCents() {
+            return incomeInCents;
+        }
+
+        /**
+         * Gets how much was spent
+         *
+         * @return the money out in cents, as a positive number
+         */
+        public long getSpendingInCents() {
+            return spendingInCents;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+    }
+
+    /**
+     * What went to and came from one payee, leaving out transfers
+     */
+    public static class PayeeTotal {
+        private final String payee;
+        private final long spentInCents;
+        private final long receivedInCents;
+        private final long transactions;
+
+        private PayeeTotal(String payee, long spentInCents, long receivedInCents, long transactions) {
+            this.payee = payee;
+            this.spentInCents = spentInCents;
+            this.receivedInCents = receivedInCents;
+            this.transactions = transactions;
+        }
+
+        public String getPayee() {
+            return payee;
+        }
+
+        /**
+         * Gets how much was spent on the payee
+         *
+         * @return the money out in cents, as a positive number
+         */
+        public long getSpentInCents() {
+            return spentInCents;
+        }
+
+        public long getReceivedInCents() {
+            return receivedInCents;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+    }
+
+    /**
+     * A balance at the end of every day in a range
+     */
+    public static class BalanceCurve {
+        private final String start;
+        private final long[] balancesInCents;
+
+        private BalanceCurve(LocalDate start, long[] balancesInCents) {
+            this.start = start.toString();
+            this.balancesInCents = balancesInCents;
+        }
+
+        /**
+         * Gets the first day of the curve
+         *
+         * @return the day, like 2024-03-01
+         */
+        public String getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the balance at the end of each day, starting from the first
+         *
+         * @return balances in cents, one a day
+         */
+        public long[] getBalancesInCents() {
+            return balancesInCents;
+        }
+    }
+
+    /**
+     * Add a row, unless there's already one for the transaction (a load can
+     * pick up a transaction before it's announced)
+     *
+     * @param id        - the transaction's id
+     * @param accountId - its account
+     * @param day       - its date, as an epoch day
+     * @param amount    - its amount in cents
+     * @param payee     - its payee's name, or blank for none
+     * @param transfer  - whether it's half of a transfer
+     */
+    public void append(int id, int accountId, int day, long amount, String payee, boolean transfer) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+        if (size > 0 && id <= ids[size - 1]) {
+            if (find(id) >= 0) {
+                return;
+            }
+            sorted = false;
+        }
+        ids[size] = id;
+        accountIds[size] = accountId;
+        days[size] = day;
+        cents[size] = amount;
+        payees[size] = encode(payee);
+        flags[size] = transfer ? TRANSFER : 0;
+        size++;
+        rollups.add(day, amount);
+    }
+
+    /**
+     * Change a row's amount and payee
+     *
+     * @param id     - the transaction's id
+     * @param amount - its new amount in cents
+     * @param payee  - its new payee's name
+     * @return whether the row was found
+     */
+    public boolean update(int id, long amount, String payee) {
+        int row = find(id);
+        if (row < 0) {
+            return false;
+        }
+        if ((flags[row] & REMOVED) == 0) {
+            rollups.add(days[row], amount - cents[row]);
+        }
+        cents[row] = amount;
+        payees[row] = encode(payee);
+        return true;
+    }
+
+    /**
+     * Flag a row as deleted
+     *
+     * @param id - the transaction's id
+     * @return whether the row was found
+     */
+    public boolean remove(int id) {
+        int row = find(id);
+        if (row < 0 || (flags[row] & REMOVED) != 0) {
+            return false;
+        }
+        flags[row] |= REMOVED;
+        removedCount++;
+        rollups.add(days[row], -cents[row]);
+        return true;
+    }
+
+    /**
+     * Flag every row in an account as deleted
+     *
+     * @param accountId - the account
+     */
+    public void removeAccount(int accountId) {
+        for (int row = 0; row < size; row++) {
+            if (accountIds[row] == accountId && (flags[row] & REMOVED) == 0) {
+                flags[row] |= REMOVED;
+                removedCount++;
+                rollups.add(days[row], -cents[row]);
+            }
+        }
+    }
+
+    /**
+     * Squeeze out deleted rows and spare capacity
+     */
+    public void compact() {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if ((flags[row] & REMOVED) != 0) {
+                continue;
+            }
+            ids[kept] = ids[row];
+            accountIds[kept] = accountIds[row];
+            days[kept] = days[row];
+            cents[kept] = cents[row];
+            payees[kept] = payees[row];
+            flags[kept] = flags[row];
+            kept++;
+        }
+        size = kept;
+        removedCount = 0;
+        grow(Math.max(INITIAL_CAPACITY, size));
+    }
+
+    /**
+     * Gets how many rows there are, deleted ones included
+     *
+     * @return the number of rows
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets how many rows are flagged as deleted
+     *
+     * @return the number of deleted rows
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * Gets roughly how much memory the columns, dictionary and rollups take
+     *
+     * @return size in bytes
+     */
+    public long getBytes() {
+        return (long) ids.length * ROW_BYTES + payeeBytes + rollups.getBytes();
+    }
+
+    /**
+     * Gets the daily and monthly totals of every row that isn't deleted
+     *
+     * @return the rollups
+     */
+    public BalanceRollups getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Total income, spending and number of transactions by month, leaving out
+     * transfers
+     *
+     * @param accountId - only this account, or null for all of them
+     * @param from      - the first month
+     * @param to        - the last month
+     * @param pool      - where to sum chunks of rows in parallel
+     * @param chunkSize - rows summed in one piece
+     * @return a total for every month in the range, oldest first
+     */
+    public List<MonthlyTotal> monthlyTotals(Integer accountId, YearMonth from, YearMonth to, ForkJoinPool pool,
+            int chunkSize) {
+        int months = (int) Math.max(0, to.getYear() * 12L + to.getMonthValue() - from.getYear() * 12L
+                - from.getMonthValue() + 1);
+        int firstDay = (int) from.atDay(1).toEpochDay();
+        int endDay = (int) to.plusMonths(1).atDay(1).toEpochDay();
+        // Which month each day in the range falls in, so rows only need a lookup
+        int[] monthOfDay = new int[Math.max(0, endDay - firstDay)];
+        for (int month = 0; month < months; month++) {
+            int start = (int) from.plusMonths(month).atDay(1).toEpochDay() - firstDay;
+            int end = (int) from.plusMonths(month + 1).atDay(1).toEpochDay() - firstDay;
+            Arrays.fill(monthOfDay, start, end, month * 3);
+        }
+        int account = accountId == null ? -1 : accountId;
+        long[] buckets = sum(months * 3, pool, chunkSize, (start, end, sums) -> {
+            for (int row = start; row < end; row++) {
+                int day = days[row] - firstDay;
+                if (flags[row] != 0 || day < 0 || day >= monthOfDay.length
+                        || (account >= 0 && accountIds[row] != account)) {
+                    continue;
+                }
+                int bucket = monthOfDay[day];
+                long amount = cents[row];
+                sums[bucket + (amount < 0 ? 1 : 0)] += Math.abs(amount);
+                sums[bucket + 2]++;
+            }
+        });
+        List<MonthlyTotal> totals = new ArrayList<>(months);
+        for (int month = 0; month < months; month++) {
+            totals.add(new MonthlyTotal(from.plusMonths(month).toString(), buckets[month * 3],
+                    buckets[month * 3 + 1], buckets[month * 3 + 2]));
+        }
+        return totals;
+    }
+
+    /**
+     * Total spending, income and number of transactions by payee, leaving out
+     * transfers and transactions without a payee
+     *
+     * @param accountId - only this account, or null for all of them
+     * @param from      - the first day
+     * @param to        - the last day
+     * @param limit     - the most payees to return
+     * @param pool      - where to sum chunks of rows in parallel
+     * @param chunkSize - rows summed in one piece
+     * @return the payees spent the most on, most first
+     */
+    public List<PayeeTotal> payeeTotals(Integer accountId, LocalDate from, LocalDate to, int limit,
+            ForkJoinPool pool, int chunkSize) {
+        int firstDay = (int) from.toEpochDay();
+        int lastDay = (int) to.toEpochDay();
+        int account = accountId == null ? -1 : accountId;
+        long[] buckets = sum(payeeNames.size() * 3, pool, chunkSize, (start, end, sums) -> {
+            for (int row = start; row < end; row++) {
+                int payee = payees[row];
+                if (flags[row] != 0 || payee == NO_PAYEE || days[row] < firstDay || days[row] > lastDay
+                        || (account >= 0 && accountIds[row] != account)) {
+                    continue;
+                }
+                long amount = cents[row];
+                sums[payee * 3 + (amount < 0 ? 0 : 1)] += Math.abs(amount);
+                sums[payee * 3 + 2]++;
+            }
+        });
+        List<PayeeTotal> totals = new ArrayList<>();
+        for (int payee = 0; payee < payeeNames.size(); payee++) {
+            if (buckets[payee * 3 + 2] > 0) {
+                totals.add(new PayeeTotal(payeeNames.get(payee), buckets[payee * 3], buckets[payee * 3 + 1],
+                        buckets[payee * 3 + 2]));
+            }
+        }
+        totals.sort((a, b) -> a.spentInCents != b.spentInCents ? Long.compare(b.spentInCents, a.spentInCents)
+                : a.payee.compareTo(b.payee));
+        return totals.size() > limit ? new ArrayList<>(totals.subList(0, limit)) : totals;
+    }
+
+    /**
+     * The balance at the end of every day in a range, transfers included
+     *
+     * @param accountId - only this account, or null for all of them together
+     * @param from      - the first day
+     * @param to        - the last day
+     * @param pool      - where to sum chunks of rows in parallel
+     * @param chunkSize - rows summed in one piece
+     * @return the balances
+     */
+    public BalanceCurve balanceCurve(Integer accountId, LocalDate from, LocalDate to, ForkJoinPool pool,
+            int chunkSize) {
+        int firstDay = (int) from.toEpochDay();
+        int dayCount = (int) Math.max(0, to.toEpochDay() - firstDay + 1);
+        int account = accountId == null ? -1 : accountId;
+        // Bucket 0 is everything before the range, then one a day
+        long[] buckets = sum(dayCount + 1, pool, chunkSize, (start, end, sums) -> {
+            for (int row = start; row < end; row++) {
+                int day = days[row] - firstDay;
+                if ((flags[row] & REMOVED) != 0 || day >= dayCount
+                        || (account >= 0 && accountIds[row] != account)) {
+                    continue;
+                }
+                sums[Math.max(0, day + 1)] += cents[row];
+            }
+        });
+        long[] balances = new long[dayCount];
+        long balance = buckets[0];
+        for (int day = 0; day < dayCount; day++) {
+            balance += buckets[day + 1];
+            balances[day] = balance;
+        }
+        return new BalanceCurve(from, balances);
+    }
+
+    /**
+     * Add every row into buckets, in parallel once there's more than one chunk
+     */
+    private long[] sum(int width, ForkJoinPool pool, int chunkSize, Kernel kernel) {
+        if (size <= chunkSize) {
+            long[] buckets = new long[width];
+            kernel.sum(0, size, buckets);
+            return buckets;
+        }
+        return pool.invoke(new SumTask(kernel, width, chunkSize, 0, size));
+    }
+
+    /**
+     * Sums a range of rows, splitting it in half until the pieces are small
+     * enough
+     */
+    private static class SumTask extends RecursiveTask<long[]> {
+        private final Kernel kernel;
+        private final int width;
+        private final int chunkSize;
+        private final int from;
+        private final int to;
+
+        private SumTask(Kernel kernel, int width, int chunkSize, int from, int to) {
+            this.kernel = kernel;
+            this.width = width;
+            this.chunkSize = chunkSize;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= chunkSize) {
+                long[] buckets = new long[width];
+                kernel.sum(from, to, buckets);
+                return buckets;
+            }
+            int middle = (from + to) >>> 1;
+            SumTask left = new SumTask(kernel, width, chunkSize, from, middle);
+            left.fork();
+            long[] buckets = new SumTask(kernel, width, chunkSize, middle, to).compute();
+            long[] other = left.join();
+            for (int i = 0; i < width; i++) {
+                buckets[i] += other[i];
+            }
+            return buckets;
+        }
+    }
+
+    /**
+     * Find a row by transaction id
+     *
+     * @return the row, or -1 if there isn't one
+     */
+    private int find(int id) {
+        if (sorted) {
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            return row >= 0 ? row : -1;
+        }
+        for (int row = 0; row < size; row++) {
+            if (ids[row] == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get a payee's code, adding it to the dictionary if it's new
+     */
+    private int encode(String payee) {
+        if (payee == null || payee.isEmpty()) {
+            return NO_PAYEE;
+        }
+        Integer code = payeeCodes.get(payee);
+        if (code == null) {
+            code = payeeNames.size();
+            payeeNames.add(payee);
+            payeeCodes.put(payee, code);
+            payeeBytes += PAYEE_BYTES + 2L * payee.length();
+        }
+        return code;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        days = Arrays.copyOf(days, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        payees = Arrays.copyOf(payees, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
@@ -0,0 +1,393 @@
+package edu.carroll.bankapp.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+/**
+ * Which of an account's transactions to show and in what order, one page at a
+ * time. Anything left null or empty isn't filtered on.
+ */
+public class TransactionFilter {
+    /**
+     * What transactions can be sorted by
+     */
+    public enum SortBy {
+        DATE, AMOUNT, PAYEE
+    }
+
+    /**
+     * Which way money moves in a transaction
+     */
+    public enum Direction {
+        INCOME, EXPENSE
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate fromDate;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate toDate;
+
+    private Double minAmountInDollars;
+
+    private Double maxAmountInDollars;
+
+    private String payee;
+
+    private Direction direction;
+
+    private List<Integer> categoryIds = new ArrayList<>();
+
+    private List<Integer> tagIds = new ArrayList<>();
+
+    private boolean allTags;
+
+    private SortBy sortBy = SortBy.DATE;
+
+    private boolean descending;
+
+    private int page;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Default constructor, for binding from request parameters
+     */
+    public TransactionFilter() {
+    }
+
+    /**
+     * Get the first day to include
+     *
+     * @return fromDate - LocalDate - the first day, or null for no limit
+     */
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    /**
+     * Set the first day to include
+     *
+     * @param fromDate - LocalDate - the first day, or null for no limit
+     */
+    public void setFromDate(LocalDate fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    /**
+     * Get the last day to include
+     *
+     * @return toDate - LocalDate - the last day, or null for no limit
+     */
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
+    /**
+     * Set the last day to include
+     *
+     * @param toDate - LocalDate - the last day, or null for no limit
+     */
+    public void setToDate(LocalDate toDate) {
+        this.toDate = toDate;
+    }
+
+    /**
+     * Get the lowest amount to include. Money out is negative.
+     *
+     * @return minAmountInDollars - Double - the lowest amount, or null for no
+     *         limit
+     */
+    public Double getMinAmountInDollars() {
+        return minAmountInDollars;
+    }
+
+    /**
+     * Set the lowest amount to include. Money out is negative.
+     *
+     * @param minAmountInDollars - Double - the lowest amount, or null for no
+     *                           limit
+     */
+    public void setMinAmountInDollars(Double minAmountInDollars) {
+        this.minAmountInDollars = minAmountInDollars;
+    }
+
+    /**
+     * Get the highest amount to include. Money out is negative.
+     *
+     * @return maxAmountInDollars - Double - the highest amount, or null for no
+     *         limit
+     */
+    public Double getMaxAmountInDollars() {
+        return maxAmountInDollars;
+    }
+
+    /**
+     * Set the highest amount to include. Money out is negative.
+     *
+     * @param maxAmountInDollars - Double - the highest amount, or null for no
+     *                           limit
+     */
+    public void setMaxAmountInDollars(Double maxAmountInDollars) {
+        this.maxAmountInDollars = maxAmountInDollars;
+    }
+
+    /**
+     * Get the text to look for in payees, matched anywhere in the payee's name
+     * regardless of case
+     *
+     * @return payee - String - the text, or null for all payees
+     */
+    public String getPayee() {
+        return payee;
+    }
+
+    /**
+     * Set the text to look for in payees, matched anywhere in the payee's name
+     * regardless of case
+     *
+     * @param payee - String - the text, or null or blank for all payees
+     */
+    public void setPayee(String payee) {
+        this.payee = payee == null || payee.isBlank() ? null : payee.trim();
+    }
+
+    /**
+     * Get whether to include only money in or only money out
+     *
+     * @return direction - Direction - the direction, or null for both
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Set whether to include only money in or only money out
+     *
+     * @param direction - Direction - the direction, or null for both
+     */
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    /**
+     * Get the categories to include
+     *
+     * @return categoryIds - List - transactions in any of these categories, or
+     *         empty for all
+     */
+    public List<Integer> getCategoryIds() {
+        return categoryIds;
+    }
+
+    /**
+     * Set the categories to include
+     *
+     * @param categoryIds - List - transactions in any of these categories, or
+     *                    null for all
+     */
+    public void setCategoryIds(List<Integer> categoryIds) {
+        this.categoryIds = categoryIds == null ? new ArrayList<>() : categoryIds;
+    }
+
+    /**
+     * Get the tags to include
+     *
+     * @return tagIds - List - transactions with these tags, or empty for all
+     */
+    public List<Integer> getTagIds() {
+        return tagIds;
+    }
+
+    /**
+     * Set the tags to include
+     *
+     * @param tagIds - List - transactions with these tags, or null for all
+     */
+    public void setTagIds(List<Integer> tagIds) {
+        this.tagIds = tagIds == null ? new ArrayList<>() : tagIds;
+    }
+
+    /**
+     * Get whether transactions need all of the tags, rather than any of them
+     *
+     * @return allTags - boolean - true if they need all of them
+     */
+    public boolean isAllTags() {
+        return allTags;
+    }
+
+    /**
+     * Set whether transactions need all of the tags, rather than any of them
+     *
+     * @param allTags - boolean - true if they need all of them
+     */
+    public void setAllTags(boolean allTags) {
+        this.allTags = allTags;
+    }
+
+    /**
+     * Get whether the filter picks transactions by category or tag
+     *
+     * @return true if it does
+     */
+    public boolean isByCategoryOrTag() {
+        return !categoryIds.isEmpty() || !tagIds.isEmpty();
+    }
+
+    /**
+     * Get the earliest time to include, the start of the first day in the
+     * server's time zone
+     *
+     * @return the earliest time, or null for no limit
+     */
+    public Date getStartOfRange() {
+        return fromDate == null ? null : Date.from(fromDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Get the time the range ends before, the start of the day after the last one
+     *
+     * @return the end of the range, or null for no limit
+     */
+    public Date getEndOfRange() {
+        return toDate == null ? null
+                : Date.from(toDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Get the lowest amount to include in cents
+     *
+     * @return the lowest amount, or null for no limit
+     */
+    public Long getMinAmountInCents() {
+        return minAmountInDollars == null ? null : Math.round(minAmountInDollars * 100);
+    }
+
+    /**
+     * Get the highest amount to include in cents
+     *
+     * @return the highest amount, or null for no limit
+     */
+    public Long getMaxAmountInCents() {
+        return maxAmountInDollars == null ? null : Math.round(maxAmountInDollars * 100);
+    }
+
+    /**
+     * Get the payee text in lower case, for comparing with lower-cased names
+     *
+     * @return the text, or null for all payees
+     */
+    public String getLowerCasePayee() {
+        return payee == null ? null : payee.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the payee text as a LIKE pattern matching lower-cased names that
+     * contain it. Wildcards in the text are escaped with a backslash.
+     *
+     * @return the pattern, or null for all payees
+     */
+    public String getPayeePattern() {
+        if (payee == null) {
+            return null;
+        }
+        String escaped = getLowerCasePayee().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /**
+     * Whether an amount goes the way the filter asks for. Zero amounts are
+     * neither income nor expense.
+     *
+     * @param amountInCents - the transaction's amount, negative for money out
+     * @return true if it's included
+     */
+    public boolean matchesDirection(long amountInCents) {
+        if (direction == null) {
+            return true;
+        }
+        return direction == Direction.INCOME ? amountInCents > 0 : amountInCents < 0;
+    }
+
+    /**
+     * Get what the transactions are sorted by
+     *
+     * @return sortBy - SortBy - the sort order
+     */
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    /**
+     * Set what the transactions are sorted by
+     *
+     * @param sortBy - SortBy - the sort order, null for the default (date)
+     */
+    public void setSortBy(SortBy sortBy) {
+        this.sortBy = sortBy == null ? SortBy.DATE : sortBy;
+    }
+
+    /**
+     * Get whether the largest (or latest) transactions come first
+     *
+     * @return descending - boolean - true for largest first
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Set whether the largest (or latest) transactions come first
+     *
+     * @param descending - boolean - true for largest first
+     */
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    /**
+     * Get which page to show
+     *
+     * @return page - int - the page, starting at 0
+     */
+    public int getPage() {
+        return page;
+    }
+
+    /**
+     * Set which page to show
+     *
+     * @param page - int - the page, starting at 0
+     */
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    /**
+     * Get how many transactions are on a page
+     *
+     * @return pageSize - int - transactions per page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Set how many transactions are on a page
+     *
+     * @param pageSize - int - transactions per page, at most MAX_PAGE_SIZE
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+}
@@ -0,0 +1,671 @@
+package edu.carroll.bankapp.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * In-memory inverted index over transaction names and recipients, kept
+ * separately for each user so a search only ever looks at the user's own
+ * transactions.
+ *
+ * Text is split into lowercase words with accents removed. Every word of a
+ * search has to match a word of the transaction, either exactly or as a
+ * prefix, and results are ranked by how rare the matched words are, whether
+ * they matched exactly, and whether they're in the name (which counts double)
+ * or the recipient. Ties go to the newest transaction.
+ *
+ * Changes are applied when their database transaction commits. The index is
+ * rebuilt from the database in parallel at startup, unless the copy saved to
+ * disk at the last shutdown is still current. The saved copy is deleted once
+ * it's loaded, so after a crash the index is always rebuilt.
+ */
+@Component
+public class TransactionSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(TransactionSearchIndex.class);
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final int MAX_WORD_LENGTH = 32;
+    // Don't let a one letter prefix drag in every word the user has
+    private static final int MAX_PREFIX_EXPANSIONS = 256;
+    private static final int REBUILD_PAGE_SIZE = 5000;
+    private static final int FILE_MAGIC = 0x53524348;
+    private static final int FILE_VERSION = 1;
+
+    private static final byte IN_NAME = 1;
+    private static final byte IN_TO_FROM = 2;
+
+    private final TransactionRepository transactionRepo;
+    private final AccountRepository accountRepo;
+    private final Path file;
+    private final int rebuildThreads;
+
+    private volatile Map<Integer, UserIndex> users = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    // Changes committed while a rebuild is running, to apply to the rebuilt
+    // index. Guarded by this.
+    private List<Consumer<Map<Integer, UserIndex>>> changesDuringRebuild;
+
+    /**
+     * A ranked search result
+     */
+    public static class Hit {
+        private final int transactionId;
+        private final int accountId;
+        private final double score;
+
+        private Hit(int transactionId, int accountId, double score) {
+            this.transactionId = transactionId;
+            this.accountId = accountId;
+            this.score = score;
+        }
+
+        public int getTransactionId() {
+            return transactionId;
+        }
+
+        public int getAccountId() {
+            return accountId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * What's indexed for one transaction, kept so it can be taken out again
+     */
+    private static class Document {
+        private final int accountId;
+        private final String name;
+        private final String toFrom;
+
+        private Document(int accountId, String name, String toFrom) {
+            this.accountId = accountId;
+            this.name = name;
+            this.toFrom = toFrom;
+        }
+    }
+
+    /**
+     * The transactions containing a word, sorted by id, with which fields the
+     * word is in
+     */
+    private static class Postings {
+        private int[] ids = new int[2];
+        private byte[] fields = new byte[2];
+        private int size;
+
+        private void add(int id, byte field) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                fields[index] |= field;
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            System.arraycopy(fields, index, fields, index + 1, size - index);
+            ids[index] = id;
+            fields[index] = field;
+            size++;
+        }
+
+        private void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                System.arraycopy(fields, index + 1, fields, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * One user's transactions and words
+     */
+    private static class UserIndex {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Integer, Document> documents = new HashMap<>();
+        private final TreeMap<String, Postings> words = new TreeMap<>();
+
+        private void add(int transactionId, Document document) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(transactionId);
+                documents.put(transactionId, document);
+                for (String word : tokenize(document.name)) {
+                    words.computeIfAbsent(word, w -> new Postings()).add(transactionId, IN_NAME);
+                }
+                for (String word : tokenize(document.toFrom)) {
+                    words.computeIfAbsent(word, w -> new Postings()).add(transactionId, IN_TO_FROM);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(Collection<Integer> transactionIds) {
+            lock.writeLock().lock();
+            try {
+                for (int transactionId : transactionIds) {
+                    removeLocked(transactionId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeLocked(int transactionId) {
+            Document document = documents.remove(transactionId);
+            if (document == null) {
+                return;
+            }
+            Set<String> removed = new LinkedHashSet<>(tokenize(document.name));
+            removed.addAll(tokenize(document.toFrom));
+            for (String word : removed) {
+                Postings postings = words.get(word);
+                if (postings != null) {
+                    postings.remove(transactionId);
+                    if (postings.size == 0) {
+                        words.remove(word);
+                    }
+                }
+            }
+        }
+
+        private void removeAccount(int accountId) {
+            lock.writeLock().lock();
+            try {
+                List<Integer> transactionIds = new ArrayList<>();
+                for (Map.Entry<Integer, Document> document : documents.entrySet()) {
+                    if (document.getValue().accountId == accountId) {
+                        transactionIds.add(document.getKey());
+                    }
+                }
+                for (int transactionId : transactionIds) {
+                    removeLocked(transactionId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionRepo - JPA repo for reading transactions to rebuild from
+     * @param accountRepo     - JPA repo for checking the saved index is current
+     * @param file            - where the index is saved at shutdown, or blank to
+     *                        always rebuild it
+     * @param rebuildThreads  - how many threads rebuild the index at startup
+     */
+    public TransactionSearchIndex(TransactionRepository transactionRepo, AccountRepository accountRepo,
+            @Value("${bankapp.search.file:search-index.bin}") String file,
+            @Value("${bankapp.search.rebuild-threads:4}") int rebuildThreads) {
+        this.transactionRepo = transactionRepo;
+        this.accountRepo = accountRepo;
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.rebuildThreads = rebuildThreads;
+    }
+
+    /**
+     * Split text into the words that are indexed and searched for
+     *
+     * @param text - the text to split
+     * @return lowercase words without accents, in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return words;
+        }
+        String normalized = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        for (String word : NON_WORD.split(normalized)) {
+            if (!word.isEmpty()) {
+                words.add(word.length() > MAX_WORD_LENGTH ? word.substring(0, MAX_WORD_LENGTH) : word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Load or rebuild the index in the background once the app is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread thread = new Thread(() -> {
+            try {
+                if (!load()) {
+                    rebuild();
+                }
+            } catch (RuntimeException e) {
+                log.error("Couldn't build the search index", e);
+            }
+        }, "search-index-builder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Whether the index has been built and searches see every transaction
+     *
+     * @return true once built
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Search one user's transactions
+     *
+     * @param userId - the user
+     * @param query  - words to look for, each matching a whole word or the start
+     *               of one
+     * @param limit  - the most results to return
+     * @return the best matches, best first
+     */
+    public List<Hit> search(int userId, String query, int limit) {
+        UserIndex index = users.get(userId);
+        List<String> queryWords = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (index == null || queryWords.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        index.lock.readLock().lock();
+        try {
+            double documentCount = index.documents.size();
+            Map<Integer, Double> scores = null;
+            for (String queryWord : queryWords) {
+                Map<Integer, Double> wordScores = new HashMap<>();
+                List<Map.Entry<String, Postings>> matches = new ArrayList<>();
+                int matchCount = 0;
+                for (Map.Entry<String, Postings> match : index.words
+                        .subMap(queryWord, true, queryWord + Character.MAX_VALUE, false).entrySet()) {
+                    if (matches.size() == MAX_PREFIX_EXPANSIONS) {
+                        break;
+                    }
+                    matches.add(match);
+                    matchCount += match.getValue().size;
+                }
+                // Rarity is judged across every word the query word matches, so
+                // a rare longer word doesn't beat an exact match
+                double idf = Math.log(1 + documentCount / Math.max(1, Math.min(matchCount, documentCount)));
+                for (Map.Entry<String, Postings> match : matches) {
+                    Postings postings = match.getValue();
+                    // A prefix counts for less the more of the word it leaves out
+                    double closeness = (double) queryWord.length() / match.getKey().length();
+                    for (int i = 0; i < postings.size; i++) {
+                        // Narrow down to what every earlier word matched
+                        if (scores != null && !scores.containsKey(postings.ids[i])) {
+                            continue;
+                        }
+                        double fieldWeight = ((postings.fields[i] & IN_NAME) != 0 ? 2 : 0)
+                                + ((postings.fields[i] & IN_TO_FROM) != 0 ? 1 : 0);
+                        wordScores.merge(postings.ids[i], idf * closeness * fieldWeight, Math::max);
+                    }
+                }
+                if (scores != null) {
+                    for (Map.Entry<Integer, Double> score : wordScores.entrySet()) {
+                        score.setValue(score.getValue() + scores.get(score.getKey()));
+                    }
+                }
+                scores = wordScores;
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            // Keep the best few, worst on top so it's the one dropped
+            PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(limit + 1,
+                    (a, b) -> a.getValue().equals(b.getValue()) ? Integer.compare(a.getKey(), b.getKey())
+                            : Double.compare(a.getValue(), b.getValue()));
+            for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+                best.add(score);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            List<Hit> hits = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                Map.Entry<Integer, Double> score = best.poll();
+                hits.add(new Hit(score.getKey(), index.documents.get(score.getKey()).accountId, score.getValue()));
+            }
+            Collections.reverse(hits);
+            return hits;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index a new transaction once its database transaction commits
+     *
+     * @param transaction - the saved transaction
+     */
+    public void added(Transaction transaction) {
+        Integer userId = ownerId(transaction);
+        if (userId == null) {
+            return;
+        }
+        int transactionId = transaction.getId();
+        Document document = new Document(transaction.getAccount().getId(), transaction.getName(),
+                transaction.getToFrom());
+        afterCommit(indexes -> indexes.computeIfAbsent(userId, id -> new UserIndex()).add(transactionId, document));
+    }
+
+    /**
+     * Re-index a changed transaction once its database transaction commits
+     *
+     * @param transaction - the changed transaction
+     */
+    public void updated(Transaction transaction) {
+        added(transaction);
+    }
+
+    /**
+     * Take a transaction out of the index once its database transaction commits
+     *
+     * @param userId        - the transaction's owner
+     * @param transactionId - the deleted transaction
+     */
+    public void removed(int userId, int transactionId) {
+        removed(userId, List.of(transactionId));
+    }
+
+    /**
+     * Take several transactions out of the index once their database
+     * transaction commits
+     *
+     * @param userId         - the transactions' owner
+     * @param transactionIds - the deleted transactions
+     */
+    public void removed(int userId, Collection<Integer> transactionIds) {
+        List<Integer> ids = new ArrayList<>(transactionIds);
+        afterCommit(indexes -> {
+            UserIndex index = indexes.get(userId);
+            if (index != null) {
+                index.remove(ids);
+            }
+        });
+    }
+
+    /**
+     * Take all of an account's transactions out of the index once its database
+     * transaction commits
+     *
+     * @param userId    - the account's owner
+     * @param accountId - the deleted account
+     */
+    public void accountRemoved(int userId, int accountId) {
+        afterCommit(indexes -> {
+            UserIndex index = indexes.get(userId);
+            if (index != null) {
+                index.removeAccount(accountId);
+            }
+        });
+    }
+
+    private static Integer ownerId(Transaction transaction) {
+        if (transaction.getAccount() == null || transaction.getAccount().getOwner() == null) {
+            return null;
+        }
+        return transaction.getAccount().getOwner().getId();
+    }
+
+    /**
+     * Apply a change when the current database transaction commits, or right away
+     * if there isn't one
+     */
+    private void afterCommit(Consumer<Map<Integer, UserIndex>> change) {
+        AfterCommit.run(() -> apply(change));
+    }
+
+    private synchronized void apply(Consumer<Map<Integer, UserIndex>> change) {
+        change.accept(users);
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+    }
+
+    /**
+     * Rebuild the whole index from the database, splitting the transactions
+     * into id ranges read and indexed in parallel. Searches keep using the old
+     * index until the new one is done.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            changesDuringRebuild = new ArrayList<>();
+        }
+        Map<Integer, UserIndex> rebuilt = new ConcurrentHashMap<>();
+        int threads = Math.max(1, rebuildThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long indexed = 0;
+        try {
+            int maxId = transactionRepo.findMaxId();
+            int rangeSize = maxId / threads + 1;
+            List<Future<Long>> ranges = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int from = i * rangeSize;
+                int to = Math.min(maxId, from + rangeSize);
+                ranges.add(executor.submit(() -> indexRange(rebuilt, from, to)));
+            }
+            for (Future<Long> range : ranges) {
+                indexed += range.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopRecordingChanges();
+            throw new IllegalStateException("Interrupted while rebuilding the search index", e);
+        } catch (ExecutionException e) {
+            stopRecordingChanges();
+            throw new IllegalStateException("Couldn't rebuild the search index", e.getCause());
+        } catch (RuntimeException e) {
+            stopRecordingChanges();
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+        synchronized (this) {
+            // Changes that committed while reading may or may not have been
+            // read, so apply them again on top. They're safe to repeat.
+            for (Consumer<Map<Integer, UserIndex>> change : changesDuringRebuild) {
+                change.accept(rebuilt);
+            }
+            changesDuringRebuild = null;
+            users = rebuilt;
+            ready = true;
+        }
+        log.info("Rebuilt the search index with {} transactions of {} users in {} ms", indexed, rebuilt.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private synchronized void stopRecordingChanges() {
+        changesDuringRebuild = null;
+    }
+
+    /**
+     * Index the transactions with ids after from and up to to
+     *
+     * @return how many were indexed
+     */
+    private long indexRange(Map<Integer, UserIndex> into, int from, int to) {
+        long indexed = 0;
+        int afterId = from;
+        while (afterId < to) {
+            List<Object[]> page = transactionRepo.findForSearchIndex(afterId, to, PageRequest.of(0, REBUILD_PAGE_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Object[] row : page) {
+                afterId = (Integer) row[0];
+                into.computeIfAbsent((Integer) row[2], id -> new UserIndex()).add(afterId,
+                        new Document((Integer) row[1], (String) row[3], (String) row[4]));
+            }
+            indexed += page.size();
+        }
+        return indexed;
+    }
+
+    /**
+     * Save the index so the next start doesn't have to rebuild it
+     */
+    @PreDestroy
+    public synchronized void save() {
+        if (file == null || !ready) {
+            return;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try {
+            // Read before the documents, so a change committed in between makes
+            // the saved copy look out of date rather than current
+            long revisions = accountRepo.sumRevisions();
+            try (OutputStream raw = Files.newOutputStream(temporary);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(new CheckedOutputStream(raw, crc), 64 * 1024))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeLong(revisions);
+                out.writeInt(users.size());
+                for (Map.Entry<Integer, UserIndex> user : users.entrySet()) {
+                    UserIndex index = user.getValue();
+                    index.lock.readLock().lock();
+                    try {
+                        out.writeInt(user.getKey());
+                        out.writeInt(index.documents.size());
+                        for (Map.Entry<Integer, Document> document : index.documents.entrySet()) {
+                            out.writeInt(document.getKey());
+                            out.writeInt(document.getValue().accountId);
+                            out.writeUTF(document.getValue().name);
+                            out.writeUTF(document.getValue().toFrom);
+                        }
+                    } finally {
+                        index.lock.readLock().unlock();
+                    }
+                }
+                out.flush();
+                new DataOutputStream(raw).writeLong(crc.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Saved the search index to {}", file);
+        } catch (IOException | RuntimeException e) {
+            log.error("Couldn't save the search index", e);
+        }
+    }
+
+    /**
+     * Load the index saved at the last shutdown, if nothing has changed since
+     *
+     * @return true if it was loaded
+     */
+    private boolean load() {
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        Map<Integer, UserIndex> loaded = new ConcurrentHashMap<>();
+        long revisions;
+        CRC32 crc = new CRC32();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a search index");
+            }
+            revisions = in.readLong();
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                UserIndex index = new UserIndex();
+                loaded.put(in.readInt(), index);
+                int documentCount = in.readInt();
+                for (int j = 0; j < documentCount; j++) {
+                    int transactionId = in.readInt();
+                    index.add(transactionId, new Document(in.readInt(), in.readUTF(), in.readUTF()));
+                }
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(raw).readLong() != expected) {
+                throw new IOException("Checksum doesn't match");
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Couldn't load the saved search index, rebuilding it: {}", e.getMessage());
+            deleteFile();
+            return false;
+        }
+        // Only good until the next change, so don't trust it after a crash
+        deleteFile();
+
+        synchronized (this) {
+            // Anything changed since it was saved (including while it was being
+            // read) means rebuilding
+            if (revisions != accountRepo.sumRevisions()) {
+                log.info("Saved search index is out of date, rebuilding it");
+                return false;
+            }
+            users = loaded;
+            ready = true;
+        }
+        log.info("Loaded the search index from {} in {} ms", file, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    private void deleteFile() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Couldn't delete the saved search index", e);
+        }
+    }
+}
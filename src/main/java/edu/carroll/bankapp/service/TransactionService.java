@@ -1,24 +1,45 @@
 package edu.carroll.bankapp.service;
 
 import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.CategoryRule;
 import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Tag;
 import edu.carroll.bankapp.jpa.model.Transaction;
 
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
 /**
  * Interface for managing transactions.
  */
 public interface TransactionService {
     /**
-     * Create and save a new transaction in the database.
+     * Create and save a new transaction in the database. When the posting engine
+     * is turned on, the transaction is posted through it instead and written to
+     * the database a moment later, so none is returned and the response is
+     * pending instead.
      *
      * @param name            the name of the transaction
      * @param amountInDollars the amount in dollars
      * @param toFrom          the recipient/sender of the transaction
      * @param account         the account associated with the transaction
-     * @return the created transaction
+     * @return the created transaction, or a pending response if it was posted
+     *         through the engine
      */
     ServiceResponse<Transaction> createTransaction(String name, long amountInDollars, String toFrom, Account account);
 
+    /**
+     * Create a new account's starting balance transaction, in the same database
+     * transaction as the account itself.
+     *
+     * @param amountInDollars the starting balance in dollars
+     * @param account         the new account
+     * @return the created transaction
+     */
+    ServiceResponse<Transaction> createStartingTransaction(long amountInDollars, Account account);
+
     /**
      * Get a transaction from the given id (and make sure it belongs to the current
      * user).
@@ -37,6 +58,33 @@ public interface TransactionService {
      */
     ServiceResponse<Boolean> deleteTransaction(SiteUser loggedInUser, Transaction transaction);
 
+    /**
+     * Update a transaction in place if owned by the currently logged-in user.
+     * Only the difference in amount is applied to the account balance. For
+     * transfers, only the amount can change, and the other half of the transfer
+     * is kept in sync.
+     *
+     * @param loggedInUser    the currently logged-in user
+     * @param transaction     the transaction to be updated
+     * @param name            the new name of the transaction
+     * @param amountInDollars the new amount in dollars
+     * @param toFrom          the new recipient/sender of the transaction
+     * @return the updated transaction
+     */
+    ServiceResponse<Transaction> updateTransaction(SiteUser loggedInUser, Transaction transaction, String name,
+            long amountInDollars, String toFrom);
+
+    /**
+     * Delete all of the given transactions (and the other halves of any
+     * transfers among them) if they're all owned by the currently logged-in
+     * user. Nothing is deleted if any of them belong to someone else.
+     *
+     * @param loggedInUser   the currently logged-in user
+     * @param transactionIds the ids of the transactions to be deleted
+     * @return the number of transactions deleted
+     */
+    ServiceResponse<Integer> deleteTransactions(SiteUser loggedInUser, List<Integer> transactionIds);
+
     /**
      * Create a transfer between two accounts
      * 
@@ -46,4 +94,152 @@ public interface TransactionService {
      * @return true if successful, false if not
      */
     ServiceResponse<Boolean> createTransfer(Account toAccount, Account fromAccount, long amount);
+
+    /**
+     * Search the currently logged-in user's transactions by name and recipient.
+     * Every word of the query has to match a word of the transaction, or the
+     * start of one.
+     *
+     * @param loggedInUser the currently logged-in user
+     * @param query        the words to look for
+     * @param limit        the most transactions to return
+     * @return matching transactions, best match first
+     */
+    List<Transaction> searchTransactions(SiteUser loggedInUser, String query, int limit);
+
+    /**
+     * File a transaction under a category and replace its tags, if it's owned by
+     * the currently logged-in user. Categories and tags the user hasn't used
+     * before are created.
+     *
+     * @param loggedInUser the currently logged-in user
+     * @param transaction  the transaction to be categorized
+     * @param category     the name of its category, or blank for none
+     * @param tags         the names of all of its tags
+     * @return the categorized transaction
+     */
+    ServiceResponse<Transaction> categorizeTransaction(SiteUser loggedInUser, Transaction transaction,
+            String category, List<String> tags);
+
+    /**
+     * Update a transaction as updateTransaction does and file it as
+     * categorizeTransaction does, both in one database transaction, so an edit
+     * is never left half applied.
+     *
+     * @param loggedInUser    the currently logged-in user
+     * @param transaction     the transaction to be edited
+     * @param name            the new name of the transaction
+     * @param amountInDollars the new amount in dollars
+     * @param toFrom          the new recipient/sender of the transaction
+     * @param category        the name of its category, or blank for none
+     * @param tags            the names of all of its tags
+     * @return the edited transaction
+     */
+    ServiceResponse<Transaction> editTransaction(SiteUser loggedInUser, Transaction transaction, String name,
+            long amountInDollars, String toFrom, String category, List<String> tags);
+
+    /**
+     * Get the currently logged-in user's categories
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return their categories, sorted by name
+     */
+    List<Category> getUserCategories(SiteUser loggedInUser);
+
+    /**
+     * Get the currently logged-in user's tags
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return their tags, sorted by name
+     */
+    List<Tag> getUserTags(SiteUser loggedInUser);
+
+    /**
+     * Get one page of an account's transactions, limited and sorted by the given
+     * filter. Only the requested page is loaded.
+     *
+     * @param loggedInUser the currently logged-in user
+     * @param account      the account to look in
+     * @param filter       which transactions to show and in what order
+     * @return the page of transactions, or null with a message if the account
+     *         isn't the user's or the filter doesn't make sense
+     */
+    ServiceResponse<Page<Transaction>> findTransactions(SiteUser loggedInUser, Account account,
+            TransactionFilter filter);
+
+    /**
+     * Add a rule for filing the currently logged-in user's new transactions under
+     * a category. Categories the user hasn't used before are created.
+     *
+     * @param loggedInUser the currently logged-in user
+     * @param field        what part of a transaction the rule looks at
+     * @param pattern      the text the field has to contain, ignoring case
+     * @param category     the name of the category
+     * @return the added rule
+     */
+    ServiceResponse<CategoryRule> addCategoryRule(SiteUser loggedInUser, CategoryRule.Field field, String pattern,
+            String category);
+
+    /**
+     * Delete one of the currently logged-in user's rules
+     *
+     * @param loggedInUser the currently logged-in user
+     * @param ruleId       the id of the rule to delete
+     * @return true if it was deleted
+     */
+    ServiceResponse<Boolean> deleteCategoryRule(SiteUser loggedInUser, int ruleId);
+
+    /**
+     * Get the currently logged-in user's rules
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return their rules, oldest first
+     */
+    List<CategoryRule> getUserCategoryRules(SiteUser loggedInUser);
+
+    /**
+     * Get the version of the currently logged-in user's rules, which goes up
+     * whenever they're added to or deleted from
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return the version of their rules
+     */
+    long getCategoryRulesVersion(SiteUser loggedInUser);
+
+    /**
+     * File the currently logged-in user's existing transactions that aren't in a
+     * category yet using their rules
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return the number of transactions filed
+     */
+    ServiceResponse<Long> applyCategoryRules(SiteUser loggedInUser);
+
+    /**
+     * Get the currently logged-in user's top payees, by number of transactions
+     * and by money spent. The totals are estimates with error bounds.
+     *
+     * @param loggedInUser the currently logged-in user
+     * @param limit        the most payees to list each way
+     * @return their top payees
+     */
+    PayeeSketches.TopPayees getTopPayees(SiteUser loggedInUser, int limit);
+
+    /**
+     * Get the version of the currently logged-in user's top payees, which goes up
+     * whenever they're recounted or loaded again
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return the version of their top payees
+     */
+    long getTopPayeesVersion(SiteUser loggedInUser);
+
+    /**
+     * Count the currently logged-in user's top payees again from all of their
+     * transactions, taking out ones that were deleted or changed
+     *
+     * @param loggedInUser the currently logged-in user
+     * @return true once they're counted
+     */
+    ServiceResponse<Boolean> recountTopPayees(SiteUser loggedInUser);
 }
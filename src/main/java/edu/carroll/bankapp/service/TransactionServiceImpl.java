@@ -2,17 +2,39 @@ package edu.carroll.bankapp.service;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+import edu.carroll.bankapp.jpa.model.JournalEntry;
 import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Tag;
 import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.model.TransactionTag;
 import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.CategoryRepository;
+import edu.carroll.bankapp.jpa.repo.CategoryRuleRepository;
+import edu.carroll.bankapp.jpa.repo.TagRepository;
 import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionTagRepository;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.transaction.Transactional;
 
 /**
  * Service for managing accounts.
@@ -20,37 +42,170 @@ import edu.carroll.bankapp.jpa.repo.TransactionRepository;
 @Service
 public class TransactionServiceImpl implements TransactionService {
     private static final Logger log = LoggerFactory.getLogger(TransactionServiceImpl.class);
+    // Keep "where id in (...)" lists to a reasonable number of parameters
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    // Most tags a single transaction can have
+    private static final int MAX_TAGS = 20;
+    // Most categorization rules a single user can have
+    private static final int MAX_RULES = 10000;
 
     private final TransactionRepository transactionRepo;
     private final AccountRepository accountRepo;
+    private final AccountSummaryCache accountSummaryCache;
+    private final AccountEventPublisher accountEvents;
+    private final LedgerService ledger;
+    private final TransactionSearchIndex searchIndex;
+    private final PayeeSuggestions payeeSuggestions;
+    private final PayeeDictionary payeeDictionary;
+    private final TagBitmapIndex tagIndex;
+    private final CategoryRepository categoryRepo;
+    private final TagRepository tagRepo;
+    private final TransactionTagRepository transactionTagRepo;
+    private final CategoryRules categoryRules;
+    private final CategoryRuleRepository categoryRuleRepo;
+    private final PayeeSketches payeeSketches;
+    private final AnomalyDetector anomalyDetector;
+    private final TransactionAnalytics analytics;
+    private final EngineAccounts engineAccounts;
 
     /**
      * Inject dependencies
      *
-     * @param transactionRepo - JPA repo for querying transactions
-     * @param accountRepo     - JPA repo for querying accounts
+     * @param transactionRepo     - JPA repo for querying transactions
+     * @param accountRepo         - JPA repo for querying accounts
+     * @param accountSummaryCache - cache of each user's accounts, kept in step with
+     *                            balance changes
+     * @param accountEvents       - for announcing changed accounts
+     * @param ledger              - where every balance change is recorded
+     * @param searchIndex         - index of transaction names and recipients,
+     *                            kept in step with changes
+     * @param payeeSuggestions    - payees suggested while typing, kept in step
+     *                            with new transactions
+     * @param payeeDictionary     - each user's payees, referred to by id
+     * @param tagIndex            - bitmaps of each account's categories and
+     *                            tags, kept in step with changes
+     * @param categoryRepo        - JPA repo for users' categories
+     * @param tagRepo             - JPA repo for users' tags
+     * @param transactionTagRepo  - JPA repo for the tags on transactions
+     * @param categoryRules       - each user's compiled categorization rules
+     * @param categoryRuleRepo    - JPA repo for users' categorization rules
+     * @param payeeSketches       - each user's top payees, kept in step with new
+     *                            transactions
+     * @param anomalyDetector     - notices transactions much larger than usual
+     * @param analytics           - each user's transactions in columns for
+     *                            reports, kept in step with changes
+     * @param engineAccounts      - the posting engine, when it's turned on
      */
-    public TransactionServiceImpl(TransactionRepository transactionRepo, AccountRepository accountRepo) {
+    public TransactionServiceImpl(TransactionRepository transactionRepo, AccountRepository accountRepo,
+            AccountSummaryCache accountSummaryCache, AccountEventPublisher accountEvents, LedgerService ledger,
+            TransactionSearchIndex searchIndex, PayeeSuggestions payeeSuggestions, PayeeDictionary payeeDictionary,
+            TagBitmapIndex tagIndex, CategoryRepository categoryRepo, TagRepository tagRepo,
+            TransactionTagRepository transactionTagRepo, CategoryRules categoryRules,
+            CategoryRuleRepository categoryRuleRepo, PayeeSketches payeeSketches, AnomalyDetector anomalyDetector,
+            TransactionAnalytics analytics, EngineAccounts engineAccounts) {
         this.transactionRepo = transactionRepo;
         this.accountRepo = accountRepo;
+        this.accountSummaryCache = accountSummaryCache;
+        this.accountEvents = accountEvents;
+        this.ledger = ledger;
+        this.searchIndex = searchIndex;
+        this.payeeSuggestions = payeeSuggestions;
+        this.payeeDictionary = payeeDictionary;
+        this.tagIndex = tagIndex;
+        this.categoryRepo = categoryRepo;
+        this.tagRepo = tagRepo;
+        this.transactionTagRepo = transactionTagRepo;
+        this.categoryRules = categoryRules;
+        this.categoryRuleRepo = categoryRuleRepo;
+        this.payeeSketches = payeeSketches;
+        this.anomalyDetector = anomalyDetector;
+        this.analytics = analytics;
+        this.engineAccounts = engineAccounts;
     }
 
     /**
-     * Create and save a new transaction in the database
+     * Create a new transaction. With the posting engine turned on, it's posted
+     * through the engine, whose projection writes it to the database.
      */
+    @Transactional
     public ServiceResponse<Transaction> createTransaction(String name, long amountInDollars, String toFrom,
             Account account) {
-        if (name == null || name.equals("")) {
-            return new ServiceResponse<Transaction>(null, "Transaction name cannot be blank");
+        if (!engineAccounts.isEnabled()) {
+            return createAndRecordTransaction(name, amountInDollars, toFrom, account);
         }
-        // Don't accept excessively long transaction names
-        if (name.length() > 255) {
-            return new ServiceResponse<Transaction>(null, "Transaction name is too long");
+        String problem = checkFields(name, toFrom);
+        if (problem != null) {
+            return new ServiceResponse<Transaction>(null, problem);
         }
+        engineAccounts.post(account, amountInDollars * 100, name, toFrom);
+        return ServiceResponse.pending("Transaction added, it will show up in a moment");
+    }
 
-        // Don't accept excessively long transaction recipients
-        if (toFrom.length() > 255) {
-            return new ServiceResponse<Transaction>(null, "Transaction recipient is too long");
+    /**
+     * Create the starting balance transaction directly in the database. The new
+     * account isn't committed yet, so the engine's projection couldn't find it.
+     */
+    @Transactional
+    public ServiceResponse<Transaction> createStartingTransaction(long amountInDollars, Account account) {
+        return createAndRecordTransaction("Starting Balance", amountInDollars, "", account);
+    }
+
+    /**
+     * Create and save a new transaction in the database, with its journal entry.
+     * The inserts and the balance update are written together when the database
+     * transaction commits. A transaction much larger than the account usually
+     * sees is still created, with a warning in the message.
+     *
+     * @return the created transaction
+     */
+    private ServiceResponse<Transaction> createAndRecordTransaction(String name, long amountInDollars,
+            String toFrom, Account account) {
+        ServiceResponse<Transaction> response = createTransaction(name, amountInDollars, toFrom, account, null);
+        Transaction transaction = response.getResult();
+        if (transaction != null) {
+            // Money in from (or out to) outside the bank
+            JournalEntry entry = new JournalEntry("Transaction");
+            entry.addPosting(account.getId(), transaction.getId(), transaction.getAmountInCents());
+            entry.balanceExternally();
+            ledger.append(entry);
+            payeeSuggestions.used(transaction);
+            payeeSketches.added(transaction);
+            AnomalyDetector.Anomaly anomaly = anomalyDetector.observe(account, transaction.getAmountInCents());
+            if (anomaly != null) {
+                log.info("Transaction {} in account {} is unusually large", transaction.getId(), account.getId());
+                return new ServiceResponse<Transaction>(transaction, String.format(
+                        "Transaction created successfully. %s is much more than usual for %s, where most %s are "
+                                + "under %s",
+                        dollars(anomaly.getAmountInCents()), account.getName(),
+                        anomaly.getAmountInCents() < 0 ? "expenses" : "deposits",
+                        dollars(anomaly.getUsualMaxInCents())));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Format an amount for a message
+     *
+     * @param cents - the amount in cents, either sign
+     * @return the size of the amount in dollars, like $1,234.50
+     */
+    private static String dollars(long cents) {
+        return String.format("$%,.2f", Math.abs(cents) / 100.0);
+    }
+
+    /**
+     * Create and save a new transaction, optionally linked to the other half of a
+     * transfer. Setting the link before saving keeps it part of the insert.
+     *
+     * @param transferPairId - the id of the other half of the transfer, or null
+     * @return the created transaction
+     */
+    private ServiceResponse<Transaction> createTransaction(String name, long amountInDollars, String toFrom,
+            Account account, Integer transferPairId) {
+        String problem = checkFields(name, toFrom);
+        if (problem != null) {
+            return new ServiceResponse<Transaction>(null, problem);
         }
         log.info("Creating transaction with name: {} and account: {}", name, account.getName());
         // Create the transaction
@@ -58,13 +213,20 @@ public class TransactionServiceImpl implements TransactionService {
         // Populate its fields
         newTransaction.setName(name);
         newTransaction.setAmountInDollars(amountInDollars);
-        newTransaction.setToFrom(toFrom);
+        newTransaction.setPayee(payeeDictionary.intern(account.getOwner().getId(), toFrom));
+        // File it using the owner's rules, as part of the insert
+        newTransaction.setCategory(categoryRules.categorize(account.getOwner().getId(), name, toFrom));
         newTransaction.setAccount(account);
         newTransaction.setDate(new Date());
+        newTransaction.setTransferPairId(transferPairId);
         // Save the transaction
         transactionRepo.save(newTransaction);
+        searchIndex.added(newTransaction);
+        tagIndex.added(newTransaction);
+        analytics.added(newTransaction);
         // Update the account balance
         account.addBalanceInCents(newTransaction.getAmountInCents());
+        balanceChanged(account, newTransaction.getAmountInCents());
         // Add the transaction to the account
         account.addTransaction(newTransaction);
         // Save the account
@@ -72,6 +234,29 @@ public class TransactionServiceImpl implements TransactionService {
         return new ServiceResponse<Transaction>(newTransaction, "Transaction created successfully");
     }
 
+    /**
+     * Check a new transaction's name and recipient
+     *
+     * @param name   - the transaction's name
+     * @param toFrom - the transaction's recipient or sender
+     * @return what's wrong with them, or null if they're fine
+     */
+    static String checkFields(String name, String toFrom) {
+        if (name == null || name.equals("")) {
+            return "Transaction name cannot be blank";
+        }
+        // Don't accept excessively long transaction names
+        if (name.length() > 255) {
+            return "Transaction name is too long";
+        }
+
+        // Don't accept excessively long transaction recipients
+        if (toFrom.length() > 255) {
+            return "Transaction recipient is too long";
+        }
+        return null;
+    }
+
     public Transaction getUserTransaction(SiteUser loggedInUser, int id) {
         List<Transaction> transactions = transactionRepo.findById(id);
         // Make sure the transaction exists
@@ -92,12 +277,18 @@ public class TransactionServiceImpl implements TransactionService {
                     transaction.getName(), transaction.getOwner());
             return null;
         }
+        // Transactions in deleted accounts are waiting to be purged
+        if (transaction.getAccount().isDeleted()) {
+            log.info("Transaction with id {} belongs to a deleted account", id);
+            return null;
+        }
         return transaction;
     }
 
     /**
      * Delete the given transaction if owned by the currently logged-in user
      */
+    @Transactional
     public ServiceResponse<Boolean> deleteTransaction(SiteUser loggedInUser, Transaction transaction) {
         // Make sure the account is the current user's to delete
         if (!loggedInUser.owns(transaction)) {
@@ -107,36 +298,320 @@ public class TransactionServiceImpl implements TransactionService {
             // User may be trying to do something bad, don't tell them anything useful
             return new ServiceResponse<Boolean>(false, "Something went wrong");
         }
+        // Find the other half of a transfer first, so both accounts are released
+        // from the posting engine before either is changed
+        Transaction otherHalf = isTransfer(transaction) ? findOtherTransferTransaction(transaction, loggedInUser)
+                : null;
+        engineAccounts.releaseUntilCommit(transaction.getAccount(),
+                otherHalf == null ? null : otherHalf.getAccount());
 
         // Update the account balance
         transaction.getAccount().subtractBalanceInCents(transaction.getAmountInCents());
+        balanceChanged(transaction.getAccount(), -transaction.getAmountInCents());
         // Remove transaction from account
         transaction.getAccount().removeTransaction(transaction);
         // Save changes to account
         accountRepo.save(transaction.getAccount());
 
-        // TODO: This is hacky and bad!
-        if (transaction.getName().startsWith("Transfer from ") || transaction.getName().startsWith("Transfer to ")) {
-            deleteOtherTransferTransaction(transaction, loggedInUser);
+        // Reverse the transaction (and the other half of a transfer) in the ledger
+        JournalEntry reversal = new JournalEntry("Deleted transaction");
+        reversal.addPosting(transaction.getAccount().getId(), transaction.getId(), -transaction.getAmountInCents());
+        if (otherHalf != null) {
+            deleteOtherTransferTransaction(otherHalf, loggedInUser);
+            reversal.addPosting(otherHalf.getAccount().getId(), otherHalf.getId(), -otherHalf.getAmountInCents());
         }
+        reversal.balanceExternally();
+        ledger.append(reversal);
 
         // Delete transaction from database
         transactionRepo.delete(transaction);
+        searchIndex.removed(loggedInUser.getId(), transaction.getId());
+        tagIndex.removed(transaction);
+        analytics.removed(transaction);
 
         log.info("Deleted transaction: {}", transaction.getName());
         return new ServiceResponse<Boolean>(true, "Deleted transaction");
     }
 
     /**
-     * Given one transaction in a transfer, delete the other transaction.
-     * THE PROJECT SHOULD BE REDESIGNED SO THIS FUNCTION IS UNNECESSARY!
+     * Update a transaction in place, applying only the change in amount to the
+     * account balance
+     */
+    @Transactional
+    public ServiceResponse<Transaction> updateTransaction(SiteUser loggedInUser, Transaction transaction,
+            String name, long amountInDollars, String toFrom) {
+        // Make sure the transaction is the current user's to edit
+        if (transaction == null || !loggedInUser.owns(transaction)) {
+            log.warn("{} tried to edit a transaction they don't own", loggedInUser.getUsername());
+            // User may be trying to do something bad, don't tell them anything useful
+            return new ServiceResponse<Transaction>(null, "Something went wrong");
+        }
+        if (name == null || name.equals("")) {
+            return new ServiceResponse<Transaction>(null, "Transaction name cannot be blank");
+        }
+        // Don't accept excessively long transaction names
+        if (name.length() > 255) {
+            return new ServiceResponse<Transaction>(null, "Transaction name is too long");
+        }
+        // A blank recipient is only kept, never introduced (the starting balance
+        // has none)
+        if (toFrom == null || (toFrom.isBlank() && !transaction.getToFrom().isBlank())) {
+            return new ServiceResponse<Transaction>(null, "Transaction recipient cannot be blank");
+        }
+        // Don't accept excessively long transaction recipients
+        if (toFrom.length() > 255) {
+            return new ServiceResponse<Transaction>(null, "Transaction recipient is too long");
+        }
+
+        // Find the other half of a transfer first, so both accounts are released
+        // from the posting engine before either is changed
+        Transaction otherHalf = isTransfer(transaction) ? findOtherTransferTransaction(transaction, loggedInUser)
+                : null;
+        Set<Integer> changedAccountIds = new LinkedHashSet<>();
+        changedAccountIds.add(transaction.getAccount().getId());
+        if (otherHalf != null) {
+            changedAccountIds.add(otherHalf.getAccount().getId());
+        }
+        engineAccounts.releaseUntilCommit(changedAccountIds);
+
+        long oldAmountInCents = transaction.getAmountInCents();
+        if (isTransfer(transaction) && oldAmountInCents != 0) {
+            // Which way a transfer goes is fixed by its name, only its size can
+            // change
+            amountInDollars = Long.signum(oldAmountInCents) * Math.abs(amountInDollars);
+        }
+        transaction.setAmountInDollars(amountInDollars);
+        long delta = transaction.getAmountInCents() - oldAmountInCents;
+
+        if (isTransfer(transaction)) {
+            // Transfer names describe the accounts involved, only the amount can change
+            if (otherHalf != null) {
+                otherHalf.setAmountInCents(-1 * transaction.getAmountInCents());
+                transactionRepo.save(otherHalf);
+            }
+        } else {
+            transaction.setName(name);
+            transaction.setPayee(payeeDictionary.intern(loggedInUser.getId(), toFrom));
+        }
+        transactionRepo.save(transaction);
+        searchIndex.updated(transaction);
+        tagIndex.updated(transaction);
+        analytics.updated(transaction);
+        if (otherHalf != null) {
+            analytics.updated(otherHalf);
+        }
+
+        // Apply just the difference to the balances. The transaction's own account
+        // is always updated so its revision reflects a change of name too.
+        accountRepo.addToBalance(transaction.getAccount().getId(), delta);
+        accountRepo.refreshIfLoaded(transaction.getAccount().getId());
+        balanceChanged(transaction.getAccount(), delta);
+        if (delta != 0) {
+            // Record just the difference in the ledger
+            JournalEntry adjustment = new JournalEntry("Updated transaction");
+            adjustment.addPosting(transaction.getAccount().getId(), transaction.getId(), delta);
+            if (otherHalf != null) {
+                accountRepo.addToBalance(otherHalf.getAccount().getId(), -delta);
+                accountRepo.refreshIfLoaded(otherHalf.getAccount().getId());
+                balanceChanged(otherHalf.getAccount(), -delta);
+                adjustment.addPosting(otherHalf.getAccount().getId(), otherHalf.getId(), -delta);
+            }
+            adjustment.balanceExternally();
+            ledger.append(adjustment);
+        }
+
+        log.info("Updated transaction {}, amount changed by {} cents", transaction.getId(), delta);
+        return new ServiceResponse<Transaction>(transaction, "Transaction updated");
+    }
+
+    /**
+     * Delete several transactions at once. Ownership is checked with one query,
+     * the rows (and the other halves of any transfers) are deleted with
+     * set-based statements, each affected account gets a single balance update,
+     * and one journal entry reverses them all, in one database transaction.
+     */
+    @Transactional
+    public ServiceResponse<Integer> deleteTransactions(SiteUser loggedInUser, List<Integer> transactionIds) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        if (transactionIds != null) {
+            for (Integer id : transactionIds) {
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return new ServiceResponse<Integer>(0, "No transactions selected");
+        }
+
+        // Make sure every transaction belongs to the current user
+        long owned = 0;
+        for (List<Integer> chunk : partition(ids)) {
+            owned += transactionRepo.countOwned(chunk, loggedInUser);
+        }
+        if (owned != ids.size()) {
+            log.warn("{} tried to delete {} transactions but only owns {} of them",
+                    loggedInUser.getUsername(), ids.size(), owned);
+            // User may be trying to do something bad, don't tell them anything useful
+            return new ServiceResponse<Integer>(0, "Something went wrong");
+        }
+
+        // Pull in the other halves of any transfers
+        Set<Integer> pairedIds = new LinkedHashSet<>();
+        for (List<Integer> chunk : partition(ids)) {
+            pairedIds.addAll(transactionRepo.findTransferPairIds(chunk));
+            for (Transaction unlinked : transactionRepo.findUnlinkedTransfers(chunk)) {
+                Transaction other = findOtherTransferTransaction(unlinked, loggedInUser);
+                if (other != null) {
+                    pairedIds.add(other.getId());
+                }
+            }
+        }
+        ids.addAll(pairedIds);
+
+        // Total up what's being removed from each account before deleting anything
+        List<Object[]> deltas = new ArrayList<>();
+        for (List<Integer> chunk : partition(ids)) {
+            deltas.addAll(transactionRepo.sumAmountsByAccount(chunk));
+        }
+        Set<Integer> accountIds = new LinkedHashSet<>();
+        for (Object[] delta : deltas) {
+            accountIds.add((Integer) delta[0]);
+        }
+        engineAccounts.releaseUntilCommit(accountIds);
+        for (List<Integer> chunk : partition(ids)) {
+            transactionTagRepo.deleteByTransactionIds(chunk);
+            transactionRepo.deleteAllByIdInBatch(chunk);
+        }
+        searchIndex.removed(loggedInUser.getId(), ids);
+        tagIndex.removed(accountIds, ids);
+        analytics.removed(loggedInUser.getId(), ids);
+        // One posting per account, so the entry doesn't grow with the number of
+        // rows either
+        JournalEntry reversal = new JournalEntry(String.format("Deleted %d transactions", ids.size()));
+        AccountSummaryCache.PendingUpdate cacheUpdate = accountSummaryCache.update(loggedInUser.getId());
+        for (Object[] delta : deltas) {
+            accountRepo.addToBalance((Integer) delta[0], -((Number) delta[1]).longValue());
+            // Deleted transactions can't be reloaded, so let go of the account
+            // instead of refreshing it
+            accountRepo.detachIfLoaded((Integer) delta[0]);
+            cacheUpdate.adjustBalance((Integer) delta[0], -((Number) delta[1]).longValue());
+            accountEvents.publish(AccountEvent.Type.CHANGED, loggedInUser.getId(), (Integer) delta[0]);
+            reversal.addPosting((Integer) delta[0], null, -((Number) delta[1]).longValue());
+        }
+        reversal.balanceExternally();
+        ledger.append(reversal);
+
+        log.info("{} deleted {} transactions", loggedInUser.getUsername(), ids.size());
+        return new ServiceResponse<Integer>(ids.size(), String.format("Deleted %d transactions", ids.size()));
+    }
+
+    /**
+     * Split a set of ids into lists small enough for a single query
+     *
+     * @param ids - the ids to split up
+     * @return lists of at most MAX_IDS_PER_QUERY ids
+     */
+    private static List<List<Integer>> partition(Set<Integer> ids) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> chunk = new ArrayList<>();
+        for (Integer id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_IDS_PER_QUERY) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Record a balance change in the owner's cached account summaries and let
+     * anyone listening know. Both happen when the current database transaction
+     * commits.
+     *
+     * @param account - the account whose balance changed
+     * @param delta   - the change in cents
+     */
+    private void balanceChanged(Account account, long delta) {
+        if (account.getOwner() != null) {
+            accountSummaryCache.update(account.getOwner().getId()).adjustBalance(account.getId(), delta);
+            accountEvents.publish(AccountEvent.Type.CHANGED, account.getOwner().getId(), account.getId());
+        }
+    }
+
+    /**
+     * Record a change to an account's transactions that left its balance alone,
+     * like balanceChanged
+     *
+     * @param account - the account whose revision was bumped
+     */
+    private void revisionChanged(Account account) {
+        if (account.getOwner() != null) {
+            accountSummaryCache.update(account.getOwner().getId()).bumpRevision(account.getId());
+            accountEvents.publish(AccountEvent.Type.CHANGED, account.getOwner().getId(), account.getId());
+        }
+    }
+
+    /**
+     * Whether the given transaction is one half of a transfer
+     *
+     * @param transaction - the transaction to check
+     * @return true if it's a transfer
+     */
+    private boolean isTransfer(Transaction transaction) {
+        if (transaction.getTransferPairId() != null) {
+            return true;
+        }
+        // Transfers created before they were linked by id can only be recognized by
+        // name
+        return transaction.getName().startsWith("Transfer from ") || transaction.getName().startsWith("Transfer to ");
+    }
+
+    /**
+     * Delete the other transaction in a transfer, found with
+     * findOtherTransferTransaction.
+     *
+     * @param closestTransaction - The other transaction in the transfer
+     * @param loggedInUser       - The current user
+     */
+    private void deleteOtherTransferTransaction(Transaction closestTransaction, SiteUser loggedInUser) {
+        // Update the account balance
+        closestTransaction.getAccount().subtractBalanceInCents(closestTransaction.getAmountInCents());
+        balanceChanged(closestTransaction.getAccount(), -closestTransaction.getAmountInCents());
+        // Remove transaction from account
+        closestTransaction.getAccount().removeTransaction(closestTransaction);
+        // Save changes to account
+        accountRepo.save(closestTransaction.getAccount());
+        // Delete the transaction
+        transactionRepo.delete(closestTransaction);
+        searchIndex.removed(loggedInUser.getId(), closestTransaction.getId());
+        tagIndex.removed(closestTransaction);
+        analytics.removed(closestTransaction);
+    }
+
+    /**
+     * Given one transaction in a transfer, find the other transaction.
+     * Transfers are linked by id, but older ones have to be matched up by name,
+     * amount and creation time.
      *
      * @param givenTransaction - One transaction in a transfer
      * @param loggedInUser     - The current user
-     * @return whether or not the operation succeeded
+     * @return the other transaction, or null if it couldn't be found
      */
-    private ServiceResponse<Boolean> deleteOtherTransferTransaction(Transaction givenTransaction,
-            SiteUser loggedInUser) {
+    private Transaction findOtherTransferTransaction(Transaction givenTransaction, SiteUser loggedInUser) {
+        if (givenTransaction.getTransferPairId() != null) {
+            List<Transaction> paired = transactionRepo.findById((int) givenTransaction.getTransferPairId());
+            if (paired.isEmpty()) {
+                log.info("Other half of transfer {} no longer exists", givenTransaction.getId());
+                return null;
+            }
+            return paired.get(0);
+        }
+
         // Determine whether transaction is sending or recieving money
         String type = null;
         if (givenTransaction.getName().contains("to")) {
@@ -147,13 +622,13 @@ public class TransactionServiceImpl implements TransactionService {
             type = "from";
         } else {
             // Transaction doesn't contain "to" or "from". Are we sure it's a transfer?
-            return new ServiceResponse<Boolean>(false, "Transfer deletion failed...");
+            return null;
         }
         // Determine the name of the other account involved in the transfer
         String otherAccountName = givenTransaction.getName().replace("Transfer to ", "").replace("Transfer from ", "");
 
         // Get the user's accounts
-        List<Account> userAccounts = accountRepo.findByOwner(loggedInUser);
+        List<Account> userAccounts = accountRepo.findByOwnerAndDeletedFalse(loggedInUser);
 
         // Find the account with a matching name
         Account otherAccount = null;
@@ -165,7 +640,7 @@ public class TransactionServiceImpl implements TransactionService {
         // See if we found the account we're looking for
         if (otherAccount == null) {
             log.info("Couldn't find other transfer account");
-            return new ServiceResponse<Boolean>(false, "Failed to locate other transfer transaction");
+            return null;
         }
 
         // Look for transactions in the other account that could be the other half of
@@ -193,21 +668,7 @@ public class TransactionServiceImpl implements TransactionService {
         }
         // If the two transactions were created more than five minutes apart,
         // they're probably not the same transfer
-        Transaction closestTransaction = getClosestTransaction(givenTransaction, potentialMatchingTransactions);
-
-        // We found it! Delete it
-        if (closestTransaction != null) {
-            // Update the account balance
-            closestTransaction.getAccount().subtractBalanceInCents(closestTransaction.getAmountInCents());
-            // Remove transaction from account
-            closestTransaction.getAccount().removeTransaction(closestTransaction);
-            // Save changes to account
-            accountRepo.save(closestTransaction.getAccount());
-            // Delete the transaction
-            transactionRepo.delete(closestTransaction);
-            return new ServiceResponse<Boolean>(true, "Deleted transfer transaction");
-        }
-        return new ServiceResponse<Boolean>(false, "Something went wrong");
+        return getClosestTransaction(givenTransaction, potentialMatchingTransactions);
     }
 
     /**
@@ -234,35 +695,490 @@ public class TransactionServiceImpl implements TransactionService {
         return closestTransaction;
     }
 
+    /**
+     * Create a transfer between two accounts. Both halves are written in one
+     * database transaction, so the inserts and the balance updates are each sent
+     * as a single JDBC batch when it commits.
+     */
+    @Transactional
     public ServiceResponse<Boolean> createTransfer(Account toAccount, Account fromAccount, long amountInDollars) {
         if (toAccount.getId() == fromAccount.getId()) {
             return new ServiceResponse<Boolean>(false, "Cannot transfer money from an account to itself");
         }
-        // Withdraw from the fromAccount
-        ServiceResponse<Transaction> toResponse = createTransaction(
-                String.format("Transfer to %s", toAccount.getName()),
-                -1 * amountInDollars,
-                toAccount.getName(),
-                fromAccount);
-
-        // Income into the toAccount
-        ServiceResponse<Transaction> fromResponse = createTransaction(
-                String.format("Transfer from %s", fromAccount.getName()),
-                amountInDollars,
-                fromAccount.getName(),
-                toAccount);
-
-        // If either transaction creation fails, delete it all and bail out
-        if (toResponse.getResult() == null) {
-            transactionRepo.delete(fromResponse.getResult());
+        String withdrawalName = String.format("Transfer to %s", toAccount.getName());
+        String depositName = String.format("Transfer from %s", fromAccount.getName());
+        // Check both halves before writing either, so a transfer is never half made
+        String problem = checkFields(withdrawalName, toAccount.getName());
+        if (problem != null) {
             return new ServiceResponse<Boolean>(false,
-                    String.format("Failed to create to transaction: %s", toResponse.getMessage()));
+                    String.format("Failed to create to transaction: %s", problem));
         }
-        if (fromResponse.getResult() == null) {
-            transactionRepo.delete(toResponse.getResult());
+        problem = checkFields(depositName, fromAccount.getName());
+        if (problem != null) {
             return new ServiceResponse<Boolean>(false,
-                    String.format("Failed to create from transaction: %s", toResponse.getMessage()));
+                    String.format("Failed to create from transaction: %s", problem));
+        }
+        // Both balances are changed here rather than through the posting engine
+        engineAccounts.releaseUntilCommit(fromAccount, toAccount);
+
+        // Withdraw from the fromAccount
+        ServiceResponse<Transaction> toResponse = createTransaction(withdrawalName, -1 * amountInDollars,
+                toAccount.getName(), fromAccount);
+
+        // Income into the toAccount, pointing back at the withdrawal
+        ServiceResponse<Transaction> fromResponse = createTransaction(depositName, amountInDollars,
+                fromAccount.getName(), toAccount,
+                toResponse.getResult() == null ? null : toResponse.getResult().getId());
+
+        // Both halves were checked above. If either still wasn't created, roll
+        // the whole transfer back rather than leave one half's balance change
+        // without a journal entry.
+        if (toResponse.getResult() == null || fromResponse.getResult() == null) {
+            throw new IllegalStateException(String.format("Transfer from account %d to account %d failed: %s",
+                    fromAccount.getId(), toAccount.getId(),
+                    toResponse.getResult() == null ? toResponse.getMessage() : fromResponse.getMessage()));
         }
+        // Link the withdrawal to the deposit too, so either half can find the other
+        toResponse.getResult().setTransferPairId(fromResponse.getResult().getId());
+        transactionRepo.save(toResponse.getResult());
+
+        // Money moves between the two accounts, so nothing comes from outside
+        JournalEntry entry = new JournalEntry("Transfer");
+        Transaction withdrawal = toResponse.getResult();
+        Transaction deposit = fromResponse.getResult();
+        entry.addPosting(fromAccount.getId(), withdrawal.getId(), withdrawal.getAmountInCents());
+        entry.addPosting(toAccount.getId(), deposit.getId(), deposit.getAmountInCents());
+        ledger.append(entry);
         return new ServiceResponse<Boolean>(true, "Transfer created");
     }
+
+    /**
+     * Search the user's transactions with the search index, then load the
+     * matches in one query
+     */
+    public List<Transaction> searchTransactions(SiteUser loggedInUser, String query, int limit) {
+        List<TransactionSearchIndex.Hit> hits = searchIndex.search(loggedInUser.getId(), query, limit);
+        List<Integer> ids = new ArrayList<>(hits.size());
+        for (TransactionSearchIndex.Hit hit : hits) {
+            ids.add(hit.getTransactionId());
+        }
+        Map<Integer, Transaction> found = new HashMap<>();
+        for (Transaction transaction : transactionRepo.findAllById(ids)) {
+            found.put(transaction.getId(), transaction);
+        }
+        // Keep the index's order, and only what the user can still see
+        List<Transaction> results = new ArrayList<>(hits.size());
+        for (Integer id : ids) {
+            Transaction transaction = found.get(id);
+            if (transaction != null && loggedInUser.owns(transaction) && !transaction.getAccount().isDeleted()) {
+                results.add(transaction);
+            }
+        }
+        log.debug("Search for \"{}\" by {} found {} transactions", query, loggedInUser.getUsername(),
+                results.size());
+        return results;
+    }
+
+    /**
+     * File a transaction under a category and replace its tags. Tags it already
+     * has are left alone, so only the tags being added or removed are written.
+     */
+    @Transactional
+    public ServiceResponse<Transaction> categorizeTransaction(SiteUser loggedInUser, Transaction transaction,
+            String category, List<String> tags) {
+        // Make sure the transaction is the current user's to categorize
+        if (transaction == null || !loggedInUser.owns(transaction)) {
+            log.warn("{} tried to categorize a transaction they don't own", loggedInUser.getUsername());
+            // User may be trying to do something bad, don't tell them anything useful
+            return new ServiceResponse<Transaction>(null, "Something went wrong");
+        }
+        String problem = checkCategorization(category, tags);
+        if (problem != null) {
+            return new ServiceResponse<Transaction>(null, problem);
+        }
+        String categoryName = category == null ? "" : category.trim();
+        Set<String> tagNames = tagNames(tags);
+
+        int ownerId = loggedInUser.getId();
+        transaction.setCategory(categoryName.isEmpty() ? null : findOrCreateCategory(ownerId, categoryName));
+
+        // Drop the tags that aren't wanted any more, and add the new ones
+        List<TransactionTag> removed = new ArrayList<>();
+        Set<String> kept = new LinkedHashSet<>();
+        for (TransactionTag tagged : transaction.getTags()) {
+            if (tagNames.contains(tagged.getTag().getName()) && kept.add(tagged.getTag().getName())) {
+                continue;
+            }
+            removed.add(tagged);
+        }
+        transaction.getTags().removeAll(removed);
+        transactionTagRepo.deleteAll(removed);
+        for (String tagName : tagNames) {
+            if (!kept.contains(tagName)) {
+                TransactionTag tagged = new TransactionTag(transaction, findOrCreateTag(ownerId, tagName));
+                transactionTagRepo.save(tagged);
+                transaction.getTags().add(tagged);
+            }
+        }
+        transactionRepo.save(transaction);
+
+        Integer categoryId = transaction.getCategory() == null ? null : transaction.getCategory().getId();
+        List<Integer> tagIds = new ArrayList<>();
+        for (TransactionTag tagged : transaction.getTags()) {
+            tagIds.add(tagged.getTag().getId());
+        }
+        tagIndex.retagged(transaction, categoryId, tagIds);
+
+        // The account's revision goes up so its table is shown with the new tags
+        accountRepo.bumpRevision(transaction.getAccount().getId());
+        revisionChanged(transaction.getAccount());
+
+        log.info("Categorized transaction {} with {} tags", transaction.getId(), tagIds.size());
+        return new ServiceResponse<Transaction>(transaction, "Transaction categorized");
+    }
+
+    /**
+     * Update a transaction and then file it, in one database transaction. The
+     * category and tags are checked before anything is changed.
+     */
+    @Transactional
+    public ServiceResponse<Transaction> editTransaction(SiteUser loggedInUser, Transaction transaction, String name,
+            long amountInDollars, String toFrom, String category, List<String> tags) {
+        String problem = checkCategorization(category, tags);
+        if (problem != null) {
+            return new ServiceResponse<Transaction>(null, problem);
+        }
+        ServiceResponse<Transaction> updated = updateTransaction(loggedInUser, transaction, name, amountInDollars,
+                toFrom);
+        if (updated.getResult() == null) {
+            return updated;
+        }
+        ServiceResponse<Transaction> categorized = categorizeTransaction(loggedInUser, updated.getResult(),
+                category, tags);
+        if (categorized.getResult() == null) {
+            // Already checked, so something is badly wrong. Don't keep the update
+            // without its category.
+            throw new IllegalStateException(String.format("Couldn't categorize transaction %d: %s",
+                    transaction.getId(), categorized.getMessage()));
+        }
+        return new ServiceResponse<Transaction>(categorized.getResult(), updated.getMessage());
+    }
+
+    /**
+     * Check a transaction's category and tags
+     *
+     * @param category - the name of its category, or blank for none
+     * @param tags     - the names of its tags, may be null
+     * @return what's wrong with them, or null if they're fine
+     */
+    static String checkCategorization(String category, List<String> tags) {
+        if (category != null && category.trim().length() > 255) {
+            return "Category name is too long";
+        }
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null && tag.trim().length() > 255) {
+                    return "Tag name is too long";
+                }
+            }
+        }
+        if (tagNames(tags).size() > MAX_TAGS) {
+            return "A transaction can have at most " + MAX_TAGS + " tags";
+        }
+        return null;
+    }
+
+    /**
+     * The distinct, trimmed, non-blank tag names in the given list
+     *
+     * @param tags - the names of a transaction's tags, may be null
+     * @return the tag names in order
+     */
+    private static Set<String> tagNames(List<String> tags) {
+        Set<String> tagNames = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                String tagName = tag == null ? "" : tag.trim();
+                if (!tagName.isEmpty()) {
+                    tagNames.add(tagName);
+                }
+            }
+        }
+        return tagNames;
+    }
+
+    /**
+     * Find a user's category with exactly the given name, creating it if they
+     * don't have one
+     */
+    private Category findOrCreateCategory(int ownerId, String name) {
+        for (Category category : categoryRepo.findByOwnerIdAndName(ownerId, name)) {
+            if (category.getName().equals(name)) {
+                return category;
+            }
+        }
+        return categoryRepo.save(new Category(ownerId, name));
+    }
+
+    /**
+     * Find a user's tag with exactly the given name, creating it if they don't
+     * have one
+     */
+    private Tag findOrCreateTag(int ownerId, String name) {
+        for (Tag tag : tagRepo.findByOwnerIdAndName(ownerId, name)) {
+            if (tag.getName().equals(name)) {
+                return tag;
+            }
+        }
+        return tagRepo.save(new Tag(ownerId, name));
+    }
+
+    /**
+     * Get the user's categories, for choosing one
+     */
+    public List<Category> getUserCategories(SiteUser loggedInUser) {
+        return categoryRepo.findByOwnerIdOrderByName(loggedInUser.getId());
+    }
+
+    /**
+     * Get the user's tags, for choosing some
+     */
+    public List<Tag> getUserTags(SiteUser loggedInUser) {
+        return tagRepo.findByOwnerIdOrderByName(loggedInUser.getId());
+    }
+
+    /**
+     * Add a categorization rule. The user's compiled rules are thrown away once
+     * it commits, so the next transaction they add picks it up.
+     */
+    @Transactional
+    public ServiceResponse<CategoryRule> addCategoryRule(SiteUser loggedInUser, CategoryRule.Field field,
+            String pattern, String category) {
+        String text = pattern == null ? "" : pattern.trim();
+        String categoryName = category == null ? "" : category.trim();
+        if (field == null) {
+            return new ServiceResponse<CategoryRule>(null, "Choose what the rule looks at");
+        }
+        if (text.isEmpty()) {
+            return new ServiceResponse<CategoryRule>(null, "Rule text cannot be blank");
+        }
+        if (categoryName.isEmpty()) {
+            return new ServiceResponse<CategoryRule>(null, "Rule category cannot be blank");
+        }
+        if (text.length() > 255) {
+            return new ServiceResponse<CategoryRule>(null, "Rule text is too long");
+        }
+        if (categoryName.length() > 255) {
+            return new ServiceResponse<CategoryRule>(null, "Category name is too long");
+        }
+        int ownerId = loggedInUser.getId();
+        if (categoryRuleRepo.countByOwnerId(ownerId) >= MAX_RULES) {
+            return new ServiceResponse<CategoryRule>(null, "You can have at most " + MAX_RULES + " rules");
+        }
+        CategoryRule rule = categoryRuleRepo.save(
+                new CategoryRule(ownerId, field, text, findOrCreateCategory(ownerId, categoryName)));
+        categoryRules.changed(ownerId);
+        log.info("User {} added a rule filing {} containing \"{}\" under {}", loggedInUser.getUsername(), field,
+                text, categoryName);
+        return new ServiceResponse<CategoryRule>(rule, "Rule added");
+    }
+
+    /**
+     * Delete a categorization rule. Transactions it already filed stay where they
+     * are.
+     */
+    @Transactional
+    public ServiceResponse<Boolean> deleteCategoryRule(SiteUser loggedInUser, int ruleId) {
+        CategoryRule rule = categoryRuleRepo.findById(ruleId).orElse(null);
+        if (rule == null || rule.getOwnerId() != loggedInUser.getId()) {
+            log.warn("{} tried to delete a rule they don't own", loggedInUser.getUsername());
+            // User may be trying to do something bad, don't tell them anything useful
+            return new ServiceResponse<Boolean>(false, "Something went wrong");
+        }
+        categoryRuleRepo.delete(rule);
+        categoryRules.changed(loggedInUser.getId());
+        return new ServiceResponse<Boolean>(true, "Rule deleted");
+    }
+
+    /**
+     * Get the user's categorization rules, for listing them
+     */
+    public List<CategoryRule> getUserCategoryRules(SiteUser loggedInUser) {
+        return categoryRuleRepo.findByOwnerId(loggedInUser.getId());
+    }
+
+    public long getCategoryRulesVersion(SiteUser loggedInUser) {
+        return categoryRules.getVersion(loggedInUser.getId());
+    }
+
+    /**
+     * Apply the user's rules to their existing transactions. Each chunk commits
+     * on its own, so this isn't one database transaction.
+     */
+    public ServiceResponse<Long> applyCategoryRules(SiteUser loggedInUser) {
+        long filed = categoryRules.applyToHistory(loggedInUser.getId());
+        return new ServiceResponse<Long>(filed,
+                filed == 1 ? "Categorized 1 transaction" : "Categorized " + filed + " transactions");
+    }
+
+    /**
+     * Get the user's top payees from their summaries, which are kept in memory
+     * rather than grouping their transactions
+     */
+    public PayeeSketches.TopPayees getTopPayees(SiteUser loggedInUser, int limit) {
+        return payeeSketches.top(loggedInUser.getId(), limit);
+    }
+
+    public long getTopPayeesVersion(SiteUser loggedInUser) {
+        return payeeSketches.getVersion(loggedInUser.getId());
+    }
+
+    /**
+     * Count the user's top payees again from scratch
+     */
+    public ServiceResponse<Boolean> recountTopPayees(SiteUser loggedInUser) {
+        payeeSketches.recount(loggedInUser.getId());
+        return new ServiceResponse<Boolean>(true, "Top payees counted again");
+    }
+
+    /**
+     * Get one page of an account's transactions. Filters by category or tag are
+     * answered from the tag bitmaps. Otherwise the filter becomes a where clause
+     * and an order by, so the database does the work using the account's date
+     * and amount indexes.
+     */
+    public ServiceResponse<Page<Transaction>> findTransactions(SiteUser loggedInUser, Account account,
+            TransactionFilter filter) {
+        if (account == null || !loggedInUser.owns(account) || account.isDeleted()) {
+            log.warn("{} tried to list transactions of an account they don't own", loggedInUser.getUsername());
+            return new ServiceResponse<>(null, "Account does not exist");
+        }
+        if (filter.getFromDate() != null && filter.getToDate() != null
+                && filter.getFromDate().isAfter(filter.getToDate())) {
+            return new ServiceResponse<>(null, "The start date must not be after the end date");
+        }
+        if (filter.getMinAmountInDollars() != null && filter.getMaxAmountInDollars() != null
+                && filter.getMinAmountInDollars() > filter.getMaxAmountInDollars()) {
+            return new ServiceResponse<>(null, "The lowest amount must not be more than the highest amount");
+        }
+        if (filter.getPage() < 0 || filter.getPageSize() < 1
+                || filter.getPageSize() > TransactionFilter.MAX_PAGE_SIZE) {
+            return new ServiceResponse<>(null, "Invalid page");
+        }
+
+        Page<Transaction> page;
+        if (filter.isByCategoryOrTag()) {
+            page = findByCategoryOrTag(account, filter);
+        } else {
+            page = transactionRepo.findAll(filterSpecification(account, filter),
+                    PageRequest.of(filter.getPage(), filter.getPageSize()));
+        }
+        log.debug("Listed page {} of {} for account {}: {} of {} transactions", page.getNumber() + 1,
+                page.getTotalPages(), account.getId(), page.getNumberOfElements(), page.getTotalElements());
+        return new ServiceResponse<>(page, "Found " + page.getTotalElements() + " transactions");
+    }
+
+    /**
+     * Get a page of transactions picked by category or tag. The bitmaps work out
+     * which transactions match and their order, and only the page being shown is
+     * loaded from the database.
+     *
+     * @param account - the account to look in
+     * @param filter  - which transactions to show and in what order
+     * @return the page of transactions
+     */
+    private Page<Transaction> findByCategoryOrTag(Account account, TransactionFilter filter) {
+        List<Integer> ids = tagIndex.find(account.getId(), filter);
+        int from = (int) Math.min((long) filter.getPage() * filter.getPageSize(), ids.size());
+        List<Integer> pageIds = ids.subList(from, Math.min(from + filter.getPageSize(), ids.size()));
+
+        Map<Integer, Transaction> found = new HashMap<>();
+        for (Transaction transaction : transactionRepo.findAllById(pageIds)) {
+            found.put(transaction.getId(), transaction);
+        }
+        List<Transaction> content = new ArrayList<>(pageIds.size());
+        for (Integer id : pageIds) {
+            Transaction transaction = found.get(id);
+            // Deleted since the bitmaps were looked at
+            if (transaction != null) {
+                content.add(transaction);
+            }
+        }
+        return new PageImpl<>(content, PageRequest.of(filter.getPage(), filter.getPageSize()), ids.size());
+    }
+
+    /**
+     * Build the query for a filtered view of an account. Only conditions that are
+     * set are added. The order is part of the specification too, since sorting by
+     * payee needs the payee dictionary joined in, the same join the payee filter
+     * uses. Ties are broken by id so pages don't overlap.
+     *
+     * @param account - the account to look in
+     * @param filter  - which transactions to show and in what order
+     * @return the specification
+     */
+    private static Specification<Transaction> filterSpecification(Account account, TransactionFilter filter) {
+        Date from = filter.getStartOfRange();
+        Date before = filter.getEndOfRange();
+        Long minCents = filter.getMinAmountInCents();
+        Long maxCents = filter.getMaxAmountInCents();
+        String payeePattern = filter.getPayeePattern();
+        TransactionFilter.Direction direction = filter.getDirection();
+
+        return (root, query, builder) -> {
+            // Rows from before the payee dictionary have the name on the row
+            Expression<String> payeeName = null;
+            if (payeePattern != null || filter.getSortBy() == TransactionFilter.SortBy.PAYEE) {
+                payeeName = builder.lower(builder.coalesce(root.join("payee", JoinType.LEFT).<String>get("name"),
+                        root.<String>get("toFrom")));
+            }
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(builder.equal(root.get("account"), account));
+            if (from != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("date"), from));
+            }
+            if (before != null) {
+                predicates.add(builder.lessThan(root.get("date"), before));
+            }
+            if (minCents != null) {
+                predicates.add(builder.greaterThanOrEqualTo(root.get("amountInCents"), minCents));
+            }
+            if (maxCents != null) {
+                predicates.add(builder.lessThanOrEqualTo(root.get("amountInCents"), maxCents));
+            }
+            if (payeePattern != null) {
+                predicates.add(builder.like(payeeName, payeePattern, '\\'));
+            }
+            if (direction == TransactionFilter.Direction.INCOME) {
+                predicates.add(builder.greaterThan(root.get("amountInCents"), 0L));
+            } else if (direction == TransactionFilter.Direction.EXPENSE) {
+                predicates.add(builder.lessThan(root.get("amountInCents"), 0L));
+            }
+
+            // Counting the matches doesn't need an order
+            if (query.getResultType() != Long.class && query.getResultType() != long.class) {
+                Expression<?> sortKey;
+                switch (filter.getSortBy()) {
+                    case AMOUNT:
+                        sortKey = root.get("amountInCents");
+                        break;
+                    case PAYEE:
+                        sortKey = payeeName;
+                        break;
+                    default:
+                        sortKey = root.get("date");
+                }
+                List<Order> orders = new ArrayList<>();
+                if (filter.isDescending()) {
+                    orders.add(builder.desc(sortKey));
+                    orders.add(builder.desc(root.get("id")));
+                } else {
+                    orders.add(builder.asc(sortKey));
+                    orders.add(builder.asc(root.get("id")));
+                }
+                query.orderBy(orders);
+            }
+            return builder.and(predicates.toArray(new Predicate[0]));
+        };
+    }
 }
@@ -0,0 +1,498 @@
+package edu.carroll.bankapp.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import edu.carroll.bankapp.engine.EngineRecord;
+import edu.carroll.bankapp.engine.LedgerEngine;
+import edu.carroll.bankapp.engine.WriteAheadLog;
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.LogProjection;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind queue for new transactions. A transaction is acknowledged as
+ * soon as it's in the queue's write-ahead log on disk, and a background writer
+ * inserts queued transactions from every user in batches, with one database
+ * transaction per batch.
+ *
+ * A batch is written once it's full or its oldest transaction has waited
+ * bankapp.write-queue.max-latency-ms. When the queue is full, submitters wait
+ * a little for room and then write their transaction synchronously instead, as
+ * they do when the queue is turned off, can't write its log, or the writer
+ * keeps failing. Transactions still queued when the app stops are written
+ * after it starts again.
+ *
+ * A queued transaction isn't on the account page until its batch is written.
+ *
+ * With the posting engine turned on, new transactions go to the engine
+ * instead, and the queue only writes what was left in its log. Those accounts
+ * are released from the engine while each batch is written.
+ */
+@Service
+public class TransactionWriteQueue {
+    private static final Logger log = LoggerFactory.getLogger(TransactionWriteQueue.class);
+    // Consecutive failed batches before new transactions stop being queued
+    private static final int FAILURES_BEFORE_FAILOVER = 3;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+    private static final long SHUTDOWN_FLUSH_MS = 10_000;
+
+    private final TransactionService transactionService;
+    private final LedgerEngine.Projection projection;
+    private final EngineAccounts engineAccounts;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long groupCommitMicros;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final int maxPending;
+    private final long offerTimeoutMs;
+
+    // Guarded by queue. Transactions stay queued until their batch is written.
+    private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+    private WriteAheadLog wal;
+    private int flushing;
+
+    private volatile Thread writer;
+    private volatile boolean healthy = true;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failoverCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+    private final AtomicLong totalWriteDelayNanos = new AtomicLong();
+
+    /**
+     * A transaction waiting to be written
+     */
+    private static class Queued {
+        private final EngineRecord record;
+        private final long queuedAt;
+
+        private Queued(EngineRecord record, long queuedAt) {
+            this.record = record;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * Inject dependencies
+     *
+     * @param transactionService - for writing transactions synchronously
+     * @param projections        - writes batches from the queue's log to the
+     *                           database
+     * @param engineAccounts     - the posting engine, when it's turned on
+     * @param enabled            - whether to queue transactions at all
+     * @param directory          - where the queue's log is kept
+     * @param segmentBytes       - the size of each log segment file
+     * @param groupCommitMicros  - how long to wait for more submitters before
+     *                           forcing the log
+     * @param batchSize          - the most transactions written in one batch
+     * @param maxLatencyMs       - the longest a transaction waits for its batch to
+     *                           fill up
+     * @param maxPending         - the most transactions queued at once
+     * @param offerTimeoutMs     - how long a submitter waits for room before
+     *                           writing synchronously
+     */
+    public TransactionWriteQueue(TransactionService transactionService, JpaPostingProjection projections,
+            EngineAccounts engineAccounts,
+            @Value("${bankapp.write-queue.enabled:false}") boolean enabled,
+            @Value("${bankapp.write-queue.dir:write-queue-data}") String directory,
+            @Value("${bankapp.write-queue.segment-bytes:16777216}") int segmentBytes,
+            @Value("${bankapp.write-queue.group-commit-micros:200}") long groupCommitMicros,
+            @Value("${bankapp.write-queue.batch-size:200}") int batchSize,
+            @Value("${bankapp.write-queue.max-latency-ms:50}") long maxLatencyMs,
+            @Value("${bankapp.write-queue.max-pending:10000}") int maxPending,
+            @Value("${bankapp.write-queue.offer-timeout-ms:100}") long offerTimeoutMs) {
+        this.transactionService = transactionService;
+        this.projection = projections.forLog(LogProjection.WRITE_QUEUE);
+        this.engineAccounts = engineAccounts;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.groupCommitMicros = groupCommitMicros;
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        this.maxPending = maxPending;
+        this.offerTimeoutMs = offerTimeoutMs;
+    }
+
+    /**
+     * Open the log and start the writer once the app is up. Transactions left in
+     * the log from before a restart are queued first. If the log can't be
+     * opened, transactions are written synchronously.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        try {
+            WriteAheadLog opened = new WriteAheadLog(directory, segmentBytes, groupCommitMicros);
+            long projected = projection.getProjectedSequence();
+            long now = System.nanoTime();
+            synchronized (queue) {
+                opened.recover(projected, (sequence, contents) -> {
+                    if (sequence > projected) {
+                        queue.add(new Queued(EngineRecord.decode(sequence, contents), now));
+                    }
+                });
+                wal = opened;
+                if (!queue.isEmpty()) {
+                    log.info("Writing {} transactions queued before the restart", queue.size());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Couldn't open the transaction write queue, writing transactions synchronously", e);
+            return;
+        }
+        Thread thread = new Thread(this::run, "transaction-write-queue");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Write what's queued, stop the writer and close the log. Anything not
+     * written in time is written after the next start.
+     */
+    @PreDestroy
+    public void stop() {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        flush(SHUTDOWN_FLUSH_MS);
+        synchronized (queue) {
+            writer = null;
+            queue.notifyAll();
+        }
+        try {
+            thread.join(SHUTDOWN_FLUSH_MS);
+            wal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Couldn't close the transaction write queue", e);
+        }
+    }
+
+    /**
+     * Create a transaction, queueing it if possible and writing it synchronously
+     * if not
+     *
+     * @param name            - the transaction's name
+     * @param amountInDollars - the amount, negative for money out
+     * @param toFrom          - the transaction's recipient or sender
+     * @param account         - the account, already checked to be the user's
+     * @return the transaction if it was written synchronously, a pending
+     *         response if it was queued, null if it couldn't be created, and a
+     *         message either way
+     */
+    public ServiceResponse<Transaction> submit(String name, long amountInDollars, String toFrom, Account account) {
+        String problem = TransactionServiceImpl.checkFields(name, toFrom);
+        if (problem != null) {
+            return new ServiceResponse<Transaction>(null, problem);
+        }
+        if (writer == null || !healthy || engineAccounts.isEnabled()) {
+            return transactionService.createTransaction(name, amountInDollars, toFrom, account);
+        }
+
+        EngineRecord record = new EngineRecord(0, EngineRecord.Type.POST, account.getId(), amountInDollars * 100,
+                System.currentTimeMillis(), name, toFrom);
+        long sequence;
+        try {
+            sequence = enqueue(record);
+        } catch (IOException e) {
+            log.error("Couldn't write to the transaction write queue's log", e);
+            sequence = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ServiceResponse<Transaction>(null, "Something went wrong");
+        }
+        if (sequence < 0) {
+            failoverCount.incrementAndGet();
+            return transactionService.createTransaction(name, amountInDollars, toFrom, account);
+        }
+
+        try {
+            wal.awaitDurable(sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // It's in the log, so it will most likely still be written
+            return new ServiceResponse<Transaction>(null, "Transaction may not have been saved");
+        } catch (IllegalStateException e) {
+            // The queue stopped before the log was forced. It may still be written
+            // after the next start, so writing it synchronously could add it twice.
+            log.warn("Transaction write queue stopped before transaction {} was durable", sequence);
+            return new ServiceResponse<Transaction>(null, "Transaction may not have been saved");
+        }
+        queuedCount.incrementAndGet();
+        return ServiceResponse.pending("Transaction added, it will show up in a moment");
+    }
+
+    /**
+     * Append a transaction to the log and the queue, waiting for room if the
+     * queue is full
+     *
+     * @return the transaction's sequence, or -1 if there wasn't room in time or
+     *         the queue has stopped
+     */
+    private long enqueue(EngineRecord record) throws IOException, InterruptedException {
+        synchronized (queue) {
+            if (writer == null) {
+                return -1;
+            }
+            long deadline = System.currentTimeMillis() + offerTimeoutMs;
+            while (queue.size() >= maxPending) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || writer == null) {
+                    return -1;
+                }
+                queue.wait(remaining);
+            }
+            long sequence = wal.append(record.encode());
+            queue.add(new Queued(record.withSequence(sequence), System.nanoTime()));
+            // The writer needs to know when there's something to wait on, and
+            // when a batch has filled up
+            if (queue.size() == 1 || queue.size() == batchSize) {
+                queue.notifyAll();
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Write batches until stopped, retrying a failed batch with a growing delay
+     * so transactions are written in order
+     */
+    private void run() {
+        long retryDelayMs = 100;
+        int consecutiveFailures = 0;
+        while (writer == Thread.currentThread()) {
+            List<Queued> batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            List<EngineRecord> records = new ArrayList<>(batch.size());
+            Set<Integer> accountIds = new LinkedHashSet<>();
+            for (Queued queued : batch) {
+                records.add(queued.record);
+                accountIds.add(queued.record.getAccountId());
+            }
+            try {
+                Runnable endRelease = engineAccounts.release(accountIds);
+                try {
+                    projection.project(records);
+                } finally {
+                    endRelease.run();
+                }
+            } catch (RuntimeException e) {
+                failedBatchCount.incrementAndGet();
+                consecutiveFailures++;
+                if (consecutiveFailures == FAILURES_BEFORE_FAILOVER) {
+                    log.error("Transaction write queue keeps failing, writing new transactions synchronously");
+                    healthy = false;
+                }
+                log.error("Writing {} queued transactions failed, retrying in {} ms", batch.size(), retryDelayMs, e);
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+                continue;
+            }
+            retryDelayMs = 100;
+            consecutiveFailures = 0;
+            healthy = true;
+
+            long now = System.nanoTime();
+            for (Queued queued : batch) {
+                totalWriteDelayNanos.addAndGet(now - queued.queuedAt);
+            }
+            writtenCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            synchronized (queue) {
+                for (int i = 0; i < batch.size(); i++) {
+                    queue.poll();
+                }
+                queue.notifyAll();
+                try {
+                    wal.deleteBefore(records.get(records.size() - 1).getSequence() + 1);
+                } catch (IOException e) {
+                    log.warn("Couldn't delete written transaction write queue segments", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for a batch to be ready: full, old enough, or asked for by flush
+     *
+     * @return the batch, left at the head of the queue until it's written, or an
+     *         empty list if the writer is stopping
+     */
+    private List<Queued> nextBatch() throws InterruptedException {
+        synchronized (queue) {
+            while (writer == Thread.currentThread()) {
+                if (queue.isEmpty()) {
+                    queue.wait(1000);
+                    continue;
+                }
+                long waitedNanos = System.nanoTime() - queue.peek().queuedAt;
+                if (queue.size() < batchSize && waitedNanos < maxLatencyNanos && flushing == 0) {
+                    TimeUnit.NANOSECONDS.timedWait(queue, maxLatencyNanos - waitedNanos);
+                    continue;
+                }
+                // Only transactions that have been acknowledged can be written
+                long durable = wal.getDurableSequence();
+                List<Queued> batch = new ArrayList<>();
+                Iterator<Queued> queued = queue.iterator();
+                while (batch.size() < batchSize && queued.hasNext()) {
+                    Queued next = queued.next();
+                    if (next.record.getSequence() > durable) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                if (!batch.isEmpty()) {
+                    return batch;
+                }
+                queue.wait(1);
+            }
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Write everything queued now instead of waiting for batches to fill up
+     *
+     * @param timeoutMs - the longest to wait
+     * @return true if the queue was emptied in time
+     */
+    public boolean flush(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (queue) {
+            flushing++;
+            queue.notifyAll();
+            try {
+                while (!queue.isEmpty() && writer != null) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    queue.wait(remaining);
+                }
+                return queue.isEmpty();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                flushing--;
+            }
+        }
+    }
+
+    /**
+     * Whether new transactions are being queued rather than written
+     * synchronously
+     *
+     * @return true if queueing
+     */
+    public boolean isQueueing() {
+        return writer != null && healthy;
+    }
+
+    /**
+     * How many transactions are queued and not yet written
+     *
+     * @return the number of transactions
+     */
+    public int getPendingCount() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * How many transactions have been acknowledged from the queue since
+     * startup, rather than written synchronously
+     *
+     * @return the number of transactions
+     */
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * How many queued transactions have been written to the database since
+     * startup
+     *
+     * @return the number of transactions
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * How many batches have been written since startup
+     *
+     * @return the number of batches
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * How many transactions were written synchronously because the queue was
+     * full or its log couldn't be written
+     *
+     * @return the number of transactions
+     */
+    public long getFailoverCount() {
+        return failoverCount.get();
+    }
+
+    /**
+     * How many times writing a batch failed and had to be retried
+     *
+     * @return the number of failed attempts
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    /**
+     * How long written transactions waited in the queue, on average
+     *
+     * @return milliseconds from being queued to being committed
+     */
+    public double getAverageWriteDelayMillis() {
+        long written = writtenCount.get();
+        return written == 0 ? 0 : totalWriteDelayNanos.get() / 1e6 / written;
+    }
+}
@@ -0,0 +1,69 @@
+package edu.carroll.bankapp.web;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountSummary;
+
+/**
+ * Builds ETags for pages, so repeat visits to a page that hasn't changed can be
+ * answered with 304 Not Modified instead of being rendered again
+ */
+public class ETagHelper {
+    // Pages rendered by a previous run of the app may use old templates
+    private static final long STARTED_AT = System.currentTimeMillis();
+
+    /**
+     * Build a weak ETag for an account page. It covers everything the page
+     * shows: the user, the session (the forms carry its CSRF token), the
+     * user's categorization rules and top payees, and the name, balance and
+     * revision of every account in the navbar. The revision of the account being
+     * viewed covers its transactions.
+     *
+     * @param user             - the logged-in user
+     * @param sessionId        - the id of the user's session
+     * @param accountId        - the account being viewed
+     * @param accounts         - summaries of all the user's accounts
+     * @param rulesVersion     - the version of the user's categorization rules
+     * @param topPayeesVersion - the version of the user's top payees
+     * @return the ETag
+     */
+    public static String accountPageETag(SiteUser user, String sessionId, int accountId,
+            List<AccountSummary> accounts, long rulesVersion, long topPayeesVersion) {
+        StringBuilder page = new StringBuilder();
+        page.append(STARTED_AT).append('|')
+                .append(user.getId()).append('|')
+                .append(user.getUsername()).append('|')
+                .append(sessionId).append('|')
+                .append(accountId).append('|')
+                .append(rulesVersion).append('|')
+                .append(topPayeesVersion);
+        for (AccountSummary account : accounts) {
+            page.append('|').append(account.getId())
+                    .append(':').append(account.getName())
+                    .append(':').append(account.getBalanceInCents())
+                    .append(':').append(account.getRevision());
+        }
+        return "W/\"" + hash(page.toString()) + "\"";
+    }
+
+    /**
+     * Hash the given text down to something short enough for a header
+     *
+     * @param text - the text to hash
+     * @return the first 128 bits of its SHA-256 hash, in hex
+     */
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package edu.carroll.bankapp.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import edu.carroll.bankapp.service.AccountEvent;
+import edu.carroll.bankapp.service.AccountEventListener;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Fans account events out to every open dashboard of the account's owner over
+ * Server-Sent Events.
+ *
+ * Publishing never blocks: an event is merged into each subscriber's pending
+ * events and a small pool of sender threads writes them out. Pending events
+ * are keyed by what they're about, so a subscriber that falls behind only gets
+ * the latest event per account. One that falls too far behind gets a single
+ * "resync" event telling the page to reload. Idle subscribers hold no threads,
+ * just their connection.
+ */
+@Component
+public class LiveUpdateHub implements AccountEventListener {
+    private static final Logger log = LoggerFactory.getLogger(LiveUpdateHub.class);
+    private static final String RESYNC = "resync";
+    private static final String HEARTBEAT = "heartbeat";
+
+    private final ConcurrentHashMap<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService senders;
+    private final long timeoutMs;
+    private final int maxPendingEvents;
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong resyncCount = new AtomicLong();
+
+    /**
+     * Where a subscriber's events are written. An SseEmitter in the app,
+     * swappable in tests.
+     */
+    public interface EventSink {
+        /**
+         * Write an event
+         *
+         * @param name - the event's name
+         * @param data - the event's data, sent as JSON
+         * @throws IOException if the connection is gone
+         */
+        void send(String name, Object data) throws IOException;
+
+        /**
+         * Close the connection
+         */
+        void close();
+    }
+
+    /**
+     * Create a hub
+     *
+     * @param senderThreads    - threads writing events to subscribers
+     * @param timeoutMs        - how long a stream stays open before the browser
+     *                         has to reconnect
+     * @param maxPendingEvents - how many different events a subscriber can fall
+     *                         behind by before it's told to resync
+     */
+    public LiveUpdateHub(@Value("${bankapp.live-updates.sender-threads:4}") int senderThreads,
+            @Value("${bankapp.live-updates.timeout-ms:1800000}") long timeoutMs,
+            @Value("${bankapp.live-updates.max-pending-events:32}") int maxPendingEvents) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "live-updates-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeoutMs = timeoutMs;
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    /**
+     * Open an event stream for the given user
+     *
+     * @param userId - the user to stream events for
+     * @return the stream
+     */
+    public SseEmitter subscribe(int userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = register(userId, new EventSink() {
+            @Override
+            public void send(String name, Object data) throws IOException {
+                if (data == null) {
+                    emitter.send(SseEmitter.event().comment(name));
+                } else {
+                    emitter.send(SseEmitter.event().name(name).data(data));
+                }
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscriber::unsubscribe);
+        emitter.onTimeout(subscriber::unsubscribe);
+        emitter.onError(error -> subscriber.unsubscribe());
+        return emitter;
+    }
+
+    /**
+     * Start sending the given user's events to a sink
+     *
+     * @param userId - the user to send events for
+     * @param sink   - where to send them
+     * @return the subscription
+     */
+    public Subscriber register(int userId, EventSink sink) {
+        Subscriber subscriber = new Subscriber(userId, sink);
+        // Add inside compute so it can't race with the last subscriber removing the set
+        subscribers.compute(userId, (id, userSubscribers) -> {
+            Set<Subscriber> updated = userSubscribers == null ? ConcurrentHashMap.newKeySet() : userSubscribers;
+            updated.add(subscriber);
+            return updated;
+        });
+        subscriberCount.incrementAndGet();
+        log.debug("User {} subscribed to live updates", userId);
+        return subscriber;
+    }
+
+    @Override
+    public void onAccountEvent(AccountEvent event) {
+        Set<Subscriber> userSubscribers = subscribers.get(event.getUserId());
+        if (userSubscribers == null) {
+            return;
+        }
+        String key;
+        String name;
+        Object data;
+        if (event.getType() == AccountEvent.Type.CHANGED) {
+            // Only the latest state of an account matters
+            key = "account:" + event.getAccountId();
+            name = "account";
+            data = Map.of("accountId", event.getAccountId());
+        } else if (event.getType() == AccountEvent.Type.UNUSUAL_TRANSACTION) {
+            // Warn the user's other pages too, and about queued transactions
+            key = "unusual:" + event.getAccountId();
+            name = "unusual";
+            data = Map.of("accountId", event.getAccountId());
+        } else {
+            // Accounts appearing or disappearing changes the navbar
+            key = "accounts";
+            name = "accounts";
+            data = Map.of("accountId", event.getAccountId(), "type", event.getType().name());
+        }
+        for (Subscriber subscriber : userSubscribers) {
+            subscriber.offer(key, name, data);
+        }
+    }
+
+    /**
+     * Send a comment to every subscriber, so proxies don't close idle streams
+     * and dead connections are noticed
+     */
+    @Scheduled(fixedDelayString = "${bankapp.live-updates.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                subscriber.offer(HEARTBEAT, HEARTBEAT, null);
+            }
+        }
+    }
+
+    /**
+     * Close every stream on shutdown
+     */
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                subscriber.sink.close();
+            }
+        }
+    }
+
+    /**
+     * Get the number of open streams
+     *
+     * @return subscribers
+     */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Get the number of events written to subscribers
+     *
+     * @return events sent
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Get the number of events merged into a newer one before being sent
+     *
+     * @return events coalesced
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Get the number of times a subscriber fell too far behind and was told to
+     * resync
+     *
+     * @return resyncs
+     */
+    public long getResyncCount() {
+        return resyncCount.get();
+    }
+
+    /**
+     * One open stream and the events waiting to be written to it
+     */
+    public class Subscriber {
+        private final int userId;
+        private final EventSink sink;
+        // Event name and data by key, oldest first. Guarded by this.
+        private final LinkedHashMap<String, Object[]> pending = new LinkedHashMap<>();
+        private boolean sending;
+        private boolean closed;
+
+        private Subscriber(int userId, EventSink sink) {
+            this.userId = userId;
+            this.sink = sink;
+        }
+
+        /**
+         * Queue an event, replacing any unsent event with the same key
+         */
+        private void offer(String key, String name, Object data) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pending.containsKey(RESYNC)) {
+                    // The page is reloading anyway
+                    coalescedCount.incrementAndGet();
+                } else if (pending.remove(key) != null) {
+                    coalescedCount.incrementAndGet();
+                    pending.put(key, new Object[] { name, data });
+                } else if (pending.size() >= maxPendingEvents) {
+                    coalescedCount.addAndGet(pending.size());
+                    pending.clear();
+                    pending.put(RESYNC, new Object[] { RESYNC, Map.of() });
+                    resyncCount.incrementAndGet();
+                } else {
+                    pending.put(key, new Object[] { name, data });
+                }
+                if (sending) {
+                    return;
+                }
+                sending = true;
+            }
+            try {
+                senders.execute(this::send);
+            } catch (RuntimeException e) {
+                // Shutting down
+                synchronized (this) {
+                    sending = false;
+                }
+            }
+        }
+
+        /**
+         * Write out pending events until there are none left
+         */
+        private void send() {
+            while (true) {
+                List<Object[]> events;
+                synchronized (this) {
+                    if (pending.isEmpty() || closed) {
+                        sending = false;
+                        return;
+                    }
+                    events = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+                for (Object[] event : events) {
+                    try {
+                        sink.send((String) event[0], event[1]);
+                        sentCount.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        log.debug("Live update stream for user {} failed, dropping it", userId, e);
+                        unsubscribe();
+                        sink.close();
+                        synchronized (this) {
+                            sending = false;
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stop sending events to this subscriber
+         */
+        public void unsubscribe() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+            }
+            subscribers.computeIfPresent(userId, (id, userSubscribers) -> {
+                userSubscribers.remove(this);
+                return userSubscribers.isEmpty() ? null : userSubscribers;
+            });
+            subscriberCount.decrementAndGet();
+            log.debug("User {} unsubscribed from live updates", userId);
+        }
+    }
+}
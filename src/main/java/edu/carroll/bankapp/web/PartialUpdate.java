@@ -0,0 +1,113 @@
+package edu.carroll.bankapp.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The pieces of the account page changed by an action, sent back as JSON in
+ * place of a redirect when the request has the X-Partial-Update header. The
+ * page patches them in without reloading.
+ */
+public class PartialUpdate {
+    /**
+     * Request header asking for a partial update instead of a redirect
+     */
+    public static final String HEADER = "X-Partial-Update";
+
+    private final List<String> messages = new ArrayList<>();
+    private final List<String> rows = new ArrayList<>();
+    private final List<Integer> removedTransactionIds = new ArrayList<>();
+    private String total;
+    private String table;
+
+    /**
+     * Create an update showing the given messages
+     *
+     * @param messages - messages for the user
+     */
+    public PartialUpdate(List<String> messages) {
+        this.messages.addAll(messages);
+    }
+
+    /**
+     * Gets the messages to show the user
+     *
+     * @return messages
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Gets the HTML of new transaction rows to add to the table
+     *
+     * @return rows
+     */
+    public List<String> getRows() {
+        return rows;
+    }
+
+    /**
+     * Adds a new transaction row
+     *
+     * @param row - the row's HTML
+     */
+    public void addRow(String row) {
+        rows.add(row);
+    }
+
+    /**
+     * Gets the ids of transactions whose rows should be removed
+     *
+     * @return transaction ids
+     */
+    public List<Integer> getRemovedTransactionIds() {
+        return removedTransactionIds;
+    }
+
+    /**
+     * Marks a transaction's row to be removed
+     *
+     * @param transactionId - the id of the removed transaction
+     */
+    public void removeTransaction(int transactionId) {
+        removedTransactionIds.add(transactionId);
+    }
+
+    /**
+     * Gets the HTML of the updated account total row, or null if unchanged
+     *
+     * @return total row
+     */
+    public String getTotal() {
+        return total;
+    }
+
+    /**
+     * Sets the HTML of the updated account total row
+     *
+     * @param total - the total row's HTML
+     */
+    public void setTotal(String total) {
+        this.total = total;
+    }
+
+    /**
+     * Gets the HTML of every row in the table, when the whole table should be
+     * replaced, or null
+     *
+     * @return table rows
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Sets the HTML of every row in the table, replacing the whole table
+     *
+     * @param table - the table rows' HTML
+     */
+    public void setTable(String table) {
+        this.table = table;
+    }
+}
@@ -0,0 +1,83 @@
+package edu.carroll.bankapp.web;
+
+import edu.carroll.bankapp.jpa.model.Transaction;
+
+/**
+ * A transaction found by a search, sent back as JSON for the search box
+ */
+public class SearchResult {
+    private final int transactionId;
+    private final int accountId;
+    private final String accountName;
+    private final String name;
+    private final String toFrom;
+    private final long amountInCents;
+
+    /**
+     * Create a result for the given transaction
+     *
+     * @param transaction - the transaction found
+     */
+    public SearchResult(Transaction transaction) {
+        this.transactionId = transaction.getId();
+        this.accountId = transaction.getAccount().getId();
+        this.accountName = transaction.getAccount().getName();
+        this.name = transaction.getName();
+        this.toFrom = transaction.getToFrom();
+        this.amountInCents = transaction.getAmountInCents();
+    }
+
+    /**
+     * Gets the transaction's id
+     *
+     * @return transactionId
+     */
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Gets the id of the account the transaction is in
+     *
+     * @return accountId
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the name of the account the transaction is in
+     *
+     * @return accountName
+     */
+    public String getAccountName() {
+        return accountName;
+    }
+
+    /**
+     * Gets the transaction's name
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets who the transaction was to or from
+     *
+     * @return toFrom
+     */
+    public String getToFrom() {
+        return toFrom;
+    }
+
+    /**
+     * Gets the transaction's amount in cents
+     *
+     * @return amountInCents
+     */
+    public long getAmountInCents() {
+        return amountInCents;
+    }
+}
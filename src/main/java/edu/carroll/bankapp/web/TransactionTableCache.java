@@ -0,0 +1,271 @@
+package edu.carroll.bankapp.web;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.Transaction;
+
+/**
+ * Cache of rendered transaction table rows, one entry per account. An entry is
+ * only used while the account is at the revision and balance it was rendered
+ * from, so any change to the account's transactions or balance renders it
+ * again. The balance is checked too because the posting engine changes it
+ * before the revision. Least
+ * recently used entries are dropped once the cached HTML goes over
+ * bankapp.fragment-cache.max-bytes.
+ */
+@Component
+public class TransactionTableCache {
+    private static final Logger log = LoggerFactory.getLogger(TransactionTableCache.class);
+    private static final String TEMPLATE = "fragments/transactionTable";
+    // Rough size of an entry apart from its HTML: the map entry, the key and
+    // the String header
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final ITemplateEngine templateEngine;
+    private final long maxBytes;
+    // Least recently used first. Guarded by this.
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * A rendered table and the account revision and balance it was rendered from
+     */
+    private static class Entry {
+        private final long revision;
+        private final long balanceInCents;
+        private final String html;
+        private final long bytes;
+
+        private Entry(long revision, long balanceInCents, String html, long bytes) {
+            this.revision = revision;
+            this.balanceInCents = balanceInCents;
+            this.html = html;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param templateEngine - for rendering the table
+     * @param maxBytes       - roughly how much memory cached tables may use, 0 to
+     *                       turn caching off
+     */
+    public TransactionTableCache(ITemplateEngine templateEngine,
+            @Value("${bankapp.fragment-cache.max-bytes:16777216}") long maxBytes) {
+        this.templateEngine = templateEngine;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the rendered transaction table rows for the given account
+     *
+     * @param account - the account to show
+     * @return the rows as HTML
+     */
+    public String getTable(Account account) {
+        return getTable(account, account.getBalanceInCents());
+    }
+
+    /**
+     * Get the rendered transaction table rows for the given account, with the
+     * given balance as its total
+     *
+     * @param account        - the account to show
+     * @param balanceInCents - the account's balance, which may be newer than the
+     *                       account's
+     * @return the rows as HTML
+     */
+    public String getTable(Account account, long balanceInCents) {
+        return get(account.getId(), account.getRevision(), balanceInCents, () -> render(account, balanceInCents));
+    }
+
+    /**
+     * Get the cached HTML for an account at the given revision, rendering it with
+     * the given renderer if it isn't cached
+     *
+     * @param accountId - the account the HTML is for
+     * @param revision  - the account's current revision
+     * @param renderer  - renders the HTML
+     * @return the HTML
+     */
+    public String get(int accountId, long revision, Supplier<String> renderer) {
+        return get(accountId, revision, 0, renderer);
+    }
+
+    /**
+     * Get the cached HTML for an account at the given revision and balance,
+     * rendering it with the given renderer if it isn't cached
+     *
+     * @param accountId      - the account the HTML is for
+     * @param revision       - the account's current revision
+     * @param balanceInCents - the account's current balance
+     * @param renderer       - renders the HTML
+     * @return the HTML
+     */
+    public String get(int accountId, long revision, long balanceInCents, Supplier<String> renderer) {
+        synchronized (this) {
+            Entry entry = entries.get(accountId);
+            if (entry != null && entry.revision == revision && entry.balanceInCents == balanceInCents) {
+                hits++;
+                return entry.html;
+            }
+            misses++;
+        }
+
+        // Render without holding the lock, other accounts shouldn't have to wait
+        String html = renderer.get();
+        // Strings take at most two bytes per character
+        long entryBytes = 2L * html.length() + ENTRY_OVERHEAD_BYTES;
+
+        synchronized (this) {
+            Entry existing = entries.get(accountId);
+            // Don't let a slow render overwrite a newer one
+            if (existing != null && existing.revision > revision) {
+                return html;
+            }
+            if (existing != null) {
+                entries.remove(accountId);
+                bytes -= existing.bytes;
+            }
+            if (entryBytes > maxBytes) {
+                return html;
+            }
+            entries.put(accountId, new Entry(revision, balanceInCents, html, entryBytes));
+            bytes += entryBytes;
+            evictOverflow();
+        }
+        return html;
+    }
+
+    /**
+     * Drop least recently used entries until the cache fits. Caller must hold
+     * the lock.
+     */
+    private void evictOverflow() {
+        Iterator<Map.Entry<Integer, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry evicted = iterator.next().getValue();
+            iterator.remove();
+            bytes -= evicted.bytes;
+            evictions++;
+        }
+        log.trace("Transaction table cache holds {} tables, {} bytes", entries.size(), bytes);
+    }
+
+    /**
+     * Render the transaction table rows for the given account
+     *
+     * @param account        - the account to show
+     * @param balanceInCents - the balance to show as its total
+     * @return the rows as HTML
+     */
+    private String render(Account account, long balanceInCents) {
+        Context context = new Context(LocaleContextHolder.getLocale());
+        context.setVariable("currentAccount", account);
+        context.setVariable("balanceInCents", balanceInCents);
+        return templateEngine.process(TEMPLATE, Set.of("rows"), context);
+    }
+
+    /**
+     * Render the table row for a single transaction, for patching it into a
+     * page that's already showing the table
+     *
+     * @param transaction - the transaction to show
+     * @return the row as HTML
+     */
+    public String renderRow(Transaction transaction) {
+        Context context = new Context(LocaleContextHolder.getLocale());
+        context.setVariable("transaction", transaction);
+        return templateEngine.process(TEMPLATE, Set.of("row"), context);
+    }
+
+    /**
+     * Render the account total row, for patching it into a page that's already
+     * showing the table
+     *
+     * @param account - the account to show
+     * @return the row as HTML
+     */
+    public String renderTotal(Account account) {
+        Context context = new Context(LocaleContextHolder.getLocale());
+        context.setVariable("currentAccount", account);
+        context.setVariable("balanceInCents", account.getBalanceInCents());
+        return templateEngine.process(TEMPLATE, Set.of("total"), context);
+    }
+
+    /**
+     * Render one page of a filtered view of an account's transactions. These
+     * depend on the filter, so they aren't cached.
+     *
+     * @param transactions - the page to show
+     * @return the rows as HTML
+     */
+    public String renderPage(Page<Transaction> transactions) {
+        Context context = new Context(LocaleContextHolder.getLocale());
+        context.setVariable("transactions", transactions);
+        return templateEngine.process(TEMPLATE, Set.of("page"), context);
+    }
+
+    /**
+     * Get the number of tables served from the cache
+     *
+     * @return hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Get the number of tables that had to be rendered
+     *
+     * @return misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Get the number of tables dropped to make room for others
+     *
+     * @return evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Get roughly how much memory the cached tables use
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of cached tables
+     *
+     * @return number of tables
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
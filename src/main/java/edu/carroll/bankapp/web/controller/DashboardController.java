@@ -4,24 +4,37 @@ import edu.carroll.bankapp.jpa.model.Account;
 import edu.carroll.bankapp.jpa.model.SiteUser;
 import edu.carroll.bankapp.jpa.model.Transaction;
 import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AccountSummary;
 import edu.carroll.bankapp.service.ServiceResponse;
+import edu.carroll.bankapp.service.TransactionFilter;
 import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.TransactionWriteQueue;
 import edu.carroll.bankapp.web.AuthHelper;
+import edu.carroll.bankapp.web.ETagHelper;
+import edu.carroll.bankapp.web.PartialUpdate;
+import edu.carroll.bankapp.web.TransactionTableCache;
 import edu.carroll.bankapp.web.form.*;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.servlet.view.RedirectView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import edu.carroll.bankapp.FlashHelper;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -33,24 +46,33 @@ import java.util.List;
 public class DashboardController {
     private static final String INCOME = "income";
     private static final String EXPENSE = "expense";
+    // Payees listed in the top payees panel, each way
+    private static final int TOP_PAYEES = 5;
 
     private static final Logger log = LoggerFactory.getLogger(DashboardController.class);
     private final AccountService accountService;
     private final TransactionService transactionService;
     private final AuthHelper authHelper;
+    private final TransactionTableCache transactionTableCache;
+    private final TransactionWriteQueue transactionWriteQueue;
 
     /**
      * Inject needed services
      * 
-     * @param transactionService - For working with transactions
-     * @param accountService     - For working with accounts
-     * @param authHelper         - For determining current user
+     * @param transactionService    - For working with transactions
+     * @param accountService        - For working with accounts
+     * @param authHelper            - For determining current user
+     * @param transactionTableCache - For rendering the transaction table
+     * @param transactionWriteQueue - For adding transactions in the background
      */
     public DashboardController(AccountService accountService,
-            TransactionService transactionService, AuthHelper authHelper) {
+            TransactionService transactionService, AuthHelper authHelper,
+            TransactionTableCache transactionTableCache, TransactionWriteQueue transactionWriteQueue) {
         this.accountService = accountService;
         this.transactionService = transactionService;
         this.authHelper = authHelper;
+        this.transactionTableCache = transactionTableCache;
+        this.transactionWriteQueue = transactionWriteQueue;
     }
 
     /**
@@ -63,7 +85,7 @@ public class DashboardController {
     @GetMapping("/")
     public RedirectView index(Model model, RedirectAttributes redirectAttributes) {
         // Get all the user's accounts
-        List<Account> accounts = accountService.getUserAccounts(authHelper.getLoggedInUser());
+        List<AccountSummary> accounts = accountService.getUserAccountSummaries(authHelper.getLoggedInUser());
 
         // Check if the 'messages' attribute exists in the model and pass it to the
         // redirect
@@ -82,24 +104,42 @@ public class DashboardController {
     }
 
     /**
-     * Page for viewing an account
+     * Page for viewing an account. Browsers revalidate the page with its ETag,
+     * and if nothing on it has changed they get a 304 without the account being
+     * loaded or the page rendered.
      *
      * @param accountId          the id of the account being viewed
      * @param model              data to pass to Thymeleaf
      * @param redirectAttributes - for flashing messages
-     * @return - account page or redirect
+     * @param webRequest         - for checking the request's If-None-Match header
+     * @param response           - for setting caching headers
+     * @return - account page, redirect, or null if not modified
      */
     @GetMapping("/account/{accountId}")
-    public String index(@PathVariable Integer accountId, Model model, RedirectAttributes redirectAttributes) {
+    public String index(@PathVariable Integer accountId, Model model, RedirectAttributes redirectAttributes,
+            WebRequest webRequest, HttpServletResponse response) {
         SiteUser loggedInUser = authHelper.getLoggedInUser();
         // Get the current user's accounts
-        List<Account> accounts = accountService.getUserAccounts(loggedInUser);
+        List<AccountSummary> accounts = accountService.getUserAccountSummaries(loggedInUser);
 
         // The user doesn't have any accounts, go create one
         if (accounts.isEmpty()) {
             FlashHelper.flash(redirectAttributes, "Please create an account");
             return "redirect:/add-account";
         }
+
+        // Pages with flash messages are one-offs, don't let them be reused
+        if (!model.containsAttribute("messages") && ownsAccount(accounts, accountId)) {
+            // Let the browser keep the page, but only after checking with us
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+            String eTag = ETagHelper.accountPageETag(loggedInUser, webRequest.getSessionId(), accountId, accounts,
+                    transactionService.getCategoryRulesVersion(loggedInUser),
+                    transactionService.getTopPayeesVersion(loggedInUser));
+            if (webRequest.checkNotModified(eTag)) {
+                log.debug("Account {} not modified", accountId);
+                return null;
+            }
+        }
         // The user tried to go to an account that doesn't exist, go away
         final Account account = accountService.getUserAccount(loggedInUser, accountId);
         if (account == null) {
@@ -114,12 +154,24 @@ public class DashboardController {
         model.addAttribute("accounts", accounts);
         // Give Thymeleaf the account being displayed
         model.addAttribute("currentAccount", account);
+        // And the user's categories and tags, for filing and filtering transactions
+        model.addAttribute("categories", transactionService.getUserCategories(loggedInUser));
+        model.addAttribute("tags", transactionService.getUserTags(loggedInUser));
+        model.addAttribute("categoryRules", transactionService.getUserCategoryRules(loggedInUser));
+        // Their top payees, estimated from summaries kept in memory
+        model.addAttribute("topPayees", transactionService.getTopPayees(loggedInUser, TOP_PAYEES));
+        // The transaction rows only need rendering when the account has changed
+        model.addAttribute("transactionTable",
+                transactionTableCache.getTable(account, accountService.getBalanceInCents(account)));
 
         // Pass the necessary forms for various user operations to Thymeleaf
         model.addAttribute("newAccountForm", new NewAccountForm());
         model.addAttribute("newTransactionForm", new NewTransactionForm());
         model.addAttribute("newTransferForm", new NewTransferForm());
         model.addAttribute("deleteTransactionForm", new DeleteTransactionForm());
+        model.addAttribute("deleteTransactionsForm", new DeleteTransactionsForm());
+        model.addAttribute("editTransactionForm", new EditTransactionForm());
+        model.addAttribute("newCategoryRuleForm", new NewCategoryRuleForm());
         model.addAttribute("deleteAccountForm", new DeleteAccountForm());
         model.addAttribute("updateUsernameForm", new UpdateUsernameForm());
         model.addAttribute("updatePasswordForm", new UpdatePasswordForm());
@@ -127,6 +179,98 @@ public class DashboardController {
         return "index";
     }
 
+    /**
+     * The outcome of one of the account page's actions: messages for the user,
+     * the account to go back to, and whatever the action produced
+     */
+    private static class ActionResult<T> {
+        private final List<String> messages = new ArrayList<>();
+        private Account account;
+        private T value;
+    }
+
+    /**
+     * Flash all the given messages
+     *
+     * @param redirectAttributes - for flashing messages
+     * @param messages           - the messages to show
+     */
+    private static void flashAll(RedirectAttributes redirectAttributes, List<String> messages) {
+        for (String message : messages) {
+            FlashHelper.flash(redirectAttributes, message);
+        }
+    }
+
+    /**
+     * The page to go back to after an action
+     *
+     * @param account - the account the action was on, or null
+     * @return the account's page, or the root path
+     */
+    private static String accountPath(Account account) {
+        return account == null ? "/" : "/account/" + account.getId();
+    }
+
+    /**
+     * The rows of an account's transaction table, for pages refreshing it after
+     * a live update
+     *
+     * @param accountId the id of the account being viewed
+     * @return the table rows, or 404 if it isn't the user's account
+     */
+    @GetMapping(value = "/account/{accountId}/table", produces = MediaType.TEXT_HTML_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> transactionTable(@PathVariable Integer accountId) {
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        Account account = accountService.getUserAccount(loggedInUser, accountId);
+        if (account == null || !loggedInUser.owns(account)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity
+                .ok(transactionTableCache.getTable(account, accountService.getBalanceInCents(account)));
+    }
+
+    /**
+     * One page of a filtered, sorted view of an account's transactions, for the
+     * filter controls above the table
+     *
+     * @param accountId the id of the account being viewed
+     * @param filter    which transactions to show and in what order
+     * @return the table rows, 400 if the filter doesn't make sense, or 404 if it
+     *         isn't the user's account
+     */
+    @GetMapping(value = "/account/{accountId}/transactions", produces = MediaType.TEXT_HTML_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> filteredTransactionTable(@PathVariable Integer accountId,
+            @ModelAttribute TransactionFilter filter) {
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        Account account = accountService.getUserAccount(loggedInUser, accountId);
+        if (account == null || !loggedInUser.owns(account)) {
+            return ResponseEntity.notFound().build();
+        }
+        ServiceResponse<Page<Transaction>> page = transactionService.findTransactions(loggedInUser, account, filter);
+        if (page.getResult() == null) {
+            return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(page.getMessage());
+        }
+        return ResponseEntity.ok(transactionTableCache.renderPage(page.getResult()));
+    }
+
+    /**
+     * Whether the given account is one of the user's accounts
+     *
+     * @param accounts  - the user's accounts
+     * @param accountId - the account to look for
+     * @return true if found
+     */
+    private static boolean ownsAccount(List<AccountSummary> accounts, int accountId) {
+        for (AccountSummary account : accounts) {
+            if (account.getId() == accountId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Page for initially adding an account
      *
@@ -138,7 +282,7 @@ public class DashboardController {
         // If the user already has accounts, they shouldn't be on the initial account
         // creation page
         SiteUser loggedInUser = authHelper.getLoggedInUser();
-        if (!accountService.getUserAccounts(loggedInUser).isEmpty()) {
+        if (!accountService.getUserAccountSummaries(loggedInUser).isEmpty()) {
             log.info("User {} already has accounts, redirecting to \"/\"", loggedInUser.getUsername());
             return "redirect:/";
         }
@@ -192,22 +336,62 @@ public class DashboardController {
     public RedirectView addTransaction(@Valid @ModelAttribute NewTransactionForm newTransactionForm,
             BindingResult validation,
             RedirectAttributes redirectAttributes) {
+        ActionResult<Transaction> result = addTransaction(newTransactionForm, validation);
+        flashAll(redirectAttributes, result.messages);
+        return new RedirectView(accountPath(result.account));
+    }
+
+    /**
+     * Accept form submission for transaction addition from a page that patches
+     * itself instead of reloading. A transaction that was queued has no row yet,
+     * the page picks it up from its live updates once it's written.
+     *
+     * @param newTransactionForm form information needed to create the transaction
+     * @return the new row and account total
+     */
+    @PostMapping(value = "/add-transaction", headers = PartialUpdate.HEADER)
+    @ResponseBody
+    public PartialUpdate addTransactionPartial(@Valid @ModelAttribute NewTransactionForm newTransactionForm,
+            BindingResult validation) {
+        ActionResult<Transaction> result = addTransaction(newTransactionForm, validation);
+        PartialUpdate update = new PartialUpdate(result.messages);
+        if (result.value != null) {
+            update.addRow(transactionTableCache.renderRow(result.value));
+            update.setTotal(transactionTableCache.renderTotal(result.account));
+        }
+        return update;
+    }
+
+    /**
+     * Create a transaction from a submitted form, through the write queue
+     *
+     * @param newTransactionForm form information needed to create the transaction
+     * @param validation         - the form's validation result
+     * @return the created transaction, if it was written right away
+     */
+    private ActionResult<Transaction> addTransaction(NewTransactionForm newTransactionForm,
+            BindingResult validation) {
+        ActionResult<Transaction> result = new ActionResult<>();
         if (validation.hasErrors()) {
             for (ObjectError error : validation.getAllErrors()) {
-                FlashHelper.flash(redirectAttributes, error.getDefaultMessage());
+                result.messages.add(error.getDefaultMessage());
             }
-            return new RedirectView("/");
+            return result;
         }
         Account account = accountService.getUserAccount(authHelper.getLoggedInUser(),
                 newTransactionForm.getAccountId());
+        if (account == null) {
+            result.messages.add("Account does not exist");
+            return result;
+        }
+        result.account = account;
 
         // Is transaction type valid?
         if (!newTransactionForm.getType().equals(EXPENSE) && !newTransactionForm.getType().equals(INCOME)) {
             // Transaction is an invalid type
             log.info("Invalid transaction type {}", newTransactionForm.getType());
-            FlashHelper.flash(redirectAttributes,
-                    String.format("Invalid transaction type: %s", newTransactionForm.getType()));
-            return new RedirectView("/account/" + account.getId());
+            result.messages.add(String.format("Invalid transaction type: %s", newTransactionForm.getType()));
+            return result;
         }
 
         // Only allow user to submit positives amounts in income/expenses
@@ -222,15 +406,16 @@ public class DashboardController {
             newTransactionForm.setAmountInDollars(-1 * newTransactionForm.getAmountInDollars());
         }
 
-        // Create the transaction
-        ServiceResponse<Transaction> response = transactionService.createTransaction(
+        // Create the transaction, or queue it to be created
+        ServiceResponse<Transaction> response = transactionWriteQueue.submit(
                 newTransactionForm.getName(),
                 (long)newTransactionForm.getAmountInDollars(),
                 newTransactionForm.getToFrom(),
                 account);
 
-        FlashHelper.flash(redirectAttributes, response.getMessage());
-        return new RedirectView("/account/" + account.getId());
+        result.messages.add(response.getMessage());
+        result.value = response.getResult();
+        return result;
     }
 
     /**
@@ -243,32 +428,74 @@ public class DashboardController {
     @PostMapping("/add-transfer")
     public RedirectView addTransfer(@Valid @ModelAttribute NewTransferForm newTransferForm, BindingResult validation,
             RedirectAttributes redirectAttributes) {
+        ActionResult<Boolean> result = addTransfer(newTransferForm, validation);
+        flashAll(redirectAttributes, result.messages);
+        return new RedirectView(accountPath(result.account));
+    }
+
+    /**
+     * Accept form submission for transfer addition from a page that patches
+     * itself instead of reloading
+     *
+     * @param newTransferForm form information needed to create transfer
+     * @return the from account's updated table
+     */
+    @PostMapping(value = "/add-transfer", headers = PartialUpdate.HEADER)
+    @ResponseBody
+    public PartialUpdate addTransferPartial(@Valid @ModelAttribute NewTransferForm newTransferForm,
+            BindingResult validation) {
+        ActionResult<Boolean> result = addTransfer(newTransferForm, validation);
+        PartialUpdate update = new PartialUpdate(result.messages);
+        if (Boolean.TRUE.equals(result.value)) {
+            // The transfer service doesn't hand back the new rows, so send the whole
+            // table. It's the table the next page load would use anyway, so the
+            // render is cached for it.
+            update.setTable(transactionTableCache.getTable(result.account));
+        }
+        return update;
+    }
+
+    /**
+     * Create a transfer from a submitted form
+     *
+     * @param newTransferForm form information needed to create transfer
+     * @param validation      - the form's validation result
+     * @return whether the transfer was created, with the account it came from
+     */
+    private ActionResult<Boolean> addTransfer(NewTransferForm newTransferForm, BindingResult validation) {
+        ActionResult<Boolean> result = new ActionResult<>();
         if (validation.hasErrors()) {
             for (ObjectError error : validation.getAllErrors()) {
-                FlashHelper.flash(redirectAttributes, error.getDefaultMessage());
+                result.messages.add(error.getDefaultMessage());
             }
-            return new RedirectView("/");
+            return result;
         }
 
+        // The account to take money from
+        Account fromAccount = accountService.getUserAccount(authHelper.getLoggedInUser(),
+                newTransferForm.getFromAccountId());
+        result.account = fromAccount;
+
         if (newTransferForm.getFromAccountId() == newTransferForm.getToAccountId()) {
-            FlashHelper.flash(redirectAttributes, "You cannot transfer money from an account to itself");
-            return new RedirectView("/account/" + newTransferForm.getFromAccountId());
+            result.messages.add("You cannot transfer money from an account to itself");
+            return result;
         }
         // The account to send money to
         Account toAccount = accountService.getUserAccount(authHelper.getLoggedInUser(),
                 newTransferForm.getToAccountId());
-
-        // The account to take money from
-        Account fromAccount = accountService.getUserAccount(authHelper.getLoggedInUser(),
-                newTransferForm.getFromAccountId());
+        if (fromAccount == null || toAccount == null) {
+            result.messages.add("Account does not exist");
+            return result;
+        }
 
         // Transfer the money
         ServiceResponse<Boolean> response = transactionService.createTransfer(toAccount, fromAccount,
                 (long)newTransferForm.getTransferAmountInDollars());
 
         // Give the user feedback
-        FlashHelper.flash(redirectAttributes, response.getMessage());
-        return new RedirectView("/account/" + fromAccount.getId());
+        result.messages.add(response.getMessage());
+        result.value = response.getResult();
+        return result;
     }
 
     /**
@@ -282,22 +509,201 @@ public class DashboardController {
     public String deleteTransaction(@ModelAttribute("deleteTransactionForm") DeleteTransactionForm form,
             BindingResult validation,
             RedirectAttributes redirectAttributes) {
+        ActionResult<Transaction> result = deleteTransaction(form, validation);
+        flashAll(redirectAttributes, result.messages);
+        return "redirect:" + accountPath(result.account);
+    }
+
+    /**
+     * Delete a transaction for a page that patches itself instead of reloading
+     *
+     * @param form - a delete transaction form
+     * @return the row to remove and the updated account total
+     */
+    @PostMapping(value = "/delete-transaction", headers = PartialUpdate.HEADER)
+    @ResponseBody
+    public PartialUpdate deleteTransactionPartial(
+            @ModelAttribute("deleteTransactionForm") DeleteTransactionForm form, BindingResult validation) {
+        ActionResult<Transaction> result = deleteTransaction(form, validation);
+        PartialUpdate update = new PartialUpdate(result.messages);
+        if (result.value != null) {
+            update.removeTransaction(result.value.getId());
+            update.setTotal(transactionTableCache.renderTotal(result.account));
+        }
+        return update;
+    }
+
+    /**
+     * Delete the transaction named in a submitted form
+     *
+     * @param form       - a delete transaction form
+     * @param validation - the form's validation result
+     * @return the deleted transaction, if any
+     */
+    private ActionResult<Transaction> deleteTransaction(DeleteTransactionForm form, BindingResult validation) {
+        ActionResult<Transaction> result = new ActionResult<>();
         if (validation.hasErrors()) {
             for (ObjectError error : validation.getAllErrors()) {
-                FlashHelper.flash(redirectAttributes, error.getDefaultMessage());
+                result.messages.add(error.getDefaultMessage());
             }
-            return "redirect:/";
+            return result;
         }
         SiteUser loggedInUser = authHelper.getLoggedInUser();
         // Look up the transaction to delete
         Transaction transaction = transactionService.getUserTransaction(loggedInUser, form.getTransactionId());
+        if (transaction == null) {
+            result.messages.add("Transaction does not exist");
+            return result;
+        }
+        result.account = transaction.getAccount();
 
         // Delete it
-        transactionService.deleteTransaction(loggedInUser, transaction);
+        ServiceResponse<Boolean> response = transactionService.deleteTransaction(loggedInUser, transaction);
+        if (!response.getResult()) {
+            result.messages.add(response.getMessage());
+            return result;
+        }
+
+        // Let the user know
+        result.messages.add(String.format("Deleted transaction: %s", transaction.getName()));
+        result.value = transaction;
+        return result;
+    }
+
+    /**
+     * Accept form submission for editing a transaction
+     *
+     * @param form               form information needed to edit the transaction
+     * @param redirectAttributes - for flashing messages
+     * @return redirect view to page showing the edited transaction
+     */
+    @PostMapping("/edit-transaction")
+    public RedirectView editTransaction(@Valid @ModelAttribute EditTransactionForm form, BindingResult validation,
+            RedirectAttributes redirectAttributes) {
+        if (validation.hasErrors()) {
+            for (ObjectError error : validation.getAllErrors()) {
+                FlashHelper.flash(redirectAttributes, error.getDefaultMessage());
+            }
+            return new RedirectView("/");
+        }
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        // Look up the transaction to edit
+        Transaction transaction = transactionService.getUserTransaction(loggedInUser, form.getTransactionId());
+        if (transaction == null) {
+            FlashHelper.flash(redirectAttributes, "Transaction does not exist");
+            return new RedirectView("/");
+        }
+        int accountId = transaction.getAccount().getId();
+
+        // Express expenses as a negative amount
+        long amountInDollars = (long) Math.abs(form.getAmountInDollars());
+        if (form.getType().equals(EXPENSE)) {
+            amountInDollars = -1 * amountInDollars;
+        }
+
+        // Update it, along with its category and tags
+        List<String> tags = form.getTags() == null ? List.of() : List.of(form.getTags().split(","));
+        ServiceResponse<Transaction> response = transactionService.editTransaction(loggedInUser, transaction,
+                form.getName(), amountInDollars, form.getToFrom(), form.getCategory(), tags);
+        FlashHelper.flash(redirectAttributes, response.getMessage());
+        return new RedirectView("/account/" + accountId);
+    }
+
+    /**
+     * Delete several transactions at once
+     *
+     * @param form               - a form with the ids of the selected transactions
+     * @param redirectAttributes - for flashing messages
+     * @return a redirect back to the account page
+     */
+    @PostMapping("/delete-transactions")
+    public String deleteTransactions(@Valid @ModelAttribute("deleteTransactionsForm") DeleteTransactionsForm form,
+            BindingResult validation,
+            RedirectAttributes redirectAttributes) {
+        if (validation.hasErrors()) {
+            for (ObjectError error : validation.getAllErrors()) {
+                FlashHelper.flash(redirectAttributes, error.getDefaultMessage());
+            }
+            return "redirect:/";
+        }
+        // Delete all of the selected transactions
+        ServiceResponse<Integer> response = transactionService.deleteTransactions(authHelper.getLoggedInUser(),
+                form.getTransactionIds());
 
         // Let the user know
-        FlashHelper.flash(redirectAttributes, String.format("Deleted transaction: %s", transaction.getName()));
-        return "redirect:/account/" + transaction.getAccount().getId().toString();
+        FlashHelper.flash(redirectAttributes, response.getMessage());
+        return "redirect:/account/" + form.getAccountId();
+    }
+
+    /**
+     * Add a rule for filing new transactions under a category
+     *
+     * @param form               - the rule, and the account being viewed
+     * @param redirectAttributes - for flashing messages
+     * @return a redirect back to the account page
+     */
+    @PostMapping("/add-category-rule")
+    public String addCategoryRule(@Valid @ModelAttribute NewCategoryRuleForm form, BindingResult validation,
+            RedirectAttributes redirectAttributes) {
+        if (validation.hasErrors()) {
+            for (ObjectError error : validation.getAllErrors()) {
+                FlashHelper.flash(redirectAttributes, error.getDefaultMessage());
+            }
+            return "redirect:/";
+        }
+        ServiceResponse<?> response = transactionService.addCategoryRule(authHelper.getLoggedInUser(),
+                form.getField(), form.getPattern(), form.getCategory());
+        FlashHelper.flash(redirectAttributes, response.getMessage());
+        return "redirect:/account/" + form.getAccountId();
+    }
+
+    /**
+     * Delete a categorization rule
+     *
+     * @param form               - the rule, and the account being viewed
+     * @param redirectAttributes - for flashing messages
+     * @return a redirect back to the account page
+     */
+    @PostMapping("/delete-category-rule")
+    public String deleteCategoryRule(@Valid @ModelAttribute DeleteCategoryRuleForm form, BindingResult validation,
+            RedirectAttributes redirectAttributes) {
+        if (validation.hasErrors()) {
+            return "redirect:/";
+        }
+        ServiceResponse<Boolean> response = transactionService.deleteCategoryRule(authHelper.getLoggedInUser(),
+                form.getRuleId());
+        FlashHelper.flash(redirectAttributes, response.getMessage());
+        return "redirect:/account/" + form.getAccountId();
+    }
+
+    /**
+     * File the user's uncategorized transactions using their rules
+     *
+     * @param accountId          - the account being viewed
+     * @param redirectAttributes - for flashing messages
+     * @return a redirect back to the account page
+     */
+    @PostMapping("/apply-category-rules")
+    public String applyCategoryRules(@RequestParam("accountId") Integer accountId,
+            RedirectAttributes redirectAttributes) {
+        ServiceResponse<Long> response = transactionService.applyCategoryRules(authHelper.getLoggedInUser());
+        FlashHelper.flash(redirectAttributes, response.getMessage());
+        return "redirect:/account/" + accountId;
+    }
+
+    /**
+     * Count the user's top payees again from all of their transactions
+     *
+     * @param accountId          - the account being viewed
+     * @param redirectAttributes - for flashing messages
+     * @return a redirect back to the account page
+     */
+    @PostMapping("/recount-top-payees")
+    public String recountTopPayees(@RequestParam("accountId") Integer accountId,
+            RedirectAttributes redirectAttributes) {
+        ServiceResponse<Boolean> response = transactionService.recountTopPayees(authHelper.getLoggedInUser());
+        FlashHelper.flash(redirectAttributes, response.getMessage());
+        return "redirect:/account/" + accountId;
     }
 
     /**
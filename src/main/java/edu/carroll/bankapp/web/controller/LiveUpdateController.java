@@ -0,0 +1,47 @@
+package edu.carroll.bankapp.web.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.web.AuthHelper;
+import edu.carroll.bankapp.web.LiveUpdateHub;
+
+/**
+ * Streams changes to the logged-in user's accounts to their open dashboards
+ */
+@Controller
+public class LiveUpdateController {
+    private final LiveUpdateHub liveUpdateHub;
+    private final AuthHelper authHelper;
+
+    /**
+     * Inject needed services
+     *
+     * @param liveUpdateHub - For subscribing to account events
+     * @param authHelper    - For determining current user
+     */
+    public LiveUpdateController(LiveUpdateHub liveUpdateHub, AuthHelper authHelper) {
+        this.liveUpdateHub = liveUpdateHub;
+        this.authHelper = authHelper;
+    }
+
+    /**
+     * Open a Server-Sent Events stream of changes to the user's accounts
+     *
+     * @return the event stream
+     */
+    @GetMapping("/live-updates")
+    @ResponseBody
+    public SseEmitter liveUpdates() {
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        if (loggedInUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        return liveUpdateHub.subscribe(loggedInUser.getId());
+    }
+}
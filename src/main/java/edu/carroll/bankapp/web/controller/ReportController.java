@@ -0,0 +1,164 @@
+package edu.carroll.bankapp.web.controller;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AccountSummary;
+import edu.carroll.bankapp.service.BalanceRollups;
+import edu.carroll.bankapp.service.TransactionAnalytics;
+import edu.carroll.bankapp.service.TransactionColumns;
+import edu.carroll.bankapp.web.AuthHelper;
+
+/**
+ * Reports over the logged-in user's transactions, sent back as JSON for the
+ * reports dialog. Every report covers all of the user's accounts unless it's
+ * given one.
+ */
+@Controller
+public class ReportController {
+    // A hundred years, so a request can't ask for an enormous response
+    private static final int MAX_MONTHS = 1200;
+    private static final int MAX_DAYS = 36525;
+    private static final int MAX_PAYEES = 100;
+    private static final int MIN_WIDTH = 3;
+    private static final int MAX_WIDTH = 4000;
+
+    private final TransactionAnalytics analytics;
+    private final AccountService accountService;
+    private final AuthHelper authHelper;
+
+    /**
+     * Inject needed services
+     *
+     * @param analytics      - For running reports
+     * @param accountService - For checking the user owns an account
+     * @param authHelper     - For determining current user
+     */
+    public ReportController(TransactionAnalytics analytics, AccountService accountService, AuthHelper authHelper) {
+        this.analytics = analytics;
+        this.accountService = accountService;
+        this.authHelper = authHelper;
+    }
+
+    /**
+     * Total income and spending by month, ending with this month
+     *
+     * @param accountId - only this account, or none for all of them
+     * @param months    - how many months to cover
+     * @return a total for every month, oldest first
+     */
+    @GetMapping("/reports/monthly")
+    @ResponseBody
+    public List<TransactionColumns.MonthlyTotal> monthly(
+            @RequestParam(name = "accountId", required = false) Integer accountId,
+            @RequestParam(name = "months", defaultValue = "12") int months) {
+        SiteUser loggedInUser = checkAccess(accountId);
+        YearMonth to = YearMonth.now();
+        YearMonth from = to.minusMonths(Math.max(1, Math.min(months, MAX_MONTHS)) - 1);
+        return analytics.monthlyTotals(loggedInUser.getId(), accountId, from, to);
+    }
+
+    /**
+     * Total spending by payee over a range of days, the last year by default
+     *
+     * @param accountId - only this account, or none for all of them
+     * @param from      - the first day
+     * @param to        - the last day
+     * @param limit     - the most payees to return
+     * @return the payees spent the most on, most first
+     */
+    @GetMapping("/reports/payees")
+    @ResponseBody
+    public List<TransactionColumns.PayeeTotal> payees(
+            @RequestParam(name = "accountId", required = false) Integer accountId,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        SiteUser loggedInUser = checkAccess(accountId);
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusYears(1).plusDays(1) : from;
+        return analytics.payeeTotals(loggedInUser.getId(), accountId, start, end,
+                Math.max(1, Math.min(limit, MAX_PAYEES)));
+    }
+
+    /**
+     * Daily balances over a range of days, the last year by default
+     *
+     * @param accountId - only this account, or none for all of them together
+     * @param from      - the first day
+     * @param to        - the last day
+     * @return the balance at the end of each day
+     */
+    @GetMapping("/reports/balance")
+    @ResponseBody
+    public TransactionColumns.BalanceCurve balance(
+            @RequestParam(name = "accountId", required = false) Integer accountId,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        SiteUser loggedInUser = checkAccess(accountId);
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusYears(1).plusDays(1) : from;
+        if (start.isBefore(end.minusDays(MAX_DAYS))) {
+            start = end.minusDays(MAX_DAYS);
+        }
+        return analytics.balanceCurve(loggedInUser.getId(), accountId, start, end);
+    }
+
+    /**
+     * Combined balance of all accounts over a range of days, the last ten years
+     * by default, thinned out to be drawn width pixels wide
+     *
+     * @param from  - the first day
+     * @param to    - the last day
+     * @param width - the most points to return
+     * @return the balance at the end of some of the days, first and last included
+     */
+    @GetMapping("/reports/net-worth")
+    @ResponseBody
+    public BalanceRollups.BalanceSeries netWorth(
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "width", defaultValue = "600") int width) {
+        SiteUser loggedInUser = checkAccess(null);
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusYears(10).plusDays(1) : from;
+        if (start.isBefore(end.minusDays(MAX_DAYS))) {
+            start = end.minusDays(MAX_DAYS);
+        }
+        List<Integer> accountIds = new ArrayList<>();
+        for (AccountSummary account : accountService.getUserAccountSummaries(loggedInUser)) {
+            accountIds.add(account.getId());
+        }
+        return analytics.netWorth(loggedInUser.getId(), accountIds, start, end,
+                Math.max(MIN_WIDTH, Math.min(width, MAX_WIDTH)));
+    }
+
+    /**
+     * Make sure someone is logged in, and owns the account if there is one
+     *
+     * @param accountId - the account asked about, or null
+     * @return the logged in user
+     */
+    private SiteUser checkAccess(Integer accountId) {
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        if (loggedInUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        if (accountId != null && accountService.getUserAccount(loggedInUser, accountId) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        return loggedInUser;
+    }
+}
@@ -0,0 +1,85 @@
+package edu.carroll.bankapp.web.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.PayeeSuggestions;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.web.AuthHelper;
+import edu.carroll.bankapp.web.SearchResult;
+
+/**
+ * Searches the logged-in user's transactions for the search box, and the
+ * payees they've used for completing the payee field
+ */
+@Controller
+public class SearchController {
+    private static final int MAX_RESULTS = 50;
+
+    private final TransactionService transactionService;
+    private final PayeeSuggestions payeeSuggestions;
+    private final AuthHelper authHelper;
+
+    /**
+     * Inject needed services
+     *
+     * @param transactionService - For searching transactions
+     * @param payeeSuggestions   - For suggesting payees
+     * @param authHelper         - For determining current user
+     */
+    public SearchController(TransactionService transactionService, PayeeSuggestions payeeSuggestions,
+            AuthHelper authHelper) {
+        this.transactionService = transactionService;
+        this.payeeSuggestions = payeeSuggestions;
+        this.authHelper = authHelper;
+    }
+
+    /**
+     * Find the user's transactions matching a query
+     *
+     * @param query - the words to look for
+     * @param limit - the most results to return
+     * @return matching transactions, best match first
+     */
+    @GetMapping("/search")
+    @ResponseBody
+    public List<SearchResult> search(@RequestParam("q") String query,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        if (loggedInUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        List<SearchResult> results = new ArrayList<>();
+        for (Transaction transaction : transactionService.searchTransactions(loggedInUser, query,
+                Math.max(1, Math.min(limit, MAX_RESULTS)))) {
+            results.add(new SearchResult(transaction));
+        }
+        return results;
+    }
+
+    /**
+     * Suggest payees the user has used before that start with what they've
+     * typed
+     *
+     * @param prefix - what they've typed so far
+     * @return payee names, best first
+     */
+    @GetMapping("/payees")
+    @ResponseBody
+    public List<String> payees(@RequestParam(name = "prefix", defaultValue = "") String prefix) {
+        SiteUser loggedInUser = authHelper.getLoggedInUser();
+        if (loggedInUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        return payeeSuggestions.suggest(loggedInUser.getId(), prefix, PayeeSuggestions.MAX_SUGGESTIONS);
+    }
+}
@@ -0,0 +1,50 @@
+package edu.carroll.bankapp.web.form;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Form object for deleting a categorization rule
+ */
+public class DeleteCategoryRuleForm {
+    @NotNull
+    private Integer ruleId;
+
+    @NotNull
+    private Integer accountId;
+
+    /**
+     * Getter for the id of the rule to be deleted
+     *
+     * @return the id of the rule to be deleted
+     */
+    public Integer getRuleId() {
+        return ruleId;
+    }
+
+    /**
+     * Setter for the id of the rule to be deleted
+     *
+     * @param ruleId the id of the rule to be deleted
+     */
+    public void setRuleId(Integer ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    /**
+     * Getter for the id of the account being viewed
+     *
+     * @return the id of the account being viewed
+     */
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Setter for the id of the account being viewed
+     *
+     * @param accountId the id of the account being viewed
+     */
+    public void setAccountId(Integer accountId) {
+        this.accountId = accountId;
+    }
+}
@@ -0,0 +1,54 @@
+package edu.carroll.bankapp.web.form;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Form object for deleting several transactions at once
+ */
+public class DeleteTransactionsForm {
+    @NotEmpty(message = "No transactions selected")
+    private List<Integer> transactionIds = new ArrayList<>();
+
+    @NotNull
+    private Integer accountId;
+
+    /**
+     * Getter for the ids of the transactions to be deleted
+     *
+     * @return the ids of the transactions to be deleted
+     */
+    public List<Integer> getTransactionIds() {
+        return transactionIds;
+    }
+
+    /**
+     * Setter for the ids of the transactions to be deleted
+     *
+     * @param transactionIds the ids of the transactions to be deleted
+     */
+    public void setTransactionIds(List<Integer> transactionIds) {
+        this.transactionIds = transactionIds;
+    }
+
+    /**
+     * Getter for the id of the account being viewed
+     *
+     * @return the id of the account being viewed
+     */
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Setter for the id of the account being viewed
+     *
+     * @param accountId the id of the account being viewed
+     */
+    public void setAccountId(Integer accountId) {
+        this.accountId = accountId;
+    }
+}
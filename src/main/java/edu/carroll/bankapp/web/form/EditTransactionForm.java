@@ -0,0 +1,167 @@
+package edu.carroll.bankapp.web.form;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/**
+ * This form collects and validates the necessary information to edit an
+ * existing transaction
+ */
+public class EditTransactionForm {
+    @NotNull
+    private Integer transactionId;
+
+    @NotNull
+    @NotBlank
+    private String name;
+
+    @NotNull
+    private String toFrom;
+
+    @NotNull
+    @PositiveOrZero
+    private double amountInDollars;
+
+    @NotNull
+    @Pattern(regexp = "^(income|expense)$", message = "Transaction type should be 'income' or 'expense'")
+    private String type;
+
+    private String category = "";
+
+    private String tags = "";
+
+    /**
+     * Default constructor for Thymeleaf
+     */
+    public EditTransactionForm() {
+
+    }
+
+    /**
+     * Get the id of the transaction being edited
+     *
+     * @return transactionId - Integer - id of the transaction
+     */
+    public Integer getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Set the id of the transaction being edited
+     *
+     * @param transactionId - Integer - id of the transaction
+     */
+    public void setTransactionId(Integer transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Get the new name of the transaction
+     *
+     * @return name - String - name of transaction
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Set the new name of the transaction
+     *
+     * @param name - String - name of the transaction
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the new recipient/sender of the transaction
+     *
+     * @return toFrom - String - where the money went/came from
+     */
+    public String getToFrom() {
+        return toFrom;
+    }
+
+    /**
+     * Set the new recipient/sender of the transaction
+     *
+     * @param toFrom - String - where the money went/came from
+     */
+    public void setToFrom(String toFrom) {
+        this.toFrom = toFrom;
+    }
+
+    /**
+     * Get the new amount in dollars for the transaction
+     *
+     * @return amount in dollars - double - monetary amount in dollars
+     */
+    public double getAmountInDollars() {
+        return amountInDollars;
+    }
+
+    /**
+     * Set the new amount in dollars for the transaction
+     *
+     * @param amountInDollars - double - monetary amount in dollars
+     */
+    public void setAmountInDollars(double amountInDollars) {
+        this.amountInDollars = amountInDollars;
+    }
+
+    /**
+     * Gets the type of the transaction
+     *
+     * @return type - String - income or expense
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the type of the transaction
+     *
+     * @param type - String - income or expense
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Get the category to file the transaction under
+     *
+     * @return category - String - the category's name, blank for none
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Set the category to file the transaction under
+     *
+     * @param category - String - the category's name, blank for none
+     */
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    /**
+     * Get the transaction's tags
+     *
+     * @return tags - String - tag names separated by commas
+     */
+    public String getTags() {
+        return tags;
+    }
+
+    /**
+     * Set the transaction's tags
+     *
+     * @param tags - String - tag names separated by commas
+     */
+    public void setTags(String tags) {
+        this.tags = tags;
+    }
+}
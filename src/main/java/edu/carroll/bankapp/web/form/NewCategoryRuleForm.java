@@ -0,0 +1,94 @@
+package edu.carroll.bankapp.web.form;
+
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Form object for adding a categorization rule
+ */
+public class NewCategoryRuleForm {
+    @NotNull(message = "Choose what the rule looks at")
+    private CategoryRule.Field field = CategoryRule.Field.PAYEE;
+
+    @NotBlank(message = "Rule text cannot be blank")
+    private String pattern;
+
+    @NotBlank(message = "Rule category cannot be blank")
+    private String category;
+
+    @NotNull
+    private Integer accountId;
+
+    /**
+     * Getter for what part of a transaction the rule looks at
+     *
+     * @return the payee or the name
+     */
+    public CategoryRule.Field getField() {
+        return field;
+    }
+
+    /**
+     * Setter for what part of a transaction the rule looks at
+     *
+     * @param field the payee or the name
+     */
+    public void setField(CategoryRule.Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Getter for the text the field has to contain
+     *
+     * @return the text to look for
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Setter for the text the field has to contain
+     *
+     * @param pattern the text to look for
+     */
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Getter for the name of the category matching transactions go under
+     *
+     * @return the category's name
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Setter for the name of the category matching transactions go under
+     *
+     * @param category the category's name
+     */
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    /**
+     * Getter for the id of the account being viewed
+     *
+     * @return the id of the account being viewed
+     */
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Setter for the id of the account being viewed
+     *
+     * @param accountId the id of the account being viewed
+     */
+    public void setAccountId(Integer accountId) {
+        this.accountId = accountId;
+    }
+}
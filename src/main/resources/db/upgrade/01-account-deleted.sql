@@ -0,0 +1,4 @@
+-- Adds account.deleted, set on deleted accounts until the background purge
+-- removes them. Existing accounts aren't deleted.
+
+alter table account add column deleted bit not null default 0;
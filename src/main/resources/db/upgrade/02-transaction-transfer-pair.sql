@@ -0,0 +1,4 @@
+-- Adds transaction.transfer_pair_id, the id of the other half of a transfer.
+-- Transfers made before it are left null and still recognized by name.
+
+alter table transaction add column transfer_pair_id integer;
@@ -0,0 +1,5 @@
+-- Adds account.revision, which goes up with every change to an account's
+-- balance or transactions so unchanged pages can be answered with 304 Not
+-- Modified. Existing accounts start at 0.
+
+alter table account add column revision bigint not null default 0;
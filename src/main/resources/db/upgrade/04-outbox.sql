@@ -0,0 +1,22 @@
+-- Adds the outbox account events are written to as part of each change, and
+-- dispatched from once it commits.
+
+create table outbox_event (
+    id bigint not null,
+    event_type varchar(255) not null,
+    user_id integer not null,
+    account_id integer not null,
+    created_at datetime(6) not null,
+    dispatched_at datetime(6),
+    attempts integer not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index outbox_event_pending on outbox_event (dispatched_at, id);
+
+-- Ids are handed out in blocks from a table, as for every other entity
+create table outbox_event_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into outbox_event_SEQ values (1);
@@ -0,0 +1,60 @@
+-- Adds the double-entry ledger every balance change is recorded in, and opens
+-- it with each existing account's balance.
+
+create table journal_entry (
+    id bigint not null,
+    description varchar(255) not null,
+    created_at datetime(6) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table posting (
+    id bigint not null,
+    entry_id bigint not null,
+    account_id integer not null,
+    transaction_id integer,
+    amount_in_cents bigint not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index posting_account on posting (account_id, id);
+
+alter table posting add constraint posting_entry_fk foreign key (entry_id) references journal_entry (id);
+
+create table balance_checkpoint (
+    account_id integer not null,
+    last_posting_id bigint not null,
+    balance_in_cents bigint not null,
+    posting_count bigint not null,
+    updated_at datetime(6) not null,
+    primary key (account_id)
+) engine=InnoDB;
+
+-- One opening entry per account with a balance, the same as
+-- LedgerServiceImpl.openMissingAccounts writes: the balance posted to the
+-- account and balanced against the outside world (account 0). Doing it here,
+-- while the app is down, means no new transaction can get to an account first.
+-- Ids are taken from the account ids, as the tables are empty.
+insert into journal_entry (id, description, created_at)
+select id, 'Opening balance', now(6) from account where deleted = 0 and balance_in_cents <> 0;
+
+insert into posting (id, entry_id, account_id, transaction_id, amount_in_cents)
+select 2 * id - 1, id, id, null, balance_in_cents from account where deleted = 0 and balance_in_cents <> 0;
+
+insert into posting (id, entry_id, account_id, transaction_id, amount_in_cents)
+select 2 * id, id, 0, null, -balance_in_cents from account where deleted = 0 and balance_in_cents <> 0;
+
+-- Ids are handed out in blocks from a table, as for every other entity. New
+-- blocks start past the opening entries, with room for blocks of up to 1000
+-- (bankapp.id.allocation-size).
+create table journal_entry_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into journal_entry_SEQ select coalesce(max(id), 0) + 1000 from journal_entry;
+
+create table posting_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into posting_SEQ select coalesce(max(id), 0) + 1000 from posting;
@@ -0,0 +1,9 @@
+-- Adds log_projection, how far the transaction write queue's and the posting
+-- engine's logs have been written to the database.
+
+create table log_projection (
+    name varchar(255) not null,
+    last_sequence bigint not null,
+    updated_at datetime(6) not null,
+    primary key (name)
+) engine=InnoDB;
@@ -0,0 +1,26 @@
+-- Adds the payee dictionary: the payee table and transaction.payee_id.
+--
+-- Existing transactions keep their names in to_from until PayeeDictionary's
+-- startup backfill moves them over.
+
+create table payee (
+    id integer not null,
+    owner_id integer not null,
+    name varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index payee_owner_name on payee (owner_id, name);
+
+-- Ids are handed out in blocks from a table, as for every other entity
+create table payee_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into payee_SEQ values (1);
+
+alter table transaction add column payee_id integer;
+
+create index transaction_payee on transaction (payee_id);
+
+alter table transaction add constraint transaction_payee_fk foreign key (payee_id) references payee (id);
@@ -0,0 +1,6 @@
+-- Adds the indexes filtered and sorted views of an account's transactions
+-- use, so they don't have to scan the whole table.
+
+create index transaction_account_date on transaction (account_id, date);
+
+create index transaction_account_amount on transaction (account_id, amount);
@@ -0,0 +1,61 @@
+-- Adds each user's categories and tags, transaction.category_id and the tags
+-- on each transaction.
+
+create table category (
+    id integer not null,
+    owner_id integer not null,
+    name varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index category_owner_name on category (owner_id, name);
+
+create table tag (
+    id integer not null,
+    owner_id integer not null,
+    name varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index tag_owner_name on tag (owner_id, name);
+
+create table transaction_tag (
+    id integer not null,
+    transaction_id integer not null,
+    tag_id integer not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index transaction_tag_transaction on transaction_tag (transaction_id);
+
+create index transaction_tag_tag on transaction_tag (tag_id);
+
+alter table transaction_tag add constraint transaction_tag_transaction_fk
+    foreign key (transaction_id) references transaction (id);
+
+alter table transaction_tag add constraint transaction_tag_tag_fk foreign key (tag_id) references tag (id);
+
+alter table transaction add column category_id integer;
+
+create index transaction_category on transaction (category_id);
+
+alter table transaction add constraint transaction_category_fk foreign key (category_id) references category (id);
+
+-- Ids are handed out in blocks from a table, as for every other entity
+create table category_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into category_SEQ values (1);
+
+create table tag_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into tag_SEQ values (1);
+
+create table transaction_tag_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into transaction_tag_SEQ values (1);
@@ -0,0 +1,21 @@
+-- Adds each user's categorization rules.
+
+create table category_rule (
+    id integer not null,
+    owner_id integer not null,
+    field varchar(16) not null,
+    pattern varchar(255) not null,
+    category_id integer not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index category_rule_owner on category_rule (owner_id);
+
+alter table category_rule add constraint category_rule_category_fk foreign key (category_id) references category (id);
+
+-- Ids are handed out in blocks from a table, as for every other entity
+create table category_rule_SEQ (
+    next_val bigint
+) engine=InnoDB;
+
+insert into category_rule_SEQ values (1);
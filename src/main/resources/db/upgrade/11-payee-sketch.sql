@@ -0,0 +1,10 @@
+-- Adds the saved copies of each user's top payee summaries. Users without one
+-- are counted from scratch the first time their top payees are shown.
+
+create table payee_sketch (
+    owner_id integer not null,
+    last_transaction_id integer not null,
+    data mediumblob not null,
+    updated_at datetime(6) not null,
+    primary key (owner_id)
+) engine=InnoDB;
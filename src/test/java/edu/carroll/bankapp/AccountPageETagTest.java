@@ -0,0 +1,134 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Transactional
+@SpringBootTest
+@AutoConfigureMockMvc
+public class AccountPageETagTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    public static final String JOHN_NAME = "John Doe";
+    public static final String JOHN_EMAIL = "john@example.com";
+    public static final String JOHN_USERNAME = "johndoe";
+    public static final String JOHN_PASSWORD = "password123";
+
+    private String getPage(int accountId, MockHttpSession session, String eTag, int expectedStatus)
+            throws Exception {
+        MockHttpServletRequestBuilder request = get("/account/" + accountId)
+                .session(session)
+                .with(user(JOHN_USERNAME));
+        if (eTag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+        MvcResult result = mockMvc.perform(request)
+                .andExpect(status().is(expectedStatus))
+                .andReturn();
+        return result.getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @Test
+    public void testUnchangedPageNotModified() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        MockHttpSession session = new MockHttpSession();
+
+        // First visit renders the page and hands out an ETag
+        MvcResult result = mockMvc.perform(get("/account/" + checking.getId()).session(session)
+                .with(user(JOHN_USERNAME)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, no-cache"))
+                .andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+
+        // Revisiting gets a 304 with no body
+        result = mockMvc.perform(get("/account/" + checking.getId()).session(session)
+                .with(user(JOHN_USERNAME))
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andReturn();
+        assertEquals("", result.getResponse().getContentAsString());
+    }
+
+    @Test
+    public void testChangedPageRendered() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        MockHttpSession session = new MockHttpSession();
+        String eTag = getPage(checking.getId(), session, null, 200);
+
+        // A new transaction changes the page
+        transactionService.createTransaction("Coffee", -5, "Cafe", checking);
+        String newETag = getPage(checking.getId(), session, eTag, 200);
+        assertNotEquals(eTag, newETag);
+        getPage(checking.getId(), session, newETag, 304);
+
+        // So does a new account in the navbar
+        accountService.createAccount("Savings", (long) 100, john);
+        String navbarETag = getPage(checking.getId(), session, newETag, 200);
+        assertNotEquals(newETag, navbarETag);
+    }
+
+    @Test
+    public void testOtherAccountOrSessionRendered() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 100, john).getResult();
+        MockHttpSession session = new MockHttpSession();
+        String eTag = getPage(checking.getId(), session, null, 200);
+
+        // The ETag for one account doesn't match another
+        getPage(savings.getId(), session, eTag, 200);
+        // A new session has a new CSRF token in its forms
+        getPage(checking.getId(), new MockHttpSession(), eTag, 200);
+    }
+
+    @Test
+    public void testFlashMessagesRendered() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        MockHttpSession session = new MockHttpSession();
+        String eTag = getPage(checking.getId(), session, null, 200);
+
+        // Messages from the previous request have to be shown, even if nothing else
+        // changed
+        mockMvc.perform(get("/account/" + checking.getId()).session(session)
+                .with(user(JOHN_USERNAME))
+                .flashAttr("messages", List.of("Transaction created successfully"))
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+}
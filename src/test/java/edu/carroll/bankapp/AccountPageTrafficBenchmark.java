@@ -0,0 +1,159 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Replays a mix of dashboard traffic (mostly refreshes, some account switching,
+ * the occasional new transaction) and counts how many page renders the
+ * account page ETags avoid, compared with the same traffic from a browser that
+ * never revalidates.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:etag-bench")
+@AutoConfigureMockMvc
+public class AccountPageTrafficBenchmark {
+    private static final int USERS = 20;
+    private static final int ACCOUNTS_PER_USER = 3;
+    private static final int TRANSACTIONS_PER_ACCOUNT = 50;
+    private static final int REQUESTS = 5_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * One user's browser: their session, the page they're on, and the ETags it
+     * has cached
+     */
+    private static class Browser {
+        private final String username;
+        private final List<Integer> accountIds;
+        private final MockHttpSession session = new MockHttpSession();
+        private final Map<Integer, String> eTags = new HashMap<>();
+        private int currentAccountId;
+
+        private Browser(String username, List<Integer> accountIds) {
+            this.username = username;
+            this.accountIds = accountIds;
+            this.currentAccountId = accountIds.get(0);
+        }
+    }
+
+    @Test
+    public void benchmarkTrafficReplay() throws Exception {
+        List<Browser> browsers = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            String username = "etag_user_" + u;
+            SiteUser user = userService.createUser("ETag User", username + "@example.com", username, "password123")
+                    .getResult();
+            List<Integer> accountIds = new ArrayList<>();
+            for (int a = 0; a < ACCOUNTS_PER_USER; a++) {
+                Account account = accountService.createAccount("Account " + a, (long) 1000, user).getResult();
+                for (int t = 0; t < TRANSACTIONS_PER_ACCOUNT; t++) {
+                    transactionService.createTransaction("Purchase " + t, -1, "Store", account);
+                }
+                accountIds.add(account.getId());
+            }
+            browsers.add(new Browser(username, accountIds));
+        }
+
+        // Warm up, then replay the same traffic with and without revalidation
+        replay(browsers, new Random(1), true, REQUESTS / 5);
+        long[] revalidating = replay(browsers, new Random(42), true, REQUESTS);
+        long[] plain = replay(browsers, new Random(42), false, REQUESTS);
+
+        System.out.printf("[etag] %d page views: %d rendered, %d not modified (%.1f%% of renders avoided) in %d ms%n",
+                revalidating[0], revalidating[1], revalidating[0] - revalidating[1],
+                100.0 * (revalidating[0] - revalidating[1]) / revalidating[0], revalidating[2] / 1_000_000);
+        System.out.printf("[no etag] %d page views: %d rendered in %d ms%n", plain[0], plain[1],
+                plain[2] / 1_000_000);
+    }
+
+    /**
+     * Replay a stream of requests
+     *
+     * @param revalidate - whether browsers send the ETags they have cached
+     * @return page views, pages rendered and elapsed nanoseconds
+     */
+    private long[] replay(List<Browser> browsers, Random random, boolean revalidate, int requests)
+            throws Exception {
+        long views = 0;
+        long renders = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            Browser browser = browsers.get(random.nextInt(browsers.size()));
+            int action = random.nextInt(100);
+            Map<String, Object> flash = Map.of();
+            if (action < 10) {
+                // Add a transaction, then follow the redirect back to the account
+                MvcResult result = mockMvc.perform(post("/add-transaction")
+                        .session(browser.session)
+                        .with(user(browser.username))
+                        .with(csrf())
+                        .param("name", "Coffee")
+                        .param("toFrom", "Cafe")
+                        .param("amountInDollars", "3")
+                        .param("type", "expense")
+                        .param("accountId", String.valueOf(browser.currentAccountId)))
+                        .andReturn();
+                flash = result.getFlashMap();
+            } else if (action < 25) {
+                // Switch to another account
+                browser.currentAccountId = browser.accountIds.get(random.nextInt(browser.accountIds.size()));
+            }
+            // Otherwise just refresh
+
+            MockHttpServletRequestBuilder request = get("/account/" + browser.currentAccountId)
+                    .session(browser.session)
+                    .with(user(browser.username))
+                    .flashAttrs(flash);
+            String cached = browser.eTags.get(browser.currentAccountId);
+            if (revalidate && cached != null) {
+                request.header(HttpHeaders.IF_NONE_MATCH, cached);
+            }
+            MvcResult result = mockMvc.perform(request).andReturn();
+            views++;
+            if (result.getResponse().getStatus() == 200) {
+                renders++;
+                String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+                if (eTag != null) {
+                    browser.eTags.put(browser.currentAccountId, eTag);
+                }
+            }
+        }
+        return new long[] { views, renders, System.nanoTime() - start };
+    }
+}
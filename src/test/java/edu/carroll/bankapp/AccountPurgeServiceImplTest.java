@@ -0,0 +1,82 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.AccountPurgeService;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Transactional
+@SpringBootTest
+public class AccountPurgeServiceImplTest {
+    @Autowired
+    private AccountPurgeService accountPurgeService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    public static final String JOHN_NAME = "John Doe";
+    public static final String JOHN_EMAIL = "john@example.com";
+    public static final String JOHN_USERNAME = "johndoe";
+    public static final String JOHN_PASSWORD = "password123";
+
+    @Test
+    public void testDeletedAccountIsHidden() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 100, john).getResult();
+        Transaction transaction = transactionService.createTransaction("Groceries", (long) -50, "Store", checking)
+                .getResult();
+
+        // Delete checking
+        assertTrue(accountService.deleteAccount(john, checking).getResult());
+
+        // Checking shouldn't show up anymore, even before it's purged
+        assertEquals(1, accountService.getUserAccounts(john).size());
+        assertEquals(savings, accountService.getUserAccounts(john).get(0));
+        assertNull(accountService.getUserAccount(john, checking.getId()));
+        assertNull(transactionService.getUserTransaction(john, transaction.getId()));
+
+        // The name should be free to use again
+        assertNotNull(accountService.createAccount("Checking", (long) 0, john).getResult());
+    }
+
+    @Test
+    public void testPurgeDeletedAccount() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 100, john).getResult();
+        // Give checking more transactions than fit in one chunk
+        for (int i = 0; i < 20; i++) {
+            transactionService.createTransaction("Coffee " + i, (long) -5, "Cafe", checking);
+        }
+        Transaction kept = transactionService.createTransaction("Paycheck", (long) 500, "Work", savings)
+                .getResult();
+        long purgedBefore = accountPurgeService.getPurgedTransactionCount();
+
+        accountService.deleteAccount(john, checking);
+        assertEquals(1, accountPurgeService.purgeDeletedAccounts());
+
+        // Starting balance plus 20 coffees
+        assertEquals(purgedBefore + 21, accountPurgeService.getPurgedTransactionCount());
+        assertEquals(0, accountPurgeService.getPendingAccountCount());
+
+        // Nothing left to purge, and the other account is untouched
+        assertEquals(0, accountPurgeService.purgeDeletedAccounts());
+        assertNotNull(transactionService.getUserTransaction(john, kept.getId()));
+    }
+}
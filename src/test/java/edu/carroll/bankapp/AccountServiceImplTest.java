@@ -3,6 +3,7 @@ package edu.carroll.bankapp;
 import edu.carroll.bankapp.jpa.model.Account;
 import edu.carroll.bankapp.jpa.model.SiteUser;
 import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AccountSummary;
 import edu.carroll.bankapp.service.UserService;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.Test;
@@ -125,4 +126,28 @@ public class AccountServiceImplTest {
         assertNotNull(accountList);
         assertTrue(accountList.isEmpty());
     }
+
+    @Test
+    public void testGetUserAccountSummaries() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 36553, john).getResult();
+
+        // Summaries should match the accounts, in id order
+        List<AccountSummary> summaries = accountService.getUserAccountSummaries(john);
+        assertEquals(2, summaries.size());
+        assertEquals(checking.getId(), summaries.get(0).getId());
+        assertEquals("Checking", summaries.get(0).getName());
+        assertEquals(1940, summaries.get(0).getBalanceInDollars());
+        assertEquals(savings.getId(), summaries.get(1).getId());
+        assertEquals(36553, summaries.get(1).getBalanceInDollars());
+
+        // Deleted accounts drop out
+        accountService.deleteAccount(john, checking);
+        summaries = accountService.getUserAccountSummaries(john);
+        assertEquals(1, summaries.size());
+        assertEquals(savings.getId(), summaries.get(0).getId());
+
+        assertTrue(accountService.getUserAccountSummaries(null).isEmpty());
+    }
 }
@@ -0,0 +1,208 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.service.AccountSummary;
+import edu.carroll.bankapp.service.AccountSummaryCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountSummaryCacheTest {
+    private static final int USER_ID = 1;
+    private static final int ACCOUNTS = 4;
+
+    /**
+     * Stand-in for the accounts table, with committed balances by account id
+     */
+    private final Map<Integer, Long> database = new ConcurrentHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Supplier<List<AccountSummary>> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            List<AccountSummary> summaries = new ArrayList<>();
+            for (int id = 1; id <= ACCOUNTS; id++) {
+                Long balance = database.get(id);
+                if (balance != null) {
+                    summaries.add(new AccountSummary(id, "Account " + id, balance, 0));
+                }
+                // Give writers a chance to sneak in mid-load
+                Thread.yield();
+            }
+            return summaries;
+        };
+    }
+
+    private void assertMatchesDatabase(List<AccountSummary> summaries) {
+        assertEquals(database.size(), summaries.size());
+        for (AccountSummary summary : summaries) {
+            assertEquals(database.get(summary.getId()), summary.getBalanceInCents(),
+                    "Wrong balance for account " + summary.getId());
+        }
+    }
+
+    @Test
+    public void testLoadedOnce() {
+        AccountSummaryCache cache = new AccountSummaryCache(100);
+        database.put(1, 500L);
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testCommittedUpdateApplied() {
+        AccountSummaryCache cache = new AccountSummaryCache(100);
+        database.put(1, 500L);
+        cache.getAccounts(USER_ID, loader());
+
+        AccountSummaryCache.PendingUpdate update = cache.begin(USER_ID);
+        update.adjustBalance(1, 250).putAccount(new AccountSummary(2, "Account 2", 0, 0));
+        database.put(1, 750L);
+        database.put(2, 0L);
+        update.complete(true);
+
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testRolledBackUpdateDropped() {
+        AccountSummaryCache cache = new AccountSummaryCache(100);
+        database.put(1, 500L);
+        database.put(2, 100L);
+        cache.getAccounts(USER_ID, loader());
+
+        cache.begin(USER_ID).adjustBalance(1, 250).removeAccount(2).complete(false);
+
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLoadDuringUpdateNotCached() {
+        AccountSummaryCache cache = new AccountSummaryCache(100);
+        database.put(1, 500L);
+
+        AccountSummaryCache.PendingUpdate update = cache.begin(USER_ID).adjustBalance(1, 250);
+        // Loaded before the update committed, so it can't be kept
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+        database.put(1, 750L);
+        update.complete(true);
+
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testUpdateDuringLoadNotCached() {
+        AccountSummaryCache cache = new AccountSummaryCache(100);
+        database.put(1, 500L);
+
+        // Commit an update while the load is in progress, after the load has read
+        // the new balance. Applying the update on top would count it twice.
+        List<AccountSummary> loaded = cache.getAccounts(USER_ID, () -> {
+            AccountSummaryCache.PendingUpdate update = cache.begin(USER_ID).adjustBalance(1, 250);
+            database.put(1, 750L);
+            List<AccountSummary> summaries = loader().get();
+            update.complete(true);
+            return summaries;
+        });
+        assertMatchesDatabase(loaded);
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+    }
+
+    @Test
+    public void testIdleUsersEvicted() {
+        AccountSummaryCache cache = new AccountSummaryCache(2);
+        database.put(1, 500L);
+        for (int userId = 1; userId <= 10; userId++) {
+            cache.getAccounts(userId, loader());
+        }
+        // Only the most recent users can still be cached
+        loads.set(0);
+        for (int userId = 1; userId <= 10; userId++) {
+            cache.getAccounts(userId, loader());
+        }
+        assertTrue(loads.get() >= 8);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedFirst() {
+        AccountSummaryCache cache = new AccountSummaryCache(2);
+        database.put(1, 500L);
+        cache.getAccounts(1, loader());
+        cache.getAccounts(2, loader());
+        // User 1 is used again, so user 2 is the one to go
+        cache.getAccounts(1, loader());
+        cache.getAccounts(3, loader());
+
+        loads.set(0);
+        cache.getAccounts(1, loader());
+        cache.getAccounts(3, loader());
+        assertEquals(0, loads.get());
+        cache.getAccounts(2, loader());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testConcurrentUpdatesAndLoads() throws Exception {
+        AccountSummaryCache cache = new AccountSummaryCache(100);
+        for (int id = 1; id <= ACCOUNTS; id++) {
+            database.put(id, 0L);
+        }
+
+        int threads = 8;
+        int operations = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    int choice = random.nextInt(10);
+                    if (choice < 5) {
+                        // A balance change that commits or rolls back
+                        int accountId = random.nextInt(ACCOUNTS) + 1;
+                        long delta = random.nextLong(-1000, 1000);
+                        boolean commit = random.nextInt(4) != 0;
+                        AccountSummaryCache.PendingUpdate update = cache.begin(USER_ID).adjustBalance(accountId,
+                                delta);
+                        Thread.yield();
+                        if (commit) {
+                            database.merge(accountId, delta, Long::sum);
+                        }
+                        update.complete(commit);
+                    } else if (choice < 9) {
+                        cache.getAccounts(USER_ID, loader());
+                    } else {
+                        cache.evict(USER_ID);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        // Whatever ended up cached has to agree with the database
+        assertMatchesDatabase(cache.getAccounts(USER_ID, loader()));
+    }
+}
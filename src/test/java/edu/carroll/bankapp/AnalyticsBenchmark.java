@@ -0,0 +1,178 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionAnalytics;
+import edu.carroll.bankapp.service.TransactionColumns;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures reports from the in-memory columns against working them out from
+ * Transaction objects, and how much memory the columns take a million rows
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:analytics-bench", "bankapp.outbox.enabled=false" })
+public class AnalyticsBenchmark {
+    private static final int ACCOUNTS = 5;
+    private static final int PAYEES = 2_000;
+    private static final int TRANSACTIONS = 100_000;
+    private static final int INSERT_BATCH = 10_000;
+    private static final int YEARS = 5;
+    private static final int REPORTS = 20;
+    private static final int COLUMN_ROWS = 1_000_000;
+
+    @Autowired
+    private TransactionAnalytics analytics;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void benchmarkReports() {
+        SiteUser user = userService.createUser("Bench Mark", "analytics@example.com", "bench_analytics",
+                "password123").getResult();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(accountService.createAccount("Account " + i, (long) 0, user).getResult());
+        }
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        for (int done = 0; done < TRANSACTIONS; done += INSERT_BATCH) {
+            List<Transaction> transactions = new ArrayList<>();
+            for (int i = 0; i < INSERT_BATCH; i++) {
+                Transaction transaction = new Transaction();
+                transaction.setName("Benchmark");
+                transaction.setAmountInCents(random.nextInt(10) == 0 ? 1 + random.nextInt(500_000)
+                        : -(1 + random.nextInt(20_000)));
+                transaction.setToFrom("Payee " + (int) (PAYEES * Math.pow(random.nextDouble(), 3)));
+                transaction.setAccount(accounts.get(random.nextInt(ACCOUNTS)));
+                LocalDate day = today.minusDays(random.nextInt(365 * YEARS));
+                transaction.setDate(Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+                transactions.add(transaction);
+            }
+            transactionRepo.saveAll(transactions);
+        }
+        YearMonth to = YearMonth.now();
+        YearMonth from = to.minusYears(YEARS);
+
+        // Monthly totals from Transaction objects, the way a report would without the columns
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        long[] entityIncome = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Transaction> transactions = transactionRepo.findAll();
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.printf("[analytics] %d Transaction objects: about %.0f MB of heap a million%n",
+                    transactions.size(), (heapAfter - heapBefore) / 1e6 * 1_000_000 / transactions.size());
+            Map<YearMonth, Long> income = new HashMap<>();
+            for (Transaction transaction : transactions) {
+                if (transaction.getTransferPairId() == null && transaction.getAmountInCents() > 0) {
+                    YearMonth month = YearMonth.from(LocalDate.ofInstant(transaction.getDate().toInstant(),
+                            ZoneId.systemDefault()));
+                    income.merge(month, transaction.getAmountInCents(), Long::sum);
+                }
+            }
+            return new long[] { income.getOrDefault(to, 0L) };
+        });
+        System.out.printf("[analytics] monthly totals from Transaction objects: %.1f ms%n",
+                (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        List<TransactionColumns.MonthlyTotal> months = analytics.monthlyTotals(user.getId(), null, from, to);
+        System.out.printf("[analytics] first report, loading the columns: %.1f ms%n",
+                (System.nanoTime() - start) / 1e6);
+        assertEquals(entityIncome[0], months.get(months.size() - 1).getIncomeInCents());
+        System.out.printf("[analytics] columns: %d bytes for %d rows, %.1f MB a million%n", analytics.getBytes(),
+                TRANSACTIONS + ACCOUNTS, analytics.getBytes() / 1e6 * 1_000_000 / (TRANSACTIONS + ACCOUNTS));
+
+        start = System.nanoTime();
+        for (int i = 0; i < REPORTS; i++) {
+            analytics.monthlyTotals(user.getId(), null, from, to);
+        }
+        System.out.printf("[analytics] monthly totals from the columns: %.2f ms%n",
+                (System.nanoTime() - start) / 1e6 / REPORTS);
+        start = System.nanoTime();
+        for (int i = 0; i < REPORTS; i++) {
+            analytics.payeeTotals(user.getId(), null, today.minusYears(1), today, 10);
+        }
+        System.out.printf("[analytics] top payees from the columns: %.2f ms%n",
+                (System.nanoTime() - start) / 1e6 / REPORTS);
+        start = System.nanoTime();
+        for (int i = 0; i < REPORTS; i++) {
+            analytics.balanceCurve(user.getId(), null, today.minusYears(YEARS), today);
+        }
+        System.out.printf("[analytics] %d year balance curve from the columns: %.2f ms%n", YEARS,
+                (System.nanoTime() - start) / 1e6 / REPORTS);
+
+        benchmarkColumns(random);
+    }
+
+    /**
+     * A million rows straight into columns, summed on one thread and on
+     * several
+     */
+    private void benchmarkColumns(Random random) {
+        TransactionColumns columns = new TransactionColumns();
+        int today = (int) LocalDate.now().toEpochDay();
+        for (int i = 1; i <= COLUMN_ROWS; i++) {
+            columns.append(i, random.nextInt(ACCOUNTS), today - random.nextInt(365 * YEARS),
+                    -(1 + random.nextInt(20_000)), "Payee " + (int) (PAYEES * Math.pow(random.nextDouble(), 3)),
+                    false);
+        }
+        columns.compact();
+        System.out.printf("[analytics] %d rows: %.1f MB%n", COLUMN_ROWS, columns.getBytes() / 1e6);
+
+        YearMonth to = YearMonth.now();
+        YearMonth from = to.minusYears(YEARS);
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int poolSize : new int[] { 1, threads }) {
+            ForkJoinPool pool = new ForkJoinPool(poolSize);
+            try {
+                // Warm up
+                for (int i = 0; i < REPORTS; i++) {
+                    columns.monthlyTotals(null, from, to, pool, 65_536);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < REPORTS; i++) {
+                    columns.monthlyTotals(null, from, to, pool, 65_536);
+                }
+                System.out.printf("[analytics] monthly totals over %d rows on %d threads: %.2f ms%n", COLUMN_ROWS,
+                        poolSize, (System.nanoTime() - start) / 1e6 / REPORTS);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
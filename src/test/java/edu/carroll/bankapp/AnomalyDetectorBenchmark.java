@@ -0,0 +1,160 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountEventPublisher;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AnomalyDetector;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures what checking for unusual transactions costs next to the insert it
+ * happens in: the time inserting transactions takes, against the time the
+ * detector takes for the same number of transactions on its own
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:anomaly-bench", "bankapp.outbox.enabled=false" })
+public class AnomalyDetectorBenchmark {
+    private static final int ACCOUNTS = 50;
+    private static final int WARMUP_ROWS = 2_000;
+    private static final int MEASURED_ROWS = 20_000;
+    private static final int ROWS_PER_COMMIT = 500;
+    private static final int OBSERVATIONS = 2_000_000;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountEventPublisher accountEvents;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * An amount in cents, mostly everyday purchases with the odd large one
+     */
+    private static long amount(Random random) {
+        return -Math.max(1, Math.round(2000 * Math.exp(random.nextGaussian())));
+    }
+
+    @Test
+    public void benchmarkInsertPath() throws Exception {
+        SiteUser user = userService.createUser("Bench Mark", "anomaly@example.com", "bench_anomaly", "password123")
+                .getResult();
+        List<Integer> accountIds = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountIds.add(accountService.createAccount("Account " + i, (long) 0, user).getResult().getId());
+        }
+        Random random = new Random(42);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+        insert(template, user, accountIds, random, WARMUP_ROWS);
+        long start = System.nanoTime();
+        insert(template, user, accountIds, random, MEASURED_ROWS);
+        long inserting = System.nanoTime() - start;
+        System.out.printf("[anomaly] inserting: %.1f us a transaction%n", inserting / 1e3 / MEASURED_ROWS);
+
+        // The detector on its own, warmed up with the same accounts
+        AnomalyDetector detector = new AnomalyDetector(transactionRepo, accountEvents, 0.99, 3.0, 20, 100_000);
+        // Statistics are started in the background, so let that finish first
+        template.executeWithoutResult(status -> {
+            for (int accountId : accountIds) {
+                detector.observe(accountService.getUserAccount(user, accountId), amount(random));
+            }
+        });
+        for (int accountId : accountIds) {
+            assertTrue(detector.awaitStarted(accountId, 60_000));
+        }
+        long[] flagged = new long[1];
+        long checking = template.execute(status -> {
+            List<Account> accounts = new ArrayList<>();
+            for (int accountId : accountIds) {
+                accounts.add(accountService.getUserAccount(user, accountId));
+            }
+            for (int i = 0; i < OBSERVATIONS / 10; i++) {
+                detector.observe(accounts.get(i % ACCOUNTS), amount(random));
+            }
+            // Everyday amounts, so announcing what's flagged doesn't get timed
+            long[] amounts = new long[OBSERVATIONS];
+            for (int i = 0; i < OBSERVATIONS; i++) {
+                amounts[i] = -Math.round(2000 * Math.exp(Math.max(-2, Math.min(2, random.nextGaussian()))));
+            }
+            long began = System.nanoTime();
+            for (int i = 0; i < OBSERVATIONS; i++) {
+                if (detector.observe(accounts.get(i % ACCOUNTS), amounts[i]) != null) {
+                    flagged[0]++;
+                }
+            }
+            return System.nanoTime() - began;
+        });
+        detector.shutdown();
+        double perCheck = (double) checking / OBSERVATIONS;
+        System.out.printf("[anomaly] checking: %.0f ns a transaction, %d of %d flagged%n", perCheck, flagged[0],
+                OBSERVATIONS);
+        System.out.printf("[anomaly] checking is %.3f%% of the insert path%n",
+                100 * perCheck / (inserting / (double) MEASURED_ROWS));
+
+        // The first transaction each account sees, which starts its statistics
+        // from its history in the background instead of on the insert path
+        AnomalyDetector cold = new AnomalyDetector(transactionRepo, accountEvents, 0.99, 3.0, 20, 100_000);
+        long starting = template.execute(status -> {
+            List<Account> accounts = new ArrayList<>();
+            for (int accountId : accountIds) {
+                accounts.add(accountService.getUserAccount(user, accountId));
+            }
+            long began = System.nanoTime();
+            for (Account account : accounts) {
+                cold.observe(account, amount(random));
+            }
+            return System.nanoTime() - began;
+        });
+        System.out.printf("[anomaly] first check in an account: %.0f ns%n", (double) starting / ACCOUNTS);
+        for (int accountId : accountIds) {
+            assertTrue(cold.awaitStarted(accountId, 60_000));
+        }
+        cold.shutdown();
+    }
+
+    /**
+     * Insert transactions spread over the accounts, committing every
+     * ROWS_PER_COMMIT
+     */
+    private void insert(TransactionTemplate template, SiteUser user, List<Integer> accountIds, Random random,
+            int rows) {
+        for (int done = 0; done < rows; done += ROWS_PER_COMMIT) {
+            template.executeWithoutResult(status -> {
+                List<Account> accounts = new ArrayList<>();
+                for (int accountId : accountIds) {
+                    accounts.add(accountService.getUserAccount(user, accountId));
+                }
+                for (int i = 0; i < ROWS_PER_COMMIT; i++) {
+                    transactionService.createTransaction("Purchase", Math.min(-1, amount(random) / 100), "Benchmark",
+                            accounts.get(i % ACCOUNTS));
+                }
+            });
+        }
+    }
+}
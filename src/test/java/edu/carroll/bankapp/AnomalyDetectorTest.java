@@ -0,0 +1,176 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.OutboxEventRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountEvent;
+import edu.carroll.bankapp.service.AccountEventPublisher;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AnomalyDetector;
+import edu.carroll.bankapp.service.ServiceResponse;
+import edu.carroll.bankapp.service.StreamingQuantile;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:anomaly-detector", "bankapp.outbox.enabled=false" })
+public class AnomalyDetectorTest {
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private OutboxEventRepository outboxRepo;
+
+    @Autowired
+    private AccountEventPublisher accountEvents;
+
+    @Autowired
+    private AnomalyDetector anomalyDetector;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private Account account;
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since transactions are only added to the
+        // statistics once they're committed
+        userCount++;
+        user = userService.createUser("Unusual User", "unusual" + userCount + "@example.com",
+                "unusual_user" + userCount, "password123").getResult();
+        account = accountService.createAccount("Checking", (long) 5000, user).getResult();
+    }
+
+    private ServiceResponse<Transaction> create(String name, long amountInDollars, String toFrom) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService.createTransaction(
+                name, amountInDollars, toFrom, accountService.getUserAccount(user, account.getId())));
+    }
+
+    /**
+     * Add everyday purchases of $10 to $30, and wait for the account's
+     * statistics to be started
+     */
+    private void addPurchases(int count) throws InterruptedException {
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            create("Lunch", -(10 + random.nextInt(21)), "Cafe");
+        }
+        assertTrue(anomalyDetector.awaitStarted(account.getId(), 10_000));
+    }
+
+    private long unusualEvents() {
+        return outboxRepo.findAll().stream()
+                .filter(event -> event.getAccountId() == account.getId()
+                        && event.getEventType().equals(AccountEvent.Type.UNUSUAL_TRANSACTION.name()))
+                .count();
+    }
+
+    @Test
+    public void testLargeTransactionIsFlagged() throws Exception {
+        addPurchases(40);
+        ServiceResponse<Transaction> response = create("Television", -2000, "Store");
+        // Still created, with a warning
+        assertNotNull(response.getResult());
+        assertTrue(response.getMessage().contains("$2,000.00 is much more than usual for Checking"),
+                response.getMessage());
+        assertEquals(1, unusualEvents());
+
+        // An everyday purchase is fine
+        assertEquals("Transaction created successfully",
+                create("Lunch", -15, "Cafe").getMessage());
+        assertEquals(1, unusualEvents());
+    }
+
+    @Test
+    public void testNothingIsFlaggedWhileWarmingUp() throws Exception {
+        addPurchases(10);
+        assertEquals("Transaction created successfully",
+                create("Television", -2000, "Store").getMessage());
+        assertEquals(0, unusualEvents());
+    }
+
+    @Test
+    public void testRolledBackTransactionsAreNotCounted() throws Exception {
+        addPurchases(15);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (int i = 0; i < 10; i++) {
+                transactionService.createTransaction("Lunch", -20, "Cafe",
+                        accountService.getUserAccount(user, account.getId()));
+            }
+            status.setRollbackOnly();
+        });
+        // Still warming up
+        assertEquals("Transaction created successfully", create("Television", -2000, "Store").getMessage());
+        assertEquals(0, unusualEvents());
+    }
+
+    @Test
+    public void testMoneyInIsComparedSeparately() throws Exception {
+        addPurchases(40);
+        // A paycheck is much larger than lunch, but it's the first one
+        assertEquals("Transaction created successfully",
+                create("Paycheck", 2000, "Employer").getMessage());
+        assertEquals(0, unusualEvents());
+    }
+
+    @Test
+    public void testStatisticsStartFromHistory() throws Exception {
+        addPurchases(40);
+        // As if the app had restarted. The first transaction seen starts the
+        // statistics in the background, without being checked.
+        AnomalyDetector restarted = new AnomalyDetector(transactionRepo, accountEvents, 0.99, 3.0, 20, 100);
+        assertNull(restarted.observe(account, -200000));
+        assertTrue(restarted.awaitStarted(account.getId(), 10_000));
+        assertNull(restarted.observe(account, -2000));
+        AnomalyDetector.Anomaly anomaly = restarted.observe(account, -200000);
+        assertNotNull(anomaly);
+        assertTrue(anomaly.getUsualMaxInCents() >= 2500 && anomaly.getUsualMaxInCents() <= 3000);
+        assertTrue(anomaly.getTypicalInCents() >= 1000 && anomaly.getTypicalInCents() <= 3000);
+        assertEquals(1, restarted.getAccountCount());
+    }
+
+    @Test
+    public void testQuantileEstimate() {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 1; i <= 10000; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(42));
+        StreamingQuantile p99 = new StreamingQuantile(0.99);
+        StreamingQuantile median = new StreamingQuantile(0.5);
+        for (int value : values) {
+            p99.add(value);
+            median.add(value);
+        }
+        assertEquals(9900, p99.getEstimate(), 100);
+        assertEquals(5000, median.getEstimate(), 100);
+        assertEquals(10000, p99.getCount());
+    }
+}
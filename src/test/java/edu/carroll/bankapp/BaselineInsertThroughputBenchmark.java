@@ -0,0 +1,22 @@
+package edu.carroll.bankapp;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Insert throughput as the app was set up before ids were configured:
+ * GenerationType.AUTO already fetched ids in blocks of 50, but there was no
+ * JDBC batching
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:baseline-bench",
+        "spring.jpa.properties.bankapp.id.allocation-size=50",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=0",
+        "spring.jpa.properties.hibernate.order_inserts=false",
+        "spring.jpa.properties.hibernate.order_updates=false"
+})
+public class BaselineInsertThroughputBenchmark extends InsertThroughputBenchmark {
+    @Override
+    protected String label() {
+        return "baseline";
+    }
+}
@@ -0,0 +1,19 @@
+package edu.carroll.bankapp;
+
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Account page rendering with the transaction table cache on
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cached-table-bench",
+        "bankapp.fragment-cache.max-bytes=16777216"
+})
+@AutoConfigureMockMvc
+public class CachedTransactionTableBenchmark extends TransactionTableRenderBenchmark {
+    @Override
+    protected String label() {
+        return "cached";
+    }
+}
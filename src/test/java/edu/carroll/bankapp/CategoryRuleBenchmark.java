@@ -0,0 +1,137 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.CategoryRuleMatcher;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures categorization rules: the compiled automaton against checking every
+ * rule in turn for thousands of rules and millions of rows, then applying the
+ * rules to a user's existing transactions through the database
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:rule-bench", "bankapp.outbox.enabled=false" })
+public class CategoryRuleBenchmark {
+    private static final int RULES = 5_000;
+    private static final int ROWS = 2_000_000;
+    // Checking rules one by one is too slow to run over every row
+    private static final int NAIVE_ROWS = 20_000;
+    private static final int STORED_RULES = 1_000;
+    private static final int STORED_TRANSACTIONS = 100_000;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    private static String merchant(Random random) {
+        return "merchant " + Integer.toString(random.nextInt(1 << 30), 36);
+    }
+
+    @Test
+    public void benchmarkMatching() {
+        Random random = new Random(42);
+        List<CategoryRule> rules = new ArrayList<>();
+        for (int i = 0; i < RULES; i++) {
+            rules.add(new CategoryRule(1, i % 4 == 0 ? CategoryRule.Field.NAME : CategoryRule.Field.PAYEE,
+                    merchant(random), new Category(1, "Category " + i % 50)));
+        }
+        // Rows that look like bank imports, about a third of them matching a rule
+        String[] names = new String[1_000];
+        String[] payees = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Card purchase " + i;
+            payees[i] = (random.nextInt(3) == 0 ? rules.get(random.nextInt(RULES)).getPattern().toUpperCase()
+                    : "SQ *SHOP " + random.nextInt(100_000)) + " #" + i;
+        }
+
+        long start = System.nanoTime();
+        CategoryRuleMatcher matcher = new CategoryRuleMatcher(rules);
+        System.out.printf("[rules] compiling %d rules took %.1f ms, %d states%n", RULES,
+                (System.nanoTime() - start) / 1e6, matcher.getStateCount());
+
+        start = System.nanoTime();
+        long matched = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (matcher.match(names[i % names.length], payees[i % payees.length]) != null) {
+                matched++;
+            }
+        }
+        long automaton = System.nanoTime() - start;
+        assertTrue(matched > 0);
+        System.out.printf("[rules] automaton: %d rows in %.1f ms, %.0f ns a row, %d matched%n", ROWS,
+                automaton / 1e6, (double) automaton / ROWS, matched);
+
+        start = System.nanoTime();
+        for (int i = 0; i < NAIVE_ROWS; i++) {
+            String name = names[i % names.length].toLowerCase();
+            String payee = payees[i % payees.length].toLowerCase();
+            for (CategoryRule rule : rules) {
+                if ((rule.getField() == CategoryRule.Field.NAME ? name : payee).contains(rule.getPattern())) {
+                    break;
+                }
+            }
+        }
+        long naive = System.nanoTime() - start;
+        System.out.printf("[rules] one rule at a time: %d rows in %.1f ms, %.0f ns a row%n", NAIVE_ROWS,
+                naive / 1e6, (double) naive / NAIVE_ROWS);
+    }
+
+    @Test
+    public void benchmarkApplyingToHistory() {
+        SiteUser user = userService.createUser("Bench Mark", "rules@example.com", "bench_rules", "password123")
+                .getResult();
+        Account account = accountService.createAccount("Checking", (long) 0, user).getResult();
+        Random random = new Random(42);
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < STORED_RULES; i++) {
+            String pattern = merchant(random);
+            patterns.add(pattern);
+            assertNotNull(transactionService.addCategoryRule(user, CategoryRule.Field.PAYEE, pattern,
+                    "Category " + i % 50).getResult());
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < STORED_TRANSACTIONS; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setName("Imported");
+            transaction.setAmountInCents(-100);
+            transaction.setToFrom(random.nextInt(3) == 0 ? patterns.get(random.nextInt(STORED_RULES)).toUpperCase()
+                    : "SQ *SHOP " + random.nextInt(100_000));
+            transaction.setAccount(account);
+            transaction.setDate(new Date());
+            transactions.add(transaction);
+        }
+        transactionRepo.saveAll(transactions);
+
+        long start = System.nanoTime();
+        long filed = transactionService.applyCategoryRules(user).getResult();
+        assertTrue(filed > 0);
+        System.out.printf("[rules] applying %d rules to %d transactions filed %d in %.1f ms%n", STORED_RULES,
+                STORED_TRANSACTIONS, filed, (System.nanoTime() - start) / 1e6);
+    }
+}
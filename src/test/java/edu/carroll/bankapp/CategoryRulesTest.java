@@ -0,0 +1,240 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.engine.EngineRecord;
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.CategoryRule;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.CategoryRuleMatcher;
+import edu.carroll.bankapp.service.CategoryRules;
+import edu.carroll.bankapp.service.JpaPostingProjection;
+import edu.carroll.bankapp.service.TransactionFilter;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers filing transactions with categorization rules. Compiled rules are
+ * only thrown away when a change commits, so these tests commit and use their
+ * own database.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:category-rules", "bankapp.outbox.enabled=false",
+        "bankapp.category-rules.chunk-size=7" })
+public class CategoryRulesTest {
+    @Autowired
+    private CategoryRules categoryRules;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JpaPostingProjection projections;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Rule User", "rules" + userCount + "@example.com", "rule_user" + userCount,
+                "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+    }
+
+    private CategoryRule addRule(CategoryRule.Field field, String pattern, String category) {
+        CategoryRule rule = transactionService.addCategoryRule(user, field, pattern, category).getResult();
+        assertNotNull(rule);
+        return rule;
+    }
+
+    private int create(String name, String toFrom) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .createTransaction(name, -10, toFrom, accountService.getUserAccount(user, accountId))
+                .getResult().getId());
+    }
+
+    /**
+     * The name of a transaction's category, loaded fresh from the database
+     */
+    private String categoryOf(int id) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Category category = transactionRepo.findById(id).get().getCategory();
+            return category == null ? null : category.getName();
+        });
+    }
+
+    /**
+     * The names of the account's transactions filed under the user's first
+     * category
+     */
+    private List<String> filedUnderFirstCategory() {
+        TransactionFilter filter = new TransactionFilter();
+        filter.setCategoryIds(List.of(transactionService.getUserCategories(user).get(0).getId()));
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            List<String> found = new ArrayList<>();
+            for (Transaction transaction : transactionService
+                    .findTransactions(user, accountService.getUserAccount(user, accountId), filter).getResult()) {
+                found.add(transaction.getName());
+            }
+            return found;
+        });
+    }
+
+    private static CategoryRule rule(CategoryRule.Field field, String pattern, String category) {
+        return new CategoryRule(1, field, pattern, new Category(1, category));
+    }
+
+    @Test
+    public void testMatcherPrefersTheLongestPattern() {
+        CategoryRuleMatcher matcher = new CategoryRuleMatcher(List.of(
+                rule(CategoryRule.Field.PAYEE, "costco", "Groceries"),
+                rule(CategoryRule.Field.PAYEE, "costco gas", "Fuel"),
+                rule(CategoryRule.Field.PAYEE, "gas", "Utilities"),
+                rule(CategoryRule.Field.NAME, "refund", "Refunds"),
+                rule(CategoryRule.Field.PAYEE, "GAS", "Other")));
+
+        assertEquals("Groceries", matcher.match("Purchase", "COSTCO WHOLESALE #123").getCategory().getName());
+        assertEquals("Fuel", matcher.match("Purchase", "Costco Gas 44").getCategory().getName());
+        // Overlapping patterns are all found, and ties go to the oldest rule
+        assertEquals("Utilities", matcher.match("Purchase", "City Gas Co").getCategory().getName());
+        // Rules only look at their own field
+        assertEquals("Refunds", matcher.match("Refund from store", "Somewhere").getCategory().getName());
+        assertNull(matcher.match("Costco", "Refund"));
+        assertNull(matcher.match(null, null));
+        assertNull(new CategoryRuleMatcher(new ArrayList<>()).match("Purchase", "Costco"));
+    }
+
+    @Test
+    public void testNewTransactionsAreFiled() {
+        addRule(CategoryRule.Field.PAYEE, "costco", "Groceries");
+        addRule(CategoryRule.Field.NAME, "rent", "Housing");
+
+        int groceries = create("Purchase", "COSTCO #42");
+        long compiles = categoryRules.getCompileCount();
+        int rent = create("March rent", "Landlord");
+        int other = create("Purchase", "Hardware Store");
+
+        assertEquals("Groceries", categoryOf(groceries));
+        assertEquals("Housing", categoryOf(rent));
+        assertNull(categoryOf(other));
+        // The rules were only compiled once
+        assertEquals(compiles, categoryRules.getCompileCount());
+
+        // They can be filtered on right away
+        TransactionFilter filter = new TransactionFilter();
+        filter.setCategoryIds(List.of(transactionService.getUserCategories(user).get(0).getId()));
+        List<Integer> ids = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Integer> found = new ArrayList<>();
+            for (Transaction transaction : transactionService
+                    .findTransactions(user, accountService.getUserAccount(user, accountId), filter).getResult()) {
+                found.add(transaction.getId());
+            }
+            return found;
+        });
+        assertEquals(List.of(groceries), ids);
+    }
+
+    @Test
+    public void testProjectedPostingsAreFiled() {
+        addRule(CategoryRule.Field.PAYEE, "costco", "Groceries");
+
+        // Postings from the engine or the write queue are filed as they're written
+        long now = System.currentTimeMillis();
+        projections.forLog("category-rules-test-" + userCount).project(List.of(
+                new EngineRecord(1, EngineRecord.Type.POST, accountId, -1000, now, "Purchase", "COSTCO #7"),
+                new EngineRecord(2, EngineRecord.Type.POST, accountId, -500, now, "Nails", "Hardware Store")));
+
+        assertEquals(List.of("Purchase"), filedUnderFirstCategory());
+    }
+
+    @Test
+    public void testChangedRulesAreRecompiled() {
+        long version = transactionService.getCategoryRulesVersion(user);
+        CategoryRule rule = addRule(CategoryRule.Field.PAYEE, "cafe", "Dining");
+        assertEquals("Dining", categoryOf(create("Coffee", "Corner Cafe")));
+        // Pages listing the rules are out of date
+        long added = transactionService.getCategoryRulesVersion(user);
+        assertTrue(added > version);
+
+        assertTrue(transactionService.deleteCategoryRule(user, rule.getId()).getResult());
+        assertNull(categoryOf(create("Coffee", "Corner Cafe")));
+        assertTrue(transactionService.getCategoryRulesVersion(user) > added);
+
+        addRule(CategoryRule.Field.PAYEE, "corner", "Treats");
+        assertEquals("Treats", categoryOf(create("Coffee", "Corner Cafe")));
+        assertEquals(1, transactionService.getUserCategoryRules(user).size());
+    }
+
+    @Test
+    public void testRulesApplyToHistory() {
+        // Transactions from before the rules
+        List<Integer> market = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            market.add(create("Purchase " + i, "Farmers Market"));
+        }
+        int untouched = create("Purchase", "Hardware Store");
+        int chosen = create("Purchase", "Farmers Market");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .categorizeTransaction(user, transactionService.getUserTransaction(user, chosen), "Gifts", List.of()));
+
+        addRule(CategoryRule.Field.PAYEE, "market", "Groceries");
+        assertEquals(20L, transactionService.applyCategoryRules(user).getResult());
+
+        for (int id : market) {
+            assertEquals("Groceries", categoryOf(id));
+        }
+        assertNull(categoryOf(untouched));
+        // What the user chose by hand stays
+        assertEquals("Gifts", categoryOf(chosen));
+        // Nothing is left to file
+        assertEquals(0L, transactionService.applyCategoryRules(user).getResult());
+    }
+
+    @Test
+    public void testOtherUsersRulesAreRefused() {
+        CategoryRule rule = addRule(CategoryRule.Field.PAYEE, "costco", "Groceries");
+        SiteUser other = userService.createUser("Other User", "other-rules" + userCount + "@example.com",
+                "other_rules" + userCount, "password123").getResult();
+
+        assertFalse(transactionService.deleteCategoryRule(other, rule.getId()).getResult());
+        assertEquals(1, transactionService.getUserCategoryRules(user).size());
+        assertTrue(transactionService.getUserCategoryRules(other).isEmpty());
+    }
+
+    @Test
+    public void testInvalidRulesAreRejected() {
+        assertNull(transactionService.addCategoryRule(user, CategoryRule.Field.PAYEE, " ", "Groceries").getResult());
+        assertNull(transactionService.addCategoryRule(user, CategoryRule.Field.PAYEE, "costco", "").getResult());
+        assertNull(transactionService.addCategoryRule(user, null, "costco", "Groceries").getResult());
+        assertNull(transactionService.addCategoryRule(user, CategoryRule.Field.NAME, "x".repeat(256), "Groceries")
+                .getResult());
+        assertTrue(transactionService.getUserCategoryRules(user).isEmpty());
+    }
+}
@@ -0,0 +1,138 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.engine.LedgerEngine;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.ServiceResponse;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares posting transactions through JPA, one database transaction each,
+ * with posting them through the in-memory engine, at a few thread counts. Both
+ * only return once the posting is durable.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:engine-bench", "bankapp.engine.enabled=true",
+        "bankapp.engine.snapshot-interval-ms=0" })
+public class EngineThroughputBenchmark {
+    private static final int POSTS_PER_THREAD = 2_000;
+    private static final int[] THREAD_COUNTS = { 1, 4, 16 };
+
+    @Autowired
+    private LedgerEngine engine;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void engineDirectory(DynamicPropertyRegistry registry) throws IOException {
+        // Start from an empty log every run, as the database is new every run
+        String dir = Files.createTempDirectory("engine-bench").toString();
+        registry.add("bankapp.engine.dir", () -> dir);
+    }
+
+    /**
+     * Have each of the given number of threads post POSTS_PER_THREAD times to
+     * its own account
+     *
+     * @param accountIds - an account for each thread
+     * @param poster     - posts once to the given account
+     * @return postings per second
+     */
+    private static double run(List<Integer> accountIds, IntConsumer poster) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(accountIds.size());
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int accountId : accountIds) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < POSTS_PER_THREAD; i++) {
+                    poster.accept(accountId);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double perSecond = accountIds.size() * POSTS_PER_THREAD / ((System.nanoTime() - start) / 1e9);
+        executor.shutdown();
+        return perSecond;
+    }
+
+    private List<Integer> createAccounts(SiteUser user, String label, int count) {
+        List<Integer> accountIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accountIds.add(accountService.createAccount(label + " " + i, (long) 0, user).getResult().getId());
+        }
+        return accountIds;
+    }
+
+    @Test
+    public void benchmarkPosting() throws Exception {
+        SiteUser user = userService.createUser("Bench Mark", "engine@example.com", "bench_engine", "password123")
+                .getResult();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        IntConsumer jpa = accountId -> template.executeWithoutResult(status -> transactionService
+                .createTransaction("Benchmark", -1, "Benchmark", accountService.getUserAccount(user, accountId)));
+        IntConsumer inMemory = accountId -> engine.post(accountId, -100, "Benchmark", "Benchmark");
+
+        // Warm up
+        run(createAccounts(user, "Warm up JPA", 2), jpa);
+        run(createAccounts(user, "Warm up engine", 2), inMemory);
+
+        for (int threads : THREAD_COUNTS) {
+            double jpaRate = run(createAccounts(user, "JPA " + threads, threads), jpa);
+            long forcesBefore = engine.getForceCount();
+            double engineRate = run(createAccounts(user, "Engine " + threads, threads), inMemory);
+            long forces = engine.getForceCount() - forcesBefore;
+            System.out.printf("[engine] %d threads: %.0f postings/s through JPA, %.0f postings/s through the engine "
+                    + "(%.1f postings per log force)%n", threads, jpaRate, engineRate,
+                    (double) threads * POSTS_PER_THREAD / forces);
+        }
+
+        // The database catches up with the engine in the background
+        long start = System.nanoTime();
+        assertTrue(engine.awaitProjected(engine.getLastSequence(), 60_000));
+        System.out.printf("[engine] projection caught up %d ms after the last posting%n",
+                (System.nanoTime() - start) / 1_000_000);
+        int accountId = createAccounts(user, "Check", 1).get(0);
+        engine.post(accountId, 250, "Check", "Benchmark");
+        // Posting through the service is pending, not a failure
+        ServiceResponse<Transaction> posted = template.execute(status -> transactionService
+                .createTransaction("Check", 1, "Benchmark", accountService.getUserAccount(user, accountId)));
+        assertNull(posted.getResult());
+        assertTrue(posted.isPending());
+        assertTrue(engine.awaitProjected(engine.getLastSequence(), 60_000));
+        assertEquals(engine.getBalanceInCents(accountId),
+                accountService.getUserAccount(user, accountId).getBalanceInCents());
+    }
+}
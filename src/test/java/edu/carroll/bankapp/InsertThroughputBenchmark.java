@@ -0,0 +1,72 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Measures how many transactions per second can be inserted. Subclasses run
+ * this with different id generation settings so the results can be compared.
+ */
+@Tag("benchmark")
+public abstract class InsertThroughputBenchmark {
+    private static final int WARMUP_ROWS = 2_000;
+    private static final int MEASURED_ROWS = 20_000;
+    private static final int ROWS_PER_COMMIT = 500;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Label for the settings being measured
+     *
+     * @return label printed with the results
+     */
+    protected abstract String label();
+
+    @Test
+    public void benchmarkInserts() {
+        SiteUser user = userService.createUser("Bench Mark", label() + "@example.com", "bench_" + label(),
+                "password123").getResult();
+        int accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+
+        insert(user, accountId, WARMUP_ROWS);
+        long start = System.nanoTime();
+        insert(user, accountId, MEASURED_ROWS);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("[%s] inserted %d transactions in %d ms (%.0f rows/s)%n", label(), MEASURED_ROWS,
+                elapsed / 1_000_000, MEASURED_ROWS / (elapsed / 1e9));
+    }
+
+    /**
+     * Insert rows into the given account, committing every ROWS_PER_COMMIT rows
+     */
+    private void insert(SiteUser user, int accountId, int rows) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        for (int done = 0; done < rows; done += ROWS_PER_COMMIT) {
+            template.executeWithoutResult(status -> {
+                Account account = accountService.getUserAccount(user, accountId);
+                for (int i = 0; i < ROWS_PER_COMMIT; i++) {
+                    transactionService.createTransaction("Row " + i, -1, "Benchmark", account);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the write paths keep batching their statements. These tests
+ * commit, so they use their own database. The outbox dispatcher is off so its
+ * queries don't get counted.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:batching", "bankapp.outbox.enabled=false" })
+@Import(JdbcStatementCounter.Config.class)
+public class JdbcBatchingTest {
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int checkingId;
+    private int savingsId;
+
+    @BeforeEach
+    public void createAccounts() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Batch User", "batch" + userCount + "@example.com", "batch_user" + userCount,
+                "password123").getResult();
+        checkingId = accountService.createAccount("Checking", (long) 1000, user).getResult().getId();
+        savingsId = accountService.createAccount("Savings", (long) 1000, user).getResult().getId();
+    }
+
+    /**
+     * Run the given operation in a database transaction with the accounts already
+     * loaded, and count the round trips it makes (including the commit's flush)
+     *
+     * @param operation - what to measure, given the checking and savings accounts
+     * @return round trips made
+     */
+    private long countRoundTrips(Consumer<Account[]> operation) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account[] accounts = { accountService.getUserAccount(user, checkingId),
+                    accountService.getUserAccount(user, savingsId) };
+            JdbcStatementCounter.reset();
+            operation.accept(accounts);
+        });
+        return JdbcStatementCounter.getRoundTrips();
+    }
+
+    @Test
+    public void testCreateTransferIsBatched() {
+        // Warm up so ids have already been allocated
+        countRoundTrips(accounts -> transactionService.createTransfer(accounts[1], accounts[0], 1));
+
+        long roundTrips = countRoundTrips(accounts -> transactionService.createTransfer(accounts[1], accounts[0], 1));
+        // Both inserts in one batch, both balance updates in one batch, the
+        // withdrawal's link to the deposit, the outbox events, the journal entry
+        // and its postings, and maybe new blocks of ids
+        assertTrue(roundTrips <= 10, "createTransfer took " + roundTrips + " round trips");
+    }
+
+    @Test
+    public void testCreateTransactionsAreBatched() {
+        countRoundTrips(accounts -> transactionService.createTransaction("Warm up", 1, "Test", accounts[0]));
+
+        long roundTrips = countRoundTrips(accounts -> {
+            for (int i = 0; i < 100; i++) {
+                transactionService.createTransaction("Row " + i, 1, "Test", accounts[0]);
+            }
+        });
+        // Two batches of inserts, up to three id blocks, one balance update, one
+        // outbox event (with maybe its own id block), and two batches of journal
+        // entries and four of postings (with their id blocks), rather than a
+        // round trip (or three) per row
+        assertTrue(JdbcStatementCounter.getStatements() >= 101);
+        assertTrue(roundTrips <= 23, "100 createTransaction calls took " + roundTrips + " round trips");
+    }
+
+    @Test
+    public void testCreateAccountIsBatched() {
+        long roundTrips = countRoundTrips(accounts -> accountService.createAccount("Investments", (long) 50, user));
+        // Duplicate name check, id blocks, account insert, starting balance insert,
+        // balance update, the outbox events and the journal entry and its postings
+        assertTrue(roundTrips <= 12, "createAccount took " + roundTrips + " round trips");
+    }
+
+    @Test
+    public void testDeleteTransactionsDoesNotDependOnRowCount() {
+        List<Integer> fewRows = new ArrayList<>();
+        List<Integer> manyRows = new ArrayList<>();
+        countRoundTrips(accounts -> {
+            for (int i = 0; i < 500; i++) {
+                int id = transactionService.createTransaction("Row " + i, 1, "Test", accounts[0]).getResult().getId();
+                (i < 5 ? fewRows : manyRows).add(id);
+            }
+        });
+
+        long fewRoundTrips = countRoundTrips(accounts -> transactionService.deleteTransactions(user, fewRows));
+        long manyRoundTrips = countRoundTrips(accounts -> transactionService.deleteTransactions(user, manyRows));
+        assertEquals(fewRoundTrips, manyRoundTrips);
+    }
+}
@@ -0,0 +1,130 @@
+package edu.carroll.bankapp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Test helper that counts the SQL statements and JDBC round trips made by the
+ * application. Import {@link Config} into a test to wrap the DataSource.
+ *
+ * A statement is one row's worth of SQL (each addBatch counts). A round trip
+ * is one call that goes to the database (an execute, or a whole executeBatch).
+ */
+public class JdbcStatementCounter {
+    private static final AtomicLong statements = new AtomicLong();
+    private static final AtomicLong roundTrips = new AtomicLong();
+
+    /**
+     * Start counting from zero
+     */
+    public static void reset() {
+        statements.set(0);
+        roundTrips.set(0);
+    }
+
+    /**
+     * @return SQL statements since the last reset
+     */
+    public static long getStatements() {
+        return statements.get();
+    }
+
+    /**
+     * @return JDBC round trips since the last reset
+     */
+    public static long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * Wraps the application's DataSource so its statements are counted
+     */
+    @TestConfiguration
+    public static class Config {
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource) {
+                        return wrap(bean, new DataSourceHandler(bean));
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    private static Object wrap(Object target, InvocationHandler handler) {
+        return Proxy.newProxyInstance(JdbcStatementCounter.class.getClassLoader(),
+                ClassUtils.getAllInterfaces(target), handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * Hands out counting connections
+     */
+    private record DataSourceHandler(Object target) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = JdbcStatementCounter.invoke(target, method, args);
+            if (result instanceof Connection) {
+                return wrap(result, new ConnectionHandler(result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Hands out counting statements
+     */
+    private record ConnectionHandler(Object target) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = JdbcStatementCounter.invoke(target, method, args);
+            if (result instanceof Statement) {
+                return wrap(result, new StatementHandler(result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts statements as they're executed
+     */
+    private record StatementHandler(Object target) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "addBatch" -> statements.incrementAndGet();
+                case "executeBatch", "executeLargeBatch" -> roundTrips.incrementAndGet();
+                case "execute", "executeQuery", "executeUpdate", "executeLargeUpdate" -> {
+                    statements.incrementAndGet();
+                    roundTrips.incrementAndGet();
+                }
+                default -> {
+                }
+            }
+            return JdbcStatementCounter.invoke(target, method, args);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+import edu.carroll.bankapp.service.LedgerService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures appending to the ledger one entry at a time and in batches, and
+ * reading a busy account's balance before and after it's checkpointed.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:ledger-bench",
+        "bankapp.ledger.checkpoint-min-postings=1", "bankapp.ledger.checkpoint-settle-ms=-60000" })
+public class LedgerBenchmark {
+    private static final int ENTRIES = 20_000;
+    private static final int ENTRIES_PER_COMMIT = 500;
+    private static final int BALANCE_READS = 2_000;
+    private static final int ACCOUNTS = 10;
+
+    @Autowired
+    private LedgerService ledger;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static JournalEntry deposit(int accountId) {
+        JournalEntry entry = new JournalEntry("Benchmark");
+        entry.addPosting(accountId, null, 100);
+        entry.balanceExternally();
+        return entry;
+    }
+
+    /**
+     * Append ENTRIES entries, committing every ENTRIES_PER_COMMIT
+     *
+     * @param firstAccountId - entries go to this account and the next few
+     * @param batched        - whether to hand them over with appendAll
+     * @return entries per second
+     */
+    private double append(int firstAccountId, boolean batched) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        for (int done = 0; done < ENTRIES; done += ENTRIES_PER_COMMIT) {
+            template.executeWithoutResult(status -> {
+                List<JournalEntry> entries = new ArrayList<>();
+                for (int i = 0; i < ENTRIES_PER_COMMIT; i++) {
+                    JournalEntry entry = deposit(firstAccountId + i % ACCOUNTS);
+                    if (batched) {
+                        entries.add(entry);
+                    } else {
+                        ledger.append(entry);
+                    }
+                }
+                if (batched) {
+                    ledger.appendAll(entries);
+                }
+            });
+        }
+        return ENTRIES / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Read the balance of the given account BALANCE_READS times
+     *
+     * @param accountId - the account to read
+     * @return microseconds per read
+     */
+    private double readBalances(int accountId) {
+        long start = System.nanoTime();
+        for (int i = 0; i < BALANCE_READS; i++) {
+            ledger.getBalanceInCents(accountId);
+        }
+        return (System.nanoTime() - start) / 1e3 / BALANCE_READS;
+    }
+
+    @Test
+    public void benchmarkLedger() {
+        // Warm up
+        append(1000, false);
+        append(2000, true);
+
+        double single = append(3000, false);
+        double batched = append(4000, true);
+        System.out.printf("[ledger] append: %.0f entries/s one at a time, %.0f entries/s with appendAll%n",
+                single, batched);
+
+        // Each account now has ENTRIES / ACCOUNTS postings to add up
+        readBalances(3000);
+        double uncheckpointed = readBalances(4000);
+        ledger.checkpoint();
+        double checkpointed = readBalances(4000);
+        System.out.printf("[ledger] balance of an account with %d postings: %.1f us to add them up, "
+                + "%.1f us from a checkpoint%n", ENTRIES / ACCOUNTS, uncheckpointed, checkpointed);
+    }
+}
@@ -0,0 +1,337 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.engine.EngineRecord;
+import edu.carroll.bankapp.engine.LedgerEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers the posting engine coming back after being stopped, with and without
+ * closing it first. Crashes are simulated by abandoning an engine and opening a
+ * new one on the same directory.
+ */
+public class LedgerEngineRecoveryTest {
+    private static final int ACCOUNTS = 5;
+    private static final long OPENING_BALANCE = 10_000;
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Stand-in for the database: what has been projected, and how far
+     */
+    private final Database database = new Database();
+    private final List<LedgerEngine> opened = new ArrayList<>();
+    // What the stand-in database holds for an account the engine loads
+    private volatile long storedBalance = OPENING_BALANCE;
+
+    private static class Database {
+        private final List<EngineRecord> projected = new ArrayList<>();
+        private long lastSequence;
+        private int failuresLeft;
+    }
+
+    /**
+     * Projection into the stand-in database. Stops working once its engine has
+     * crashed, so only the engine that replaced it can project.
+     */
+    private class FakeProjection implements LedgerEngine.Projection {
+        private volatile boolean crashed;
+
+        @Override
+        public long getProjectedSequence() {
+            synchronized (database) {
+                return database.lastSequence;
+            }
+        }
+
+        @Override
+        public void project(List<EngineRecord> records) {
+            synchronized (database) {
+                if (crashed) {
+                    throw new IllegalStateException("This engine has crashed");
+                }
+                if (database.failuresLeft > 0) {
+                    database.failuresLeft--;
+                    throw new IllegalStateException("Projection failed on purpose");
+                }
+                database.projected.addAll(records);
+                database.lastSequence = records.get(records.size() - 1).getSequence();
+            }
+        }
+    }
+
+    private final Map<LedgerEngine, FakeProjection> projections = new HashMap<>();
+
+    private LedgerEngine open() throws IOException {
+        FakeProjection projection = new FakeProjection();
+        LedgerEngine engine = new LedgerEngine(directory, 4, SEGMENT_BYTES, 100, 0, 10, 50,
+                accountId -> accountId >= 1 && accountId <= ACCOUNTS ? storedBalance : null, projection);
+        projections.put(engine, projection);
+        opened.add(engine);
+        return engine;
+    }
+
+    /**
+     * Abandon an engine without closing it, as if the process died
+     */
+    private void crash(LedgerEngine engine) {
+        projections.get(engine).crashed = true;
+        opened.remove(engine);
+    }
+
+    @AfterEach
+    public void closeEngines() throws IOException {
+        for (LedgerEngine engine : opened) {
+            engine.close();
+        }
+    }
+
+    /**
+     * Post amounts 1, 2, 3, ... to the accounts in turn
+     *
+     * @return the expected balance of each account afterwards
+     */
+    private static Map<Integer, Long> post(LedgerEngine engine, int postings, Map<Integer, Long> balances) {
+        for (int i = 0; i < postings; i++) {
+            int accountId = 1 + i % ACCOUNTS;
+            engine.post(accountId, i + 1, "Posting " + i, "Test");
+            balances.merge(accountId, (long) i + 1, Long::sum);
+        }
+        return balances;
+    }
+
+    private static Map<Integer, Long> openingBalances() {
+        Map<Integer, Long> balances = new HashMap<>();
+        for (int id = 1; id <= ACCOUNTS; id++) {
+            balances.put(id, OPENING_BALANCE);
+        }
+        return balances;
+    }
+
+    private static void assertBalances(Map<Integer, Long> expected, LedgerEngine engine) {
+        for (Map.Entry<Integer, Long> balance : expected.entrySet()) {
+            assertEquals(balance.getValue(), engine.getBalanceInCents(balance.getKey()),
+                    "Balance of account " + balance.getKey());
+        }
+    }
+
+    private List<Path> files(String subdirectory) throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(subdirectory))) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testPostsSurviveCrash() throws IOException {
+        LedgerEngine engine = open();
+        Map<Integer, Long> balances = post(engine, 100, openingBalances());
+        List<EngineRecord> recent = engine.getRecentTransactions(1);
+        crash(engine);
+
+        LedgerEngine recovered = open();
+        assertBalances(balances, recovered);
+        List<EngineRecord> recoveredRecent = recovered.getRecentTransactions(1);
+        assertEquals(10, recoveredRecent.size());
+        assertEquals(recent.get(0).getSequence(), recoveredRecent.get(0).getSequence());
+        assertEquals(recent.get(0).getName(), recoveredRecent.get(0).getName());
+
+        // Postings carry on from where the log left off
+        long last = recovered.getLastSequence();
+        recovered.post(1, 7, "After the crash", "Test");
+        assertEquals(last + 1, recovered.getLastSequence());
+    }
+
+    @Test
+    public void testRecoversFromSnapshotAndLog() throws Exception {
+        LedgerEngine engine = open();
+        Map<Integer, Long> balances = post(engine, 300, openingBalances());
+        assertTrue(engine.getLogSegmentCount() > 2);
+        assertTrue(engine.awaitProjected(engine.getLastSequence(), 5000));
+        long snapshotSequence = engine.snapshot();
+        // Segments covered by the snapshot and projected are gone
+        assertEquals(1, engine.getLogSegmentCount());
+
+        post(engine, 50, balances);
+        crash(engine);
+
+        LedgerEngine recovered = open();
+        assertBalances(balances, recovered);
+        assertTrue(recovered.getLastSequence() > snapshotSequence);
+    }
+
+    @Test
+    public void testTornWriteAtEndOfLogIsDropped() throws IOException {
+        LedgerEngine engine = open();
+        Map<Integer, Long> balances = post(engine, 20, openingBalances());
+        engine.close();
+        opened.remove(engine);
+
+        // Write the start of a record after the last complete one, as if the
+        // process died part way through
+        List<Path> segments = files("wal");
+        try (FileChannel channel = FileChannel.open(segments.get(segments.size() - 1), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            int position = 0;
+            while (true) {
+                header.clear();
+                channel.read(header, position);
+                int length = header.getInt(0);
+                if (length == 0) {
+                    break;
+                }
+                position += 16 + length;
+            }
+            ByteBuffer torn = ByteBuffer.allocate(24);
+            torn.putInt(40).putInt(12345).putLong(99_999).putLong(-1).flip();
+            channel.write(torn, position);
+        }
+
+        LedgerEngine recovered = open();
+        assertBalances(balances, recovered);
+        post(recovered, 5, balances);
+        recovered.close();
+        opened.remove(recovered);
+
+        // What was written after the torn record is read back too
+        assertBalances(balances, open());
+    }
+
+    @Test
+    public void testDamagedSnapshotFallsBackToOlderOne() throws Exception {
+        LedgerEngine engine = open();
+        Map<Integer, Long> balances = post(engine, 50, openingBalances());
+        engine.snapshot();
+        post(engine, 50, balances);
+        engine.snapshot();
+        post(engine, 50, balances);
+        crash(engine);
+
+        List<Path> snapshots = files("snapshots");
+        assertEquals(2, snapshots.size());
+        Path newest = snapshots.get(1);
+        byte[] contents = Files.readAllBytes(newest);
+        contents[contents.length / 2] ^= 0x5a;
+        Files.write(newest, contents);
+
+        assertBalances(balances, open());
+    }
+
+    @Test
+    public void testConcurrentPostsShareLogForces() throws Exception {
+        LedgerEngine engine = open();
+        int threads = 8;
+        int postsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int accountId = 1 + t % ACCOUNTS;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < postsPerThread; i++) {
+                    engine.post(accountId, 1, "Concurrent", "Test");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * postsPerThread, engine.getPostCount());
+        assertTrue(engine.getForceCount() < engine.getPostCount(),
+                engine.getForceCount() + " forces for " + engine.getPostCount() + " posts");
+        long total = 0;
+        for (int id = 1; id <= ACCOUNTS; id++) {
+            total += engine.getBalanceInCents(id) - OPENING_BALANCE;
+        }
+        assertEquals(threads * postsPerThread, total);
+    }
+
+    @Test
+    public void testProjectionIsInOrderAndResumesAfterCrash() throws Exception {
+        database.failuresLeft = 2;
+        LedgerEngine engine = open();
+        post(engine, 30, openingBalances());
+        // Failed batches are retried until they go through
+        assertTrue(engine.awaitProjected(engine.getLastSequence(), 5000));
+        assertTrue(engine.getProjectionFailures() >= 2);
+
+        // Stop the projection, post some more and crash before it catches up
+        long projected = engine.getProjectedSequence();
+        projections.get(engine).crashed = true;
+        post(engine, 20, new HashMap<>());
+        long last = engine.getLastSequence();
+        crash(engine);
+
+        LedgerEngine recovered = open();
+        assertTrue(recovered.awaitProjected(last, 5000));
+        List<Long> sequences = new ArrayList<>();
+        synchronized (database) {
+            for (EngineRecord record : database.projected) {
+                sequences.add(record.getSequence());
+            }
+        }
+        // Every record exactly once, in log order
+        for (int i = 0; i < sequences.size(); i++) {
+            assertEquals(i + 1, sequences.get(i));
+        }
+        assertEquals(last, sequences.size());
+        assertTrue(projected < last);
+    }
+
+    @Test
+    public void testReleasedAccountIsLoadedAgain() throws Exception {
+        LedgerEngine engine = open();
+        engine.post(1, 500, "Before the release", "Test");
+        Runnable end = engine.release(List.of(1), 5000);
+        // Everything posted is in the database and the account is out of memory
+        assertEquals(engine.getLastSequence(), engine.getProjectedSequence());
+        assertNull(engine.getBalanceInCents(1));
+
+        // Postings wait until the release is over
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> waiting = executor.submit(() -> engine.post(1, 25, "During the release", "Test"));
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        // The balance was changed in the database in the meantime
+        storedBalance = 20_000;
+        end.run();
+        waiting.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertEquals(20_025L, engine.getBalanceInCents(1));
+
+        // The release is in the log, so the reloaded balance survives a crash
+        crash(engine);
+        assertEquals(20_025L, open().getBalanceInCents(1));
+    }
+
+    @Test
+    public void testUnknownAccountIsRejected() throws IOException {
+        LedgerEngine engine = open();
+        assertThrows(IllegalArgumentException.class, () -> engine.post(ACCOUNTS + 1, 100, "Nowhere", "Test"));
+        assertNull(engine.getBalanceInCents(ACCOUNTS + 1));
+        assertEquals(0, engine.getLastSequence());
+    }
+}
@@ -0,0 +1,170 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.LedgerService;
+import edu.carroll.bankapp.service.LedgerVerifier;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uses its own database so the verifier only sees these tests' data.
+ * Checkpoints cover every posting right away, and only need a few of them.
+ */
+@Transactional
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:ledger",
+        "bankapp.ledger.checkpoint-min-postings=5", "bankapp.ledger.checkpoint-settle-ms=-60000" })
+public class LedgerServiceImplTest {
+    @Autowired
+    private LedgerService ledger;
+
+    @Autowired
+    private LedgerVerifier verifier;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountRepository accountRepo;
+
+    public static final String JOHN_NAME = "John Doe";
+    public static final String JOHN_EMAIL = "john@example.com";
+    public static final String JOHN_USERNAME = "johndoe";
+    public static final String JOHN_PASSWORD = "password123";
+
+    /**
+     * Check the ledger's balance of an account against the account's own
+     */
+    private void assertBalanceMatches(SiteUser user, int accountId) {
+        Account account = accountService.getUserAccount(user, accountId);
+        assertEquals(account.getBalanceInCents(), ledger.getBalanceInCents(accountId));
+    }
+
+    @Test
+    public void testUnbalancedEntryIsRejected() {
+        JournalEntry empty = new JournalEntry("Nothing");
+        assertThrows(IllegalArgumentException.class, () -> ledger.append(empty));
+
+        JournalEntry oneSided = new JournalEntry("Money from nowhere");
+        oneSided.addPosting(1, null, 100);
+        assertThrows(IllegalArgumentException.class, () -> ledger.append(oneSided));
+        assertThrows(IllegalArgumentException.class, () -> ledger.appendAll(List.of(empty, oneSided)));
+    }
+
+    @Test
+    public void testAppendAll() {
+        List<JournalEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            JournalEntry entry = new JournalEntry("Deposit " + i);
+            entry.addPosting(1_000_000, null, 100);
+            entry.balanceExternally();
+            entries.add(entry);
+        }
+        for (JournalEntry entry : ledger.appendAll(entries)) {
+            assertNotNull(entry.getId());
+            assertEquals(2, entry.getPostings().size());
+        }
+        assertEquals(1000, ledger.getBalanceInCents(1_000_000));
+    }
+
+    @Test
+    public void testTransactionsAreRecorded() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        int checkingId = accountService.createAccount("Checking", (long) 100, john).getResult().getId();
+        int savingsId = accountService.createAccount("Savings", (long) 50, john).getResult().getId();
+        assertEquals(10000, ledger.getBalanceInCents(checkingId));
+
+        Transaction groceries = transactionService.createTransaction("Groceries", -25, "Store",
+                accountService.getUserAccount(john, checkingId)).getResult();
+        assertBalanceMatches(john, checkingId);
+
+        transactionService.createTransfer(accountService.getUserAccount(john, savingsId),
+                accountService.getUserAccount(john, checkingId), 10);
+        assertBalanceMatches(john, checkingId);
+        assertBalanceMatches(john, savingsId);
+
+        transactionService.updateTransaction(john, transactionService.getUserTransaction(john, groceries.getId()),
+                "Groceries", -30, "Store");
+        assertBalanceMatches(john, checkingId);
+
+        transactionService.deleteTransaction(john, transactionService.getUserTransaction(john, groceries.getId()));
+        assertBalanceMatches(john, checkingId);
+
+        List<Integer> ids = new ArrayList<>();
+        for (Transaction transaction : accountService.getUserAccount(john, checkingId).getTransactions()) {
+            ids.add(transaction.getId());
+        }
+        transactionService.deleteTransactions(john, ids);
+        assertBalanceMatches(john, checkingId);
+        assertBalanceMatches(john, savingsId);
+
+        assertTrue(verifier.verify().isOk(), () -> verifier.verify().getProblems().toString());
+    }
+
+    @Test
+    public void testCheckpoints() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        int checkingId = accountService.createAccount("Checking", (long) 0, john).getResult().getId();
+        for (int i = 0; i < 10; i++) {
+            transactionService.createTransaction("Row " + i, i, "Test", accountService.getUserAccount(john, checkingId));
+        }
+        assertTrue(ledger.checkpoint() > 0);
+        assertBalanceMatches(john, checkingId);
+
+        // Postings after the checkpoint still count
+        transactionService.createTransaction("After", 7, "Test", accountService.getUserAccount(john, checkingId));
+        assertBalanceMatches(john, checkingId);
+        assertEquals(5200, (long) ledger.getBalancesInCents(List.of(checkingId)).get(checkingId));
+
+        // Too few new postings to move it again
+        assertEquals(0, ledger.checkpoint());
+        assertTrue(verifier.verify().isOk(), () -> verifier.verify().getProblems().toString());
+    }
+
+    @Test
+    public void testVerifierFindsMismatchedBalance() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        int checkingId = accountService.createAccount("Checking", (long) 100, john).getResult().getId();
+        assertTrue(verifier.verify().isOk());
+
+        // Change the balance without going through the ledger
+        accountRepo.addToBalance(checkingId, 1);
+        LedgerVerifier.Report report = verifier.verify();
+        assertFalse(report.isOk());
+        assertTrue(report.getProblems().get(0).contains("Account " + checkingId));
+    }
+
+    @Test
+    public void testOpenMissingAccounts() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        // An account from before the ledger, with a balance and no postings
+        Account legacy = new Account();
+        legacy.setName("Legacy");
+        legacy.setOwner(john);
+        legacy.setBalanceInCents(12345);
+        legacy = accountRepo.save(legacy);
+
+        assertEquals(1, ledger.openMissingAccounts());
+        assertEquals(12345, ledger.getBalanceInCents(legacy.getId()));
+        assertEquals(0, ledger.openMissingAccounts());
+    }
+}
@@ -0,0 +1,161 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.service.AccountEvent;
+import edu.carroll.bankapp.web.LiveUpdateHub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveUpdateHubTest {
+    private final LiveUpdateHub hub = new LiveUpdateHub(2, 60_000, 4);
+
+    /**
+     * Records events, optionally holding up the first one until released
+     */
+    private static class RecordingSink implements LiveUpdateHub.EventSink {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private volatile boolean fail;
+        private volatile boolean closed;
+
+        private RecordingSink(boolean blockFirstSend) {
+            this.release = new CountDownLatch(blockFirstSend ? 1 : 0);
+        }
+
+        @Override
+        public void send(String name, Object data) throws IOException {
+            firstSendStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail) {
+                throw new IOException("Connection reset");
+            }
+            events.add(name + " " + data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static void waitFor(RecordingSink sink, int events) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sink.events.size() < events && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // Give any extra events a chance to show up
+        Thread.sleep(50);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        hub.shutdown();
+    }
+
+    @Test
+    public void testEventsGoToOwnersSubscribers() throws Exception {
+        RecordingSink phone = new RecordingSink(false);
+        RecordingSink laptop = new RecordingSink(false);
+        RecordingSink someoneElse = new RecordingSink(false);
+        hub.register(1, phone);
+        hub.register(1, laptop);
+        hub.register(2, someoneElse);
+        assertEquals(3, hub.getSubscriberCount());
+
+        hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, 10, 0));
+        waitFor(phone, 1);
+        waitFor(laptop, 1);
+        assertEquals(List.of("account {accountId=10}"), phone.events);
+        assertEquals(List.of("account {accountId=10}"), laptop.events);
+        assertTrue(someoneElse.events.isEmpty());
+    }
+
+    @Test
+    public void testSlowSubscriberCoalesced() throws Exception {
+        RecordingSink slow = new RecordingSink(true);
+        hub.register(1, slow);
+
+        // Hold up the first event, then pile up changes to the same account
+        hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, 10, 0));
+        assertTrue(slow.firstSendStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, 10, 0));
+        }
+        slow.release.countDown();
+
+        // The pile up collapses into one event
+        waitFor(slow, 2);
+        assertEquals(2, slow.events.size());
+        assertEquals(99, hub.getCoalescedCount());
+    }
+
+    @Test
+    public void testFarBehindSubscriberResyncs() throws Exception {
+        RecordingSink slow = new RecordingSink(true);
+        hub.register(1, slow);
+
+        hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, 10, 0));
+        assertTrue(slow.firstSendStarted.await(5, TimeUnit.SECONDS));
+        // More different accounts than the subscriber is allowed to fall behind by
+        for (int accountId = 100; accountId < 110; accountId++) {
+            hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, accountId, 0));
+        }
+        slow.release.countDown();
+
+        waitFor(slow, 2);
+        assertEquals(2, slow.events.size());
+        assertTrue(slow.events.get(1).startsWith("resync"));
+        assertEquals(1, hub.getResyncCount());
+    }
+
+    @Test
+    public void testAccountListChanges() throws Exception {
+        RecordingSink sink = new RecordingSink(false);
+        hub.register(1, sink);
+        hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CREATED, 1, 10, 0));
+        waitFor(sink, 1);
+        assertEquals(1, sink.events.size());
+        assertTrue(sink.events.get(0).startsWith("accounts "));
+        assertTrue(sink.events.get(0).contains("CREATED"));
+    }
+
+    @Test
+    public void testBrokenStreamDropped() throws Exception {
+        RecordingSink broken = new RecordingSink(false);
+        broken.fail = true;
+        hub.register(1, broken);
+
+        hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, 10, 0));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hub.getSubscriberCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, hub.getSubscriberCount());
+        assertTrue(broken.closed);
+    }
+
+    @Test
+    public void testUnsubscribe() throws Exception {
+        RecordingSink sink = new RecordingSink(false);
+        LiveUpdateHub.Subscriber subscriber = hub.register(1, sink);
+        subscriber.unsubscribe();
+        subscriber.unsubscribe();
+        assertEquals(0, hub.getSubscriberCount());
+
+        hub.onAccountEvent(new AccountEvent(0, AccountEvent.Type.CHANGED, 1, 10, 0));
+        waitFor(sink, 1);
+        assertTrue(sink.events.isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.service.BalanceRollups;
+import edu.carroll.bankapp.service.TransactionColumns;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures a net worth chart from the daily and monthly rollups against a
+ * daily balance curve summed from every transaction, for histories of
+ * different lengths. The rollups should take about the same time and return
+ * the same number of points however long the history is.
+ */
+@Tag("benchmark")
+public class NetWorthBenchmark {
+    private static final int TRANSACTIONS_PER_DAY = 5;
+    private static final int WIDTH = 800;
+    private static final int REPEATS = 1000;
+
+    @Test
+    public void benchmarkNetWorth() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int years : new int[] { 1, 10, 50 }) {
+                measure(years, pool);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void measure(int years, ForkJoinPool pool) {
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.minusYears(years);
+        int firstDay = (int) from.toEpochDay();
+        int days = (int) (today.toEpochDay() - firstDay + 1);
+        Random random = new Random(42);
+        TransactionColumns columns = new TransactionColumns();
+        long balance = 0;
+        int id = 1;
+        for (int day = 0; day < days; day++) {
+            for (int i = 0; i < TRANSACTIONS_PER_DAY; i++) {
+                long amount = random.nextInt(10) == 0 ? random.nextInt(400_000) : -random.nextInt(9_000);
+                columns.append(id++, 1, firstDay + day, amount, "Payee", false);
+                balance += amount;
+            }
+        }
+        BalanceRollups rollups = columns.getRollups();
+
+        BalanceRollups.BalanceSeries series = null;
+        for (int i = 0; i < REPEATS; i++) {
+            series = rollups.series(from, today, balance, WIDTH);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            series = rollups.series(from, today, balance, WIDTH);
+        }
+        double fromRollups = (System.nanoTime() - start) / 1e3 / REPEATS;
+        assertEquals(balance, series.getBalancesInCents()[series.getBalancesInCents().length - 1]);
+
+        TransactionColumns.BalanceCurve curve = null;
+        for (int i = 0; i < REPEATS / 10; i++) {
+            curve = columns.balanceCurve(null, from, today, pool, 65_536);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < REPEATS / 10; i++) {
+            curve = columns.balanceCurve(null, from, today, pool, 65_536);
+        }
+        double fromTransactions = (System.nanoTime() - start) / 1e3 / (REPEATS / 10);
+        assertEquals(balance, curve.getBalancesInCents()[days - 1]);
+
+        System.out.printf("[net-worth] %d years, %d transactions: rollups %.1f us for %d points "
+                + "(%d bytes), every transaction %.1f us for %d points%n", years, id - 1, fromRollups,
+                series.getDays().size(), rollups.getBytes(), fromTransactions, days);
+    }
+}
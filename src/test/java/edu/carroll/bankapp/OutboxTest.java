@@ -0,0 +1,244 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountEvent;
+import edu.carroll.bankapp.service.AccountEventListener;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.OutboxDispatcher;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers events going through the outbox. These tests commit, so they use their
+ * own database, and the background dispatcher is off so the tests decide when
+ * batches go out.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:outbox", "bankapp.outbox.enabled=false",
+        "bankapp.outbox.max-attempts=3" })
+public class OutboxTest {
+    @Autowired
+    private OutboxDispatcher dispatcher;
+
+    @Autowired
+    private RecordingListener listener;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int checkingId;
+    private int savingsId;
+
+    /**
+     * Listener that records what it's given and can be told to fail
+     */
+    public static class RecordingListener implements AccountEventListener {
+        private final List<AccountEvent> received = new ArrayList<>();
+        private int failAccountId = -1;
+        private int failuresLeft = 0;
+
+        @Override
+        public synchronized void onAccountEvent(AccountEvent event) {
+            if (event.getAccountId() == failAccountId && failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("Listener failed on purpose");
+            }
+            received.add(event);
+        }
+
+        public synchronized List<AccountEvent> receivedFor(int accountId) {
+            return received.stream().filter(event -> event.getAccountId() == accountId).collect(Collectors.toList());
+        }
+
+        public synchronized void failOn(int accountId, int times) {
+            failAccountId = accountId;
+            failuresLeft = times;
+        }
+
+        public synchronized void reset() {
+            received.clear();
+            failuresLeft = 0;
+        }
+    }
+
+    @TestConfiguration
+    public static class Config {
+        @Bean
+        public RecordingListener recordingListener() {
+            return new RecordingListener();
+        }
+    }
+
+    @BeforeEach
+    public void createAccounts() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Outbox User", "outbox" + userCount + "@example.com", "outbox_user" + userCount,
+                "password123").getResult();
+        checkingId = accountService.createAccount("Checking", (long) 100, user).getResult().getId();
+        savingsId = accountService.createAccount("Savings", (long) 100, user).getResult().getId();
+        drain();
+        listener.reset();
+    }
+
+    /**
+     * Run the given operation in its own database transaction with the accounts
+     * loaded
+     *
+     * @param operation - what to do, given the checking and savings accounts
+     */
+    private void inTransaction(Consumer<Account[]> operation) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            operation.accept(new Account[] { accountService.getUserAccount(user, checkingId),
+                    accountService.getUserAccount(user, savingsId) });
+        });
+    }
+
+    private void createTransaction(String name, int accountIndex) {
+        inTransaction(accounts -> transactionService.createTransaction(name, 1, "Test", accounts[accountIndex]));
+    }
+
+    private void drain() {
+        int dispatched;
+        do {
+            dispatched = dispatcher.dispatchBatch();
+        } while (dispatched > 0);
+    }
+
+    private static List<Long> ids(List<AccountEvent> events) {
+        return events.stream().map(AccountEvent::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testEventsDeliveredInOrder() {
+        for (int i = 0; i < 3; i++) {
+            createTransaction("Row " + i, 0);
+        }
+        inTransaction(accounts -> transactionService.createTransfer(accounts[1], accounts[0], 5));
+        drain();
+
+        List<AccountEvent> events = listener.receivedFor(checkingId);
+        assertEquals(4, events.size());
+        for (AccountEvent event : events) {
+            assertEquals(AccountEvent.Type.CHANGED, event.getType());
+            assertEquals(user.getId(), event.getUserId());
+        }
+        List<Long> sorted = new ArrayList<>(ids(events));
+        sorted.sort(null);
+        assertEquals(sorted, ids(events));
+        assertEquals(1, listener.receivedFor(savingsId).size());
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    public void testOneChangedEventPerAccountPerTransaction() {
+        inTransaction(accounts -> {
+            for (int i = 0; i < 5; i++) {
+                transactionService.createTransaction("Row " + i, 1, "Test", accounts[0]);
+            }
+        });
+        drain();
+        assertEquals(1, listener.receivedFor(checkingId).size());
+    }
+
+    @Test
+    public void testRolledBackChangesHaveNoEvents() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.createTransaction("Rolled back", 1, "Test",
+                    accountService.getUserAccount(user, checkingId));
+            accountService.createAccount("Rolled back", (long) 0, user);
+            status.setRollbackOnly();
+        });
+        assertEquals(0, dispatcher.getPendingCount());
+        drain();
+        assertTrue(listener.receivedFor(checkingId).isEmpty());
+    }
+
+    @Test
+    public void testFailedEventIsRedeliveredBeforeLaterOnes() {
+        createTransaction("First", 0);
+        createTransaction("Second", 0);
+        createTransaction("Other account", 1);
+
+        listener.failOn(checkingId, 1);
+        dispatcher.dispatchBatch();
+        // Checking's events are held back, but other accounts keep going
+        assertTrue(listener.receivedFor(checkingId).isEmpty());
+        assertEquals(1, listener.receivedFor(savingsId).size());
+        assertEquals(2, dispatcher.getPendingCount());
+
+        drain();
+        List<AccountEvent> events = listener.receivedFor(checkingId);
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).getId() < events.get(1).getId());
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    public void testEventGivenUpOnAfterMaxAttempts() {
+        createTransaction("Poison", 0);
+        listener.failOn(checkingId, 100);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatchBatch();
+        }
+        assertEquals(0, dispatcher.getPendingCount());
+        assertTrue(listener.receivedFor(checkingId).isEmpty());
+    }
+
+    @Test
+    public void testUndispatchedEventsSurviveUntilDispatched() {
+        createTransaction("Waiting", 0);
+        // Nothing is delivered until a batch goes out, as after a restart
+        assertEquals(1, dispatcher.getPendingCount());
+        assertTrue(listener.receivedFor(checkingId).isEmpty());
+
+        dispatcher.dispatchBatch();
+        assertTrue(dispatcher.getLagMillis() >= 0);
+        assertEquals(1, listener.receivedFor(checkingId).size());
+
+        dispatcher.dispatchBatch();
+        assertEquals(0, dispatcher.getLagMillis());
+    }
+
+    @Test
+    public void testReplay() {
+        createTransaction("First", 0);
+        createTransaction("Second", 0);
+        drain();
+        List<Long> delivered = ids(listener.receivedFor(checkingId));
+        assertEquals(2, delivered.size());
+
+        // Replaying from the second event hands it (and anything later) over again
+        RecordingListener late = new RecordingListener();
+        dispatcher.replay(delivered.get(1), late);
+        assertEquals(List.of(delivered.get(1)), ids(late.receivedFor(checkingId)));
+        assertTrue(late.receivedFor(savingsId).isEmpty());
+    }
+}
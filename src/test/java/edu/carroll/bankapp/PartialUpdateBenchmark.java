@@ -0,0 +1,106 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import edu.carroll.bankapp.web.PartialUpdate;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Compares adding transactions with a redirect and full page reload against
+ * patching the page with a partial update: requests made, time taken and
+ * bytes sent back per action.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:partial-bench")
+@AutoConfigureMockMvc
+public class PartialUpdateBenchmark {
+    private static final int TRANSACTIONS = 200;
+    private static final int ACTIONS = 500;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    public void benchmarkAddTransaction() throws Exception {
+        SiteUser user = userService.createUser("Partial Bench", "partial@example.com", "partial_bench",
+                "password123").getResult();
+        Account account = accountService.createAccount("Checking", (long) 100_000, user).getResult();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            transactionService.createTransaction("Purchase " + i, -1, "Store", account);
+        }
+        MockHttpSession session = new MockHttpSession();
+
+        run(session, account.getId(), false, ACTIONS / 5);
+        long[] full = run(session, account.getId(), false, ACTIONS);
+        run(session, account.getId(), true, ACTIONS / 5);
+        long[] partial = run(session, account.getId(), true, ACTIONS);
+
+        System.out.printf("[full reload] %d actions: %d requests, %.2f ms and %d bytes per action%n", ACTIONS,
+                full[0], full[2] / 1e6 / ACTIONS, full[1] / ACTIONS);
+        System.out.printf("[partial] %d actions: %d requests, %.2f ms and %d bytes per action%n", ACTIONS,
+                partial[0], partial[2] / 1e6 / ACTIONS, partial[1] / ACTIONS);
+    }
+
+    /**
+     * Add transactions the way the page would
+     *
+     * @return requests made, bytes sent back and elapsed nanoseconds
+     */
+    private long[] run(MockHttpSession session, int accountId, boolean partial, int actions) throws Exception {
+        long requests = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < actions; i++) {
+            MockHttpServletRequestBuilder request = post("/add-transaction")
+                    .session(session)
+                    .with(user("partial_bench")).with(csrf())
+                    .param("name", "Coffee " + i)
+                    .param("toFrom", "Cafe")
+                    .param("amountInDollars", "3")
+                    .param("type", "expense")
+                    .param("accountId", String.valueOf(accountId));
+            if (partial) {
+                request.header(PartialUpdate.HEADER, "true");
+            }
+            MvcResult result = mockMvc.perform(request).andReturn();
+            requests++;
+            bytes += result.getResponse().getContentAsByteArray().length;
+            if (!partial) {
+                // The browser follows the redirect and loads the whole page again
+                MvcResult page = mockMvc.perform(get(result.getResponse().getRedirectedUrl())
+                        .session(session)
+                        .with(user("partial_bench"))
+                        .flashAttrs(result.getFlashMap()))
+                        .andReturn();
+                requests++;
+                bytes += page.getResponse().getContentAsByteArray().length;
+            }
+        }
+        return new long[] { requests, bytes, System.nanoTime() - start };
+    }
+}
@@ -0,0 +1,135 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import edu.carroll.bankapp.web.PartialUpdate;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Transactional
+@SpringBootTest
+@AutoConfigureMockMvc
+public class PartialUpdateTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    public static final String JOHN_NAME = "John Doe";
+    public static final String JOHN_EMAIL = "john@example.com";
+    public static final String JOHN_USERNAME = "johndoe";
+    public static final String JOHN_PASSWORD = "password123";
+
+    @Test
+    public void testAddTransactionPartial() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+
+        mockMvc.perform(post("/add-transaction")
+                .with(user(JOHN_USERNAME)).with(csrf())
+                .header(PartialUpdate.HEADER, "true")
+                .param("name", "Coffee")
+                .param("toFrom", "Cafe")
+                .param("amountInDollars", "5")
+                .param("type", "expense")
+                .param("accountId", String.valueOf(checking.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0]").value("Transaction created successfully"))
+                .andExpect(jsonPath("$.rows", hasSize(1)))
+                .andExpect(jsonPath("$.rows[0]", containsString("Coffee")))
+                .andExpect(jsonPath("$.total", containsString("$1,935.00")))
+                .andExpect(jsonPath("$.table").doesNotExist());
+    }
+
+    @Test
+    public void testAddTransactionWithoutHeaderRedirects() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+
+        mockMvc.perform(post("/add-transaction")
+                .with(user(JOHN_USERNAME)).with(csrf())
+                .param("name", "Coffee")
+                .param("toFrom", "Cafe")
+                .param("amountInDollars", "5")
+                .param("type", "expense")
+                .param("accountId", String.valueOf(checking.getId())))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/account/" + checking.getId()))
+                .andExpect(flash().attribute("messages", contains("Transaction created successfully")));
+    }
+
+    @Test
+    public void testAddTransactionPartialInvalid() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+
+        // Nothing changes on the page except the message
+        mockMvc.perform(post("/add-transaction")
+                .with(user(JOHN_USERNAME)).with(csrf())
+                .header(PartialUpdate.HEADER, "true")
+                .param("name", "")
+                .param("toFrom", "Cafe")
+                .param("amountInDollars", "5")
+                .param("type", "expense")
+                .param("accountId", String.valueOf(checking.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.rows", empty()))
+                .andExpect(jsonPath("$.total").doesNotExist());
+    }
+
+    @Test
+    public void testDeleteTransactionPartial() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        Transaction coffee = transactionService.createTransaction("Coffee", -5, "Cafe", checking).getResult();
+
+        mockMvc.perform(post("/delete-transaction")
+                .with(user(JOHN_USERNAME)).with(csrf())
+                .header(PartialUpdate.HEADER, "true")
+                .param("transactionId", String.valueOf(coffee.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0]").value("Deleted transaction: Coffee"))
+                .andExpect(jsonPath("$.removedTransactionIds[0]").value(coffee.getId()))
+                .andExpect(jsonPath("$.total", containsString("$1,940.00")));
+    }
+
+    @Test
+    public void testAddTransferPartial() throws Exception {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 100, john).getResult();
+
+        mockMvc.perform(post("/add-transfer")
+                .with(user(JOHN_USERNAME)).with(csrf())
+                .header(PartialUpdate.HEADER, "true")
+                .param("fromAccountId", String.valueOf(checking.getId()))
+                .param("toAccountId", String.valueOf(savings.getId()))
+                .param("transferAmountInDollars", "40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0]").value("Transfer created"))
+                .andExpect(jsonPath("$.table", containsString("Transfer to Savings")))
+                .andExpect(jsonPath("$.table", containsString("$1,900.00")));
+    }
+}
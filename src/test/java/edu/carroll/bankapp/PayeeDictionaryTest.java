@@ -0,0 +1,161 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.PayeeRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.PayeeDictionary;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers the payee dictionary. Payees are only shared once they're committed,
+ * so these tests commit and use their own database.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:payee-dictionary", "bankapp.outbox.enabled=false" })
+public class PayeeDictionaryTest {
+    @Autowired
+    private PayeeDictionary payeeDictionary;
+
+    @Autowired
+    private PayeeRepository payeeRepo;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Dictionary User", "dictionary" + userCount + "@example.com",
+                "dictionary_user" + userCount, "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+    }
+
+    private Transaction create(String toFrom) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .createTransaction("Purchase", -10, toFrom, accountService.getUserAccount(user, accountId))
+                .getResult());
+    }
+
+    /**
+     * Load a transaction and its payee fresh from the database
+     */
+    private Transaction reload(int id) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Transaction transaction = transactionRepo.findById(id).get();
+            transaction.getToFrom();
+            return transaction;
+        });
+    }
+
+    @Test
+    public void testPayeesAreSharedByTransactions() {
+        Transaction first = create("Corner Store");
+        long misses = payeeDictionary.getMissCount();
+        Transaction second = create("Corner Store");
+        Transaction otherCase = create("corner store");
+
+        assertEquals(first.getPayee().getId(), second.getPayee().getId());
+        assertNotEquals(first.getPayee().getId(), otherCase.getPayee().getId());
+        // The second use came from memory
+        assertEquals(misses + 1, payeeDictionary.getMissCount());
+
+        Transaction reloaded = reload(second.getId());
+        assertEquals("Corner Store", reloaded.getToFrom());
+        assertEquals(first.getPayee().getId(), reloaded.getPayee().getId());
+    }
+
+    @Test
+    public void testEmptyPayeesAreNotStored() {
+        Transaction transaction = create("");
+        assertNull(transaction.getPayee());
+        assertEquals("", reload(transaction.getId()).getToFrom());
+    }
+
+    @Test
+    public void testRolledBackPayeesAreNotShared() {
+        long payees = payeeRepo.count();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.createTransaction("Purchase", -10, "Ghost Kitchen",
+                    accountService.getUserAccount(user, accountId));
+            status.setRollbackOnly();
+        });
+        assertEquals(payees, payeeRepo.count());
+
+        // Adding it again doesn't refer to the payee that was rolled back
+        Transaction transaction = create("Ghost Kitchen");
+        assertEquals("Ghost Kitchen", reload(transaction.getId()).getToFrom());
+        assertEquals(payees + 1, payeeRepo.count());
+    }
+
+    @Test
+    public void testEditingUsesTheDictionary() {
+        Transaction transaction = create("Bakery");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .updateTransaction(user, transactionRepo.findById(transaction.getId()).get(), "Purchase", 10,
+                        "Butcher"));
+        Transaction edited = reload(transaction.getId());
+        assertEquals("Butcher", edited.getToFrom());
+        assertEquals(create("Butcher").getPayee().getId(), edited.getPayee().getId());
+    }
+
+    @Test
+    public void testBackfillMovesOldTransactionsOver() {
+        // Transactions from before the dictionary have their payee on the row
+        int[] ids = new int[3];
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account account = accountService.getUserAccount(user, accountId);
+            for (int i = 0; i < ids.length; i++) {
+                Transaction transaction = new Transaction();
+                transaction.setName("Old purchase");
+                transaction.setAmountInCents(-100);
+                transaction.setToFrom(i < 2 ? "Old Diner" : "Old Garage");
+                transaction.setAccount(account);
+                transaction.setDate(new Date());
+                ids[i] = transactionRepo.save(transaction).getId();
+            }
+        });
+        assertNull(reload(ids[0]).getPayee());
+
+        assertTrue(payeeDictionary.backfill() >= 3);
+        assertEquals(0, payeeDictionary.backfill());
+
+        Transaction diner = reload(ids[0]);
+        assertNotNull(diner.getPayee());
+        assertEquals("Old Diner", diner.getToFrom());
+        assertEquals(diner.getPayee().getId(), reload(ids[1]).getPayee().getId());
+        assertEquals("Old Garage", reload(ids[2]).getToFrom());
+        // New transactions find the moved payees
+        assertEquals(diner.getPayee().getId(), create("Old Diner").getPayee().getId());
+    }
+}
@@ -0,0 +1,180 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.repo.PayeeSketchRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.PayeeSketches;
+import edu.carroll.bankapp.service.SpaceSaving;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers the top payee summaries. They're only updated when transactions
+ * commit, so these tests commit and use their own database.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:payee-sketches", "bankapp.outbox.enabled=false" })
+public class PayeeSketchesTest {
+    @Autowired
+    private PayeeSketches payeeSketches;
+
+    @Autowired
+    private PayeeSketchRepository sketchRepo;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Sketch User", "sketch" + userCount + "@example.com",
+                "sketch_user" + userCount, "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 1000, user).getResult().getId();
+    }
+
+    private int create(String toFrom, long amountInDollars) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .createTransaction("Purchase", amountInDollars, toFrom, accountService.getUserAccount(user, accountId))
+                .getResult().getId());
+    }
+
+    private static List<String> names(List<SpaceSaving.Estimate> estimates) {
+        List<String> names = new ArrayList<>();
+        for (SpaceSaving.Estimate estimate : estimates) {
+            names.add(estimate.getItem());
+        }
+        return names;
+    }
+
+    /**
+     * A fresh copy of the summaries, as if the app had restarted
+     */
+    private PayeeSketches restarted(int counters) {
+        return new PayeeSketches(sketchRepo, transactionRepo, transactionManager, counters, 100);
+    }
+
+    @Test
+    public void testTopByCountAndSpend() {
+        create("Cafe", -5);
+        create("Cafe", -4);
+        create("Cafe", -6);
+        create("Landlord", -1200);
+        create("Employer", 2000);
+        create("Bakery", -10);
+        create("Bakery", -12);
+
+        PayeeSketches.TopPayees top = transactionService.getTopPayees(user, 3);
+        assertEquals(List.of("Cafe", "Bakery", "Employer"), names(top.getByCount()));
+        assertEquals(3, top.getByCount().get(0).getCount());
+        // Money coming in isn't spending
+        assertEquals(List.of("Landlord", "Bakery", "Cafe"), names(top.getBySpend()));
+        assertEquals(1200 * 100, top.getBySpend().get(0).getCount());
+        assertEquals(7, top.getTransactions());
+        // With few payees, everything is exact
+        assertEquals(0, top.getByCount().get(0).getError());
+        assertEquals(0, top.getCountError());
+    }
+
+    @Test
+    public void testNewTransactionsAreCountedWithoutReloading() {
+        create("Cafe", -5);
+        assertEquals(List.of("Cafe"), names(payeeSketches.top(user.getId(), 5).getByCount()));
+        long loads = payeeSketches.getLoadCount();
+
+        create("Bakery", -10);
+        create("Bakery", -10);
+        // Transfers aren't counted, their payees are accounts
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account savings = accountService.createAccount("Savings", (long) 0, user).getResult();
+            transactionService.createTransfer(savings, accountService.getUserAccount(user, accountId), 100);
+        });
+
+        PayeeSketches.TopPayees top = payeeSketches.top(user.getId(), 5);
+        assertEquals(List.of("Bakery", "Cafe"), names(top.getByCount()));
+        assertEquals(loads, payeeSketches.getLoadCount());
+    }
+
+    @Test
+    public void testSavedSummariesCatchUpAndRecount() {
+        int first = create("Cafe", -5);
+        create("Cafe", -5);
+        create("Cafe", -5);
+        payeeSketches.top(user.getId(), 5);
+        assertTrue(payeeSketches.persist() >= 1);
+
+        // Deleting isn't taken back out, but new transactions are picked up
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .deleteTransaction(user, transactionService.getUserTransaction(user, first)));
+        create("Bakery", -10);
+        PayeeSketches.TopPayees top = restarted(64).top(user.getId(), 5);
+        assertEquals(List.of("Cafe", "Bakery"), names(top.getByCount()));
+        assertEquals(3, top.getByCount().get(0).getCount());
+
+        // A recount starts over from the transactions there are now, and pages
+        // showing the old counts are out of date
+        long version = transactionService.getTopPayeesVersion(user);
+        assertTrue(transactionService.recountTopPayees(user).getResult());
+        assertTrue(transactionService.getTopPayeesVersion(user) > version);
+        assertEquals(2, payeeSketches.top(user.getId(), 5).getByCount().get(0).getCount());
+        assertEquals(2, restarted(64).top(user.getId(), 5).getByCount().get(0).getCount());
+    }
+
+    @Test
+    public void testEstimatesStayWithinTheirBounds() {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < 60; i++) {
+            // A few payees are used much more than the rest
+            String payee = i % 3 == 0 ? "Grocer" : i % 5 == 0 ? "Cafe" : "Shop " + i;
+            create(payee, -1);
+            counts.merge(payee, 1L, Long::sum);
+        }
+
+        // Only four counters, far fewer than payees
+        PayeeSketches.TopPayees top = restarted(4).top(user.getId(), 4);
+        assertEquals("Grocer", top.getByCount().get(0).getItem());
+        assertTrue(top.getCountError() > 0);
+        assertTrue(top.getCountError() <= top.getTransactions() / 4);
+        List<String> listed = names(top.getByCount());
+        for (SpaceSaving.Estimate estimate : top.getByCount()) {
+            long count = counts.get(estimate.getItem());
+            assertTrue(estimate.getLowerBound() <= count && count <= estimate.getCount(), estimate.getItem());
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            if (!listed.contains(count.getKey())) {
+                assertTrue(count.getValue() <= top.getCountError(), count.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.PayeeSuggestions;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures how long payee suggestions take for a user with many payees, for
+ * the first (loading) request and for typing afterwards
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:payee-bench", "bankapp.outbox.enabled=false" })
+public class PayeeSuggestionBenchmark {
+    private static final int PAYEES = 5_000;
+    private static final int TRANSACTIONS = 50_000;
+    private static final int LOOKUPS = 200_000;
+
+    @Autowired
+    private PayeeSuggestions payeeSuggestions;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    public void benchmarkSuggestions() {
+        SiteUser user = userService.createUser("Bench Mark", "payees@example.com", "bench_payees", "password123")
+                .getResult();
+        Account account = accountService.createAccount("Checking", (long) 0, user).getResult();
+        Random random = new Random(42);
+        String[] payees = new String[PAYEES];
+        for (int i = 0; i < PAYEES; i++) {
+            payees[i] = "Payee " + Integer.toString(random.nextInt(1_000_000), 36) + " " + i;
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setName("Benchmark");
+            transaction.setAmountInCents(-100);
+            // A few payees are used much more than the rest
+            transaction.setToFrom(payees[(int) (PAYEES * Math.pow(random.nextDouble(), 3))]);
+            transaction.setAccount(account);
+            transaction.setDate(new Date(now - random.nextInt(365) * 24L * 60 * 60 * 1000));
+            transactions.add(transaction);
+        }
+        transactionRepo.saveAll(transactions);
+
+        long start = System.nanoTime();
+        assertFalse(payeeSuggestions.suggest(user.getId(), "p", PayeeSuggestions.MAX_SUGGESTIONS).isEmpty());
+        System.out.printf("[payees] loading %d payees from %d transactions took %.1f ms, about %d bytes%n", PAYEES,
+                TRANSACTIONS, (System.nanoTime() - start) / 1e6, payeeSuggestions.getBytes());
+
+        // Type out random payees a character at a time
+        long[] latencies = new long[LOOKUPS];
+        int lookups = 0;
+        while (lookups < LOOKUPS) {
+            String payee = payees[random.nextInt(PAYEES)].toLowerCase();
+            for (int length = 1; length <= payee.length() && lookups < LOOKUPS; length++) {
+                long before = System.nanoTime();
+                payeeSuggestions.suggest(user.getId(), payee.substring(0, length), PayeeSuggestions.MAX_SUGGESTIONS);
+                latencies[lookups++] = System.nanoTime() - before;
+            }
+        }
+        Arrays.sort(latencies);
+        System.out.printf("[payees] %d lookups: p50 %.1f us, p99 %.1f us, max %.1f us%n", LOOKUPS,
+                latencies[LOOKUPS / 2] / 1e3, latencies[LOOKUPS * 99 / 100] / 1e3, latencies[LOOKUPS - 1] / 1e3);
+    }
+}
@@ -0,0 +1,162 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.PayeeSuggestions;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers suggesting payees. New payees are only counted when their database
+ * transaction commits, so these tests commit and use their own database. Idle
+ * users are dropped as soon as they're checked for, which the tests do
+ * themselves.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:payees", "bankapp.outbox.enabled=false",
+        "bankapp.payees.idle-minutes=0", "bankapp.payees.idle-check-ms=3600000" })
+public class PayeeSuggestionsTest {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    @Autowired
+    private PayeeSuggestions payeeSuggestions;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Payee User", "payee" + userCount + "@example.com",
+                "payee_user" + userCount, "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+    }
+
+    private void create(String toFrom) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .createTransaction("Purchase", -10, toFrom, accountService.getUserAccount(user, accountId)));
+    }
+
+    /**
+     * Save a transaction dated the given number of days ago, without going
+     * through the service
+     */
+    private void createDaysAgo(String toFrom, int days) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account account = accountService.getUserAccount(user, accountId);
+            Transaction transaction = new Transaction();
+            transaction.setName("Purchase");
+            transaction.setAmountInCents(-1000);
+            transaction.setToFrom(toFrom);
+            transaction.setAccount(account);
+            transaction.setDate(new Date(System.currentTimeMillis() - days * DAY_MILLIS));
+            transactionRepo.save(transaction);
+        });
+    }
+
+    private List<String> suggest(String prefix) {
+        return payeeSuggestions.suggest(user.getId(), prefix, PayeeSuggestions.MAX_SUGGESTIONS);
+    }
+
+    @Test
+    public void testMostUsedPayeesComeFirst() {
+        create("Target");
+        create("Taco Bell");
+        create("Taco Bell");
+        create("Tesla");
+        create("Taco Bell");
+        create("Target");
+
+        assertEquals(List.of("Taco Bell", "Target", "Tesla"), suggest("t"));
+        assertEquals(List.of("Taco Bell", "Target"), suggest("TA"));
+        assertEquals(List.of("Target"), suggest("  tar"));
+        assertTrue(suggest("x").isEmpty());
+        // Nothing typed yet suggests the most used payees overall
+        assertEquals("Taco Bell", suggest("").get(0));
+    }
+
+    @Test
+    public void testRecentUseOutweighsOldUse() {
+        for (int i = 0; i < 3; i++) {
+            createDaysAgo("Old Navy", 365);
+        }
+        createDaysAgo("Olive Garden", 1);
+
+        assertEquals(List.of("Olive Garden", "Old Navy"), suggest("ol"));
+    }
+
+    @Test
+    public void testNewPayeesAreAddedOnceCommitted() {
+        create("Walmart");
+        assertEquals(List.of("Walmart"), suggest("w"));
+        long builds = payeeSuggestions.getBuildCount();
+
+        create("Wegmans");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.createTransaction("Purchase", -10, "Whole Foods",
+                    accountService.getUserAccount(user, accountId));
+            status.setRollbackOnly();
+        });
+        // The newest spelling is shown
+        create("walmart ");
+
+        assertEquals(List.of("walmart", "Wegmans"), suggest("w"));
+        assertEquals(builds, payeeSuggestions.getBuildCount());
+    }
+
+    @Test
+    public void testTransfersAreLeftOut() {
+        int savingsId = accountService.createAccount("Savings", (long) 0, user).getResult().getId();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService.createTransfer(
+                accountService.getUserAccount(user, savingsId), accountService.getUserAccount(user, accountId), 5));
+        create("Sam's Club");
+
+        assertEquals(List.of("Sam's Club"), suggest("s"));
+        assertTrue(suggest("check").isEmpty());
+    }
+
+    @Test
+    public void testIdleUsersAreDropped() {
+        create("Costco");
+        assertEquals(List.of("Costco"), suggest("c"));
+        assertTrue(payeeSuggestions.getUserCount() > 0);
+
+        payeeSuggestions.evictIdle();
+        assertEquals(0, payeeSuggestions.getUserCount());
+        assertEquals(0, payeeSuggestions.getBytes());
+
+        // They're loaded again when asked for
+        assertEquals(List.of("Costco"), suggest("c"));
+    }
+}
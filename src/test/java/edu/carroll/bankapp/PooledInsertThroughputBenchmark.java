@@ -0,0 +1,18 @@
+package edu.carroll.bankapp;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Insert throughput with ids fetched in blocks and JDBC batching enabled
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pooled-bench",
+        "spring.jpa.properties.bankapp.id.allocation-size=50",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50"
+})
+public class PooledInsertThroughputBenchmark extends InsertThroughputBenchmark {
+    @Override
+    protected String label() {
+        return "pooled";
+    }
+}
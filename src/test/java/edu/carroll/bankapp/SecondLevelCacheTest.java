@@ -0,0 +1,105 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure repeat dashboard views are served from the second-level cache,
+ * and that writes aren't hidden by it. These tests commit, so they use their
+ * own database.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:cache",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=true",
+        "spring.jpa.properties.hibernate.cache.region.factory_class=jcache",
+        "spring.jpa.properties.hibernate.javax.cache.provider=com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider",
+        "spring.jpa.properties.hibernate.javax.cache.missing_cache_strategy=create-warn",
+        "spring.jpa.properties.hibernate.cache.auto_evict_collection_cache=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(JdbcStatementCounter.Config.class)
+public class SecondLevelCacheTest {
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Load everything the dashboard shows for a user, the way a request would
+     *
+     * @return the balance of the account being viewed
+     */
+    private long viewDashboard(String username, int accountId) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            SiteUser user = userService.getUserByUsername(username);
+            accountService.getUserAccounts(user);
+            Account account = accountService.getUserAccount(user, accountId);
+            account.getTransactions().size();
+            return account.getBalanceInCents();
+        });
+    }
+
+    @Test
+    public void testRepeatViewsUseCache() {
+        SiteUser user = userService.createUser("Cache User", "cache@example.com", "cache_user", "password123")
+                .getResult();
+        int accountId = accountService.createAccount("Checking", (long) 100, user).getResult().getId();
+
+        // The first view fills the cache
+        viewDashboard("cache_user", accountId);
+
+        JdbcStatementCounter.reset();
+        viewDashboard("cache_user", accountId);
+        assertTrue(JdbcStatementCounter.getRoundTrips() <= 1,
+                "Repeat view took " + JdbcStatementCounter.getRoundTrips() + " round trips");
+    }
+
+    @Test
+    public void testWritesInvalidateCache() {
+        SiteUser user = userService.createUser("Cache Writer", "writer@example.com", "cache_writer", "password123")
+                .getResult();
+        int accountId = accountService.createAccount("Checking", (long) 100, user).getResult().getId();
+        assertEquals(100 * 100, viewDashboard("cache_writer", accountId));
+
+        // A new transaction, through the normal write path
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .createTransaction("Lunch", -10, "Cafe", accountService.getUserAccount(user, accountId)));
+        assertEquals(90 * 100, viewDashboard("cache_writer", accountId));
+
+        // A bulk delete, through the set-based write path
+        int lunchId = new TransactionTemplate(transactionManager).execute(status -> {
+            for (Transaction transaction : accountService.getUserAccount(user, accountId).getTransactions()) {
+                if (transaction.getName().equals("Lunch")) {
+                    return transaction.getId();
+                }
+            }
+            return -1;
+        });
+        transactionService.deleteTransactions(user, List.of(lunchId));
+        assertEquals(100 * 100, viewDashboard("cache_writer", accountId));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> assertEquals(1,
+                accountService.getUserAccount(user, accountId).getTransactions().size()));
+    }
+}
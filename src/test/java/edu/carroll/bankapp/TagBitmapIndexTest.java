@@ -0,0 +1,227 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.Category;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Tag;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AccountSummary;
+import edu.carroll.bankapp.service.TagBitmapIndex;
+import edu.carroll.bankapp.service.TransactionFilter;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers filtering transactions by category and tag. The bitmaps are only
+ * updated when changes commit, so these tests commit and use their own
+ * database.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:tags", "bankapp.outbox.enabled=false" })
+public class TagBitmapIndexTest {
+    @Autowired
+    private TagBitmapIndex tagIndex;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Tag User", "tags" + userCount + "@example.com", "tag_user" + userCount,
+                "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+    }
+
+    private int create(String name, long amountInDollars) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .createTransaction(name, amountInDollars, "Somewhere", accountService.getUserAccount(user, accountId))
+                .getResult().getId());
+    }
+
+    private void categorize(int id, String category, String... tags) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> assertNotNull(transactionService
+                .categorizeTransaction(user, transactionService.getUserTransaction(user, id), category, List.of(tags))
+                .getResult()));
+    }
+
+    private int categoryId(String name) {
+        for (Category category : transactionService.getUserCategories(user)) {
+            if (category.getName().equals(name)) {
+                return category.getId();
+            }
+        }
+        throw new AssertionError("No category " + name);
+    }
+
+    private int tagId(String name) {
+        for (Tag tag : transactionService.getUserTags(user)) {
+            if (tag.getName().equals(name)) {
+                return tag.getId();
+            }
+        }
+        throw new AssertionError("No tag " + name);
+    }
+
+    /**
+     * Names of the transactions the filter finds, through the service
+     */
+    private List<String> find(TransactionFilter filter) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            List<String> names = new ArrayList<>();
+            for (Transaction transaction : transactionService
+                    .findTransactions(user, accountService.getUserAccount(user, accountId), filter).getResult()) {
+                names.add(transaction.getName());
+            }
+            return names;
+        });
+    }
+
+    private TransactionFilter byCategories(String... categories) {
+        TransactionFilter filter = new TransactionFilter();
+        List<Integer> ids = new ArrayList<>();
+        for (String category : categories) {
+            ids.add(categoryId(category));
+        }
+        filter.setCategoryIds(ids);
+        return filter;
+    }
+
+    private TransactionFilter byTags(boolean all, String... tags) {
+        TransactionFilter filter = new TransactionFilter();
+        List<Integer> ids = new ArrayList<>();
+        for (String tag : tags) {
+            ids.add(tagId(tag));
+        }
+        filter.setTagIds(ids);
+        filter.setAllTags(all);
+        return filter;
+    }
+
+    @Test
+    public void testCategoriesAreUnioned() {
+        categorize(create("Market", -40), "Groceries");
+        categorize(create("Bistro", -25), "Dining");
+        categorize(create("Electric", -90), "Utilities");
+        create("Uncategorized", -5);
+
+        assertEquals(List.of("Market", "Bistro"), find(byCategories("Groceries", "Dining")));
+
+        TransactionFilter filter = byCategories("Groceries", "Dining");
+        filter.setSortBy(TransactionFilter.SortBy.AMOUNT);
+        filter.setMaxAmountInDollars(-30.0);
+        assertEquals(List.of("Market"), find(filter));
+    }
+
+    @Test
+    public void testPayeeAndDirection() {
+        categorize(create("Market", -40), "Groceries");
+        categorize(create("Market refund", 10), "Groceries");
+
+        TransactionFilter filter = byCategories("Groceries");
+        filter.setDirection(TransactionFilter.Direction.INCOME);
+        assertEquals(List.of("Market refund"), find(filter));
+
+        filter.setDirection(TransactionFilter.Direction.EXPENSE);
+        filter.setPayee("WHERE");
+        assertEquals(List.of("Market"), find(filter));
+        filter.setPayee("Nowhere");
+        assertTrue(find(filter).isEmpty());
+    }
+
+    @Test
+    public void testAnyOrAllTags() {
+        categorize(create("Flight", -300), "Travel", "vacation", "reimbursable");
+        categorize(create("Hotel", -200), "Travel", "vacation");
+        categorize(create("Taxi", -30), "Travel", "reimbursable");
+
+        assertEquals(List.of("Flight", "Hotel", "Taxi"), find(byTags(false, "vacation", "reimbursable")));
+        assertEquals(List.of("Flight"), find(byTags(true, "vacation", "reimbursable")));
+
+        // Categories and tags together
+        TransactionFilter filter = byTags(false, "reimbursable");
+        filter.setCategoryIds(List.of(categoryId("Travel")));
+        filter.setDescending(true);
+        assertEquals(List.of("Taxi", "Flight"), find(filter));
+    }
+
+    @Test
+    public void testChangesAreAppliedWithoutReloading() {
+        int market = create("Market", -40);
+        categorize(market, "Groceries", "weekly");
+        assertEquals(List.of("Market"), find(byCategories("Groceries")));
+        long loads = tagIndex.getLoadCount();
+
+        // Retagging moves it between bitmaps
+        int bakery = create("Bakery", -10);
+        categorize(bakery, "Groceries", "weekly");
+        categorize(market, "Dining");
+        assertEquals(List.of("Bakery"), find(byCategories("Groceries")));
+        assertEquals(List.of("Bakery"), find(byTags(false, "weekly")));
+        assertEquals(List.of("Market"), find(byCategories("Dining")));
+
+        // Deleting takes it out
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .deleteTransaction(user, transactionService.getUserTransaction(user, bakery)));
+        assertTrue(find(byCategories("Groceries")).isEmpty());
+
+        // So does deleting several at once
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> transactionService.deleteTransactions(user, List.of(market)));
+        assertTrue(find(byCategories("Dining")).isEmpty());
+
+        assertEquals(loads, tagIndex.getLoadCount());
+    }
+
+    @Test
+    public void testBlankCategoryAndRepeatedTags() {
+        int id = create("Gift", -50);
+        categorize(id, "Gifts", "family", "family", " ", "birthday");
+        categorize(id, " ", "family");
+
+        assertTrue(find(byCategories("Gifts")).isEmpty());
+        assertEquals(List.of("Gift"), find(byTags(false, "family")));
+        assertTrue(find(byTags(false, "birthday")).isEmpty());
+    }
+
+    @Test
+    public void testCategorizingBumpsOnlyTheRevision() {
+        int id = create("Gift", -50);
+        Account before = accountService.getUserAccount(user, accountId);
+        categorize(id, "Gifts", "family");
+
+        // The balance is left alone, but the account's table is shown again
+        Account after = accountService.getUserAccount(user, accountId);
+        assertEquals(before.getBalanceInCents(), after.getBalanceInCents());
+        assertEquals(before.getRevision() + 1, after.getRevision());
+        AccountSummary summary = accountService.getUserAccountSummaries(user).get(0);
+        assertEquals(after.getBalanceInCents(), summary.getBalanceInCents());
+        assertEquals(after.getRevision(), summary.getRevision());
+    }
+}
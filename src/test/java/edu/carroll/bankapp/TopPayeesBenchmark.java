@@ -0,0 +1,89 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.PayeeSketches;
+import edu.carroll.bankapp.service.SpaceSaving;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures showing a user's top payees from their summaries against grouping
+ * all of their transactions on every view
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:top-payees-bench", "bankapp.outbox.enabled=false" })
+public class TopPayeesBenchmark {
+    private static final int PAYEES = 5_000;
+    private static final int TRANSACTIONS = 100_000;
+    private static final int VIEWS = 20;
+
+    @Autowired
+    private PayeeSketches payeeSketches;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    public void benchmarkTopPayees() {
+        SiteUser user = userService.createUser("Bench Mark", "top-payees@example.com", "bench_top_payees",
+                "password123").getResult();
+        Account account = accountService.createAccount("Checking", (long) 0, user).getResult();
+        Random random = new Random(42);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setName("Benchmark");
+            transaction.setAmountInCents(-(1 + random.nextInt(10_000)));
+            // A few payees are used much more than the rest
+            transaction.setToFrom("Payee " + (int) (PAYEES * Math.pow(random.nextDouble(), 3)));
+            transaction.setAccount(account);
+            transaction.setDate(new Date());
+            transactions.add(transaction);
+        }
+        transactionRepo.saveAll(transactions);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < VIEWS; i++) {
+            assertFalse(transactionRepo.findPayeeTotals(user.getId()).isEmpty());
+        }
+        System.out.printf("[top-payees] grouping %d transactions: %.2f ms a view%n", TRANSACTIONS,
+                (System.nanoTime() - start) / 1e6 / VIEWS);
+
+        start = System.nanoTime();
+        PayeeSketches.TopPayees top = payeeSketches.top(user.getId(), 5);
+        System.out.printf("[top-payees] first view, counting from scratch: %.2f ms%n",
+                (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        for (int i = 0; i < VIEWS * 1000; i++) {
+            top = payeeSketches.top(user.getId(), 5);
+        }
+        System.out.printf("[top-payees] from the summaries: %.2f us a view%n",
+                (System.nanoTime() - start) / 1e3 / (VIEWS * 1000));
+        for (SpaceSaving.Estimate estimate : top.getByCount()) {
+            System.out.printf("[top-payees] %s: %d to %d transactions%n", estimate.getItem(),
+                    estimate.getLowerBound(), estimate.getCount());
+        }
+        System.out.printf("[top-payees] payees not listed have at most %d transactions%n", top.getCountError());
+    }
+}
@@ -0,0 +1,319 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.JournalEntry;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.AccountSummary;
+import edu.carroll.bankapp.service.BalanceRollups;
+import edu.carroll.bankapp.service.LargestTriangleThreeBuckets;
+import edu.carroll.bankapp.service.LedgerService;
+import edu.carroll.bankapp.service.TransactionAnalytics;
+import edu.carroll.bankapp.service.TransactionColumns;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers the in-memory reports. They're only updated when transactions commit,
+ * so these tests commit and use their own database. The chunk size is tiny so
+ * reports are summed in parallel pieces.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:analytics", "bankapp.outbox.enabled=false",
+        "bankapp.analytics.chunk-size=7" })
+public class TransactionAnalyticsTest {
+    @Autowired
+    private TransactionAnalytics analytics;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LedgerService ledger;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+    private final YearMonth thisMonth = YearMonth.now();
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Report User", "report" + userCount + "@example.com",
+                "report_user" + userCount, "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+    }
+
+    private Account account() {
+        return accountService.getUserAccount(user, accountId);
+    }
+
+    private int create(String toFrom, long amountInDollars) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .createTransaction("Purchase", amountInDollars, toFrom, account()).getResult().getId());
+    }
+
+    /**
+     * Save a transaction on an earlier day straight to the database, with its
+     * ledger entry, before the user's columns are loaded
+     */
+    private void createOn(LocalDate day, String toFrom, long amountInDollars) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Transaction transaction = new Transaction();
+            transaction.setName("Purchase");
+            transaction.setToFrom(toFrom);
+            transaction.setAmountInDollars(amountInDollars);
+            transaction.setAccount(account());
+            transaction.setDate(Date.from(day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+            transactionRepo.save(transaction);
+            JournalEntry entry = new JournalEntry("Transaction");
+            entry.addPosting(accountId, transaction.getId(), transaction.getAmountInCents());
+            entry.balanceExternally();
+            ledger.append(entry);
+        });
+    }
+
+    private BalanceRollups.BalanceSeries netWorth(LocalDate from, int width) {
+        List<Integer> accountIds = new ArrayList<>();
+        for (AccountSummary account : accountService.getUserAccountSummaries(user)) {
+            accountIds.add(account.getId());
+        }
+        return analytics.netWorth(user.getId(), accountIds, from, today, width);
+    }
+
+    private List<TransactionColumns.MonthlyTotal> lastThreeMonths(Integer accountId) {
+        return analytics.monthlyTotals(user.getId(), accountId, thisMonth.minusMonths(2), thisMonth);
+    }
+
+    private static List<String> payees(List<TransactionColumns.PayeeTotal> totals) {
+        List<String> names = new ArrayList<>();
+        for (TransactionColumns.PayeeTotal total : totals) {
+            names.add(total.getPayee());
+        }
+        return names;
+    }
+
+    @Test
+    public void testMonthlyTotals() {
+        LocalDate twoMonthsAgo = thisMonth.minusMonths(2).atDay(3);
+        createOn(twoMonthsAgo, "Employer", 2000);
+        createOn(twoMonthsAgo, "Landlord", -1200);
+        for (int i = 0; i < 10; i++) {
+            createOn(twoMonthsAgo.plusDays(i), "Cafe", -5);
+        }
+        create("Bakery", -10);
+
+        List<TransactionColumns.MonthlyTotal> months = lastThreeMonths(null);
+        assertEquals(3, months.size());
+        assertEquals(thisMonth.minusMonths(2).toString(), months.get(0).getMonth());
+        assertEquals(200000, months.get(0).getIncomeInCents());
+        assertEquals(125000, months.get(0).getSpendingInCents());
+        assertEquals(12, months.get(0).getTransactions());
+        assertEquals(0, months.get(1).getTransactions());
+        // The starting balance counts too
+        assertEquals(1000, months.get(2).getSpendingInCents());
+        assertEquals(2, months.get(2).getTransactions());
+    }
+
+    @Test
+    public void testPayeeTotals() {
+        for (int i = 0; i < 10; i++) {
+            createOn(today.minusDays(i), "Cafe", -5);
+        }
+        createOn(today.minusDays(3), "Landlord", -1200);
+        createOn(today.minusDays(3), "Employer", 2000);
+        // Too long ago
+        createOn(today.minusDays(40), "Landlord", -1200);
+
+        List<TransactionColumns.PayeeTotal> totals = analytics.payeeTotals(user.getId(), null,
+                today.minusDays(30), today, 10);
+        assertEquals(List.of("Landlord", "Cafe", "Employer"), payees(totals));
+        assertEquals(120000, totals.get(0).getSpentInCents());
+        assertEquals(1, totals.get(0).getTransactions());
+        assertEquals(5000, totals.get(1).getSpentInCents());
+        assertEquals(10, totals.get(1).getTransactions());
+        assertEquals(200000, totals.get(2).getReceivedInCents());
+
+        assertEquals(List.of("Landlord"), payees(analytics.payeeTotals(user.getId(), null,
+                today.minusDays(30), today, 1)));
+    }
+
+    @Test
+    public void testNewTransactionsAreSeenWithoutReloading() {
+        create("Cafe", -5);
+        assertEquals(1, analytics.payeeTotals(user.getId(), null, today, today, 10).size());
+        long loads = analytics.getLoadCount();
+
+        create("Bakery", -10);
+        create("Bakery", -10);
+        List<TransactionColumns.PayeeTotal> totals = analytics.payeeTotals(user.getId(), null, today, today, 10);
+        assertEquals(List.of("Bakery", "Cafe"), payees(totals));
+        assertEquals(2000, totals.get(0).getSpentInCents());
+        assertEquals(loads, analytics.getLoadCount());
+    }
+
+    @Test
+    public void testTransfersAreOnlyInBalances() {
+        create("Employer", 100);
+        lastThreeMonths(null);
+        int savingsId = new TransactionTemplate(transactionManager).execute(status -> {
+            Account savings = accountService.createAccount("Savings", (long) 0, user).getResult();
+            transactionService.createTransfer(savings, account(), 40);
+            return savings.getId();
+        });
+
+        List<TransactionColumns.MonthlyTotal> months = lastThreeMonths(null);
+        assertEquals(10000, months.get(2).getIncomeInCents());
+        assertEquals(0, months.get(2).getSpendingInCents());
+        assertTrue(analytics.payeeTotals(user.getId(), null, today, today, 10).stream()
+                .noneMatch(total -> total.getPayee().equals("Savings") || total.getPayee().equals("Checking")));
+
+        TransactionColumns.BalanceCurve checking = analytics.balanceCurve(user.getId(), accountId,
+                today.minusDays(1), today);
+        assertEquals(today.minusDays(1).toString(), checking.getStart());
+        assertArrayEquals(new long[] { 0, 6000 }, checking.getBalancesInCents());
+        TransactionColumns.BalanceCurve savings = analytics.balanceCurve(user.getId(), savingsId,
+                today.minusDays(1), today);
+        assertArrayEquals(new long[] { 0, 4000 }, savings.getBalancesInCents());
+        TransactionColumns.BalanceCurve all = analytics.balanceCurve(user.getId(), null, today.minusDays(1), today);
+        assertArrayEquals(new long[] { 0, 10000 }, all.getBalancesInCents());
+    }
+
+    @Test
+    public void testBalanceCurveCarriesEarlierTransactions() {
+        createOn(today.minusDays(20), "Employer", 500);
+        for (int i = 0; i < 10; i++) {
+            createOn(today.minusDays(2), "Cafe", -5);
+        }
+
+        long[] balances = analytics.balanceCurve(user.getId(), accountId, today.minusDays(3), today)
+                .getBalancesInCents();
+        assertArrayEquals(new long[] { 50000, 45000, 45000, 45000 }, balances);
+    }
+
+    @Test
+    public void testUpdatesAndDeletesAreReflected() {
+        for (int i = 0; i < 10; i++) {
+            create("Cafe", -5);
+        }
+        int landlord = create("Landlord", -1200);
+        int bakery = create("Bakery", -10);
+        assertEquals(List.of("Landlord", "Cafe", "Bakery"), payees(analytics.payeeTotals(user.getId(), null,
+                today, today, 10)));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Transaction transaction = transactionService.getUserTransaction(user, landlord);
+            transactionService.updateTransaction(user, transaction, "Rent", -1, "Landlord");
+            transactionService.deleteTransaction(user, transactionService.getUserTransaction(user, bakery));
+        });
+
+        List<TransactionColumns.PayeeTotal> totals = analytics.payeeTotals(user.getId(), null, today, today, 10);
+        assertEquals(List.of("Cafe", "Landlord"), payees(totals));
+        assertEquals(100, totals.get(1).getSpentInCents());
+        // The starting balance, the cafe and the landlord
+        assertEquals(12, lastThreeMonths(accountId).get(2).getTransactions());
+
+        // Deleting the account takes its transactions out of every report
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> accountService
+                .deleteAccount(user, account()));
+        assertEquals(0, lastThreeMonths(null).get(2).getTransactions());
+    }
+
+    @Test
+    public void testNetWorthDayByDay() {
+        createOn(today.minusDays(400), "Employer", 1000);
+        createOn(today.minusDays(200), "Landlord", -300);
+        create("Cafe", -5);
+        // Transfers between accounts don't change net worth
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account savings = accountService.createAccount("Savings", (long) 0, user).getResult();
+            transactionService.createTransfer(savings, account(), 100);
+        });
+
+        BalanceRollups.BalanceSeries series = netWorth(today.minusDays(730), 1000);
+        assertEquals(731, series.getDays().size());
+        List<String> days = series.getDays();
+        long[] balances = series.getBalancesInCents();
+        assertEquals(0, balances[0]);
+        assertEquals(0, balances[days.indexOf(today.minusDays(401).toString())]);
+        assertEquals(100000, balances[days.indexOf(today.minusDays(400).toString())]);
+        assertEquals(70000, balances[days.indexOf(today.minusDays(200).toString())]);
+        assertEquals(70000, balances[days.indexOf(today.minusDays(1).toString())]);
+        assertEquals(69500, balances[730]);
+    }
+
+    @Test
+    public void testNetWorthOverDecadesIsThinnedOut() {
+        createOn(today.minusYears(25), "Employer", 500);
+        createOn(today.minusDays(400), "Employer", 1000);
+        createOn(today.minusDays(200), "Landlord", -300);
+        create("Cafe", -5);
+
+        BalanceRollups.BalanceSeries series = netWorth(today.minusYears(30), 50);
+        assertEquals(50, series.getDays().size());
+        assertEquals(today.minusYears(30).toString(), series.getDays().get(0));
+        assertEquals(today.toString(), series.getDays().get(49));
+        long[] balances = series.getBalancesInCents();
+        assertEquals(0, balances[0]);
+        assertEquals(119500, balances[49]);
+        // The peak survives being thinned out
+        assertEquals(150000, Arrays.stream(balances).max().getAsLong());
+
+        // Changes show up without reloading
+        long loads = analytics.getLoadCount();
+        create("Bakery", -10);
+        balances = netWorth(today.minusYears(30), 50).getBalancesInCents();
+        assertEquals(118500, balances[49]);
+        assertEquals(loads, analytics.getLoadCount());
+    }
+
+    @Test
+    public void testDownsamplingKeepsSpikes() {
+        double[] x = new double[1000];
+        double[] y = new double[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 50.0);
+        }
+        y[517] = 50;
+        int[] kept = LargestTriangleThreeBuckets.select(x, y, 40);
+        assertEquals(40, kept.length);
+        assertEquals(0, kept[0]);
+        assertEquals(999, kept[39]);
+        assertTrue(Arrays.stream(kept).anyMatch(i -> i == 517));
+        // Fewer points than asked for are all kept
+        assertEquals(5, LargestTriangleThreeBuckets.select(Arrays.copyOf(x, 5), Arrays.copyOf(y, 5), 40).length);
+    }
+}
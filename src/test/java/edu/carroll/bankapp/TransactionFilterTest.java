@@ -0,0 +1,173 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.ServiceResponse;
+import edu.carroll.bankapp.service.TransactionFilter;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers filtered, sorted pages of an account's transactions
+ */
+@Transactional
+@SpringBootTest
+public class TransactionFilterTest {
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    private SiteUser user;
+    private Account account;
+
+    @BeforeEach
+    public void createAccount() {
+        user = userService.createUser("Filter User", "filter@example.com", "filter_user", "password123")
+                .getResult();
+        account = accountService.createAccount("Checking", (long) 0, user).getResult();
+        // The account already has its starting balance, dated now
+        add("Rent", -1200, "Landlord", 20);
+        add("Paycheck", 2000, "Employer", 15);
+        add("Groceries", -85, "Bakery", 10);
+        add("Coffee", -5, "Cafe", 5);
+        add("Refund", 40, "Bakery", 1);
+    }
+
+    private void add(String name, long dollars, String toFrom, int daysAgo) {
+        Transaction transaction = new Transaction();
+        transaction.setName(name);
+        transaction.setAmountInDollars(dollars);
+        transaction.setToFrom(toFrom);
+        transaction.setAccount(account);
+        transaction.setDate(Date.from(TODAY.minusDays(daysAgo).atStartOfDay(ZoneId.systemDefault())
+                .toInstant().plusSeconds(3600)));
+        transactionRepo.save(transaction);
+    }
+
+    private List<String> names(TransactionFilter filter) {
+        ServiceResponse<Page<Transaction>> response = transactionService.findTransactions(user, account, filter);
+        assertNotNull(response.getResult(), response.getMessage());
+        List<String> names = new ArrayList<>();
+        for (Transaction transaction : response.getResult()) {
+            names.add(transaction.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testSortedByDateByDefault() {
+        assertEquals(List.of("Rent", "Paycheck", "Groceries", "Coffee", "Refund", "Starting Balance"),
+                names(new TransactionFilter()));
+    }
+
+    @Test
+    public void testSortByAmountAndPayee() {
+        TransactionFilter filter = new TransactionFilter();
+        filter.setSortBy(TransactionFilter.SortBy.AMOUNT);
+        filter.setDescending(true);
+        assertEquals(List.of("Paycheck", "Refund", "Starting Balance", "Coffee", "Groceries", "Rent"),
+                names(filter));
+
+        filter.setSortBy(TransactionFilter.SortBy.PAYEE);
+        filter.setDescending(false);
+        // Same payee falls back to the order they were added
+        assertEquals(List.of("Starting Balance", "Groceries", "Refund", "Coffee", "Paycheck", "Rent"),
+                names(filter));
+    }
+
+    @Test
+    public void testDateAndAmountBounds() {
+        TransactionFilter filter = new TransactionFilter();
+        filter.setFromDate(TODAY.minusDays(15));
+        filter.setToDate(TODAY.minusDays(5));
+        assertEquals(List.of("Paycheck", "Groceries", "Coffee"), names(filter));
+
+        filter.setMinAmountInDollars(-100.0);
+        filter.setMaxAmountInDollars(0.0);
+        assertEquals(List.of("Groceries", "Coffee"), names(filter));
+    }
+
+    @Test
+    public void testPayeeAndDirection() {
+        TransactionFilter filter = new TransactionFilter();
+        filter.setPayee(" bak ");
+        assertEquals(List.of("Groceries", "Refund"), names(filter));
+
+        filter.setDirection(TransactionFilter.Direction.INCOME);
+        assertEquals(List.of("Refund"), names(filter));
+
+        // The starting balance is zero, so it's neither income nor expense
+        filter.setPayee(null);
+        filter.setDirection(TransactionFilter.Direction.EXPENSE);
+        assertEquals(List.of("Rent", "Groceries", "Coffee"), names(filter));
+
+        // Wildcards are matched literally
+        filter.setDirection(null);
+        filter.setPayee("%");
+        assertTrue(names(filter).isEmpty());
+    }
+
+    @Test
+    public void testPages() {
+        TransactionFilter filter = new TransactionFilter();
+        filter.setPageSize(2);
+        filter.setPage(2);
+        Page<Transaction> page = transactionService.findTransactions(user, account, filter).getResult();
+        assertEquals(6, page.getTotalElements());
+        assertEquals(3, page.getTotalPages());
+        assertEquals(2, page.getNumberOfElements());
+        assertEquals("Refund", page.getContent().get(0).getName());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    public void testInvalidFiltersAreRejected() {
+        TransactionFilter filter = new TransactionFilter();
+        filter.setFromDate(TODAY);
+        filter.setToDate(TODAY.minusDays(1));
+        assertNull(transactionService.findTransactions(user, account, filter).getResult());
+
+        filter = new TransactionFilter();
+        filter.setMinAmountInDollars(10.0);
+        filter.setMaxAmountInDollars(-10.0);
+        assertNull(transactionService.findTransactions(user, account, filter).getResult());
+
+        filter = new TransactionFilter();
+        filter.setPageSize(TransactionFilter.MAX_PAGE_SIZE + 1);
+        assertNull(transactionService.findTransactions(user, account, filter).getResult());
+    }
+
+    @Test
+    public void testOtherUsersAccountsAreRefused() {
+        SiteUser other = userService.createUser("Other User", "other-filter@example.com", "other_filter",
+                "password123").getResult();
+        assertNull(transactionService.findTransactions(other, account, new TransactionFilter()).getResult());
+    }
+}
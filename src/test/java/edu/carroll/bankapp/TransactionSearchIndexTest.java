@@ -0,0 +1,187 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.jpa.repo.AccountRepository;
+import edu.carroll.bankapp.jpa.repo.TransactionRepository;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionSearchIndex;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers searching transactions. The index is only changed when database
+ * transactions commit, so these tests commit and use their own database.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:search", "bankapp.outbox.enabled=false" })
+public class TransactionSearchIndexTest {
+    @Autowired
+    private TransactionSearchIndex searchIndex;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TransactionRepository transactionRepo;
+
+    @Autowired
+    private AccountRepository accountRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @BeforeEach
+    public void createAccount() throws InterruptedException {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Search User", "search" + userCount + "@example.com",
+                "search_user" + userCount, "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+        // The index is built in the background at startup
+        for (int i = 0; i < 100 && !searchIndex.isReady(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(searchIndex.isReady());
+    }
+
+    private Transaction create(String name, String toFrom) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .createTransaction(name, -10, toFrom, accountService.getUserAccount(user, accountId)).getResult());
+    }
+
+    private List<String> search(String query) {
+        return new TransactionTemplate(transactionManager).execute(status -> transactionService
+                .searchTransactions(user, query, 10).stream().map(Transaction::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(List.of("cafe", "creme", "brulee", "2024"),
+                TransactionSearchIndex.tokenize("Café Crème-Brûlée, 2024!"));
+        assertTrue(TransactionSearchIndex.tokenize("  --  ").isEmpty());
+        assertTrue(TransactionSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void testPrefixesAndEveryWordMustMatch() {
+        create("Groceries", "Whole Foods Market");
+        create("Gas", "Shell Station");
+        create("Grocery run", "Trader Joe's");
+
+        assertEquals(List.of("Grocery run", "Groceries"), search("groc"));
+        assertEquals(List.of("Groceries"), search("GROC whole"));
+        assertEquals(List.of("Grocery run"), search("trader joe"));
+        assertTrue(search("groc shell").isEmpty());
+        assertTrue(search("nothing").isEmpty());
+        assertTrue(search("").isEmpty());
+    }
+
+    @Test
+    public void testExactMatchesAndNamesRankHigher() {
+        create("Books", "Amazon");
+        create("Amazonian plants", "Nursery");
+        create("Paid Amazon", "Bank");
+
+        assertEquals(List.of("Paid Amazon", "Amazonian plants", "Books"), search("amazon"));
+    }
+
+    @Test
+    public void testOnlyTheUsersOwnTransactionsAreFound() {
+        create("Secret purchase", "Somewhere");
+        SiteUser other = user;
+        userCount++;
+        user = userService.createUser("Search User", "search" + userCount + "@example.com",
+                "search_user" + userCount, "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 0, user).getResult().getId();
+        assertTrue(search("secret").isEmpty());
+        user = other;
+        assertEquals(List.of("Secret purchase"), search("secret"));
+    }
+
+    @Test
+    public void testChangesAreIndexed() {
+        Transaction coffee = create("Coffee", "Cafe");
+        Transaction lunch = create("Lunch", "Cafe");
+        assertEquals(2, search("cafe").size());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .updateTransaction(user, transactionRepo.findById(coffee.getId()).get(), "Espresso", 10, "Cafe"));
+        assertTrue(search("coffee").isEmpty());
+        assertEquals(List.of("Espresso"), search("espresso"));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> transactionService
+                .deleteTransaction(user, transactionRepo.findById(lunch.getId()).get()));
+        assertEquals(List.of("Espresso"), search("cafe"));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> accountService
+                .deleteAccount(user, accountId));
+        assertTrue(search("cafe").isEmpty());
+    }
+
+    @Test
+    public void testRolledBackChangesAreNotIndexed() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.createTransaction("Rolled back", -10, "Nowhere",
+                    accountService.getUserAccount(user, accountId));
+            status.setRollbackOnly();
+        });
+        assertTrue(searchIndex.search(user.getId(), "rolled", 10).isEmpty());
+    }
+
+    @Test
+    public void testRebuiltAndSavedIndexesMatch() throws IOException, InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            create("Rebuild " + i, "Payee " + (i % 5));
+        }
+        List<String> expected = search("payee 3");
+        assertEquals(10, expected.size());
+
+        // Rebuilding from the database finds the same transactions
+        searchIndex.rebuild();
+        assertEquals(expected, search("payee 3"));
+
+        // So does an index saved to disk and loaded back, and the saved copy is
+        // only used once
+        Path file = Files.createTempDirectory("search-index").resolve("index.bin");
+        TransactionSearchIndex saved = new TransactionSearchIndex(transactionRepo, accountRepo, file.toString(), 2);
+        saved.rebuild();
+        saved.save();
+        assertTrue(Files.exists(file));
+        TransactionSearchIndex loaded = new TransactionSearchIndex(transactionRepo, accountRepo, file.toString(), 2);
+        loaded.start();
+        for (int i = 0; i < 100 && !loaded.isReady(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(loaded.isReady());
+        assertFalse(Files.exists(file));
+        assertEquals(searchIndex.search(user.getId(), "payee 3", 10).stream()
+                .map(TransactionSearchIndex.Hit::getTransactionId).collect(Collectors.toList()),
+                loaded.search(user.getId(), "payee 3", 10).stream()
+                        .map(TransactionSearchIndex.Hit::getTransactionId).collect(Collectors.toList()));
+    }
+}
@@ -9,8 +9,13 @@ import edu.carroll.bankapp.service.AccountService;
 import jakarta.transaction.Transactional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -132,4 +137,193 @@ public class TransactionServiceImplTest {
         // Make sure balance reflects deletion
         assertEquals(balanceBeforeDeletionInCents - transactionAmountInCents, checking.getBalanceInCents());
     }
+
+    @Test
+    public void testDeleteTransactions() {
+        // Populate database
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 500, john).getResult();
+        List<Integer> toDelete = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            toDelete.add(transactionService.createTransaction("Bad import " + i, (long) -10, "Import", checking)
+                    .getResult().getId());
+        }
+        Transaction kept = transactionService.createTransaction("Good row", (long) -25, "Store", checking)
+                .getResult();
+        transactionService.createTransfer(savings, checking, 100);
+        // Select one half of the transfer, the other half should go with it
+        for (Transaction transaction : checking.getTransactions()) {
+            if (transaction.getName().equals("Transfer to Savings")) {
+                toDelete.add(transaction.getId());
+            }
+        }
+        int savingsTransactions = savings.getTransactions().size();
+
+        // Delete them all at once
+        assertEquals(12, transactionService.deleteTransactions(john, toDelete).getResult());
+
+        // Reload the accounts and make sure the balances reflect the deletion
+        Account fetchedChecking = accountService.getUserAccount(john, checking.getId());
+        Account fetchedSavings = accountService.getUserAccount(john, savings.getId());
+        assertEquals((1000 - 25) * 100, fetchedChecking.getBalanceInCents());
+        assertEquals(500 * 100, fetchedSavings.getBalanceInCents());
+        assertEquals(savingsTransactions - 1, fetchedSavings.getTransactions().size());
+        for (Integer id : toDelete) {
+            assertNull(transactionService.getUserTransaction(john, id));
+        }
+        assertNotNull(transactionService.getUserTransaction(john, kept.getId()));
+    }
+
+    @Test
+    public void testDeleteTransactionsNotOwned() {
+        // Give john and jane a transaction each
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        SiteUser jane = userService.createUser(JANE_NAME, JANE_EMAIL, JANE_USERNAME, JANE_PASSWORD).getResult();
+        Account johnsChecking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Account janesChecking = accountService.createAccount("Checking", (long) 1000, jane).getResult();
+        Transaction johns = transactionService.createTransaction("Mine", (long) 5, "?", johnsChecking).getResult();
+        Transaction janes = transactionService.createTransaction("Hers", (long) 5, "?", janesChecking).getResult();
+
+        // John can't delete jane's transaction, even alongside his own
+        assertEquals(0, transactionService.deleteTransactions(john, List.of(johns.getId(), janes.getId()))
+                .getResult());
+        assertNotNull(transactionService.getUserTransaction(john, johns.getId()));
+        assertNotNull(transactionService.getUserTransaction(jane, janes.getId()));
+    }
+
+    @Test
+    public void testUpdateTransaction() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Transaction transaction = transactionService.createTransaction("Coffee", (long) -50, "Cafe", checking)
+                .getResult();
+        int transactionId = transaction.getId();
+
+        // Fix the amount and the payee
+        Transaction updated = transactionService.updateTransaction(john, transaction, "Coffee", (long) -5,
+                "Coffee Shop").getResult();
+        assertNotNull(updated);
+        assertEquals(transactionId, updated.getId());
+
+        // Reload and make sure only the difference was applied
+        Transaction fetched = transactionService.getUserTransaction(john, transactionId);
+        assertEquals(-5, fetched.getAmountInDollars());
+        assertEquals("Coffee Shop", fetched.getToFrom());
+        assertEquals((1000 - 5) * 100, accountService.getUserAccount(john, checking.getId()).getBalanceInCents());
+        // The account already loaded is kept up to date, not left behind
+        assertEquals((1000 - 5) * 100, checking.getBalanceInCents());
+        assertEquals(checking.getRevision(),
+                accountService.getUserAccount(john, checking.getId()).getRevision());
+    }
+
+    @Test
+    public void testEditTransaction() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Transaction transaction = transactionService.createTransaction("Coffee", (long) -50, "Cafe", checking)
+                .getResult();
+        int transactionId = transaction.getId();
+
+        // Too many tags, so nothing is changed
+        List<String> tooMany = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            tooMany.add("tag" + i);
+        }
+        assertNull(transactionService.editTransaction(john, transaction, "Coffee", (long) -5, "Coffee Shop",
+                "Dining", tooMany).getResult());
+        assertEquals(-50, transactionService.getUserTransaction(john, transactionId).getAmountInDollars());
+        assertEquals((1000 - 50) * 100, accountService.getUserAccount(john, checking.getId()).getBalanceInCents());
+
+        // The amount and the category change together
+        assertNotNull(transactionService.editTransaction(john, transaction, "Coffee", (long) -5, "Coffee Shop",
+                "Dining", List.of("morning")).getResult());
+        Transaction fetched = transactionService.getUserTransaction(john, transactionId);
+        assertEquals(-5, fetched.getAmountInDollars());
+        assertEquals("Dining", fetched.getCategory().getName());
+        assertEquals(1, fetched.getTags().size());
+        assertEquals((1000 - 5) * 100, accountService.getUserAccount(john, checking.getId()).getBalanceInCents());
+    }
+
+    @Test
+    public void testUpdateTransfer() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Account savings = accountService.createAccount("Savings", (long) 0, john).getResult();
+        transactionService.createTransfer(savings, checking, 100);
+        Transaction withdrawal = null;
+        for (Transaction transaction : checking.getTransactions()) {
+            if (transaction.getTransferPairId() != null) {
+                withdrawal = transaction;
+            }
+        }
+        assertNotNull(withdrawal);
+
+        // Change the transfer amount from one side
+        transactionService.updateTransaction(john, withdrawal, withdrawal.getName(), (long) -250,
+                withdrawal.getToFrom());
+
+        // Both sides should have moved
+        assertEquals((1000 - 250) * 100,
+                accountService.getUserAccount(john, checking.getId()).getBalanceInCents());
+        assertEquals(250 * 100, accountService.getUserAccount(john, savings.getId()).getBalanceInCents());
+        Transaction deposit = transactionService.getUserTransaction(john, withdrawal.getTransferPairId());
+        assertEquals(250, deposit.getAmountInDollars());
+
+        // Edited as income, it's still a transfer to savings
+        withdrawal = transactionService.getUserTransaction(john, withdrawal.getId());
+        transactionService.updateTransaction(john, withdrawal, withdrawal.getName(), (long) 300,
+                withdrawal.getToFrom());
+        assertEquals(-300, transactionService.getUserTransaction(john, withdrawal.getId()).getAmountInDollars());
+        assertEquals((1000 - 300) * 100,
+                accountService.getUserAccount(john, checking.getId()).getBalanceInCents());
+        assertEquals(300 * 100, accountService.getUserAccount(john, savings.getId()).getBalanceInCents());
+    }
+
+    @Test
+    public void testUpdateTransactionNeedsRecipient() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Transaction transaction = transactionService.createTransaction("Coffee", (long) -5, "Cafe", checking)
+                .getResult();
+
+        assertEquals("Transaction recipient cannot be blank",
+                transactionService.updateTransaction(john, transaction, "Coffee", (long) -5, null).getMessage());
+        assertEquals("Transaction recipient cannot be blank",
+                transactionService.updateTransaction(john, transaction, "Coffee", (long) -5, " ").getMessage());
+        assertEquals("Transaction recipient is too long", transactionService
+                .updateTransaction(john, transaction, "Coffee", (long) -5, "x".repeat(256)).getMessage());
+    }
+
+    @Test
+    public void testFailedTransferChangesNothing() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        // Fine as an account name, but too long once it's in "Transfer to ..."
+        Account savings = accountService.createAccount("S".repeat(250), (long) 0, john).getResult();
+        int checkingTransactions = checking.getTransactions().size();
+
+        assertFalse(transactionService.createTransfer(savings, checking, 100).getResult());
+
+        // Neither half was written
+        assertEquals(1000 * 100, accountService.getUserAccount(john, checking.getId()).getBalanceInCents());
+        assertEquals(0, accountService.getUserAccount(john, savings.getId()).getBalanceInCents());
+        assertEquals(checkingTransactions, accountService.getUserAccount(john, checking.getId())
+                .getTransactions().size());
+        assertTrue(accountService.getUserAccount(john, savings.getId()).getTransactions().isEmpty());
+    }
+
+    @Test
+    public void testUpdateTransactionNotOwned() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        SiteUser jane = userService.createUser(JANE_NAME, JANE_EMAIL, JANE_USERNAME, JANE_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1000, john).getResult();
+        Transaction transaction = transactionService.createTransaction("Coffee", (long) -5, "Cafe", checking)
+                .getResult();
+
+        // Jane can't edit john's transaction
+        assertNull(transactionService.updateTransaction(jane, transaction, "Mine now", (long) 5000, "Jane")
+                .getResult());
+        assertEquals(-5, transactionService.getUserTransaction(john, transaction.getId()).getAmountInDollars());
+    }
 }
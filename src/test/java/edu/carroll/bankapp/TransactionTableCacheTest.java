@@ -0,0 +1,131 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import edu.carroll.bankapp.web.TransactionTableCache;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Transactional
+@SpringBootTest
+public class TransactionTableCacheTest {
+    @Autowired
+    private TransactionTableCache transactionTableCache;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    public static final String JOHN_NAME = "John Doe";
+    public static final String JOHN_EMAIL = "john@example.com";
+    public static final String JOHN_USERNAME = "johndoe";
+    public static final String JOHN_PASSWORD = "password123";
+
+    private final AtomicInteger renders = new AtomicInteger();
+
+    private Supplier<String> renderer(String html) {
+        return () -> {
+            renders.incrementAndGet();
+            return html;
+        };
+    }
+
+    @Test
+    public void testRenderedTableFollowsRevision() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        transactionService.createTransaction("Coffee", -5, "Cafe", checking);
+
+        String table = transactionTableCache.getTable(checking);
+        assertTrue(table.contains("Coffee"));
+        assertTrue(table.contains("$1,935.00"));
+        // Nothing changed, so it's served from the cache
+        long hits = transactionTableCache.getHitCount();
+        assertSame(table, transactionTableCache.getTable(checking));
+        assertEquals(hits + 1, transactionTableCache.getHitCount());
+
+        // A new transaction means a new revision and a fresh render
+        transactionService.createTransaction("Bagel", -3, "Cafe", checking);
+        table = transactionTableCache.getTable(checking);
+        assertTrue(table.contains("Bagel"));
+        assertTrue(table.contains("$1,932.00"));
+    }
+
+    @Test
+    public void testTotalKeepsCents() {
+        SiteUser john = userService.createUser(JOHN_NAME, JOHN_EMAIL, JOHN_USERNAME, JOHN_PASSWORD).getResult();
+        Account checking = accountService.createAccount("Checking", (long) 1940, john).getResult();
+        // A balance from the posting engine can have cents
+        assertTrue(transactionTableCache.getTable(checking, 123456).contains("$1,234.56"));
+
+        Account overdrawn = new Account();
+        overdrawn.setBalanceInCents(-50);
+        String total = transactionTableCache.renderTotal(overdrawn);
+        assertTrue(total.contains("$-0.50"), total);
+        // Even a small overdraft is shown as one
+        assertTrue(total.contains("text-danger"), total);
+        assertFalse(total.contains("text-success"), total);
+    }
+
+    @Test
+    public void testCachedPerRevision() {
+        TransactionTableCache cache = new TransactionTableCache(null, 1024);
+        assertEquals("<tr>1</tr>", cache.get(1, 1, renderer("<tr>1</tr>")));
+        assertEquals("<tr>1</tr>", cache.get(1, 1, renderer("<tr>1</tr>")));
+        assertEquals(1, renders.get());
+
+        // A newer revision replaces the old one
+        assertEquals("<tr>2</tr>", cache.get(1, 2, renderer("<tr>2</tr>")));
+        assertEquals(2, renders.get());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        String html = "x".repeat(100);
+        // Room for about three tables
+        TransactionTableCache cache = new TransactionTableCache(null, 3 * (2 * 100 + 128));
+        cache.get(1, 1, renderer(html));
+        cache.get(2, 1, renderer(html));
+        cache.get(3, 1, renderer(html));
+        // Use the first account again so the second is the oldest
+        cache.get(1, 1, renderer(html));
+        cache.get(4, 1, renderer(html));
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getSizeInBytes() <= 3 * (2 * 100 + 128));
+        renders.set(0);
+        cache.get(1, 1, renderer(html));
+        assertEquals(0, renders.get());
+        cache.get(2, 1, renderer(html));
+        assertEquals(1, renders.get());
+    }
+
+    @Test
+    public void testDisabledWithNoRoom() {
+        TransactionTableCache cache = new TransactionTableCache(null, 0);
+        cache.get(1, 1, renderer("<tr>1</tr>"));
+        cache.get(1, 1, renderer("<tr>1</tr>"));
+        assertEquals(2, renders.get());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSizeInBytes());
+    }
+}
@@ -0,0 +1,93 @@
+package edu.carroll.bankapp;
+
+import com.sun.management.ThreadMXBean;
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Measures the time and memory allocated per account page render. Subclasses
+ * run this with the transaction table cache on and off so the results can be
+ * compared.
+ */
+@Tag("benchmark")
+public abstract class TransactionTableRenderBenchmark {
+    private static final int TRANSACTIONS = 500;
+    private static final int WARMUP_REQUESTS = 200;
+    private static final int MEASURED_REQUESTS = 2_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Label for the settings being measured
+     *
+     * @return label printed with the results
+     */
+    protected abstract String label();
+
+    @Test
+    public void benchmarkAccountPage() throws Exception {
+        String username = "render_" + label();
+        SiteUser user = userService.createUser("Render Bench", username + "@example.com", username, "password123")
+                .getResult();
+        int accountId = accountService.createAccount("Checking", (long) 100_000, user).getResult().getId();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account account = accountService.getUserAccount(user, accountId);
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                transactionService.createTransaction("Purchase " + i, -(i % 90) - 1, "Store " + (i % 7), account);
+            }
+        });
+
+        MockHttpSession session = new MockHttpSession();
+        request(username, accountId, session, WARMUP_REQUESTS);
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        request(username, accountId, session, MEASURED_REQUESTS);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.out.printf("[%s] %d account pages with %d transactions: %.2f ms and %d KB allocated per request%n",
+                label(), MEASURED_REQUESTS, TRANSACTIONS, elapsed / 1e6 / MEASURED_REQUESTS,
+                allocated / 1024 / MEASURED_REQUESTS);
+    }
+
+    /**
+     * Load the account page the given number of times, without revalidating
+     */
+    private void request(String username, int accountId, MockHttpSession session, int requests) throws Exception {
+        for (int i = 0; i < requests; i++) {
+            mockMvc.perform(get("/account/" + accountId).session(session).with(user(username)))
+                    .andExpect(status().isOk());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.jpa.model.Transaction;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.LedgerService;
+import edu.carroll.bankapp.service.ServiceResponse;
+import edu.carroll.bankapp.service.TransactionWriteQueue;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Covers the transaction write queue. Batches are committed by the queue's
+ * writer, so these tests use their own database. Batches never fill up or time
+ * out on their own here, so the tests decide when they're written by flushing.
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:write-queue", "bankapp.outbox.enabled=false",
+        "bankapp.write-queue.enabled=true", "bankapp.write-queue.batch-size=100",
+        "bankapp.write-queue.max-latency-ms=600000", "bankapp.write-queue.max-pending=5",
+        "bankapp.write-queue.offer-timeout-ms=50" })
+public class TransactionWriteQueueTest {
+    @Autowired
+    private TransactionWriteQueue writeQueue;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LedgerService ledger;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static int userCount = 0;
+
+    private SiteUser user;
+    private int accountId;
+
+    @DynamicPropertySource
+    static void queueDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String dir = Files.createTempDirectory("write-queue-test").toString();
+        registry.add("bankapp.write-queue.dir", () -> dir);
+    }
+
+    @BeforeEach
+    public void createAccount() {
+        // Every test gets a fresh user, since everything is committed
+        userCount++;
+        user = userService.createUser("Queue User", "queue" + userCount + "@example.com", "queue_user" + userCount,
+                "password123").getResult();
+        accountId = accountService.createAccount("Checking", (long) 100, user).getResult().getId();
+    }
+
+    @AfterEach
+    public void flush() {
+        assertTrue(writeQueue.flush(5000));
+    }
+
+    private ServiceResponse<Transaction> submit(String name, long amountInDollars) {
+        return new TransactionTemplate(transactionManager).execute(status -> writeQueue.submit(name,
+                amountInDollars, "Test", accountService.getUserAccount(user, accountId)));
+    }
+
+    private long balanceInCents() {
+        return accountService.getUserAccount(user, accountId).getBalanceInCents();
+    }
+
+    @Test
+    public void testQueuedTransactionsAreWrittenInOneBatch() {
+        assertTrue(writeQueue.isQueueing());
+        long batches = writeQueue.getBatchCount();
+        long written = writeQueue.getWrittenCount();
+        for (int i = 1; i <= 5; i++) {
+            ServiceResponse<Transaction> response = submit("Queued " + i, i);
+            // Acknowledged, but not written yet
+            assertNull(response.getResult());
+            assertTrue(response.getMessage().startsWith("Transaction added"));
+        }
+        assertEquals(5, writeQueue.getPendingCount());
+        assertEquals(10_000, balanceInCents());
+
+        assertTrue(writeQueue.flush(5000));
+        assertEquals(batches + 1, writeQueue.getBatchCount());
+        assertEquals(written + 5, writeQueue.getWrittenCount());
+        assertEquals(10_000 + 1500, balanceInCents());
+        assertEquals(10_000 + 1500, ledger.getBalanceInCents(accountId));
+    }
+
+    @Test
+    public void testFullQueueFailsOverToSynchronousWrites() {
+        long failovers = writeQueue.getFailoverCount();
+        for (int i = 0; i < 5; i++) {
+            assertNull(submit("Queued " + i, 1).getResult());
+        }
+
+        // No room, so this one is written right away
+        ServiceResponse<Transaction> response = submit("Synchronous", 10);
+        assertNotNull(response.getResult());
+        assertEquals(failovers + 1, writeQueue.getFailoverCount());
+        assertEquals(10_000 + 1000, balanceInCents());
+
+        assertTrue(writeQueue.flush(5000));
+        assertEquals(10_000 + 1500, balanceInCents());
+    }
+
+    @Test
+    public void testInvalidTransactionIsNotQueued() {
+        ServiceResponse<Transaction> response = submit("", 1);
+        assertNull(response.getResult());
+        assertEquals("Transaction name cannot be blank", response.getMessage());
+        assertEquals(0, writeQueue.getPendingCount());
+    }
+}
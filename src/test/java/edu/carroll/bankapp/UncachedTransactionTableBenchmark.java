@@ -0,0 +1,19 @@
+package edu.carroll.bankapp;
+
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Account page rendering with the transaction table cache off
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:uncached-table-bench",
+        "bankapp.fragment-cache.max-bytes=0"
+})
+@AutoConfigureMockMvc
+public class UncachedTransactionTableBenchmark extends TransactionTableRenderBenchmark {
+    @Override
+    protected String label() {
+        return "uncached";
+    }
+}
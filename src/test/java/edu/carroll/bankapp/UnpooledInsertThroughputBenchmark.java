@@ -0,0 +1,20 @@
+package edu.carroll.bankapp;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Insert throughput with one id fetch per insert and no JDBC batching. This is
+ * a worst case for comparison, not how the app was set up before; see
+ * BaselineInsertThroughputBenchmark for that.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:unpooled-bench",
+        "spring.jpa.properties.bankapp.id.allocation-size=1",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=0"
+})
+public class UnpooledInsertThroughputBenchmark extends InsertThroughputBenchmark {
+    @Override
+    protected String label() {
+        return "unpooled";
+    }
+}
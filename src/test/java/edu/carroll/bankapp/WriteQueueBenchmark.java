@@ -0,0 +1,146 @@
+package edu.carroll.bankapp;
+
+import edu.carroll.bankapp.jpa.model.Account;
+import edu.carroll.bankapp.jpa.model.SiteUser;
+import edu.carroll.bankapp.service.AccountService;
+import edu.carroll.bankapp.service.EngineAccounts;
+import edu.carroll.bankapp.service.JpaPostingProjection;
+import edu.carroll.bankapp.service.TransactionService;
+import edu.carroll.bankapp.service.TransactionWriteQueue;
+import edu.carroll.bankapp.service.UserService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures adding transactions from many threads at once, synchronously and
+ * through the write queue at several batch settings. Prints throughput (until
+ * everything is in the database) and the latency submitters see, so the
+ * settings can be compared as curves.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:write-queue-bench",
+        "bankapp.outbox.enabled=false" })
+public class WriteQueueBenchmark {
+    private static final int THREADS = 16;
+    private static final int SUBMITS_PER_THREAD = 500;
+    private static final int[] BATCH_SIZES = { 1, 20, 100, 500 };
+    private static final long[] MAX_LATENCIES_MS = { 2, 10, 50 };
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private JpaPostingProjection projections;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private EngineAccounts engineAccounts;
+
+    private int runs = 0;
+
+    /**
+     * Create a queue with the given settings, in a log directory of its own
+     */
+    private TransactionWriteQueue queue(boolean enabled, int batchSize, long maxLatencyMs) throws IOException {
+        String dir = Files.createTempDirectory("write-queue-bench").toString();
+        TransactionWriteQueue queue = new TransactionWriteQueue(transactionService, projections, engineAccounts,
+                enabled, dir, 16 * 1024 * 1024, 200, batchSize, maxLatencyMs, 100_000, 1000);
+        queue.start();
+        return queue;
+    }
+
+    /**
+     * Have THREADS threads each add SUBMITS_PER_THREAD transactions to an account
+     * of their own, then wait for all of them to be written
+     *
+     * @return a line of results
+     */
+    private String run(SiteUser user, TransactionWriteQueue queue) throws Exception {
+        runs++;
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            accounts.add(accountService.createAccount("Run " + runs + " " + i, (long) 0, user).getResult());
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (Account account : accounts) {
+            futures.add(executor.submit(() -> {
+                long[] latencies = new long[SUBMITS_PER_THREAD];
+                for (int i = 0; i < SUBMITS_PER_THREAD; i++) {
+                    long submitted = System.nanoTime();
+                    template.executeWithoutResult(status -> queue.submit("Benchmark", -1, "Benchmark",
+                            accountService.getUserAccount(user, account.getId())));
+                    latencies[i] = System.nanoTime() - submitted;
+                }
+                return latencies;
+            }));
+        }
+        long[] latencies = new long[THREADS * SUBMITS_PER_THREAD];
+        int next = 0;
+        for (Future<long[]> future : futures) {
+            for (long latency : future.get()) {
+                latencies[next++] = latency;
+            }
+        }
+        executor.shutdown();
+        assertTrue(queue.flush(120_000));
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        queue.stop();
+
+        // Everything made it to the database
+        for (Account account : accounts) {
+            assertEquals(-100L * SUBMITS_PER_THREAD, accountService.getUserAccount(user, account.getId())
+                    .getBalanceInCents());
+        }
+        Arrays.sort(latencies);
+        return String.format("%8.0f/s  ack p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms  avg batch %6.1f  "
+                + "avg time to database %7.2f ms", latencies.length / elapsed,
+                latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6,
+                latencies[latencies.length - 1] / 1e6,
+                queue.getBatchCount() == 0 ? 1.0 : (double) queue.getWrittenCount() / queue.getBatchCount(),
+                queue.getAverageWriteDelayMillis());
+    }
+
+    @Test
+    public void benchmarkWriteQueue() throws Exception {
+        SiteUser user = userService.createUser("Bench Mark", "queue@example.com", "bench_queue", "password123")
+                .getResult();
+
+        // Warm up
+        run(user, queue(false, 1, 1));
+        run(user, queue(true, 100, 10));
+
+        System.out.printf("[write-queue] %d threads x %d transactions%n", THREADS, SUBMITS_PER_THREAD);
+        System.out.printf("[write-queue] synchronous:              %s%n", run(user, queue(false, 1, 1)));
+        for (long maxLatencyMs : MAX_LATENCIES_MS) {
+            for (int batchSize : BATCH_SIZES) {
+                System.out.printf("[write-queue] batch %4d, latency %3d ms: %s%n", batchSize, maxLatencyMs,
+                        run(user, queue(true, batchSize, maxLatencyMs)));
+            }
+        }
+    }
+}